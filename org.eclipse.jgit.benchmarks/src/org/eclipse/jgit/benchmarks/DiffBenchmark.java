@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.io.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Diffs commits of a synthetic repository against their parents, both as a
+ * plain scan for changed paths and as fully formatted patches.
+ */
+@State(Scope.Thread)
+public class DiffBenchmark {
+	@Param({ "200" })
+	int commits;
+
+	@Param({ "1000" })
+	int files;
+
+	@Param({ "HISTOGRAM", "MYERS" })
+	DiffAlgorithm.SupportedAlgorithm algorithm;
+
+	SyntheticRepository repo;
+
+	ObjectReader reader;
+
+	List<RevCommit> history;
+
+	RawText a;
+
+	RawText b;
+
+	@Setup
+	public void setupBenchmark() throws Exception {
+		repo = SyntheticRepository.create(commits, files, 0);
+		reader = repo.getRepository().newObjectReader();
+		history = repo.getCommits();
+
+		// Two large texts sharing most of their lines.
+		StringBuilder sa = new StringBuilder();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			String line = "line " + i + '\n'; //$NON-NLS-1$
+			sa.append(line);
+			if (i % 97 != 0) {
+				sb.append(line);
+			}
+			if (i % 89 == 0) {
+				sb.append("inserted ").append(i).append('\n'); //$NON-NLS-1$
+			}
+		}
+		a = new RawText(sa.toString().getBytes(UTF_8));
+		b = new RawText(sb.toString().getBytes(UTF_8));
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		reader.close();
+		repo.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+	@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+	public void scanHistory(Blackhole bh) throws IOException {
+		try (DiffFormatter df = new DiffFormatter(NullOutputStream.INSTANCE)) {
+			df.setReader(reader, repo.getRepository().getConfig());
+			for (int i = 1; i < history.size(); i++) {
+				bh.consume(df.scan(history.get(i - 1).getTree(),
+						history.get(i).getTree()));
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+	@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+	public void formatHistory() throws IOException {
+		try (DiffFormatter df = new DiffFormatter(NullOutputStream.INSTANCE)) {
+			df.setReader(reader, repo.getRepository().getConfig());
+			df.setDiffAlgorithm(DiffAlgorithm.getAlgorithm(algorithm));
+			for (int i = 1; i < history.size(); i++) {
+				df.format(history.get(i - 1).getTree(),
+						history.get(i).getTree());
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+	@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+	public void diffLargeText(Blackhole bh) {
+		bh.consume(DiffAlgorithm.getAlgorithm(algorithm)
+				.diff(RawTextComparator.DEFAULT, a, b));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(DiffBenchmark.class.getSimpleName())
+				.forks(1).jvmArgs("-ea").build(); //$NON-NLS-1$
+		new Runner(opt).run();
+	}
+}
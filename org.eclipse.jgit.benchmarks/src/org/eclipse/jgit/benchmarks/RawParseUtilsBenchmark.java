@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.util.RawParseUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Parses a raw commit buffer with {@link RawParseUtils}, the way
+ * {@link org.eclipse.jgit.revwalk.RevCommit} does.
+ */
+@State(Scope.Thread)
+public class RawParseUtilsBenchmark {
+	byte[] commit;
+
+	byte[] text;
+
+	@Setup
+	public void setupBenchmark() {
+		commit = ("tree 9788669ad918b6fcce64af8882fc9a81cb6aba67\n" //$NON-NLS-1$
+				+ "parent 5a8f9c2d1e3b4a6f7c8d9e0a1b2c3d4e5f6a7b8c\n" //$NON-NLS-1$
+				+ "author A U Thor <author@example.com> 1218123387 +0700\n" //$NON-NLS-1$
+				+ "committer C O Mitter <committer@example.com> 1218123390 -0500\n" //$NON-NLS-1$
+				+ "\n" //$NON-NLS-1$
+				+ "Fix the frobnicator\n" //$NON-NLS-1$
+				+ "\n" //$NON-NLS-1$
+				+ "The frobnicator did not frobnicate when it should have.\n") //$NON-NLS-1$
+						.getBytes(UTF_8);
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			s.append("line ").append(i).append('\n'); //$NON-NLS-1$
+		}
+		text = s.toString().getBytes(UTF_8);
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+	@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+	public void parseCommitHeaders(Blackhole bh) {
+		int author = RawParseUtils.author(commit, 0);
+		bh.consume(RawParseUtils.parsePersonIdent(commit, author));
+		int committer = RawParseUtils.committer(commit, 0);
+		bh.consume(RawParseUtils.parsePersonIdent(commit, committer));
+		int msg = RawParseUtils.commitMessage(commit, 0);
+		bh.consume(RawParseUtils.decode(commit, msg,
+				RawParseUtils.endOfParagraph(commit, msg)));
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+	@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+	public int lineMap() {
+		return RawParseUtils.lineMap(text, 0, text.length).size();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(RawParseUtilsBenchmark.class.getSimpleName())
+				.forks(1).jvmArgs("-ea").build(); //$NON-NLS-1$
+		new Runner(opt).run();
+	}
+}
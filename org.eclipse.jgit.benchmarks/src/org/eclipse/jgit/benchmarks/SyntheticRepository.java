@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * A throwaway repository with a synthetic history, shared by the benchmarks.
+ * <p>
+ * The history is a single branch of {@code commits} commits over
+ * {@code files} text files spread across nested directories. Each commit
+ * rewrites a few lines in a tenth of the files, so consecutive trees share
+ * most of their entries and blobs delta well against each other. Once built,
+ * all objects are packed, {@code refs} branches are created, half of them are
+ * packed into {@code packed-refs}, and the index is populated from the tip
+ * commit.
+ */
+public class SyntheticRepository implements AutoCloseable {
+	private static final int DIRECTORIES = 16;
+
+	private static final int LINES = 40;
+
+	/**
+	 * Create a new synthetic repository in a temporary directory.
+	 *
+	 * @param commits
+	 *            number of commits on the main branch.
+	 * @param files
+	 *            number of files in each tree.
+	 * @param refs
+	 *            number of additional branches to create.
+	 * @return the repository; the caller must close it to delete it again.
+	 * @throws Exception
+	 *             the repository could not be created.
+	 */
+	public static SyntheticRepository create(int commits, int files,
+			int refs) throws Exception {
+		File dir = Files.createTempDirectory("jgit-benchmark").toFile(); //$NON-NLS-1$
+		FileRepository repo = (FileRepository) FileRepositoryBuilder
+				.create(new File(dir, Constants.DOT_GIT));
+		repo.create();
+		try {
+			return new SyntheticRepository(dir, repo, commits, files, refs);
+		} catch (Exception e) {
+			repo.close();
+			FileUtils.delete(dir, FileUtils.RECURSIVE);
+			throw e;
+		}
+	}
+
+	private final File dir;
+
+	private final FileRepository repo;
+
+	private final List<RevCommit> commits;
+
+	private final List<ObjectId> objects;
+
+	private final List<String> paths;
+
+	private final List<String> refNames;
+
+	private SyntheticRepository(File dir, FileRepository repo, int commitCount,
+			int fileCount, int refCount) throws Exception {
+		this.dir = dir;
+		this.repo = repo;
+
+		Random rnd = new Random(42);
+		paths = new ArrayList<>(fileCount);
+		String[][] content = new String[fileCount][];
+		for (int i = 0; i < fileCount; i++) {
+			paths.add(path(i));
+			content[i] = new String[LINES];
+			for (int l = 0; l < LINES; l++) {
+				content[i][l] = line(rnd);
+			}
+		}
+
+		commits = new ArrayList<>(commitCount);
+		refNames = new ArrayList<>(refCount);
+		// Closing the TestRepository closes the repository once.
+		repo.incrementOpen();
+		try (TestRepository<FileRepository> tr = new TestRepository<>(repo)) {
+			TestRepository<FileRepository>.BranchBuilder master = tr
+					.branch(Constants.R_HEADS + Constants.MASTER);
+			for (int c = 0; c < commitCount; c++) {
+				TestRepository<FileRepository>.CommitBuilder b = master
+						.commit().message("commit " + c); //$NON-NLS-1$
+				for (int i = 0; i < fileCount; i++) {
+					if (c == 0 || rnd.nextInt(10) == 0) {
+						content[i][rnd.nextInt(LINES)] = line(rnd);
+						b.add(paths.get(i), join(content[i]));
+					}
+				}
+				commits.add(b.create());
+			}
+
+			for (int r = 0; r < refCount; r++) {
+				String name = String.format("%sbranch-%05d", //$NON-NLS-1$
+						Constants.R_HEADS, Integer.valueOf(r));
+				tr.update(name, commits.get(rnd.nextInt(commitCount)));
+				refNames.add(name);
+			}
+		}
+
+		GC gc = new GC(repo);
+		gc.setExpireAgeMillis(0);
+		gc.gc();
+
+		// Leave half of the branches loose again.
+		for (int r = 0; r < refCount; r += 2) {
+			RefUpdate u = repo.updateRef(refNames.get(r));
+			u.setNewObjectId(commits.get(rnd.nextInt(commitCount)));
+			u.setForceUpdate(true);
+			u.forceUpdate();
+		}
+
+		objects = listObjects();
+		writeIndex();
+	}
+
+	private static String path(int i) {
+		StringBuilder p = new StringBuilder();
+		p.append("dir-").append(i % DIRECTORIES).append('/'); //$NON-NLS-1$
+		p.append("sub-").append((i / DIRECTORIES) % 4).append('/'); //$NON-NLS-1$
+		p.append("file-").append(i).append(".txt"); //$NON-NLS-1$ //$NON-NLS-2$
+		return p.toString();
+	}
+
+	private static String line(Random rnd) {
+		StringBuilder s = new StringBuilder();
+		int words = 4 + rnd.nextInt(8);
+		for (int w = 0; w < words; w++) {
+			if (w > 0) {
+				s.append(' ');
+			}
+			s.append(Long.toString(rnd.nextLong() & Long.MAX_VALUE, 36));
+		}
+		return s.toString();
+	}
+
+	private static String join(String[] lines) {
+		StringBuilder s = new StringBuilder();
+		for (String l : lines) {
+			s.append(l).append('\n');
+		}
+		return s.toString();
+	}
+
+	private List<ObjectId> listObjects() throws IOException {
+		List<ObjectId> all = new ArrayList<>();
+		try (ObjectWalk ow = new ObjectWalk(repo)) {
+			ow.markStart(ow.parseCommit(getHead()));
+			RevCommit c;
+			while ((c = ow.next()) != null) {
+				all.add(c.copy());
+			}
+			RevObject o;
+			while ((o = ow.nextObject()) != null) {
+				all.add(o.copy());
+			}
+		}
+		Collections.shuffle(all, new Random(7));
+		return all;
+	}
+
+	private void writeIndex() throws IOException {
+		DirCache dc = repo.lockDirCache();
+		try (ObjectReader reader = repo.newObjectReader();
+				RevWalk rw = new RevWalk(reader)) {
+			DirCacheBuilder b = dc.builder();
+			b.addTree(new byte[0], 0, reader,
+					rw.parseCommit(getHead()).getTree());
+			b.finish();
+			dc.write();
+			dc.commit();
+		} finally {
+			dc.unlock();
+		}
+	}
+
+	/**
+	 * Get the repository.
+	 *
+	 * @return the repository.
+	 */
+	public FileRepository getRepository() {
+		return repo;
+	}
+
+	/**
+	 * Get the commits of the main branch.
+	 *
+	 * @return the commits of the main branch, oldest first.
+	 */
+	public List<RevCommit> getCommits() {
+		return commits;
+	}
+
+	/**
+	 * Get the tip of the main branch.
+	 *
+	 * @return the tip of the main branch.
+	 */
+	public RevCommit getHead() {
+		return commits.get(commits.size() - 1);
+	}
+
+	/**
+	 * Get all objects reachable from the main branch.
+	 *
+	 * @return all reachable objects, in random order.
+	 */
+	public List<ObjectId> getObjects() {
+		return objects;
+	}
+
+	/**
+	 * Get the paths of the files in each tree.
+	 *
+	 * @return the paths of the files in each tree.
+	 */
+	public List<String> getPaths() {
+		return paths;
+	}
+
+	/**
+	 * Get the names of the additional branches.
+	 * <p>
+	 * Branches with an even index are loose, the others are only stored in
+	 * {@code packed-refs}.
+	 *
+	 * @return the names of the additional branches.
+	 */
+	public List<String> getRefNames() {
+		return refNames;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Close and delete the repository.
+	 */
+	@Override
+	public void close() throws IOException {
+		repo.close();
+		FileUtils.delete(dir, FileUtils.RECURSIVE | FileUtils.RETRY);
+	}
+}
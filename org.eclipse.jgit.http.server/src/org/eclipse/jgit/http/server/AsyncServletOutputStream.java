@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.server;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Response stream of a request in asynchronous mode, written with a
+ * {@link WriteListener}.
+ * <p>
+ * Writers copy into a bounded buffer and only block while it is full. The
+ * buffer is sent to the client whenever the container reports the
+ * connection writable, so no thread waits on a slow client. Closing the
+ * stream completes the {@link AsyncContext} once all data has been sent.
+ * <p>
+ * The response is committed when the first byte is written, so error
+ * handlers checking {@code isCommitted()} do not reset a response whose
+ * body is already queued.
+ */
+class AsyncServletOutputStream extends OutputStream implements WriteListener {
+	private static final int CHUNK = 16 * 1024;
+
+	private final AsyncContext ctx;
+
+	private final byte[] ring;
+
+	private final byte[] chunk;
+
+	private ServletOutputStream out;
+
+	// Position of the next byte to send, and count of buffered bytes.
+	private int head;
+
+	private int size;
+
+	private boolean flushRequested;
+
+	private boolean closed;
+
+	private boolean completed;
+
+	// A thread is sending buffered data.
+	private boolean draining;
+
+	// The container will call onWritePossible before data can be sent.
+	private boolean awaitingWrite = true;
+
+	// onWritePossible was called while another thread was sending.
+	private boolean writePossible;
+
+	private IOException failure;
+
+	AsyncServletOutputStream(AsyncContext ctx, int bufferSize) {
+		this.ctx = ctx;
+		this.ring = new byte[bufferSize];
+		this.chunk = new byte[Math.min(CHUNK, bufferSize)];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		start();
+		while (len > 0) {
+			synchronized (this) {
+				checkFailure();
+				if (size == ring.length) {
+					awaitSpace();
+					continue;
+				}
+				int tail = (head + size) % ring.length;
+				int n = Math.min(len,
+						Math.min(ring.length - size, ring.length - tail));
+				System.arraycopy(b, off, ring, tail, n);
+				size += n;
+				off += n;
+				len -= n;
+			}
+			drain();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		synchronized (this) {
+			checkFailure();
+			if (out == null) {
+				return;
+			}
+			flushRequested = true;
+		}
+		drain();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			checkFailure();
+			if (out == null) {
+				// Nothing was written through this stream.
+				completed = true;
+			}
+		}
+		if (out == null) {
+			ctx.complete();
+			return;
+		}
+		drain();
+	}
+
+	@Override
+	public void onWritePossible() throws IOException {
+		synchronized (this) {
+			if (draining) {
+				writePossible = true;
+				return;
+			}
+			awaitingWrite = false;
+		}
+		drain();
+	}
+
+	@Override
+	public void onError(Throwable t) {
+		synchronized (this) {
+			failure = t instanceof IOException ? (IOException) t
+					: new IOException(t);
+			notifyAll();
+			if (completed) {
+				return;
+			}
+			completed = true;
+		}
+		ctx.complete();
+	}
+
+	private void start() throws IOException {
+		synchronized (this) {
+			if (out != null) {
+				return;
+			}
+		}
+		ctx.getResponse().flushBuffer();
+		ServletOutputStream o = ctx.getResponse().getOutputStream();
+		synchronized (this) {
+			out = o;
+		}
+		o.setWriteListener(this);
+	}
+
+	private void awaitSpace() throws IOException {
+		try {
+			while (size == ring.length && failure == null) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	// Sends buffered data while the container accepts it without blocking.
+	// Only one thread sends at a time; the others return at once.
+	private void drain() throws IOException {
+		synchronized (this) {
+			if (draining || awaitingWrite || out == null) {
+				return;
+			}
+			draining = true;
+			writePossible = false;
+		}
+		boolean released = false;
+		try {
+			for (;;) {
+				int n = 0;
+				boolean flush = false;
+				synchronized (this) {
+					if (failure != null) {
+						return;
+					}
+					if (size > 0) {
+						n = Math.min(size,
+								Math.min(chunk.length, ring.length - head));
+						System.arraycopy(ring, head, chunk, 0, n);
+						head = (head + n) % ring.length;
+						size -= n;
+						notifyAll();
+					} else if (flushRequested) {
+						flushRequested = false;
+						flush = true;
+					} else if (closed && !completed) {
+						completed = true;
+						draining = false;
+						released = true;
+						ctx.complete();
+						return;
+					} else {
+						// Released in the same step, so that a writer
+						// filling the buffer now sends it itself.
+						draining = false;
+						released = true;
+						return;
+					}
+				}
+				if (n > 0) {
+					out.write(chunk, 0, n);
+				} else if (flush) {
+					out.flush();
+				}
+				if (!out.isReady()) {
+					synchronized (this) {
+						if (!writePossible) {
+							// Released in the same step, so that a
+							// concurrent onWritePossible resumes sending.
+							awaitingWrite = true;
+							draining = false;
+							released = true;
+							return;
+						}
+						writePossible = false;
+					}
+				}
+			}
+		} finally {
+			if (!released) {
+				synchronized (this) {
+					draining = false;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.server;
+
+import static javax.servlet.http.HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static org.eclipse.jgit.http.server.ServletUtils.decodeBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.TemporaryBuffer;
+
+/**
+ * Runs a smart HTTP service without holding a container thread while the
+ * client is slow.
+ * <p>
+ * The request body is read with a {@link ReadListener} into a buffer which
+ * spills to a temporary file once large. When it has been fully received the
+ * service runs on an executor, writing its response through an
+ * {@link AsyncServletOutputStream}.
+ * <p>
+ * A body larger than the given limit is rejected, and a request which is not
+ * done within {@link #TIMEOUT} is aborted, so a client cannot hold a spool
+ * file or the repository indefinitely.
+ */
+class AsyncTransfer {
+	/** Service reading a request body and writing the response. */
+	@FunctionalInterface
+	interface Service {
+		/**
+		 * @param in
+		 *            the decoded request body.
+		 * @param out
+		 *            the response body.
+		 * @throws IOException
+		 *             the service failed.
+		 */
+		void run(InputStream in, OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Largest negotiation request accepted for upload-pack, the default
+	 * request buffer of git-http-backend.
+	 */
+	static final long MAX_REQUEST_BUFFER = 10 * 1024 * 1024;
+
+	/** Time a request may take from reading its body to the last byte sent. */
+	static final long TIMEOUT = TimeUnit.HOURS.toMillis(1);
+
+	private static final int BODY_IN_CORE_LIMIT = 1024 * 1024;
+
+	private static final int SEND_BUFFER_SIZE = 1024 * 1024;
+
+	private final AsyncContext ctx;
+
+	private final HttpServletRequest req;
+
+	private final Executor executor;
+
+	private final Repository db;
+
+	private final Service service;
+
+	private final long maxBodySize;
+
+	private final TemporaryBuffer body;
+
+	private final AsyncServletOutputStream out;
+
+	// The buffered body was handed to the service, which releases it.
+	private boolean serviceStarted;
+
+	private boolean finished;
+
+	/**
+	 * Put a request in asynchronous mode and serve it.
+	 *
+	 * @param req
+	 *            the request; {@code isAsyncSupported()} must be true.
+	 * @param executor
+	 *            executor to run the service on.
+	 * @param db
+	 *            repository used by the service, kept open until it is done.
+	 * @param maxBodySize
+	 *            largest request body to buffer, in bytes; -1 for no limit.
+	 * @param service
+	 *            the service to run.
+	 * @throws IOException
+	 *             the request body could not be opened.
+	 */
+	static void start(HttpServletRequest req, Executor executor,
+			Repository db, long maxBodySize, Service service)
+			throws IOException {
+		new AsyncTransfer(req, executor, db, maxBodySize, service).readBody();
+	}
+
+	private AsyncTransfer(HttpServletRequest req, Executor executor,
+			Repository db, long maxBodySize, Service service) {
+		this.req = req;
+		this.executor = executor;
+		this.db = db;
+		this.maxBodySize = maxBodySize;
+		this.service = service;
+		this.body = new TemporaryBuffer.LocalFile(null, BODY_IN_CORE_LIMIT);
+		this.ctx = req.startAsync();
+		this.out = new AsyncServletOutputStream(ctx, SEND_BUFFER_SIZE);
+		ctx.setTimeout(TIMEOUT);
+		ctx.addListener(new TimeoutListener());
+		db.incrementOpen();
+	}
+
+	private void readBody() throws IOException {
+		ServletInputStream in = req.getInputStream();
+		in.setReadListener(new ReadListener() {
+			private final byte[] buf = new byte[8192];
+
+			@Override
+			public void onDataAvailable() throws IOException {
+				while (in.isReady() && !in.isFinished()) {
+					int n = in.read(buf);
+					if (n < 0) {
+						break;
+					}
+					if (0 <= maxBodySize
+							&& maxBodySize - body.length() < n) {
+						reject(SC_REQUEST_ENTITY_TOO_LARGE);
+						return;
+					}
+					body.write(buf, 0, n);
+				}
+			}
+
+			@Override
+			public void onAllDataRead() throws IOException {
+				synchronized (AsyncTransfer.this) {
+					if (finished) {
+						return;
+					}
+					serviceStarted = true;
+				}
+				body.close();
+				try {
+					executor.execute(AsyncTransfer.this::run);
+				} catch (RejectedExecutionException e) {
+					reject(SC_SERVICE_UNAVAILABLE);
+				}
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				if (finish()) {
+					ctx.complete();
+				}
+			}
+		});
+	}
+
+	private void reject(int status) throws IOException {
+		if (finish()) {
+			((HttpServletResponse) ctx.getResponse()).sendError(status);
+			ctx.complete();
+		}
+	}
+
+	private void run() {
+		try (InputStream in = decodeBody(req, body.openInputStream())) {
+			service.run(in, out);
+		} catch (IOException e) {
+			req.getServletContext().log(e.getMessage(), e);
+		} finally {
+			finish();
+			try {
+				out.close();
+			} catch (IOException e) {
+				// The client went away; nothing is left to report.
+			}
+		}
+	}
+
+	// Releases the body and the repository; false if already released.
+	private boolean finish() {
+		synchronized (this) {
+			if (finished) {
+				return false;
+			}
+			finished = true;
+		}
+		body.destroy();
+		db.close();
+		return true;
+	}
+
+	private class TimeoutListener implements AsyncListener {
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			// Fails a service waiting to send, and completes the request.
+			out.onError(new IOException(MessageFormat.format(
+					HttpServerText.get().asyncRequestTimedOut,
+					Long.valueOf(TIMEOUT))));
+			boolean release;
+			synchronized (AsyncTransfer.this) {
+				release = !serviceStarted;
+			}
+			if (release) {
+				finish();
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			// Nothing.
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			// Nothing.
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// Nothing.
+		}
+	}
+}
@@ -47,6 +47,7 @@
 import java.text.MessageFormat;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterConfig;
@@ -54,6 +55,7 @@
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.http.server.glue.ErrorServlet;
 import org.eclipse.jgit.http.server.glue.MetaFilter;
 import org.eclipse.jgit.http.server.glue.RegexGroupFilter;
@@ -100,6 +102,8 @@ public class GitFilter extends MetaFilter {
 
 	private final List<Filter> receivePackFilters = new LinkedList<>();
 
+	private Executor asyncExecutor;
+
 	/**
 	 * New servlet that will load its base directory from {@code web.xml}.
 	 * <p>
@@ -202,6 +206,27 @@ public void addReceivePackFilter(Filter filter) {
 		receivePackFilters.add(filter);
 	}
 
+	/**
+	 * Set the executor to serve fetches and pushes asynchronously with.
+	 * <p>
+	 * When set, and the container supports asynchronous requests for this
+	 * filter, upload-pack and receive-pack requests are served with Servlet
+	 * 3.1 non-blocking I/O. The request body is read into a buffer without
+	 * holding a container thread, the service then runs on this executor, and
+	 * its response is sent as the client accepts it. Fetch requests larger
+	 * than 10 MiB are rejected, pushes are bounded by the pack size limit of
+	 * the ReceivePack, and a request not done within an hour is aborted.
+	 *
+	 * @param executor
+	 *            executor to run upload-pack and receive-pack on, or null to
+	 *            serve them on the container thread with blocking I/O.
+	 * @since 5.6
+	 */
+	public void setAsyncExecutor(@Nullable Executor executor) {
+		assertNotInitialized();
+		this.asyncExecutor = executor;
+	}
+
 	private void assertNotInitialized() {
 		if (initialized)
 			throw new IllegalStateException(HttpServerText.get().alreadyInitializedByContainer);
@@ -225,7 +250,8 @@ public void init(FilterConfig filterConfig) throws ServletException {
 			b = b.through(new UploadPackServlet.Factory(uploadPackFactory));
 			for (Filter f : uploadPackFilters)
 				b = b.through(f);
-			b.with(new UploadPackServlet(uploadPackErrorHandler));
+			b.with(new UploadPackServlet(uploadPackErrorHandler,
+					asyncExecutor));
 		}
 
 		if (receivePackFactory != ReceivePackFactory.DISABLED) {
@@ -233,7 +259,7 @@ public void init(FilterConfig filterConfig) throws ServletException {
 			b = b.through(new ReceivePackServlet.Factory(receivePackFactory));
 			for (Filter f : receivePackFilters)
 				b = b.through(f);
-			b.with(new ReceivePackServlet());
+			b.with(new ReceivePackServlet(asyncExecutor));
 		}
 
 		ServletBinder refs = serve("*/" + Constants.INFO_REFS);
@@ -44,6 +44,7 @@
 package org.eclipse.jgit.http.server;
 
 import java.util.Enumeration;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterConfig;
@@ -52,6 +53,7 @@
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.http.server.glue.MetaServlet;
 import org.eclipse.jgit.http.server.resolver.AsIsFileService;
 import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
@@ -181,6 +183,21 @@ public void addReceivePackFilter(Filter filter) {
 		gitFilter.addReceivePackFilter(filter);
 	}
 
+	/**
+	 * Set the executor to serve fetches and pushes asynchronously with.
+	 * <p>
+	 * Only takes effect when this servlet is registered as async-supported in
+	 * a Servlet 3.1 container.
+	 *
+	 * @param executor
+	 *            executor to run upload-pack and receive-pack on, or null to
+	 *            serve them with blocking I/O.
+	 * @since 5.6
+	 */
+	public void setAsyncExecutor(@Nullable Executor executor) {
+		gitFilter.setAsyncExecutor(executor);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void init(ServletConfig config) throws ServletException {
@@ -62,6 +62,7 @@ public static HttpServerText get() {
 
 	// @formatter:off
 	/***/ public String alreadyInitializedByContainer;
+	/***/ public String asyncRequestTimedOut;
 	/***/ public String cannotGetLengthOf;
 	/***/ public String clientHas175ChunkedEncodingBug;
 	/***/ public String encodingNotSupportedByThisLibrary;
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.server;
+
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static org.eclipse.jgit.util.HttpSupport.HDR_ETAG;
+import static org.eclipse.jgit.util.HttpSupport.HDR_IF_NONE_MATCH;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves pack files published to a directory for the packfile-uris feature
+ * of protocol v2.
+ * <p>
+ * Clients download the whole pack with a single GET, and may resume an
+ * interrupted download with a range request. Only names of the form
+ * {@code pack-<name>.pack} directly within the directory are served.
+ *
+ * @see org.eclipse.jgit.internal.storage.file.LocalCachedPackUriProvider
+ * @since 5.6
+ */
+public class PublishedPackServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	private static final Pattern PACK_NAME = Pattern
+			.compile("^/pack-[0-9a-f]{40}\\.pack$"); //$NON-NLS-1$
+
+	private final File directory;
+
+	/**
+	 * Create a servlet serving packs from a directory.
+	 *
+	 * @param directory
+	 *            directory the packs are published to.
+	 */
+	public PublishedPackServlet(File directory) {
+		this.directory = directory;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void doGet(HttpServletRequest req, HttpServletResponse rsp)
+			throws IOException {
+		serve(req, rsp, true);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void doHead(HttpServletRequest req, HttpServletResponse rsp)
+			throws IOException {
+		serve(req, rsp, false);
+	}
+
+	private void serve(HttpServletRequest req, HttpServletResponse rsp,
+			boolean sendBody) throws IOException {
+		String name = req.getPathInfo();
+		if (name == null || !PACK_NAME.matcher(name).matches()) {
+			rsp.sendError(SC_NOT_FOUND);
+			return;
+		}
+
+		FileSender sender;
+		try {
+			sender = new FileSender(new File(directory, name.substring(1)));
+		} catch (FileNotFoundException e) {
+			rsp.sendError(SC_NOT_FOUND);
+			return;
+		}
+
+		try {
+			// A published pack never changes, its checksum is a strong etag.
+			String etag = sender.getTailChecksum();
+			if (etag.equals(req.getHeader(HDR_IF_NONE_MATCH))) {
+				rsp.sendError(SC_NOT_MODIFIED);
+				return;
+			}
+			rsp.setHeader(HDR_ETAG, etag);
+			rsp.setContentType("application/x-git-packed-objects"); //$NON-NLS-1$
+			sender.serve(req, rsp, sendBody);
+		} finally {
+			sender.close();
+		}
+	}
+}
@@ -58,8 +58,11 @@
 import static org.eclipse.jgit.util.HttpSupport.HDR_USER_AGENT;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -71,6 +74,7 @@
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.PackProtocolException;
 import org.eclipse.jgit.errors.UnpackException;
@@ -161,6 +165,12 @@ public void destroy() {
 		}
 	}
 
+	private final Executor asyncExecutor;
+
+	ReceivePackServlet(@Nullable Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void doPost(final HttpServletRequest req,
@@ -170,19 +180,36 @@ public void doPost(final HttpServletRequest req,
 			return;
 		}
 
+		ReceivePack rp = (ReceivePack) req.getAttribute(ATTRIBUTE_HANDLER);
+		if (asyncExecutor != null && req.isAsyncSupported()) {
+			// The commands before the pack get the same allowance as a
+			// fetch negotiation.
+			long limit = rp.getMaxPackSizeLimit();
+			if (limit >= 0) {
+				limit += AsyncTransfer.MAX_REQUEST_BUFFER;
+			}
+			AsyncTransfer.start(req, asyncExecutor, rp.getRepository(), limit,
+					(in, out) -> receive(req, rsp, rp, in, out));
+			return;
+		}
+
 		SmartOutputStream out = new SmartOutputStream(req, rsp, false) {
 			@Override
 			public void flush() throws IOException {
 				doFlush();
 			}
 		};
+		receive(req, rsp, rp, getInputStream(req), out);
+	}
 
-		ReceivePack rp = (ReceivePack) req.getAttribute(ATTRIBUTE_HANDLER);
+	private void receive(HttpServletRequest req, HttpServletResponse rsp,
+			ReceivePack rp, InputStream in, OutputStream out)
+			throws IOException {
 		try {
 			rp.setBiDirectionalPipe(false);
 			rsp.setContentType(RECEIVE_PACK_RESULT_TYPE);
 
-			rp.receive(getInputStream(req), out, null);
+			rp.receive(in, out, null);
 			out.close();
 		} catch (CorruptObjectException e ) {
 			// This should be already reported to the client.
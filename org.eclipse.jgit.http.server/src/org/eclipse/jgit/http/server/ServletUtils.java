@@ -112,7 +112,11 @@ public static Repository getRepository(ServletRequest req) {
 	 */
 	public static InputStream getInputStream(HttpServletRequest req)
 			throws IOException {
-		InputStream in = req.getInputStream();
+		return decodeBody(req, req.getInputStream());
+	}
+
+	static InputStream decodeBody(HttpServletRequest req, InputStream in)
+			throws IOException {
 		final String enc = req.getHeader(HDR_CONTENT_ENCODING);
 		if (ENCODING_GZIP.equals(enc) || ENCODING_X_GZIP.equals(enc))
 			in = new GZIPInputStream(in);
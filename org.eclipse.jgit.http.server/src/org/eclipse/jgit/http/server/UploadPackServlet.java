@@ -58,8 +58,11 @@
 import static org.eclipse.jgit.util.HttpSupport.HDR_USER_AGENT;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -184,9 +187,13 @@ public void destroy() {
 
 	private final UploadPackErrorHandler handler;
 
-	UploadPackServlet(@Nullable UploadPackErrorHandler handler) {
+	private final Executor asyncExecutor;
+
+	UploadPackServlet(@Nullable UploadPackErrorHandler handler,
+			@Nullable Executor asyncExecutor) {
 		this.handler = handler != null ? handler
 				: this::defaultUploadPackHandler;
+		this.asyncExecutor = asyncExecutor;
 	}
 
 	/** {@inheritDoc} */
@@ -198,8 +205,16 @@ public void doPost(HttpServletRequest req, HttpServletResponse rsp)
 			return;
 		}
 
+		UploadPack up = (UploadPack) req.getAttribute(ATTRIBUTE_HANDLER);
+		if (asyncExecutor != null && req.isAsyncSupported()) {
+			AsyncTransfer.start(req, asyncExecutor, up.getRepository(),
+					AsyncTransfer.MAX_REQUEST_BUFFER,
+					(in, out) -> handler.upload(req, rsp,
+							() -> upload(req, rsp, up, in, out)));
+			return;
+		}
+
 		UploadPackRunnable r = () -> {
-			UploadPack up = (UploadPack) req.getAttribute(ATTRIBUTE_HANDLER);
 			@SuppressWarnings("resource")
 			SmartOutputStream out = new SmartOutputStream(req, rsp, false) {
 				@Override
@@ -207,28 +222,33 @@ public void flush() throws IOException {
 					doFlush();
 				}
 			};
+			upload(req, rsp, up, getInputStream(req), out);
+		};
 
-			up.setBiDirectionalPipe(false);
-			rsp.setContentType(UPLOAD_PACK_RESULT_TYPE);
+		handler.upload(req, rsp, r);
+	}
 
-			try {
-				up.upload(getInputStream(req), out, null);
-				out.close();
-			} catch (ServiceMayNotContinueException e) {
-				if (e.isOutput()) {
-					consumeRequestBody(req);
-					out.close();
-				}
-				throw e;
-			} catch (UploadPackInternalServerErrorException e) {
-				// Special case exception, error message was sent to client.
-				log(up.getRepository(), e.getCause());
+	private void upload(HttpServletRequest req, HttpServletResponse rsp,
+			UploadPack up, InputStream in, OutputStream out)
+			throws IOException {
+		up.setBiDirectionalPipe(false);
+		rsp.setContentType(UPLOAD_PACK_RESULT_TYPE);
+
+		try {
+			up.upload(in, out, null);
+			out.close();
+		} catch (ServiceMayNotContinueException e) {
+			if (e.isOutput()) {
 				consumeRequestBody(req);
 				out.close();
 			}
-		};
-
-		handler.upload(req, rsp, r);
+			throw e;
+		} catch (UploadPackInternalServerErrorException e) {
+			// Special case exception, error message was sent to client.
+			log(up.getRepository(), e.getCause());
+			consumeRequestBody(req);
+			out.close();
+		}
 	}
 
 	private void defaultUploadPackHandler(HttpServletRequest req,
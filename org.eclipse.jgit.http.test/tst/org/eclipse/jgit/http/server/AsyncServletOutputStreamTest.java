@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.http.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncServletOutputStreamTest {
+	private ExecutorService pool;
+
+	@Before
+	public void setUp() {
+		pool = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void testWriterAndContainerDrainConcurrently() throws Exception {
+		Random rng = new Random(42);
+		for (int round = 0; round < 2000; round++) {
+			byte[] data = new byte[4096];
+			rng.nextBytes(data);
+			try (FakeContainer container = new FakeContainer(
+					rng.nextInt(4) + 2)) {
+				AsyncServletOutputStream out = new AsyncServletOutputStream(
+						container.context(), 8);
+				Future<?> writer = pool.submit(() -> {
+					int off = 0;
+					while (off < data.length) {
+						int n = Math.min(data.length - off,
+								rng.nextInt(16) + 1);
+						out.write(data, off, n);
+						off += n;
+					}
+					out.close();
+					return null;
+				});
+				Future<?> events = pool.submit(container::run);
+
+				// A lost wakeup leaves the writer waiting for space forever.
+				writer.get(10, TimeUnit.SECONDS);
+				assertTrue(container.completed.await(10, TimeUnit.SECONDS));
+				events.cancel(true);
+				assertArrayEquals(data, container.received());
+			}
+		}
+	}
+
+	/**
+	 * Servlet container which reports the connection not ready every few
+	 * writes, and like a real container calls onWritePossible only after
+	 * isReady returned false.
+	 */
+	private static class FakeContainer extends ServletOutputStream {
+		final CountDownLatch completed = new CountDownLatch(1);
+
+		private final int readyEvery;
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		private WriteListener listener;
+
+		private int calls;
+
+		private boolean pending;
+
+		FakeContainer(int readyEvery) {
+			this.readyEvery = readyEvery;
+		}
+
+		AsyncContext context() {
+			ServletResponse rsp = (ServletResponse) Proxy.newProxyInstance(
+					getClass().getClassLoader(),
+					new Class[] { ServletResponse.class },
+					(proxy, method, args) -> {
+						if (method.getName().equals("getOutputStream")) {
+							return this;
+						}
+						return null;
+					});
+			return (AsyncContext) Proxy.newProxyInstance(
+					getClass().getClassLoader(),
+					new Class[] { AsyncContext.class },
+					(proxy, method, args) -> {
+						if (method.getName().equals("getResponse")) {
+							return rsp;
+						} else if (method.getName().equals("complete")) {
+							completed.countDown();
+						}
+						return null;
+					});
+		}
+
+		synchronized byte[] received() {
+			return body.toByteArray();
+		}
+
+		// Delivers onWritePossible events until interrupted.
+		Void run() throws IOException, InterruptedException {
+			for (;;) {
+				WriteListener l;
+				synchronized (this) {
+					while (!pending) {
+						wait();
+					}
+					pending = false;
+					l = listener;
+				}
+				l.onWritePossible();
+			}
+		}
+
+		@Override
+		public synchronized boolean isReady() {
+			if (++calls % readyEvery == 0) {
+				pending = true;
+				notifyAll();
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public synchronized void setWriteListener(WriteListener l) {
+			listener = l;
+			pending = true;
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void write(int b) {
+			body.write(b);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			body.write(b, off, len);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.http.server.GitServlet;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.http.HttpConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncGitServletTest extends AllFactoriesHttpTestCase {
+	private ThreadPoolExecutor executor;
+
+	private TestRepository<Repository> remote;
+
+	private URIish remoteURI;
+
+	private RevCommit A;
+
+	public AsyncGitServletTest(HttpConnectionFactory cf) {
+		super(cf);
+	}
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		remote = createTestRepository();
+		final String srcName = remote.getRepository().getDirectory()
+				.getName();
+		executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+
+		ServletContextHandler app = server.addContext("/git");
+		GitServlet gs = new GitServlet();
+		gs.setRepositoryResolver((HttpServletRequest req, String name) -> {
+			if (!name.equals(srcName)) {
+				throw new RepositoryNotFoundException(name);
+			}
+			final Repository db = remote.getRepository();
+			db.incrementOpen();
+			return db;
+		});
+		gs.setAsyncExecutor(executor);
+		ServletHolder holder = new ServletHolder(gs);
+		holder.setAsyncSupported(true);
+		app.addServlet(holder, "/*");
+
+		server.setUp();
+
+		remoteURI = toURIish(app, srcName);
+
+		StoredConfig cfg = remote.getRepository().getConfig();
+		cfg.setBoolean("http", null, "receivepack", true);
+		cfg.save();
+
+		// Large enough to need several buffers on the way out.
+		byte[] big = new byte[3 * 1024 * 1024];
+		for (int i = 0; i < big.length; i++) {
+			big[i] = (byte) (i * 31 + (i >>> 11));
+		}
+		A = remote.commit().add("big", remote.blob(big)).create();
+		remote.update(Constants.R_HEADS + Constants.MASTER, A);
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		super.tearDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testFetch() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, remoteURI)) {
+			t.fetch(NullProgressMonitor.INSTANCE, Collections
+					.singletonList(new RefSpec("refs/heads/*:refs/heads/*")));
+		}
+		assertTrue(executor.getTaskCount() > 0);
+		assertTrue(dst.getObjectDatabase().has(A));
+		assertEquals(A, dst.exactRef(Constants.R_HEADS + Constants.MASTER)
+				.getObjectId());
+	}
+
+	@Test
+	public void testPush() throws Exception {
+		TestRepository<Repository> src = createTestRepository();
+		RevBlob Q_txt = src.blob("pushed through the async servlet");
+		RevCommit Q = src.commit().add("Q", Q_txt).create();
+		String dstName = Constants.R_HEADS + "new.branch";
+		PushResult result;
+
+		try (Transport t = Transport.open(src.getRepository(), remoteURI)) {
+			RemoteRefUpdate update = new RemoteRefUpdate(src.getRepository(),
+					Q.name(), dstName, false, null, null);
+			result = t.push(NullProgressMonitor.INSTANCE,
+					Collections.singleton(update));
+		}
+		assertTrue(executor.getTaskCount() > 0);
+		assertEquals(RemoteRefUpdate.Status.OK,
+				result.getRemoteUpdate(dstName).getStatus());
+		assertTrue(remote.getRepository().getObjectDatabase().has(Q_txt));
+		assertEquals(Q, remote.getRepository().exactRef(dstName)
+				.getObjectId());
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.http.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.http.server.PublishedPackServlet;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.internal.storage.file.LocalCachedPackUriProvider;
+import org.eclipse.jgit.internal.storage.file.PackLock;
+import org.eclipse.jgit.internal.storage.pack.CachedPack;
+import org.eclipse.jgit.internal.storage.pack.CachedPackUriProvider.PackInfo;
+import org.eclipse.jgit.internal.storage.pack.ObjectReuseAsIs;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.PackfileUriDownloader;
+import org.eclipse.jgit.transport.http.HttpConnectionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackfileUriTest extends AllFactoriesHttpTestCase {
+	private TestRepository<Repository> src;
+
+	private RevBlob blob;
+
+	private RevCommit commit;
+
+	private File publishDir;
+
+	private String baseUri;
+
+	public PackfileUriTest(HttpConnectionFactory cf) {
+		super(cf);
+	}
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		src = createTestRepository();
+		blob = src.blob("content");
+		commit = src.commit().add("file", blob).create();
+		src.update("master", commit);
+		new GC((FileRepository) src.getRepository()).gc();
+
+		publishDir = createTempDirectory("packs");
+		ServletContextHandler app = server.addContext("/packs");
+		app.addServlet(new ServletHolder(new PublishedPackServlet(publishDir)),
+				"/*");
+		server.setUp();
+		baseUri = toURIish(app, "/").toString();
+	}
+
+	@Test
+	public void testDownloadPublishedPack() throws Exception {
+		PackInfo info = publish();
+		assertNotNull(info);
+		assertTrue(info.getUri().startsWith(baseUri));
+		assertTrue(info.getSize() > 0);
+
+		Repository dst = createBareRepository();
+		assertFalse(dst.getObjectDatabase().has(commit));
+		try (PackfileUriDownloader d = new PackfileUriDownloader(dst)) {
+			d.add(info.getHash() + ' ' + info.getUri());
+			List<PackLock> locks = d.await();
+			assertEquals(1, locks.size());
+			locks.get(0).unlock();
+		}
+		assertTrue(dst.getObjectDatabase().has(commit));
+		assertTrue(dst.getObjectDatabase().has(blob));
+	}
+
+	@Test
+	public void testChecksumMismatch() throws Exception {
+		PackInfo info = publish();
+		Repository dst = createBareRepository();
+		try (PackfileUriDownloader d = new PackfileUriDownloader(dst)) {
+			d.add(commit.name() + ' ' + info.getUri());
+			d.await();
+			fail("checksum mismatch not detected");
+		} catch (TransportException e) {
+			assertTrue(e.getMessage().contains(info.getHash()));
+		}
+	}
+
+	@Test
+	public void testUnknownPack() throws Exception {
+		Repository dst = createBareRepository();
+		try (PackfileUriDownloader d = new PackfileUriDownloader(dst)) {
+			d.add(commit.name() + ' ' + baseUri + "pack-" + commit.name()
+					+ ".pack");
+			d.await();
+			fail("missing pack downloaded");
+		} catch (TransportException e) {
+			assertTrue(e.getMessage().contains("404"));
+		}
+	}
+
+	@Test
+	public void testUnsupportedProtocol() throws Exception {
+		assertNull(publish(Collections.singletonList("https")));
+		assertEquals(0, publishDir.list().length);
+	}
+
+	private PackInfo publish() throws Exception {
+		return publish(Collections.singletonList("http"));
+	}
+
+	private PackInfo publish(List<String> protocols) throws Exception {
+		LocalCachedPackUriProvider provider = new LocalCachedPackUriProvider(
+				publishDir, baseUri);
+		try (ObjectReader reader = src.getRepository().newObjectReader()) {
+			BitmapIndex index = reader.getBitmapIndex();
+			BitmapBuilder need = index.newBitmapBuilder();
+			need.or(index.getBitmap(commit));
+			Collection<CachedPack> packs = ((ObjectReuseAsIs) reader)
+					.getCachedPacksAndUpdate(need);
+			assertEquals(1, packs.size());
+			return provider.getInfo(packs.iterator().next(), protocols);
+		}
+	}
+}
@@ -85,6 +85,12 @@ class Daemon extends TextBuiltin {
 	@Option(name = "--timeout", metaVar = "metaVar_seconds", usage = "usage_abortConnectionIfNoActivity")
 	int timeout = -1;
 
+	@Option(name = "--max-connections", metaVar = "metaVar_n", usage = "usage_maxConnections")
+	int maxConnections;
+
+	@Option(name = "--max-queued-connections", metaVar = "metaVar_n", usage = "usage_maxQueuedConnections")
+	int maxQueuedConnections;
+
 	@Option(name = "--enable", metaVar = "metaVar_service", usage = "usage_enableTheServiceInAllRepositories")
 	List<String> enable = new ArrayList<>();
 
@@ -155,6 +161,8 @@ protected void run() throws Exception {
 		d.setRepositoryResolver(resolver);
 		if (0 <= timeout)
 			d.setTimeout(timeout);
+		d.setMaxConnections(maxConnections);
+		d.setMaxQueuedConnections(maxQueuedConnections);
 
 		for (String n : enable)
 			service(d, n).setEnabled(true);
@@ -58,21 +58,28 @@
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.UnmergedPathException;
 import org.eclipse.jgit.junit.JGitTestUtil;
 import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
 import org.junit.Test;
 
 public class DirCacheCGitCompatabilityTest extends LocalDiskRepositoryTestCase {
@@ -224,6 +231,116 @@ public void testReadWriteV3() throws Exception {
 		assertArrayEquals(expectedBytes, indexBytes);
 	}
 
+	@Test
+	public void testReadWriteV4() throws Exception {
+		// gitgit.index converted by git update-index --index-version 4, with
+		// its TREE extension removed
+		final File file = pathOf("gitgit.index.v4");
+		final Map<String, CGitIndexRecord> ls = readLsFiles();
+		final DirCache dc = new DirCache(file, FS.DETECTED);
+		dc.read();
+		assertEquals(ls.size(), dc.getEntryCount());
+		{
+			final Iterator<CGitIndexRecord> rItr = ls.values().iterator();
+			for (int i = 0; rItr.hasNext(); i++)
+				assertEqual(rItr.next(), dc.getEntry(i));
+		}
+
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		dc.writeTo(null, bos);
+		assertArrayEquals(IO.readFully(file), bos.toByteArray());
+	}
+
+	@Test
+	public void testReadWriteUntrackedCache() throws Exception {
+		// Written by git status with core.untrackedCache and a file monitor
+		final File file = pathOf("gitgit.index.untracked");
+		final DirCache dc = new DirCache(file, FS.DETECTED);
+		dc.read();
+
+		assertEquals(2, dc.getEntryCount());
+		assertEquals("builtin:fake-token", dc.getFileMonitorToken());
+		assertTrue(dc.getEntry(0).isFileMonitorValid());
+		assertTrue(dc.getEntry(1).isFileMonitorValid());
+
+		UntrackedCache uc = dc.getUntrackedCache();
+		assertNotNull(uc);
+		assertUntracked(uc, "", Collections.emptyList());
+		assertUntracked(uc, "a", Arrays.asList("newdir/", "u"));
+		assertUntracked(uc, "a/b", Collections.emptyList());
+		assertUntracked(uc, "a/newdir", Arrays.asList("n"));
+		assertUntracked(uc, "c", Collections.emptyList());
+		assertNull(uc.getDirectory("d"));
+
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		dc.writeTo(null, bos);
+		assertArrayEquals(IO.readFully(file), bos.toByteArray());
+	}
+
+	@Test
+	public void testUntrackedCacheInvalidatedByBuilder() throws Exception {
+		final DirCache dc = new DirCache(pathOf("gitgit.index.untracked"),
+				FS.DETECTED);
+		dc.read();
+
+		final DirCacheBuilder b = dc.builder();
+		b.keep(0, dc.getEntryCount());
+		final DirCacheEntry added = new DirCacheEntry("a/newdir/n");
+		added.setFileMode(FileMode.REGULAR_FILE);
+		b.add(added);
+		b.finish();
+
+		UntrackedCache uc = dc.getUntrackedCache();
+		assertFalse(uc.getDirectory("").isValid());
+		assertFalse(uc.getDirectory("a").isValid());
+		assertFalse(uc.getDirectory("a/newdir").isValid());
+		assertTrue(uc.getDirectory("a/b").isValid());
+		assertTrue(uc.getDirectory("c").isValid());
+		assertTrue(dc.getEntry("a/b/f").isFileMonitorValid());
+		assertFalse(dc.getEntry("a/newdir/n").isFileMonitorValid());
+	}
+
+	@Test
+	public void testCorruptUntrackedCacheAndFileMonitorAreDropped()
+			throws Exception {
+		byte[] raw = IO.readFully(pathOf("gitgit.index.untracked"));
+		// UNTR data must end with a NUL; FSMN has no version 99.
+		int untr = extensionData(raw, "UNTR");
+		raw[untr + NB.decodeInt32(raw, untr - 4) - 1] = 1;
+		NB.encodeInt32(raw, extensionData(raw, "FSMN"), 99);
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(raw, 0, raw.length - 20);
+		System.arraycopy(md.digest(), 0, raw, raw.length - 20, 20);
+		File file = new File(createTempDirectory("corrupt"), "index");
+		Files.write(file.toPath(), raw);
+
+		final DirCache dc = new DirCache(file, FS.DETECTED);
+		dc.read();
+
+		assertEquals(2, dc.getEntryCount());
+		assertNull(dc.getUntrackedCache());
+		assertNull(dc.getFileMonitorToken());
+		assertFalse(dc.getEntry(0).isFileMonitorValid());
+		assertFalse(dc.getEntry(1).isFileMonitorValid());
+	}
+
+	private static int extensionData(byte[] raw, String name) {
+		byte[] sig = name.getBytes(UTF_8);
+		for (int i = 12; i + 8 <= raw.length; i++) {
+			if (Arrays.equals(sig, Arrays.copyOfRange(raw, i, i + 4)))
+				return i + 8;
+		}
+		throw new AssertionError(name);
+	}
+
+	private static void assertUntracked(UntrackedCache uc, String path,
+			List<String> names) {
+		UntrackedCache.Directory d = uc.getDirectory(path);
+		assertNotNull(path, d);
+		assertTrue(path, d.isValid());
+		assertEquals(path, names, d.getUntracked());
+	}
+
 	@Test
 	public void testFileWithSameNameAsSubtree() throws Exception {
 		// CGit is able to read this cache tree and write this cache tree.
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.dircache;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.junit.Test;
+
+public class DirCacheOffsetTableTest extends RepositoryTestCase {
+	@Test
+	public void testReadWriteOffsetTable() throws Exception {
+		assertReadWrite(2);
+	}
+
+	@Test
+	public void testReadWriteOffsetTableVersion4() throws Exception {
+		assertReadWrite(4);
+	}
+
+	@Test
+	public void testNoOffsetTableByDefault() throws Exception {
+		writeEntries(10);
+		String raw = new String(IO.readFully(getIndexFile()), ISO_8859_1);
+		assertEquals(-1, raw.indexOf("IEOT"));
+		assertEquals(-1, raw.indexOf("EOIE"));
+	}
+
+	@Test
+	public void testIgnoreInvalidEndOfIndexEntries() throws Exception {
+		setThreads("3");
+		writeEntries(10);
+		byte[] raw = IO.readFully(getIndexFile());
+		int eoie = raw.length - 20 - 32;
+		assertEquals("EOIE", new String(raw, eoie, 4, ISO_8859_1));
+
+		// Point the extension into the entries, so that they are read
+		// without the offset table.
+		NB.encodeInt32(raw, eoie + 8, NB.decodeInt32(raw, eoie + 8) - 8);
+		Files.write(getIndexFile().toPath(), raw);
+		setSkipHash(true);
+		assertEntries(db.readDirCache(), 10);
+	}
+
+	@Test
+	public void testSkipHash() throws Exception {
+		setSkipHash(true);
+		writeEntries(10);
+		byte[] raw = IO.readFully(getIndexFile());
+		for (int i = raw.length - 20; i < raw.length; i++)
+			assertEquals(0, raw[i]);
+		assertEntries(db.readDirCache(), 10);
+
+		// An index without checksum is read even if verification is on.
+		setSkipHash(false);
+		assertEntries(db.readDirCache(), 10);
+
+		writeEntries(10);
+		raw = IO.readFully(getIndexFile());
+		raw[12]++; // ctime of the first entry
+		Files.write(getIndexFile().toPath(), raw);
+		try {
+			db.readDirCache();
+			fail("index with bad checksum was read");
+		} catch (CorruptObjectException e) {
+			// expected
+		}
+		setSkipHash(true);
+		assertEntries(db.readDirCache(), 10);
+	}
+
+	private void assertReadWrite(int version) throws Exception {
+		StoredConfig config = db.getConfig();
+		config.setInt(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_VERSION, version);
+		config.save();
+		setThreads("3");
+		writeEntries(10);
+
+		byte[] raw = IO.readFully(getIndexFile());
+		assertEquals(version, NB.decodeInt32(raw, 4));
+		int eoie = raw.length - 20 - 32;
+		assertEquals("EOIE", new String(raw, eoie, 4, ISO_8859_1));
+		int ieot = NB.decodeInt32(raw, eoie + 8);
+		assertEquals("IEOT", new String(raw, ieot, 4, ISO_8859_1));
+		assertEquals(4 + 3 * 8, NB.decodeInt32(raw, ieot + 4));
+		assertEquals(12, NB.decodeInt32(raw, ieot + 12));
+		assertEquals(4, NB.decodeInt32(raw, ieot + 16));
+		assertEquals(4, NB.decodeInt32(raw, ieot + 24));
+		assertEquals(2, NB.decodeInt32(raw, ieot + 32));
+
+		assertEntries(db.readDirCache(), 10);
+		setThreads("false");
+		assertEntries(db.readDirCache(), 10);
+	}
+
+	private void setThreads(String threads) throws IOException {
+		StoredConfig config = db.getConfig();
+		config.setString(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THREADS, threads);
+		config.save();
+	}
+
+	private void setSkipHash(boolean skip) throws IOException {
+		StoredConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SKIP_HASH, skip);
+		config.save();
+	}
+
+	private void writeEntries(int count) throws IOException {
+		DirCache dc = db.lockDirCache();
+		DirCacheBuilder builder = dc.builder();
+		for (int i = 0; i < count; i++) {
+			DirCacheEntry e = new DirCacheEntry("a" + i);
+			e.setFileMode(FileMode.REGULAR_FILE);
+			e.setObjectId(blob("a" + i));
+			builder.add(e);
+		}
+		assertTrue(builder.commit());
+	}
+
+	private static void assertEntries(DirCache dc, int count) {
+		assertEquals(count, dc.getEntryCount());
+		for (int i = 0; i < count; i++) {
+			DirCacheEntry e = dc.getEntry(i);
+			assertEquals("a" + i, e.getPathString());
+			assertEquals(blob("a" + i), e.getObjectId());
+		}
+	}
+
+	private static ObjectId blob(String content) {
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			return fmt.idFor(Constants.OBJ_BLOB, Constants.encode(content));
+		}
+	}
+
+	private File getIndexFile() {
+		return new File(db.getDirectory(), "index");
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.dircache.DirCacheEditor.DeletePath;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.SystemReader;
+import org.junit.Test;
+
+public class DirCacheSplitIndexTest extends RepositoryTestCase {
+	@Test
+	public void testWriteChangesOnly() throws Exception {
+		enableSplitIndex();
+		writeEntries(10);
+		File shared = getSharedIndex();
+		long fullSize = shared.length();
+
+		DirCache dc = db.lockDirCache();
+		DirCacheEditor editor = dc.editor();
+		editor.add(new DeletePath("a0"));
+		editor.add(update("a5", "changed"));
+		editor.add(update("b", "added"));
+		assertTrue(editor.commit());
+
+		assertEquals(shared, getSharedIndex());
+		assertTrue(getIndexFile().length() < fullSize);
+
+		dc = db.readDirCache();
+		assertEquals(10, dc.getEntryCount());
+		for (int i = 1; i < 10; i++) {
+			DirCacheEntry e = dc.getEntry(i - 1);
+			assertEquals("a" + i, e.getPathString());
+			assertEquals(blob(i == 5 ? "changed" : "a" + i), e.getObjectId());
+		}
+		assertEquals("b", dc.getEntry(9).getPathString());
+		assertEquals(blob("added"), dc.getEntry(9).getObjectId());
+	}
+
+	@Test
+	public void testRewriteSharedIndex() throws Exception {
+		enableSplitIndex();
+		writeEntries(10);
+		File shared = getSharedIndex();
+		assertTrue(shared.setLastModified(
+				SystemReader.getInstance().getCurrentTime() - 1000));
+
+		StoredConfig config = db.getConfig();
+		config.setInt(ConfigConstants.CONFIG_SPLIT_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_MAX_PERCENT_CHANGE, 0);
+		config.setString(ConfigConstants.CONFIG_SPLIT_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SHARED_INDEX_EXPIRE, "now");
+		config.save();
+		DirCache dc = db.lockDirCache();
+		DirCacheEditor editor = dc.editor();
+		editor.add(update("a5", "changed"));
+		assertTrue(editor.commit());
+
+		assertFalse(shared.exists());
+		assertNotEquals(shared, getSharedIndex());
+		dc = db.readDirCache();
+		assertEquals(10, dc.getEntryCount());
+		assertEquals(blob("changed"), dc.getEntry("a5").getObjectId());
+	}
+
+	@Test
+	public void testDisableSplitIndex() throws Exception {
+		enableSplitIndex();
+		writeEntries(3);
+		File shared = getSharedIndex();
+
+		StoredConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPLIT_INDEX, false);
+		config.save();
+		DirCache dc = db.lockDirCache();
+		dc.write();
+		assertTrue(dc.commit());
+
+		FileUtils.delete(shared);
+		dc = db.readDirCache();
+		assertEquals(3, dc.getEntryCount());
+		assertEquals(blob("a2"), dc.getEntry("a2").getObjectId());
+	}
+
+	@Test
+	public void testMissingSharedIndex() throws Exception {
+		enableSplitIndex();
+		writeEntries(3);
+		FileUtils.delete(getSharedIndex());
+		try {
+			db.readDirCache();
+			fail("index read without its shared index");
+		} catch (CorruptObjectException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testIndexVersion4() throws Exception {
+		StoredConfig config = db.getConfig();
+		config.setInt(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_VERSION, 4);
+		config.save();
+		writeEntries(10);
+		assertEquals(4, NB.decodeInt32(IO.readFully(getIndexFile()), 4));
+
+		enableSplitIndex();
+		DirCache dc = db.lockDirCache();
+		DirCacheEditor editor = dc.editor();
+		editor.add(update("a5", "changed"));
+		editor.add(update("a55", "added"));
+		assertTrue(editor.commit());
+		editor = db.lockDirCache().editor();
+		editor.add(update("a3", "changed"));
+		assertTrue(editor.commit());
+		assertEquals(4, NB.decodeInt32(IO.readFully(getIndexFile()), 4));
+
+		dc = db.readDirCache();
+		assertEquals(11, dc.getEntryCount());
+		assertEquals(blob("changed"), dc.getEntry("a3").getObjectId());
+		assertEquals(blob("changed"), dc.getEntry("a5").getObjectId());
+		assertEquals(blob("added"), dc.getEntry("a55").getObjectId());
+		assertEquals(blob("a9"), dc.getEntry("a9").getObjectId());
+	}
+
+	private void enableSplitIndex() throws IOException {
+		StoredConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPLIT_INDEX, true);
+		config.save();
+	}
+
+	private void writeEntries(int count) throws IOException {
+		DirCache dc = db.lockDirCache();
+		DirCacheBuilder builder = dc.builder();
+		for (int i = 0; i < count; i++) {
+			DirCacheEntry e = new DirCacheEntry("a" + i);
+			e.setFileMode(FileMode.REGULAR_FILE);
+			e.setObjectId(blob("a" + i));
+			builder.add(e);
+		}
+		assertTrue(builder.commit());
+	}
+
+	private static PathEdit update(String path, String content) {
+		return new PathEdit(path) {
+			@Override
+			public void apply(DirCacheEntry ent) {
+				ent.setFileMode(FileMode.REGULAR_FILE);
+				ent.setObjectId(blob(content));
+			}
+		};
+	}
+
+	private static ObjectId blob(String content) {
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			return fmt.idFor(Constants.OBJ_BLOB, Constants.encode(content));
+		}
+	}
+
+	private File getIndexFile() {
+		return new File(db.getDirectory(), "index");
+	}
+
+	private File getSharedIndex() {
+		File[] shared = db.getDirectory()
+				.listFiles((d, name) -> name.startsWith("sharedindex."));
+		assertEquals(1, shared.length);
+		return shared[0];
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ChangedPathFilterTest {
+
+	@Test
+	public void testMurmur3() {
+		assertEquals(0, murmur3(0, ""));
+		assertEquals(0x2e4ff723, murmur3(0,
+				"The quick brown fox jumps over the lazy dog"));
+		assertEquals(0x514e28b7, murmur3(1, ""));
+		assertEquals(0x81f16f39, murmur3(0xffffffff, ""));
+	}
+
+	@Test
+	public void testEmptyFilter() {
+		ChangedPathFilter f = ChangedPathFilter
+				.fromPaths(Collections.emptyList());
+		assertEquals(1, f.getLength());
+		assertFalse(f.maybeContains(b("a")));
+	}
+
+	@Test
+	public void testFullFilter() {
+		assertTrue(ChangedPathFilter.FULL.maybeContains(b("a")));
+		assertTrue(ChangedPathFilter.FULL
+				.maybeContainsAny(Collections.singleton(b("a/b/c"))));
+	}
+
+	@Test
+	public void testContainsAddedPaths() {
+		List<byte[]> paths = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			paths.add(b("dir" + i + "/file"));
+			paths.add(b("dir" + i));
+		}
+		ChangedPathFilter f = ChangedPathFilter.fromPaths(paths);
+		assertEquals((200 * 10 + 7) / 8, f.getLength());
+		for (byte[] p : paths) {
+			assertTrue(f.maybeContains(p));
+		}
+		assertTrue(f.maybeContainsAny(Arrays.asList(b("dir7/file"))));
+
+		int falsePositives = 0;
+		for (int i = 0; i < 1000; i++) {
+			if (f.maybeContains(b("other" + i))) {
+				falsePositives++;
+			}
+		}
+		assertTrue(falsePositives < 50);
+	}
+
+	@Test
+	public void testChecksLeadingDirectories() {
+		ChangedPathFilter f = ChangedPathFilter
+				.fromPaths(Arrays.asList(b("a"), b("a/b")));
+		assertTrue(f.maybeContainsAny(Arrays.asList(b("a/b"))));
+		assertFalse(f.maybeContainsAny(Arrays.asList(b("c/d"))));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		ChangedPathFilter f = ChangedPathFilter
+				.fromPaths(Arrays.asList(b("x"), b("x/y")));
+		byte[] raw = f.toByteArray();
+		byte[] buf = new byte[raw.length + 3];
+		System.arraycopy(raw, 0, buf, 3, raw.length);
+		ChangedPathFilter copy = new ChangedPathFilter(buf, 3, raw.length,
+				CommitGraphConstants.BLOOM_FILTER_NUM_HASHES);
+		assertTrue(copy.maybeContains(b("x")));
+		assertTrue(copy.maybeContains(b("x/y")));
+	}
+
+	private static int murmur3(int seed, String s) {
+		byte[] data = b(s);
+		return ChangedPathFilter.murmur3(seed, data, data.length);
+	}
+
+	private static byte[] b(String s) {
+		return s.getBytes(UTF_8);
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommitGraphTest {
+	private TestRepository<InMemoryRepository> tr;
+
+	private CommitGraph commitGraph;
+
+	@Before
+	public void setUp() throws Exception {
+		tr = new TestRepository<>(new InMemoryRepository(
+				new DfsRepositoryDescription("test")));
+	}
+
+	@Test
+	public void testEmptyGraph() throws Exception {
+		writeAndReadCommitGraph(Collections.emptySet());
+		assertEquals(0, commitGraph.getCommitCnt());
+		assertEquals(-1, commitGraph.findGraphPosition(ObjectId.zeroId()));
+		assertNull(commitGraph.getObjectId(0));
+		assertNull(commitGraph.getCommitData(0));
+	}
+
+	@Test
+	public void testLinearHistory() throws Exception {
+		RevCommit c1 = tr.commit().add("a", "1").create();
+		RevCommit c2 = tr.commit().parent(c1).add("a", "2").create();
+		RevCommit c3 = tr.commit().parent(c2).add("a", "3").create();
+
+		writeAndReadCommitGraph(Collections.singleton(c3));
+		assertEquals(3, commitGraph.getCommitCnt());
+		verifyCommit(c1, 1);
+		verifyCommit(c2, 2);
+		verifyCommit(c3, 3);
+	}
+
+	@Test
+	public void testMerge() throws Exception {
+		RevCommit root = tr.commit().create();
+		RevCommit a = tr.commit().parent(root).add("a", "a").create();
+		RevCommit b1 = tr.commit().parent(root).add("b", "b1").create();
+		RevCommit b2 = tr.commit().parent(b1).add("b", "b2").create();
+		RevCommit m = tr.commit().parent(a).parent(b2).create();
+
+		writeAndReadCommitGraph(Collections.singleton(m));
+		assertEquals(5, commitGraph.getCommitCnt());
+		verifyCommit(root, 1);
+		verifyCommit(a, 2);
+		verifyCommit(b2, 3);
+		verifyCommit(m, 4);
+	}
+
+	@Test
+	public void testOctopusMerge() throws Exception {
+		RevCommit root = tr.commit().create();
+		RevCommit p1 = tr.commit().parent(root).add("1", "1").create();
+		RevCommit p2 = tr.commit().parent(root).add("2", "2").create();
+		RevCommit p3 = tr.commit().parent(root).add("3", "3").create();
+		RevCommit p4 = tr.commit().parent(root).add("4", "4").create();
+		RevCommit m1 = tr.commit().parent(p1).parent(p2).parent(p3).create();
+		RevCommit m2 = tr.commit().parent(m1).parent(p2).parent(p3)
+				.parent(p4).create();
+
+		writeAndReadCommitGraph(Collections.singleton(m2));
+		assertEquals(7, commitGraph.getCommitCnt());
+		verifyCommit(m1, 3);
+		verifyCommit(m2, 4);
+	}
+
+	@Test
+	public void testMultipleWants() throws Exception {
+		RevCommit a = tr.commit().add("a", "a").create();
+		RevCommit b = tr.commit().add("b", "b").create();
+		RevCommit c = tr.commit().parent(b).create();
+
+		Set<ObjectId> wants = new HashSet<>();
+		wants.add(a);
+		wants.add(c);
+		wants.add(tr.tag("t", c)); // peeled to c
+		wants.add(tr.blob("not a commit"));
+		writeAndReadCommitGraph(wants);
+		assertEquals(3, commitGraph.getCommitCnt());
+		verifyCommit(a, 1);
+		verifyCommit(b, 1);
+		verifyCommit(c, 2);
+	}
+
+	@Test
+	public void testChangedPathFilters() throws Exception {
+		RevCommit root = tr.commit().add("a/b/c", "1").add("d", "1").create();
+		RevCommit c1 = tr.commit().parent(root).add("a/b/c", "2").create();
+		RevCommit c2 = tr.commit().parent(c1).rm("d").create();
+		RevCommit c3 = tr.commit().parent(c2).create();
+
+		writeAndReadCommitGraph(Collections.singleton(c3), true);
+		ChangedPathFilter f = filter(root);
+		assertTrue(f.maybeContains(b("a")));
+		assertTrue(f.maybeContains(b("a/b")));
+		assertTrue(f.maybeContains(b("a/b/c")));
+		assertTrue(f.maybeContains(b("d")));
+
+		f = filter(c1);
+		assertTrue(f.maybeContainsAny(Collections.singleton(b("a/b/c"))));
+		assertFalse(f.maybeContainsAny(Collections.singleton(b("d"))));
+
+		f = filter(c2);
+		assertTrue(f.maybeContainsAny(Collections.singleton(b("d"))));
+		assertFalse(f.maybeContainsAny(Collections.singleton(b("a/b/c"))));
+
+		f = filter(c3);
+		assertFalse(f.maybeContainsAny(Collections.singleton(b("d"))));
+		assertFalse(f.maybeContainsAny(Collections.singleton(b("a/b/c"))));
+	}
+
+	@Test
+	public void testNoChangedPathFiltersByDefault() throws Exception {
+		RevCommit root = tr.commit().add("a", "1").create();
+		writeAndReadCommitGraph(Collections.singleton(root));
+		assertNull(commitGraph
+				.getChangedPathFilter(commitGraph.findGraphPosition(root)));
+	}
+
+	@Test
+	public void testNotACommitGraph() throws Exception {
+		byte[] data = new byte[64];
+		try {
+			CommitGraphLoader.read(new ByteArrayInputStream(data));
+			fail("expected CommitGraphFormatException");
+		} catch (CommitGraphFormatException e) {
+			// expected
+		}
+	}
+
+	private void verifyCommit(RevCommit c, int generation) throws IOException {
+		try (RevWalk rw = new RevWalk(tr.getRepository())) {
+			RevCommit commit = rw.parseCommit(c);
+			int pos = commitGraph.findGraphPosition(commit);
+			assertEquals(commit, commitGraph.getObjectId(pos));
+
+			CommitGraph.CommitData data = commitGraph.getCommitData(pos);
+			assertEquals(commit.getTree(), data.getTree());
+			assertEquals(commit.getCommitTime(), data.getCommitTime());
+			assertEquals(generation, data.getGeneration());
+
+			ObjectId[] expected = new ObjectId[commit.getParentCount()];
+			ObjectId[] actual = new ObjectId[data.getParents().length];
+			for (int i = 0; i < expected.length; i++) {
+				expected[i] = commit.getParent(i).copy();
+			}
+			for (int i = 0; i < actual.length; i++) {
+				actual[i] = commitGraph.getObjectId(data.getParents()[i]);
+			}
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	private ChangedPathFilter filter(RevCommit c) {
+		ChangedPathFilter f = commitGraph
+				.getChangedPathFilter(commitGraph.findGraphPosition(c));
+		assertNotNull(f);
+		return f;
+	}
+
+	private static byte[] b(String s) {
+		return s.getBytes(UTF_8);
+	}
+
+	private void writeAndReadCommitGraph(Set<? extends ObjectId> wants)
+			throws IOException {
+		writeAndReadCommitGraph(wants, false);
+	}
+
+	private void writeAndReadCommitGraph(Set<? extends ObjectId> wants,
+			boolean changedPaths) throws IOException {
+		NullProgressMonitor m = NullProgressMonitor.INSTANCE;
+		try (RevWalk walk = new RevWalk(tr.getRepository())) {
+			GraphCommits commits = GraphCommits.fromWalk(m, wants, walk);
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			new CommitGraphWriter(commits, changedPaths).write(m, os);
+			commitGraph = CommitGraphLoader
+					.read(new ByteArrayInputStream(os.toByteArray()));
+		}
+	}
+}
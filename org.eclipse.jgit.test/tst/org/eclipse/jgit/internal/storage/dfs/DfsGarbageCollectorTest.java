@@ -4,6 +4,7 @@
 import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.GC_REST;
 import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.INSERT;
 import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.UNREACHABLE_GARBAGE;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.COMMIT_GRAPH;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.REFTABLE;
 import static org.junit.Assert.assertEquals;
@@ -18,6 +19,7 @@
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource;
 import org.eclipse.jgit.internal.storage.dfs.DfsRefDatabase;
 import org.eclipse.jgit.internal.storage.reftable.RefCursor;
@@ -714,6 +716,44 @@ public void producesNewReftable() throws Exception {
 		}
 	}
 
+	@Test
+	public void producesCommitGraph() throws Exception {
+		RevCommit commit0 = commit().message("0").create();
+		RevCommit commit1 = commit().message("1").parent(commit0).create();
+		git.update("master", commit1);
+
+		DfsGarbageCollector gc = new DfsGarbageCollector(repo);
+		gc.setWriteCommitGraph(true);
+		run(gc);
+
+		assertEquals(1, odb.getPacks().length);
+		DfsPackFile pack = odb.getPacks()[0];
+		DfsPackDescription desc = pack.getPackDescription();
+		assertEquals(GC, desc.getPackSource());
+		assertTrue(desc.hasFileExt(COMMIT_GRAPH));
+
+		try (DfsReader ctx = odb.newReader()) {
+			CommitGraph cg = ctx.getCommitGraph().get();
+			assertEquals(2, cg.getCommitCnt());
+			assertTrue(cg.findGraphPosition(commit0) >= 0);
+			assertTrue(cg.findGraphPosition(commit1) >= 0);
+		}
+	}
+
+	@Test
+	public void noCommitGraphByDefault() throws Exception {
+		RevCommit commit0 = commit().message("0").create();
+		git.update("master", commit0);
+
+		gcNoTtl();
+		assertEquals(1, odb.getPacks().length);
+		DfsPackFile pack = odb.getPacks()[0];
+		assertFalse(pack.getPackDescription().hasFileExt(COMMIT_GRAPH));
+		try (DfsReader ctx = odb.newReader()) {
+			assertFalse(ctx.getCommitGraph().isPresent());
+		}
+	}
+
 	@Test
 	public void leavesNonGcReftablesIfNotConfigured() throws Exception {
 		String master = "refs/heads/master";
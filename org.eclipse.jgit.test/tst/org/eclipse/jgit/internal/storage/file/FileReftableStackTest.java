@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.eclipse.jgit.lib.Ref.Storage.PACKED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.jgit.internal.storage.reftable.RefCursor;
+import org.eclipse.jgit.internal.storage.reftable.ReftableWriter;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileReftableStackTest {
+	private File reftableDir;
+
+	@Before
+	public void setup() throws Exception {
+		reftableDir = FileUtils.createTempDir("rtstack", "", null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (reftableDir != null) {
+			FileUtils.delete(reftableDir, FileUtils.RECURSIVE);
+		}
+	}
+
+	private FileReftableStack openStack() throws Exception {
+		return new FileReftableStack(new File(reftableDir, "tables.list"),
+				reftableDir, null, () -> new Config());
+	}
+
+	private static void writeRef(FileReftableStack stack, String name, int n)
+			throws Exception {
+		assertTrue(stack.addReftable((ReftableWriter w) -> {
+			long idx = stack.getMergedReftable().maxUpdateIndex() + 1;
+			w.setMinUpdateIndex(idx).setMaxUpdateIndex(idx).begin()
+					.writeRef(new ObjectIdRef.PeeledNonTag(PACKED, name,
+							id(n)));
+		}));
+	}
+
+	private static ObjectId id(int i) {
+		byte[] bytes = new byte[20];
+		bytes[0] = (byte) (i & 0xff);
+		bytes[1] = (byte) ((i >> 8) & 0xff);
+		return ObjectId.fromRaw(bytes);
+	}
+
+	@Test
+	public void testUpdatesAndCompaction() throws Exception {
+		int n = 200;
+		try (FileReftableStack stack = openStack()) {
+			for (int i = 0; i < n; i++) {
+				writeRef(stack, String.format("refs/heads/branch%d",
+						Integer.valueOf(i % 10)), i);
+			}
+			assertTrue(stack.getStats().attempted > 0);
+			assertEquals(0, stack.getStats().failed);
+
+			String[] tables = reftableDir.list((d, name) -> name.endsWith(".ref")
+					|| name.endsWith(".log"));
+			// Compaction keeps the stack logarithmic in the number of updates.
+			assertTrue(tables.length < 20);
+
+			for (int i = 0; i < 10; i++) {
+				try (RefCursor rc = stack.getMergedReftable()
+						.seekRef("refs/heads/branch" + i)) {
+					assertTrue(rc.next());
+					Ref r = rc.getRef();
+					assertEquals(id(n - 10 + i), r.getObjectId());
+				}
+			}
+		}
+
+		try (FileReftableStack stack = openStack()) {
+			assertEquals(n, stack.getMergedReftable().maxUpdateIndex());
+		}
+	}
+
+	@Test
+	public void testCompactFully() throws Exception {
+		try (FileReftableStack stack = openStack()) {
+			for (int i = 0; i < 5; i++) {
+				writeRef(stack, "refs/heads/branch" + i, i);
+			}
+			stack.compactFully();
+			String[] tables = reftableDir.list((d, name) -> name.endsWith(".ref")
+					|| name.endsWith(".log"));
+			assertEquals(1, tables.length);
+			try (RefCursor rc = stack.getMergedReftable().allRefs()) {
+				for (int i = 0; i < 5; i++) {
+					assertTrue(rc.next());
+				}
+				assertFalse(rc.next());
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentStackDetected() throws Exception {
+		try (FileReftableStack stack1 = openStack();
+				FileReftableStack stack2 = openStack()) {
+			writeRef(stack1, "refs/heads/a", 1);
+			assertTrue(stack2.isModified());
+			assertFalse(stack2.addReftable(w -> w.setMinUpdateIndex(1)
+					.setMaxUpdateIndex(1).begin()));
+			stack2.reload();
+			writeRef(stack2, "refs/heads/b", 2);
+			assertEquals(2, stack2.getMergedReftable().maxUpdateIndex());
+		}
+	}
+
+	@Test
+	public void testAutoCompactCandidate() {
+		assertNull(FileReftableStack.autoCompactCandidate(new long[0]));
+		assertNull(FileReftableStack.autoCompactCandidate(new long[] { 100 }));
+		// Sizes of different magnitude do not need compaction.
+		assertNull(FileReftableStack
+				.autoCompactCandidate(new long[] { 1000, 100, 10 }));
+		// Two small tables are merged.
+		assertArrayEquals(new int[] { 1, 2 }, FileReftableStack
+				.autoCompactCandidate(new long[] { 1000, 10, 10 }));
+		// The result is merged with older tables of similar size.
+		assertArrayEquals(new int[] { 0, 2 }, FileReftableStack
+				.autoCompactCandidate(new long[] { 20, 10, 10 }));
+		// The smallest run is chosen.
+		assertArrayEquals(new int[] { 3, 4 }, FileReftableStack
+				.autoCompactCandidate(new long[] { 1000, 1000, 100, 10, 10 }));
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.eclipse.jgit.lib.RefUpdate.Result.FAST_FORWARD;
+import static org.eclipse.jgit.lib.RefUpdate.Result.FORCED;
+import static org.eclipse.jgit.lib.RefUpdate.Result.LOCK_FAILURE;
+import static org.eclipse.jgit.lib.RefUpdate.Result.NEW;
+import static org.eclipse.jgit.lib.RefUpdate.Result.RENAMED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.RefRename;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.ReflogEntry;
+import org.eclipse.jgit.lib.ReflogReader;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.test.resources.SampleDataRepositoryTestCase;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.junit.Test;
+
+public class FileReftableTest extends SampleDataRepositoryTestCase {
+	private static final String A = "refs/heads/new-a";
+
+	private static final String B = "refs/heads/new-b";
+
+	private Map<String, Ref> before;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		before = new HashMap<>();
+		for (Ref r : db.getRefDatabase().getRefsByPrefix(RefDatabase.ALL)) {
+			before.put(r.getName(), r);
+		}
+		db.convertToReftable(true, false);
+	}
+
+	@Test
+	public void testConvertPreservesRefs() throws Exception {
+		assertTrue(db.getRefDatabase() instanceof FileReftableDatabase);
+		assertTrue(FileReftableDatabase.isReftable(db.getDirectory()));
+		assertFalse(new File(db.getDirectory(), Constants.PACKED_REFS)
+				.exists());
+
+		List<Ref> after = db.getRefDatabase()
+				.getRefsByPrefix(RefDatabase.ALL);
+		assertEquals(before.size(), after.size());
+		for (Ref r : after) {
+			Ref old = before.get(r.getName());
+			assertNotNull(r.getName(), old);
+			assertEquals(r.getName(), old.getObjectId(), r.getObjectId());
+		}
+
+		Ref head = db.exactRef(Constants.HEAD);
+		assertTrue(head.isSymbolic());
+		assertEquals("refs/heads/master", head.getTarget().getName());
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		ObjectId master = db.resolve("refs/heads/master");
+		try (FileRepository repo = new FileRepository(db.getDirectory())) {
+			assertTrue(repo.getRefDatabase() instanceof FileReftableDatabase);
+			assertEquals(master, repo.resolve(Constants.HEAD));
+		}
+	}
+
+	@Test
+	public void testUpdateDeleteAndReflog() throws Exception {
+		ObjectId first = db.resolve("refs/heads/master~1");
+		ObjectId second = db.resolve("refs/heads/master");
+
+		assertEquals(NEW, update(A, first, "create"));
+		assertEquals(FAST_FORWARD, update(A, second, "advance"));
+		assertEquals(second, db.exactRef(A).getObjectId());
+
+		ReflogReader log = db.getReflogReader(A);
+		List<ReflogEntry> entries = log.getReverseEntries();
+		assertEquals(2, entries.size());
+		assertEquals("advance: fast-forward", entries.get(0).getComment());
+		assertEquals(first, entries.get(0).getOldId());
+		assertEquals(second, entries.get(0).getNewId());
+		assertEquals("create: created", entries.get(1).getComment());
+
+		RefUpdate ru = db.updateRef(A);
+		ru.setForceUpdate(true);
+		assertEquals(FORCED, ru.delete());
+		assertNull(db.exactRef(A));
+	}
+
+	@Test
+	public void testUpdateDetectsConcurrentChange() throws Exception {
+		ObjectId first = db.resolve("refs/heads/master~1");
+		ObjectId second = db.resolve("refs/heads/master");
+		assertEquals(NEW, update(A, first, "create"));
+
+		try (FileRepository other = new FileRepository(db.getDirectory())) {
+			RefUpdate ru = other.updateRef(A);
+			ru.setNewObjectId(second);
+			assertEquals(FAST_FORWARD, ru.update());
+		}
+
+		RefUpdate ru = db.updateRef(A);
+		ru.setExpectedOldObjectId(first);
+		ru.setNewObjectId(first);
+		ru.setForceUpdate(true);
+		assertEquals(LOCK_FAILURE, ru.update());
+		assertEquals(second, db.exactRef(A).getObjectId());
+	}
+
+	@Test
+	public void testLink() throws Exception {
+		ObjectId id = db.resolve("refs/heads/master");
+		assertEquals(NEW, update(A, id, "create"));
+
+		RefUpdate ru = db.updateRef(Constants.HEAD);
+		assertEquals(FORCED, ru.link(A));
+		Ref head = db.exactRef(Constants.HEAD);
+		assertTrue(head.isSymbolic());
+		assertEquals(A, head.getTarget().getName());
+		assertEquals(id, head.getObjectId());
+	}
+
+	@Test
+	public void testRenameCurrentBranch() throws Exception {
+		ObjectId id = db.resolve("refs/heads/master");
+		RefRename rename = db.renameRef("refs/heads/master", B);
+		assertEquals(RENAMED, rename.rename());
+
+		assertNull(db.exactRef("refs/heads/master"));
+		assertEquals(id, db.exactRef(B).getObjectId());
+		Ref head = db.exactRef(Constants.HEAD);
+		assertEquals(B, head.getTarget().getName());
+		assertEquals(id, head.getObjectId());
+	}
+
+	@Test
+	public void testAtomicBatchUpdate() throws Exception {
+		ObjectId id = db.resolve("refs/heads/master");
+		BatchRefUpdate bru = db.getRefDatabase().newBatchUpdate();
+		bru.setAtomic(true);
+		bru.addCommand(new ReceiveCommand(ObjectId.zeroId(), id, A),
+				new ReceiveCommand(ObjectId.zeroId(), id,
+						"refs/heads/master/x"));
+		try (RevWalk rw = new RevWalk(db)) {
+			bru.execute(rw, NullProgressMonitor.INSTANCE);
+		}
+		assertNull(db.exactRef(A));
+
+		bru = db.getRefDatabase().newBatchUpdate();
+		bru.setAtomic(true);
+		bru.addCommand(new ReceiveCommand(ObjectId.zeroId(), id, A),
+				new ReceiveCommand(ObjectId.zeroId(), id, B));
+		try (RevWalk rw = new RevWalk(db)) {
+			bru.execute(rw, NullProgressMonitor.INSTANCE);
+		}
+		for (ReceiveCommand cmd : bru.getCommands()) {
+			assertEquals(ReceiveCommand.Result.OK, cmd.getResult());
+		}
+		assertEquals(id, db.exactRef(A).getObjectId());
+		assertEquals(id, db.exactRef(B).getObjectId());
+	}
+
+	@Test
+	public void testAutoCompaction() throws Exception {
+		ObjectId first = db.resolve("refs/heads/master~1");
+		ObjectId second = db.resolve("refs/heads/master");
+		for (int i = 0; i < 100; i++) {
+			RefUpdate ru = db.updateRef(A);
+			ru.setNewObjectId(i % 2 == 0 ? first : second);
+			ru.setForceUpdate(true);
+			ru.update();
+		}
+		assertTrue(tableCount() < 10);
+		assertEquals(second, db.exactRef(A).getObjectId());
+		assertEquals(100, db.getReflogReader(A).getReverseEntries().size());
+	}
+
+	@Test
+	public void testPackRefsCompactsFully() throws Exception {
+		ObjectId id = db.resolve("refs/heads/master");
+		update(A, id, "create");
+		update(B, id, "create");
+		assertTrue(tableCount() > 1);
+
+		new GC(db).packRefs();
+		assertEquals(1, tableCount());
+		assertEquals(id, db.exactRef(A).getObjectId());
+		assertEquals(id, db.exactRef(B).getObjectId());
+		assertEquals(before.size(),
+				db.getRefDatabase().getRefsByPrefix(RefDatabase.ALL).size()
+						- 2);
+	}
+
+	private RefUpdate.Result update(String name, ObjectId id, String msg)
+			throws Exception {
+		RefUpdate ru = db.updateRef(name);
+		ru.setNewObjectId(id);
+		ru.setRefLogIdent(new PersonIdent("A U Thor", "a@example.com"));
+		ru.setRefLogMessage(msg, true);
+		return ru.update();
+	}
+
+	private int tableCount() throws Exception {
+		File list = new File(new File(db.getDirectory(), Constants.REFTABLE),
+				Constants.TABLES_LIST);
+		return Files.readAllLines(list.toPath()).size();
+	}
+}
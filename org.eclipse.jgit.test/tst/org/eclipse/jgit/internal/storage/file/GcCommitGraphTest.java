@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Optional;
+
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Test;
+
+public class GcCommitGraphTest extends GcTestCase {
+
+	@Test
+	public void testWriteWhenGcDisabledByDefault() throws Exception {
+		RevCommit tip = commitChain(3);
+		tr.update("master", tip);
+
+		gc.gc();
+		assertFalse(commitGraphFile().exists());
+	}
+
+	@Test
+	public void testWriteWhenGc() throws Exception {
+		RevCommit tip = commitChain(10);
+		tr.update("master", tip);
+		RevCommit side = tr.commit().parent(tip).create();
+		tr.update("refs/changes/01/1/1", side);
+		enableCommitGraph(true);
+
+		gc.gc();
+		assertTrue(commitGraphFile().exists());
+
+		Optional<CommitGraph> graph = repo.newObjectReader().getCommitGraph();
+		assertTrue(graph.isPresent());
+		assertEquals(11, graph.get().getCommitCnt());
+		assertTrue(graph.get().findGraphPosition(side) >= 0);
+	}
+
+	@Test
+	public void testReadDisabled() throws Exception {
+		RevCommit tip = commitChain(3);
+		tr.update("master", tip);
+		enableCommitGraph(true);
+		gc.gc();
+		assertTrue(commitGraphFile().exists());
+
+		StoredConfig config = repo.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_COMMIT_GRAPH, false);
+		config.save();
+		assertFalse(repo.newObjectReader().getCommitGraph().isPresent());
+	}
+
+	@Test
+	public void testRevWalkParsesFromCommitGraph() throws Exception {
+		RevCommit root = tr.commit().add("a", "root").create();
+		RevCommit a = tr.commit().parent(root).add("a", "a").create();
+		RevCommit b = tr.commit().parent(root).add("b", "b").create();
+		RevCommit merge = tr.commit().parent(a).parent(b).create();
+		RevCommit notInGraph = tr.commit().parent(merge).create();
+		tr.update("master", merge);
+		enableCommitGraph(true);
+		gc.gc();
+		tr.update("master", notInGraph);
+
+		try (RevWalk expectedWalk = new RevWalk(repo);
+				RevWalk rw = new RevWalk(repo)) {
+			rw.setRetainBody(false);
+			for (RevCommit c : new RevCommit[] { root, a, b, merge,
+					notInGraph }) {
+				RevCommit expected = expectedWalk.parseCommit(c);
+				RevCommit actual = rw.parseCommit(c);
+				assertNotNull(actual.getTree());
+				assertEquals(expected.getTree(), actual.getTree());
+				assertEquals(expected.getCommitTime(), actual.getCommitTime());
+				assertEquals(expected.getParentCount(),
+						actual.getParentCount());
+				for (int i = 0; i < expected.getParentCount(); i++) {
+					assertEquals(expected.getParent(i), actual.getParent(i));
+				}
+			}
+
+			rw.reset();
+			rw.markStart(rw.parseCommit(notInGraph));
+			int cnt = 0;
+			while (rw.next() != null) {
+				cnt++;
+			}
+			assertEquals(5, cnt);
+		}
+	}
+
+	private File commitGraphFile() {
+		return new File(repo.getObjectsDirectory(),
+				Constants.INFO_COMMIT_GRAPH);
+	}
+
+	private void enableCommitGraph(boolean write) throws Exception {
+		StoredConfig config = repo.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_COMMIT_GRAPH, true);
+		config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, write);
+		config.save();
+	}
+}
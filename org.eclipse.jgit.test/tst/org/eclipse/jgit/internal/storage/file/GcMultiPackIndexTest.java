@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.storage.file.PackIndex.MutableEntry;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndex;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndexLoader;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+public class GcMultiPackIndexTest extends GcTestCase {
+	private int packCount;
+
+	@Test
+	public void testWriteMultiPackIndex() throws Exception {
+		Set<ObjectId> objects = createPacks(3);
+		assertEquals(3, repo.getObjectDatabase().getPacks().size());
+
+		gc.writeMultiPackIndex();
+		assertTrue(multiPackIndexFile().exists());
+
+		MultiPackIndex midx = MultiPackIndexLoader.open(multiPackIndexFile());
+		assertEquals(3, midx.getPackNames().length);
+		assertEquals(objects.size(), midx.getObjectCount());
+		for (ObjectId id : objects) {
+			assertTrue(midx.findPosition(id) >= 0);
+		}
+	}
+
+	@Test
+	public void testLookupUsesMultiPackIndex() throws Exception {
+		Set<ObjectId> objects = createPacks(3);
+		gc.writeMultiPackIndex();
+		RevBlob loose = tr.blob("loose");
+
+		ObjectDirectory odb = reopenObjectDatabase();
+		assertObjectsReadable(odb, objects);
+		assertTrue(odb.has(loose));
+		ObjectDirectory.PackList list = odb.packList.get();
+		assertNotNull(list.indexedPacks);
+		assertEquals(0, list.unindexedPacks.length);
+	}
+
+	@Test
+	public void testNewPackNotInMultiPackIndex() throws Exception {
+		Set<ObjectId> objects = createPacks(2);
+		gc.writeMultiPackIndex();
+		objects.addAll(createPacks(1));
+
+		ObjectDirectory odb = reopenObjectDatabase();
+		assertObjectsReadable(odb, objects);
+		ObjectDirectory.PackList list = odb.packList.get();
+		assertNotNull(list.indexedPacks);
+		assertEquals(1, list.unindexedPacks.length);
+	}
+
+	@Test
+	public void testIgnoreStaleMultiPackIndex() throws Exception {
+		createPacks(1);
+		Set<ObjectId> objects = createPacks(1);
+		gc.writeMultiPackIndex();
+
+		// Drop the oldest pack, which is still listed in the index.
+		PackFile oldest = null;
+		for (PackFile p : repo.getObjectDatabase().getPacks()) {
+			oldest = p;
+		}
+		assertNotNull(oldest);
+		repo.getObjectDatabase().close();
+		FileUtils.delete(oldest.getPackFile());
+		FileUtils.delete(new File(oldest.getPackFile().getParentFile(),
+				oldest.getIndexFileName()));
+
+		ObjectDirectory odb = reopenObjectDatabase();
+		assertObjectsReadable(odb, objects);
+		assertNull(odb.packList.get().indexedPacks);
+	}
+
+	@Test
+	public void testSkipInvalidIndexedPack() throws Exception {
+		Set<ObjectId> objects = createPacks(2);
+		gc.writeMultiPackIndex();
+
+		ObjectDirectory odb = reopenObjectDatabase();
+		assertObjectsReadable(odb, objects);
+		ObjectDirectory.PackList list = odb.packList.get();
+		assertNotNull(list.indexedPacks);
+		PackFile invalid = list.indexedPacks[0];
+		ObjectId id = null;
+		for (ObjectId o : objects) {
+			if (invalid.hasObject(o)) {
+				id = o;
+				break;
+			}
+		}
+		assertNotNull(id);
+		assertTrue(odb.hasPackedObject(id));
+
+		invalid.setInvalid();
+		assertFalse(odb.hasPackedObject(id));
+	}
+
+	@Test
+	public void testReadDisabled() throws Exception {
+		Set<ObjectId> objects = createPacks(2);
+		gc.writeMultiPackIndex();
+		StoredConfig config = repo.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_MULTI_PACK_INDEX, false);
+		config.save();
+
+		ObjectDirectory odb = reopenObjectDatabase();
+		assertObjectsReadable(odb, objects);
+		assertNull(odb.packList.get().indexedPacks);
+	}
+
+	@Test
+	public void testWriteWhenGc() throws Exception {
+		createPacks(2);
+		gc.gc();
+		assertFalse(multiPackIndexFile().exists());
+
+		StoredConfig config = repo.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WRITE_MULTI_PACK_INDEX, true);
+		config.save();
+		gc.gc();
+		assertTrue(multiPackIndexFile().exists());
+		MultiPackIndex midx = MultiPackIndexLoader.open(multiPackIndexFile());
+		assertEquals(repo.getObjectDatabase().getPacks().size(),
+				midx.getPackNames().length);
+
+		config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WRITE_MULTI_PACK_INDEX, false);
+		config.save();
+		gc.gc();
+		assertFalse(multiPackIndexFile().exists());
+	}
+
+	private Set<ObjectId> createPacks(int count) throws Exception {
+		Set<ObjectId> objects = new HashSet<>();
+		for (int i = 0; i < count; i++) {
+			objects.addAll(createPack());
+			// Ensure packs have distinct modification times.
+			fsTick();
+		}
+		return objects;
+	}
+
+	private Set<ObjectId> createPack() throws Exception {
+		ObjectDirectory odb = repo.getObjectDatabase();
+		RevBlob blob = tr.blob("content " + packCount);
+		RevCommit c = tr.commit().add("file" + packCount, blob).create();
+		tr.update("refs/heads/b" + packCount, c);
+		packCount++;
+
+		File pack;
+		try (PackWriter pw = new PackWriter(repo)) {
+			pw.preparePack(NullProgressMonitor.INSTANCE,
+					Collections.singleton(c), PackWriter.NONE);
+			String name = "pack-" + pw.computeName().name();
+			pack = new File(odb.getPackDirectory(), name + ".pack");
+			try (OutputStream out = new FileOutputStream(pack)) {
+				pw.writePack(NullProgressMonitor.INSTANCE,
+						NullProgressMonitor.INSTANCE, out);
+			}
+			try (OutputStream out = new FileOutputStream(
+					new File(odb.getPackDirectory(), name + ".idx"))) {
+				pw.writeIndex(out);
+			}
+		}
+
+		Set<ObjectId> objects = new HashSet<>();
+		for (MutableEntry e : odb.openPack(pack)) {
+			ObjectId id = e.toObjectId();
+			objects.add(id);
+			FileUtils.delete(odb.fileFor(id));
+		}
+		return objects;
+	}
+
+	private ObjectDirectory reopenObjectDatabase() {
+		ObjectDirectory odb = repo.getObjectDatabase();
+		odb.close();
+		return odb;
+	}
+
+	private static void assertObjectsReadable(ObjectDirectory odb,
+			Set<ObjectId> objects) throws Exception {
+		try (ObjectReader reader = odb.newReader()) {
+			for (ObjectId id : objects) {
+				assertTrue(odb.has(id));
+				assertNotNull(reader.open(id));
+				assertTrue(reader.getObjectSize(id,
+						ObjectReader.OBJ_ANY) > 0);
+			}
+		}
+	}
+
+	private File multiPackIndexFile() {
+		return new File(repo.getObjectsDirectory(),
+				Constants.PACK_MULTI_PACK_INDEX);
+	}
+}
@@ -487,6 +487,37 @@ public void testDeltaStatistics() throws Exception {
 		}
 	}
 
+	@Test
+	public void testParallelSearchForReuse() throws Exception {
+		FileRepository repo = createBareRepository();
+		RevCommit c;
+		try (TestRepository<FileRepository> testRepo = new TestRepository<>(
+				repo)) {
+			TestRepository<FileRepository>.CommitBuilder cb = testRepo
+					.commit();
+			for (int i = 0; i < 2 * 4096; i++) {
+				cb.add("f" + i, testRepo.blob("content " + i));
+			}
+			c = cb.create();
+			testRepo.update("refs/heads/master", c);
+			testRepo.packAndPrune();
+		}
+
+		config.setThreads(2);
+		config.setDeltaCompress(false);
+		NullProgressMonitor m = NullProgressMonitor.INSTANCE;
+		writer = new PackWriter(config, repo.newObjectReader());
+		writer.preparePack(m, wants(c), NONE);
+		writer.writePack(m, m, os);
+		PackStatistics stats = writer.getStatistics();
+		writer.close();
+
+		assertEquals(2 * 4096 + 2, stats.getTotalObjects());
+		assertEquals(stats.getTotalObjects(), stats.getReusedObjects());
+		verifyOpenPack(false);
+		assertEquals(stats.getTotalObjects(), pack.getObjectCount());
+	}
+
 	// Generate consistent junk data for building files that delta well
 	private String genDeltableData(int length) {
 		assertTrue("Generated data must have a length > 0", length > 0);
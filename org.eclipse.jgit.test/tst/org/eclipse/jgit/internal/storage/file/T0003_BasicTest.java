@@ -60,6 +60,7 @@
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.time.Instant;
+import java.util.Arrays;
 
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
@@ -69,6 +70,7 @@
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.MutableObjectId;
 import org.eclipse.jgit.lib.ObjectDatabase;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
@@ -556,6 +558,23 @@ public void test025_computeSha1NoStore() {
 		}
 	}
 
+	@Test
+	public void test025_computeSha1NoStoreBatch() {
+		byte[] data = "test025 some data, more than 16 bytes to get good coverage"
+				.getBytes(ISO_8859_1);
+		try (ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+			MutableObjectId id = new MutableObjectId();
+			for (int i = 0; i < 3; i++) {
+				formatter.idFor(Constants.OBJ_BLOB, data, 0, data.length, id);
+				assertEquals("4f561df5ecf0dfbd53a0dc0f37262fef075d9dde",
+						id.name());
+			}
+			assertEquals(formatter.idFor(Constants.OBJ_BLOB, data, 0, 7),
+					formatter.idFor(Constants.OBJ_BLOB,
+							Arrays.copyOf(data, 7)));
+		}
+	}
+
 	@Test
 	public void test026_CreateCommitMultipleparents() throws IOException {
 		final ObjectId treeId;
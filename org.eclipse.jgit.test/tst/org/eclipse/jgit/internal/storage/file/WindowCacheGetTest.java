@@ -45,6 +45,7 @@
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -61,6 +62,7 @@
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.storage.file.WindowCacheStats;
 import org.eclipse.jgit.test.resources.SampleDataRepositoryTestCase;
 import org.eclipse.jgit.util.MutableInteger;
 import org.junit.Before;
@@ -125,6 +127,118 @@ public void testCache_TooSmallLimit() throws IOException {
 		checkLimits(cfg);
 	}
 
+	@Test
+	public void testCache_StrongRefs() throws IOException {
+		WindowCacheConfig cfg = new WindowCacheConfig();
+		cfg.setPackedGitUseStrongRefs(true);
+		cfg.install();
+		doCacheTests();
+		checkLimits(cfg);
+
+		final WindowCache cache = WindowCache.getInstance();
+		assertEquals(6, cache.getOpenFiles());
+		assertEquals(17346, cache.getOpenBytes());
+		assertEquals(0, cache.getEvictionCount());
+		assertEquals(0, cache.getAdmissionRejectCount());
+
+		long perPack = 0;
+		for (Long bytes : WindowCacheStats.getOpenByteCountPerPack()
+				.values()) {
+			perPack += bytes.longValue();
+		}
+		assertEquals(cache.getOpenBytes(), perPack);
+	}
+
+	@Test
+	public void testCache_StrongRefsTooSmallLimit() throws IOException {
+		final WindowCacheConfig cfg = new WindowCacheConfig();
+		cfg.setPackedGitUseStrongRefs(true);
+		cfg.setPackedGitWindowSize(4096);
+		cfg.setPackedGitLimit(2 * 4096);
+		cfg.install();
+		doCacheTests();
+		doCacheTests();
+		checkLimits(cfg);
+
+		final WindowCache cache = WindowCache.getInstance();
+		assertTrue(0 < cache.getAdmissionRejectCount());
+		assertEquals(cache.getMissCount(), cache.getLoadSuccessCount());
+
+		// Packs of windows not admitted are kept open rather than closed,
+		// so more files are open than the cached windows account for.
+		int cachedPacks = 0;
+		for (Long bytes : WindowCacheStats.getOpenByteCountPerPack()
+				.values()) {
+			if (bytes.longValue() > 0)
+				cachedPacks++;
+		}
+		assertTrue(cachedPacks < cache.getOpenFiles());
+	}
+
+	@Test
+	public void testStats() throws IOException {
+		WindowCacheConfig cfg = new WindowCacheConfig();
+		cfg.install();
+		doCacheTests();
+
+		final WindowCache cache = WindowCache.getInstance();
+		long misses = cache.getMissCount();
+		assertTrue(0 < misses);
+		assertEquals(misses, cache.getLoadSuccessCount());
+		assertEquals(0, cache.getLoadFailureCount());
+		assertTrue(0 < cache.getTotalLoadTime());
+
+		// All windows are cached now, reading again only hits.
+		doCacheTests();
+		assertEquals(misses, cache.getMissCount());
+		assertTrue(0 < WindowCacheStats.getHitCount());
+		assertTrue(WindowCacheStats.getHitRatio() > 0.5);
+
+		WindowCacheStats.resetCounters();
+		assertEquals(0, WindowCacheStats.getHitCount());
+		assertEquals(0, WindowCacheStats.getMissCount());
+	}
+
+	@Test
+	public void testCache_MapWholePack() throws IOException {
+		WindowCacheConfig cfg = new WindowCacheConfig();
+		cfg.setPackedGitMMAPWholePack(true);
+		cfg.install();
+		doCacheTests();
+
+		// Mapped packs bypass the window cache entirely.
+		final WindowCache cache = WindowCache.getInstance();
+		assertEquals(0, cache.getOpenFiles());
+		assertEquals(0, cache.getOpenBytes());
+	}
+
+	@Test
+	public void testCache_MapWholePackUnmappedAfterLastUser()
+			throws IOException {
+		WindowCacheConfig cfg = new WindowCacheConfig();
+		cfg.setPackedGitMMAPWholePack(true);
+		cfg.install();
+
+		ObjectDirectory odb = db.getObjectDatabase();
+		PackFile pack = odb.getPacks().iterator().next();
+		PackMapping mapping;
+		try (WindowCursor curs = new WindowCursor(odb)) {
+			curs.pin(pack, 0);
+			mapping = pack.acquireMapping();
+			assertNotNull(mapping);
+			mapping.release();
+
+			// The cursor still holds the mapping after the pack closes.
+			pack.close();
+			assertTrue(mapping.acquire());
+			mapping.release();
+		}
+		assertFalse(mapping.acquire());
+
+		// A closed pack maps itself again on next use.
+		doCacheTests();
+	}
+
 	private static void checkLimits(WindowCacheConfig cfg) {
 		final WindowCache cache = WindowCache.getInstance();
 		assertTrue(cache.getOpenFiles() <= cfg.getPackedGitOpenFiles());
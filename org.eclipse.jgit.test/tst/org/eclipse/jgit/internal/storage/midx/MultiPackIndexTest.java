@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.internal.storage.file.PackIndexWriter;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.PackedObjectInfo;
+import org.junit.Test;
+
+public class MultiPackIndexTest {
+	private static final String PACK_A = "pack-aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa.idx";
+
+	private static final String PACK_B = "pack-bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb.idx";
+
+	private static final String PACK_C = "pack-cccccccccccccccccccccccccccccccccccccccc.idx";
+
+	@Test
+	public void testSinglePack() throws Exception {
+		ObjectId a = id(1);
+		ObjectId b = id(2);
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		packs.put(PACK_A, packIndex(entry(a, 12), entry(b, 345)));
+
+		MultiPackIndex midx = writeAndRead(packs);
+		assertArrayEquals(new String[] { PACK_A }, midx.getPackNames());
+		assertEquals(2, midx.getObjectCount());
+		verify(midx, a, PACK_A, 12);
+		verify(midx, b, PACK_A, 345);
+		assertEquals(-1, midx.findPosition(id(3)));
+		assertNull(midx.getObjectId(2));
+	}
+
+	@Test
+	public void testDuplicatesUsePreferredPack() throws Exception {
+		ObjectId a = id(1);
+		ObjectId b = id(2);
+		ObjectId c = id(3);
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		// Preference order differs from the sorted order of the names.
+		packs.put(PACK_C, packIndex(entry(b, 100), entry(c, 200)));
+		packs.put(PACK_A, packIndex(entry(a, 10), entry(b, 20)));
+		packs.put(PACK_B, packIndex(entry(b, 30), entry(c, 40)));
+
+		MultiPackIndex midx = writeAndRead(packs);
+		assertArrayEquals(new String[] { PACK_A, PACK_B, PACK_C },
+				midx.getPackNames());
+		assertEquals(3, midx.getObjectCount());
+		verify(midx, a, PACK_A, 10);
+		verify(midx, b, PACK_C, 100);
+		verify(midx, c, PACK_C, 200);
+	}
+
+	@Test
+	public void testLargeOffsets() throws Exception {
+		ObjectId a = id(1);
+		ObjectId b = id(2);
+		ObjectId c = id(3);
+		long large = 0x80000000L;
+		long larger = 0x123456789aL;
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		packs.put(PACK_A, packIndex(entry(a, large), entry(c, 12)));
+		packs.put(PACK_B, packIndex(entry(b, larger)));
+
+		MultiPackIndex midx = writeAndRead(packs);
+		verify(midx, a, PACK_A, large);
+		verify(midx, b, PACK_B, larger);
+		verify(midx, c, PACK_A, 12);
+	}
+
+	@Test
+	public void testSortedAcrossPacks() throws Exception {
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		List<PackedObjectInfo> even = new ArrayList<>();
+		List<PackedObjectInfo> odd = new ArrayList<>();
+		for (int i = 0; i < 600; i++) {
+			(i % 2 == 0 ? even : odd).add(entry(id(i), 12 + i));
+		}
+		packs.put(PACK_A, packIndex(even));
+		packs.put(PACK_B, packIndex(odd));
+
+		MultiPackIndex midx = writeAndRead(packs);
+		assertEquals(600, midx.getObjectCount());
+		for (int pos = 1; pos < 600; pos++) {
+			if (midx.getObjectId(pos - 1)
+					.compareTo(midx.getObjectId(pos)) >= 0) {
+				fail("objects are not sorted at " + pos);
+			}
+		}
+		for (int i = 0; i < 600; i++) {
+			verify(midx, id(i), i % 2 == 0 ? PACK_A : PACK_B, 12 + i);
+		}
+	}
+
+	@Test
+	public void testNotAMultiPackIndex() throws Exception {
+		try {
+			MultiPackIndexLoader.read(
+					new ByteArrayInputStream(new byte[] { 'C', 'G', 'P', 'H',
+							1, 1, 0, 0, 0, 0, 0, 0 }));
+			fail("expected MultiPackIndexFormatException");
+		} catch (MultiPackIndexFormatException e) {
+			// expected
+		}
+	}
+
+	private static void verify(MultiPackIndex midx, ObjectId id,
+			String packName, long offset) {
+		int pos = midx.findPosition(id);
+		if (pos < 0) {
+			fail(id.name() + " not found");
+		}
+		assertEquals(id, midx.getObjectId(pos));
+		assertEquals(packName, midx.getPackNames()[midx.getPackId(pos)]);
+		assertEquals(offset, midx.getOffset(pos));
+	}
+
+	private static MultiPackIndex writeAndRead(Map<String, PackIndex> packs)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new MultiPackIndexWriter(packs).write(NullProgressMonitor.INSTANCE,
+				out);
+		return MultiPackIndexLoader
+				.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	private static PackIndex packIndex(PackedObjectInfo... objects)
+			throws IOException {
+		List<PackedObjectInfo> list = new ArrayList<>();
+		Collections.addAll(list, objects);
+		return packIndex(list);
+	}
+
+	private static PackIndex packIndex(List<PackedObjectInfo> objects)
+			throws IOException {
+		Collections.sort(objects);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PackIndexWriter.createVersion(out, 2).write(objects, new byte[20]);
+		return PackIndex.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	private static PackedObjectInfo entry(ObjectId id, long offset) {
+		PackedObjectInfo info = new PackedObjectInfo(id);
+		info.setOffset(offset);
+		return info;
+	}
+
+	private static ObjectId id(int i) {
+		byte[] raw = new byte[20];
+		raw[0] = (byte) (i * 37);
+		raw[1] = (byte) (i >>> 8);
+		raw[19] = (byte) i;
+		return ObjectId.fromRaw(raw);
+	}
+}
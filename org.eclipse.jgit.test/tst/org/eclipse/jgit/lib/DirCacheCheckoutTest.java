@@ -284,6 +284,49 @@ public void testInitialCheckout() throws Exception {
 		}
 	}
 
+	@Test
+	public void testParallelCheckout() throws Exception {
+		StoredConfig config = db.getConfig();
+		config.setInt(ConfigConstants.CONFIG_CHECKOUT_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WORKERS, 4);
+		config.setInt(ConfigConstants.CONFIG_CHECKOUT_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THRESHOLD_FOR_PARALLELISM, 1);
+		config.save();
+
+		try (Git git = new Git(db);
+				TestRepository<Repository> db_t = new TestRepository<>(db)) {
+			TestRepository<Repository>.BranchBuilder master = db_t
+					.branch("master");
+			TestRepository<Repository>.CommitBuilder cb = master.commit();
+			for (int i = 0; i < 100; i++) {
+				cb.add("d" + (i % 5) + "/f" + i, "content " + i);
+			}
+			cb.add("d0/sub/g", "nested");
+			cb.message("m0").create();
+			git.checkout().setName("master").call();
+
+			RevCommit second = master.commit().rm("d1/f1")
+					.add("d2/f2", "changed").add("d5/new", "added")
+					.message("m1").create();
+			DirCacheCheckout checkout = resetHard(second);
+			assertEquals(2, checkout.getUpdated().size());
+			assertEquals(1, checkout.getRemoved().size());
+
+			for (int i = 0; i < 100; i++) {
+				File f = new File(db.getWorkTree(), "d" + (i % 5) + "/f" + i);
+				if (i == 1) {
+					assertFalse(f.exists());
+				} else {
+					assertEquals(i == 2 ? "changed" : "content " + i,
+							read(f));
+				}
+			}
+			assertEquals("nested", read(new File(db.getWorkTree(), "d0/sub/g")));
+			assertEquals("added", read(new File(db.getWorkTree(), "d5/new")));
+			assertTrue(git.status().call().isClean());
+		}
+	}
+
 	private DirCacheCheckout resetHard(RevCommit commit)
 			throws NoWorkTreeException,
 			CorruptObjectException, IOException {
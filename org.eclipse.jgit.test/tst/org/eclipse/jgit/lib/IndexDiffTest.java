@@ -48,14 +48,21 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.eclipse.jgit.api.Git;
@@ -73,6 +80,7 @@
 import org.eclipse.jgit.merge.MergeStrategy;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.treewalk.FileChangeMonitor;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.util.IO;
 import org.junit.Test;
@@ -118,6 +126,63 @@ public void testAdded() throws IOException {
 		assertEquals(Collections.EMPTY_SET, diff.getUntrackedFolders());
 	}
 
+	@Test
+	public void testParallelDiff() throws Exception {
+		try (Git git = new Git(db)) {
+			for (int i = 0; i < 8; i++) {
+				writeTrashFile("d" + i + "/a", "a" + i);
+				writeTrashFile("d" + i + "/sub/b", "b" + i);
+			}
+			writeTrashFile("top", "top");
+			writeTrashFile(".gitignore", "*.log\n");
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("initial").call();
+		}
+		writeTrashFile("d1/a", "modified");
+		assertTrue(new File(trash, "d2/sub/b").delete());
+		writeTrashFile("d3/new", "added");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("d3/new").call();
+		}
+		writeTrashFile("d4/untracked", "untracked");
+		writeTrashFile("fresh/x", "untracked");
+		writeTrashFile("d5/build.log", "ignored");
+		writeTrashFile("top", "modified");
+
+		IndexDiff sequential = new IndexDiff(db, Constants.HEAD,
+				new FileTreeIterator(db));
+		assertTrue(sequential.diff());
+		IndexDiff parallel = new IndexDiff(db, Constants.HEAD,
+				new FileTreeIterator(db));
+		parallel.setThreads(3);
+		assertTrue(parallel.diff());
+
+		assertEquals(new HashSet<>(Arrays.asList("d1/a", "top")),
+				parallel.getModified());
+		assertEquals(Collections.singleton("d2/sub/b"),
+				parallel.getMissing());
+		assertEquals(Collections.singleton("d3/new"), parallel.getAdded());
+		assertEquals(new HashSet<>(Arrays.asList("d4/untracked", "fresh/x")),
+				parallel.getUntracked());
+		assertEquals(Collections.singleton("fresh"),
+				parallel.getUntrackedFolders());
+		assertEquals(Collections.singleton("d5/build.log"),
+				parallel.getIgnoredNotInIndex());
+
+		assertEquals(sequential.getAdded(), parallel.getAdded());
+		assertEquals(sequential.getChanged(), parallel.getChanged());
+		assertEquals(sequential.getRemoved(), parallel.getRemoved());
+		assertEquals(sequential.getMissing(), parallel.getMissing());
+		assertEquals(sequential.getModified(), parallel.getModified());
+		assertEquals(sequential.getUntracked(), parallel.getUntracked());
+		assertEquals(sequential.getUntrackedFolders(),
+				parallel.getUntrackedFolders());
+		assertEquals(sequential.getIgnoredNotInIndex(),
+				parallel.getIgnoredNotInIndex());
+		assertEquals(sequential.getPathsWithIndexMode(FileMode.REGULAR_FILE),
+				parallel.getPathsWithIndexMode(FileMode.REGULAR_FILE));
+	}
+
 	@Test
 	public void testMissing() throws Exception {
 		File file2 = writeTrashFile("file2", "file2");
@@ -750,6 +815,69 @@ public void testAutoCRLFInput() throws Exception {
 		}
 	}
 
+	@Test
+	public void testFileChangeMonitor() throws Exception {
+		try (Git git = new Git(db)) {
+			for (int i = 0; i < 4; i++) {
+				writeTrashFile("d" + i + "/a", "a");
+				writeTrashFile("d" + i + "/sub/b", "b");
+			}
+			writeTrashFile("top", "top");
+			writeTrashFile(".gitignore", "*.log");
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("initial").call();
+		}
+		writeTrashFile("d1/untracked", "untracked");
+		writeTrashFile("d2/build.log", "log");
+		// Directories modified within the file system timestamp resolution
+		// are not cached; move them safely into the past.
+		FileTime past = FileTime.from(Instant.now().minusSeconds(3600));
+		Files.setLastModifiedTime(trash.toPath(), past);
+		for (int i = 0; i < 4; i++) {
+			Files.setLastModifiedTime(new File(trash, "d" + i).toPath(), past);
+			Files.setLastModifiedTime(new File(trash, "d" + i + "/sub")
+					.toPath(), past);
+		}
+
+		RecordingMonitor monitor = new RecordingMonitor();
+		IndexDiff diff = new IndexDiff(db, Constants.HEAD,
+				new FileTreeIterator(db));
+		diff.setFileChangeMonitor(monitor);
+		diff.diff();
+		assertEquals(Collections.singleton("d1/untracked"),
+				diff.getUntracked());
+		assertEquals(Collections.singleton("d2/build.log"),
+				diff.getIgnoredNotInIndex());
+		DirCache dc = db.readDirCache();
+		assertNotNull(dc.getFileMonitorToken());
+		assertNotNull(dc.getUntrackedCache());
+
+		// A change the monitor does not report is not seen, a reported one
+		// is.
+		writeTrashFile("d0/a", "x");
+		writeTrashFile("d3/sub/b", "y");
+		monitor.changed("d3/sub/b");
+		diff = new IndexDiff(db, Constants.HEAD, new FileTreeIterator(db));
+		diff.setFileChangeMonitor(monitor);
+		diff.diff();
+		assertEquals(Collections.singleton("d3/sub/b"), diff.getModified());
+		assertEquals(Collections.singleton("d1/untracked"),
+				diff.getUntracked());
+		assertTrue(diff.getIgnoredNotInIndex().isEmpty());
+
+		// Once the monitor loses track the whole tree is scanned again.
+		monitor.forget();
+		diff = new IndexDiff(db, Constants.HEAD, new FileTreeIterator(db));
+		diff.setFileChangeMonitor(monitor);
+		diff.diff();
+		assertEquals(new HashSet<>(Arrays.asList("d0/a", "d3/sub/b")),
+				diff.getModified());
+		assertEquals(Collections.singleton("d1/untracked"),
+				diff.getUntracked());
+		assertEquals(Collections.singleton("d2/build.log"),
+				diff.getIgnoredNotInIndex());
+	}
+
 	private void verifyStageState(StageState expected, int... stages)
 			throws IOException {
 		DirCacheBuilder builder = db.lockDirCache().builder();
@@ -787,4 +915,44 @@ private void assumeUnchanged(String path) throws IOException {
 			throw new IOException("could not commit");
 	}
 
+	private static class RecordingMonitor implements FileChangeMonitor {
+		private static final String PREFIX = "test:";
+
+		private final Map<String, Integer> changes = new HashMap<>();
+
+		private int seq;
+
+		private int lost;
+
+		@Override
+		public String getToken() {
+			return PREFIX + ++seq;
+		}
+
+		@Override
+		public Set<String> getChangedPaths(String token) {
+			if (!token.startsWith(PREFIX)) {
+				return null;
+			}
+			int since = Integer.parseInt(token.substring(PREFIX.length()));
+			if (since <= lost) {
+				return null;
+			}
+			Set<String> paths = new HashSet<>();
+			for (Map.Entry<String, Integer> e : changes.entrySet()) {
+				if (e.getValue().intValue() >= since) {
+					paths.add(e.getKey());
+				}
+			}
+			return paths;
+		}
+
+		void changed(String path) {
+			changes.put(path, Integer.valueOf(seq));
+		}
+
+		void forget() {
+			lost = seq;
+		}
+	}
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.revwalk;
+
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_COMMIT_DATA;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_OID_LOOKUP;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_LOOKUP_WIDTH;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_DATA_WIDTH;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_HEADER_LEN;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_EXTRA_EDGES_NEEDED;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_NO_PARENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.NB;
+import org.junit.Test;
+
+public class RevWalkCommitGraphTest extends RevWalkTestCase {
+
+	@Test
+	public void testIsMergedIntoWithGenerationNumbers() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c = commit(b);
+		RevCommit side = commit(a);
+		// Clock skew: the merge claims to be older than its parents.
+		RevCommit merge = commit(-1000, c, side);
+		RevCommit d = commit(merge);
+		RevCommit unrelated = commit();
+
+		writeCommitGraph(d, unrelated);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			assertTrue(isMergedInto(walk, a, d));
+			assertTrue(isMergedInto(walk, side, d));
+			assertTrue(isMergedInto(walk, merge, d));
+			assertTrue(isMergedInto(walk, d, d));
+			assertFalse(isMergedInto(walk, d, merge));
+			assertFalse(isMergedInto(walk, side, c));
+			assertFalse(isMergedInto(walk, c, side));
+			assertFalse(isMergedInto(walk, unrelated, d));
+		}
+	}
+
+	@Test
+	public void testIsMergedIntoWithCommitsNotInGraph() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		writeCommitGraph(b);
+		RevCommit c = commit(b);
+		RevCommit d = commit(c);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			assertTrue(isMergedInto(walk, a, d));
+			assertTrue(isMergedInto(walk, c, d));
+			assertFalse(isMergedInto(walk, d, b));
+			assertFalse(isMergedInto(walk, c, a));
+		}
+	}
+
+	@Test
+	public void testFindBranchesReachableFrom() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c = commit(b);
+		RevCommit side = commit(-100, a);
+		Ref master = branch("master", c);
+		Ref topic = branch("topic", side);
+		Ref old = branch("old", a);
+
+		writeCommitGraph(c, side);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			List<Ref> result = RevWalkUtils.findBranchesReachableFrom(
+					walk.parseCommit(b), walk, Arrays.asList(master, topic,
+							old), NullProgressMonitor.INSTANCE);
+			assertEquals(Arrays.asList(master), result);
+
+			result = RevWalkUtils.findBranchesReachableFrom(
+					walk.parseCommit(a), walk, Arrays.asList(master, topic,
+							old), NullProgressMonitor.INSTANCE);
+			assertEquals(Arrays.asList(master, topic, old), result);
+		}
+	}
+
+	@Test
+	public void testPathFilterWithChangedPathFilters() throws Exception {
+		RevCommit a = commitBuilder().add("src/a.txt", "a").add("b.txt", "b")
+				.create();
+		RevCommit b = commitBuilder().parent(a).add("b.txt", "b2").create();
+		RevCommit c = commitBuilder().parent(b).add("src/a.txt", "a2")
+				.create();
+		RevCommit d = commitBuilder().parent(c).add("src/c.txt", "c")
+				.create();
+		RevCommit e = commitBuilder().parent(d).rm("b.txt").create();
+
+		TreeFilter src = AndTreeFilter.create(
+				PathFilterGroup.createFromStrings("src/a.txt"),
+				TreeFilter.ANY_DIFF);
+		List<RevCommit> expected = log(e, src);
+		assertEquals(Arrays.asList(c, a), expected);
+
+		writeCommitGraph(true, e);
+		assertEquals(expected, log(e, src));
+
+		TreeFilter dir = AndTreeFilter.create(
+				PathFilterGroup.createFromStrings("src"), TreeFilter.ANY_DIFF);
+		assertEquals(Arrays.asList(d, c, a), log(e, dir));
+
+		TreeFilter group = AndTreeFilter.create(
+				PathFilterGroup.createFromStrings("b.txt", "src/c.txt"),
+				TreeFilter.ANY_DIFF);
+		assertEquals(Arrays.asList(e, d, b, a), log(e, group));
+	}
+
+	@Test
+	public void testPathFilterWithoutAnyDiff() throws Exception {
+		RevCommit a = commitBuilder().add("a.txt", "a").create();
+		RevCommit b = commitBuilder().parent(a).add("b.txt", "b").create();
+		writeCommitGraph(true, b);
+
+		// Without ANY_DIFF every commit containing the path matches.
+		assertEquals(Arrays.asList(b, a),
+				log(b, PathFilterGroup.createFromStrings("a.txt")));
+	}
+
+	@Test
+	public void testFollowFilterWithChangedPathFilters() throws Exception {
+		RevCommit a = commitBuilder().add("old.txt", "content\n").create();
+		RevCommit b = commitBuilder().parent(a).add("other.txt", "x").create();
+		RevCommit c = commitBuilder().parent(b).rm("old.txt")
+				.add("new.txt", "content\n").create();
+		RevCommit d = commitBuilder().parent(c).add("other.txt", "y").create();
+		writeCommitGraph(true, d);
+
+		assertEquals(Arrays.asList(c, a), log(d,
+				FollowFilter.create("new.txt", db.getConfig().get(DiffConfig.KEY))));
+	}
+
+	@Test
+	public void testParentPositionOutOfRange() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c = commit(b);
+		writeCommitGraph(c);
+		corruptParents(b, 1000, GRAPH_NO_PARENT);
+
+		assertEquals(Arrays.asList(c, b, a), log(c, TreeFilter.ALL));
+	}
+
+	@Test
+	public void testOctopusEdgeOutOfRange() throws Exception {
+		RevCommit root = commit();
+		RevCommit p1 = commit(root);
+		RevCommit p2 = commit(root);
+		RevCommit p3 = commit(root);
+		RevCommit m = commit(p1, p2, p3);
+		writeCommitGraph(m);
+		corruptParents(m, 0, GRAPH_EXTRA_EDGES_NEEDED | 1000);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			walk.setRetainBody(false);
+			RevCommit c = walk.lookupCommit(m);
+			walk.parseHeaders(c);
+			assertEquals(3, c.getParentCount());
+			assertEquals(p1, c.getParent(0));
+			assertEquals(p2, c.getParent(1));
+			assertEquals(p3, c.getParent(2));
+		}
+	}
+
+	private List<RevCommit> log(RevCommit tip, TreeFilter filter)
+			throws Exception {
+		List<RevCommit> result = new ArrayList<>();
+		try (RevWalk walk = new RevWalk(db)) {
+			walk.setRetainBody(false);
+			walk.setTreeFilter(filter);
+			walk.markStart(walk.parseCommit(tip));
+			for (RevCommit c : walk) {
+				result.add(c);
+			}
+		}
+		return result;
+	}
+
+	private boolean isMergedInto(RevWalk walk, RevCommit base, RevCommit tip)
+			throws Exception {
+		return walk.isMergedInto(walk.parseCommit(base),
+				walk.parseCommit(tip));
+	}
+
+	private Ref branch(String name, RevCommit c) throws Exception {
+		String refName = "refs/heads/" + name;
+		RefUpdate u = db.updateRef(refName);
+		u.setNewObjectId(c);
+		u.forceUpdate();
+		return db.exactRef(refName);
+	}
+
+	private void writeCommitGraph(RevCommit... tips) throws Exception {
+		writeCommitGraph(false, tips);
+	}
+
+	private void writeCommitGraph(boolean changedPaths, RevCommit... tips)
+			throws Exception {
+		StoredConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_COMMIT_GRAPH, true);
+		config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WRITE_CHANGED_PATHS, changedPaths);
+		config.save();
+		new GC(db)
+				.writeCommitGraph(new HashSet<>(Arrays.asList(tips)));
+	}
+
+	// Overwrites the parent fields of a commit in the commit-graph file.
+	private void corruptParents(RevCommit c, int parent1, int parent2)
+			throws Exception {
+		File file = new File(db.getObjectsDirectory(),
+				Constants.INFO_COMMIT_GRAPH);
+		byte[] buf = Files.readAllBytes(file.toPath());
+		int oidLookup = -1;
+		int commitData = -1;
+		for (int p = COMMIT_GRAPH_HEADER_LEN; NB.decodeInt32(buf,
+				p) != 0; p += CHUNK_LOOKUP_WIDTH) {
+			int id = NB.decodeInt32(buf, p);
+			int offset = (int) NB.decodeInt64(buf, p + 4);
+			if (id == CHUNK_ID_OID_LOOKUP) {
+				oidLookup = offset;
+			} else if (id == CHUNK_ID_COMMIT_DATA) {
+				commitData = offset;
+			}
+		}
+		int pos = 0;
+		while (c.compareTo(buf, oidLookup
+				+ pos * Constants.OBJECT_ID_LENGTH) != 0) {
+			pos++;
+		}
+		int ptr = commitData + pos * COMMIT_DATA_WIDTH
+				+ Constants.OBJECT_ID_LENGTH;
+		NB.encodeInt32(buf, ptr, parent1);
+		NB.encodeInt32(buf, ptr + 4, parent2);
+		Files.write(file.toPath(), buf);
+	}
+}
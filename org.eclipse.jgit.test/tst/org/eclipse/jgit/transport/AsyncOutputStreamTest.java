@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.storage.pack.PackStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncOutputStreamTest {
+	private ExecutorService executor;
+
+	private PackStatistics.Accumulator stats;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newSingleThreadExecutor();
+		stats = new PackStatistics.Accumulator();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testWritesInOrder() throws IOException {
+		byte[] data = new byte[10000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 31);
+		}
+		ByteArrayOutputStream dst = new ByteArrayOutputStream();
+		try (AsyncOutputStream out = new AsyncOutputStream(dst, 64, executor,
+				stats)) {
+			out.write(data[0]);
+			for (int off = 1; off < data.length; off += 97) {
+				out.write(data, off, Math.min(97, data.length - off));
+				out.flush();
+			}
+		}
+		assertArrayEquals(data, dst.toByteArray());
+		assertTrue(stats.sendStalls > 0);
+		assertTrue(stats.maxSendBuffered <= 64);
+	}
+
+	@Test
+	public void testFlushReachesStream() throws Exception {
+		CountDownLatch flushed = new CountDownLatch(1);
+		ByteArrayOutputStream dst = new ByteArrayOutputStream() {
+			@Override
+			public void flush() {
+				flushed.countDown();
+			}
+		};
+		try (AsyncOutputStream out = new AsyncOutputStream(dst, 64, executor,
+				stats)) {
+			out.write(new byte[] { 1, 2, 3 });
+			out.flush();
+			assertTrue(flushed.await(10, TimeUnit.SECONDS));
+			assertEquals(3, dst.size());
+		}
+	}
+
+	@Test
+	public void testFailureReachesWriter() {
+		IOException failure = new IOException("client went away");
+		OutputStream dst = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw failure;
+			}
+		};
+		try (AsyncOutputStream out = new AsyncOutputStream(dst, 16,
+				executor, stats)) {
+			try {
+				for (;;) {
+					out.write(new byte[8]);
+				}
+			} catch (IOException e) {
+				assertSame(failure, e);
+			}
+		} catch (IOException e) {
+			// Closing reports the failure again.
+			assertSame(failure, e);
+			return;
+		}
+		fail("close did not report the failure");
+	}
+}
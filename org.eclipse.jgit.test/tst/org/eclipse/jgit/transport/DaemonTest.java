@@ -47,6 +47,10 @@
 import static org.junit.Assert.assertTrue;
 
 import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntSupplier;
 
 import org.junit.Test;
 
@@ -93,4 +97,134 @@ public void testDaemonRestart() throws Exception {
 		Thread.sleep(1000);
 		d.stopAndWait();
 	}
+
+	@Test
+	public void testMaxConnections() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		Daemon d = new Daemon();
+		d.setExecutor(executor);
+		d.setMaxConnections(1);
+		d.setMaxQueuedConnections(1);
+		d.start();
+		InetSocketAddress address = d.getAddress();
+		try (Socket active = new Socket(address.getAddress(),
+				address.getPort());
+				Socket queued = new Socket(address.getAddress(),
+						address.getPort());
+				Socket rejected = new Socket(address.getAddress(),
+						address.getPort())) {
+			assertEquals("Rejected connection should be closed", -1,
+					rejected.getInputStream().read());
+			waitFor(1, () -> d.getActiveConnections());
+			waitFor(1, () -> d.getQueuedConnections());
+			assertEquals(1, d.getRejectedConnections());
+
+			// Closing the active connection admits the queued one.
+			active.close();
+			waitFor(0, () -> d.getQueuedConnections());
+			assertEquals(1, d.getActiveConnections());
+
+			queued.close();
+			waitFor(0, () -> d.getActiveConnections());
+		} finally {
+			d.stopAndWait();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testQueuedConnectionsClosedOnStop() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		Daemon d = new Daemon();
+		d.setExecutor(executor);
+		d.setMaxConnections(1);
+		d.setMaxQueuedConnections(2);
+		d.start();
+		InetSocketAddress address = d.getAddress();
+		try (Socket active = new Socket(address.getAddress(),
+				address.getPort());
+				Socket queued1 = new Socket(address.getAddress(),
+						address.getPort());
+				Socket queued2 = new Socket(address.getAddress(),
+						address.getPort())) {
+			waitFor(1, () -> d.getActiveConnections());
+			waitFor(2, () -> d.getQueuedConnections());
+
+			d.stopAndWait();
+			assertEquals(0, d.getQueuedConnections());
+			assertEquals(2, d.getRejectedConnections());
+			for (Socket s : new Socket[] { queued1, queued2 }) {
+				s.setSoTimeout(10000);
+				assertEquals("Queued connection should be closed", -1,
+						s.getInputStream().read());
+			}
+		} finally {
+			d.stopAndWait();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testQueuedConnectionTimeout() throws Exception {
+		Daemon d = new Daemon();
+		// The active connection is never served, it holds its slot.
+		d.setExecutor(task -> {
+			// Never run.
+		});
+		d.setMaxConnections(1);
+		d.setMaxQueuedConnections(1);
+		d.setTimeout(1);
+		d.start();
+		InetSocketAddress address = d.getAddress();
+		try (Socket active = new Socket(address.getAddress(),
+				address.getPort());
+				Socket queued = new Socket(address.getAddress(),
+						address.getPort())) {
+			waitFor(1, () -> d.getActiveConnections());
+			queued.setSoTimeout(10000);
+			assertEquals("Expired connection should be closed", -1,
+					queued.getInputStream().read());
+			assertEquals(0, d.getQueuedConnections());
+			assertEquals(1, d.getRejectedConnections());
+			assertEquals(1, d.getActiveConnections());
+		} finally {
+			d.stopAndWait();
+		}
+	}
+
+	@Test
+	public void testClientThreadNotStarted() throws Exception {
+		Daemon d = new Daemon();
+		d.setExecutor(task -> {
+			throw new OutOfMemoryError("unable to create native thread");
+		});
+		d.setMaxConnections(1);
+		d.start();
+		InetSocketAddress address = d.getAddress();
+		try {
+			for (int i = 1; i <= 2; i++) {
+				try (Socket s = new Socket(address.getAddress(),
+						address.getPort())) {
+					s.setSoTimeout(10000);
+					assertEquals("Unserved connection should be closed", -1,
+							s.getInputStream().read());
+				}
+				waitFor(i, () -> (int) d.getRejectedConnections());
+				// The slot is released, so the next connection is
+				// not queued behind it.
+				waitFor(0, () -> d.getActiveConnections());
+			}
+			assertEquals(0, d.getQueuedConnections());
+		} finally {
+			d.stopAndWait();
+		}
+	}
+
+	private static void waitFor(int expected, IntSupplier actual)
+			throws InterruptedException {
+		for (int i = 0; i < 100 && actual.getAsInt() != expected; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(expected, actual.getAsInt());
+	}
 }
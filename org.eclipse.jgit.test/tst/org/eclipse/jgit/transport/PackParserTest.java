@@ -46,6 +46,7 @@
 
 package org.eclipse.jgit.transport;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -57,19 +58,27 @@
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.zip.Deflater;
 
 import org.eclipse.jgit.errors.TooLargeObjectInPackException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.internal.storage.file.ObjectDirectoryPackParser;
 import org.eclipse.jgit.internal.storage.file.PackFile;
 import org.eclipse.jgit.junit.JGitTestUtil;
 import org.eclipse.jgit.junit.RepositoryTestCase;
 import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectDatabase;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevBlob;
 import org.eclipse.jgit.util.NB;
@@ -461,6 +470,172 @@ public void testDataAfterPackFooterSplitHeaderRead() throws Exception {
 		assertEquals(0x7e, in.read());
 	}
 
+	@Test
+	public void testParallelDeltaResolution() throws Exception {
+		List<ObjectId> ids = new ArrayList<>();
+		byte[] pack = deltaChainPack(8, 40, ids);
+
+		ObjectDirectoryPackParser p = (ObjectDirectoryPackParser) index(
+				new ByteArrayInputStream(pack));
+		p.setThreads(4);
+		p.parse(NullProgressMonitor.INSTANCE);
+
+		assertEquals(ids.size(), p.getObjectCount());
+		PackFile file = p.getPackFile();
+		for (ObjectId id : ids) {
+			assertTrue(file.hasObject(id));
+		}
+		try (ObjectReader reader = db.newObjectReader()) {
+			StringBuilder expect = new StringBuilder("base 3");
+			for (int j = 0; j < 40; j++) {
+				expect.append('-').append(j);
+			}
+			assertArrayEquals(Constants.encode(expect.toString()),
+					reader.open(ids.get(3 * 41 + 40)).getCachedBytes());
+		}
+	}
+
+	@Test
+	public void testParallelDeltaResolutionMatchesSequential()
+			throws Exception {
+		List<ObjectId> ids = new ArrayList<>();
+		byte[] pack = deltaChainPack(4, 50, ids);
+
+		PackParser sequential = index(new ByteArrayInputStream(pack));
+		sequential.setThreads(1);
+		sequential.parse(NullProgressMonitor.INSTANCE);
+
+		PackParser parallel = index(new ByteArrayInputStream(pack));
+		parallel.setThreads(3);
+		parallel.setExecutor(Runnable::run);
+		parallel.parse(NullProgressMonitor.INSTANCE);
+
+		List<PackedObjectInfo> a = sequential.getSortedObjectList(null);
+		List<PackedObjectInfo> b = parallel.getSortedObjectList(null);
+		assertEquals(ids.size(), a.size());
+		assertEquals(a.size(), b.size());
+		for (int i = 0; i < a.size(); i++) {
+			assertEquals(a.get(i), b.get(i));
+			assertEquals(a.get(i).getOffset(), b.get(i).getOffset());
+			assertEquals(a.get(i).getCRC(), b.get(i).getCRC());
+		}
+	}
+
+	@Test
+	public void testParallelDeltaResolutionDfs() throws Exception {
+		List<ObjectId> ids = new ArrayList<>();
+		byte[] pack = deltaChainPack(6, 30, ids);
+
+		try (InMemoryRepository repo = new InMemoryRepository(
+				new DfsRepositoryDescription("test"))) {
+			try (ObjectInserter ins = repo.newObjectInserter()) {
+				PackParser p = ins
+						.newPackParser(new ByteArrayInputStream(pack));
+				p.setThreads(4);
+				p.parse(NullProgressMonitor.INSTANCE);
+				assertEquals(ids.size(), p.getObjectCount());
+			}
+			for (ObjectId id : ids) {
+				assertTrue(repo.getObjectDatabase().has(id));
+			}
+		}
+	}
+
+	@Test
+	public void testParallelDeltaResolutionIsOptIn() throws Exception {
+		byte[] pack = deltaChainPack(1, 1, new ArrayList<>());
+		assertEquals(1, index(new ByteArrayInputStream(pack)).getThreads());
+
+		db.getConfig().setInt("pack", null, "threads", 0);
+		assertEquals(0, index(new ByteArrayInputStream(pack)).getThreads());
+	}
+
+	@Test
+	public void testConcurrentReadWithoutPositionalRead() throws Exception {
+		List<ObjectId> ids = new ArrayList<>();
+		byte[] pack = deltaChainPack(8, 40, ids);
+
+		// Claims concurrent reads without implementing them; deltas are
+		// resolved on the calling thread instead of failing.
+		PackParser p = new InMemoryPackParser(db.getObjectDatabase(),
+				new ByteArrayInputStream(pack));
+		p.setThreads(4);
+		p.parse(NullProgressMonitor.INSTANCE);
+		assertEquals(ids.size(), p.getObjectCount());
+
+		try {
+			p.readDatabase(0, new byte[1], 0, 1);
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	// Build a pack of whole blobs, each the root of a chain of REF_DELTAs
+	// appending "-j" to the prior blob in the chain.
+	private static byte[] deltaChainPack(int bases, int depth,
+			List<ObjectId> ids) throws IOException {
+		TemporaryBuffer.Heap pack = new TemporaryBuffer.Heap(256 * 1024);
+		packHeader(pack, bases * (depth + 1));
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			for (int i = 0; i < bases; i++) {
+				byte[] data = Constants.encode("base " + i);
+				objectHeader(pack, Constants.OBJ_BLOB, data.length);
+				deflate(pack, data);
+				ObjectId prior = fmt.idFor(Constants.OBJ_BLOB, data);
+				ids.add(prior);
+
+				for (int j = 0; j < depth; j++) {
+					byte[] insert = Constants.encode("-" + j);
+					TemporaryBuffer.Heap delta = new TemporaryBuffer.Heap(64);
+					varint(delta, data.length);
+					varint(delta, data.length + insert.length);
+					delta.write(0x80 | 0x10 | 0x20); // copy [0, data.length)
+					delta.write(data.length & 0xff);
+					delta.write(data.length >>> 8);
+					delta.write(insert.length);
+					delta.write(insert);
+					byte[] d = delta.toByteArray();
+
+					objectHeader(pack, Constants.OBJ_REF_DELTA, d.length);
+					prior.copyRawTo(pack);
+					deflate(pack, d);
+
+					byte[] next = new byte[data.length + insert.length];
+					System.arraycopy(data, 0, next, 0, data.length);
+					System.arraycopy(insert, 0, next, data.length,
+							insert.length);
+					data = next;
+					prior = fmt.idFor(Constants.OBJ_BLOB, data);
+					ids.add(prior);
+				}
+			}
+		}
+		digest(pack);
+		return pack.toByteArray();
+	}
+
+	private static void objectHeader(TemporaryBuffer.Heap pack, int type,
+			long size) throws IOException {
+		int c = (type << 4) | (int) (size & 15);
+		size >>>= 4;
+		while (size > 0) {
+			pack.write(c | 0x80);
+			c = (int) (size & 0x7f);
+			size >>>= 7;
+		}
+		pack.write(c);
+	}
+
+	private static void varint(TemporaryBuffer.Heap buf, long value)
+			throws IOException {
+		while (value > 0x7f) {
+			buf.write((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buf.write((int) value);
+	}
+
 	private static void packHeader(TemporaryBuffer.Heap tinyPack, int cnt)
 			throws IOException {
 		final byte[] hdr = new byte[8];
@@ -505,4 +680,125 @@ private PackParser index(InputStream in) throws IOException {
 			inserter = db.newObjectInserter();
 		return inserter.newPackParser(in);
 	}
+
+	// Keeps the pack in memory, reading it back only through the seek
+	// based readDatabase.
+	private static class InMemoryPackParser extends PackParser {
+		private byte[] data = new byte[1024];
+
+		private int length;
+
+		private int position;
+
+		InMemoryPackParser(ObjectDatabase odb, InputStream in) {
+			super(odb, in);
+		}
+
+		@Override
+		protected boolean isConcurrentReadSupported() {
+			return true;
+		}
+
+		@Override
+		protected void onStoreStream(byte[] raw, int pos, int len) {
+			if (data.length < length + len) {
+				data = Arrays.copyOf(data,
+						Math.max(2 * data.length, length + len));
+			}
+			System.arraycopy(raw, pos, data, length, len);
+			length += len;
+		}
+
+		@Override
+		protected ObjectTypeAndSize seekDatabase(PackedObjectInfo obj,
+				ObjectTypeAndSize info) throws IOException {
+			position = (int) obj.getOffset();
+			return readObjectHeader(info);
+		}
+
+		@Override
+		protected ObjectTypeAndSize seekDatabase(UnresolvedDelta delta,
+				ObjectTypeAndSize info) throws IOException {
+			position = (int) delta.getOffset();
+			return readObjectHeader(info);
+		}
+
+		@Override
+		protected int readDatabase(byte[] dst, int pos, int cnt) {
+			int n = Math.min(cnt, length - position);
+			if (n <= 0) {
+				return -1;
+			}
+			System.arraycopy(data, position, dst, pos, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		protected boolean checkCRC(int oldCRC) {
+			return true;
+		}
+
+		@Override
+		protected void onObjectHeader(Source src, byte[] raw, int pos,
+				int len) {
+			// Not needed.
+		}
+
+		@Override
+		protected void onObjectData(Source src, byte[] raw, int pos,
+				int len) {
+			// Not needed.
+		}
+
+		@Override
+		protected void onInflatedObjectData(PackedObjectInfo obj,
+				int typeCode, byte[] raw) {
+			// Not needed.
+		}
+
+		@Override
+		protected void onPackHeader(long objCnt) {
+			// Not needed.
+		}
+
+		@Override
+		protected void onPackFooter(byte[] hash) {
+			// Not needed.
+		}
+
+		@Override
+		protected boolean onAppendBase(int typeCode, byte[] raw,
+				PackedObjectInfo info) {
+			return false;
+		}
+
+		@Override
+		protected void onEndThinPack() {
+			// Not needed.
+		}
+
+		@Override
+		protected void onBeginWholeObject(long streamPosition, int type,
+				long inflatedSize) {
+			// Not needed.
+		}
+
+		@Override
+		protected void onEndWholeObject(PackedObjectInfo info) {
+			// Not needed.
+		}
+
+		@Override
+		protected void onBeginOfsDelta(long deltaStreamPosition,
+				long baseStreamPosition, long inflatedSize) {
+			// Not needed.
+		}
+
+		@Override
+		protected void onBeginRefDelta(long deltaStreamPosition,
+				AnyObjectId baseId, long inflatedSize) {
+			// Not needed.
+		}
+	}
 }
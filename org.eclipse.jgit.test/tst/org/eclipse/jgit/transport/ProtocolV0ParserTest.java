@@ -53,6 +53,7 @@
 
 import org.eclipse.jgit.errors.PackProtocolException;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
 import org.junit.Test;
 
 public class ProtocolV0ParserTest {
@@ -197,4 +198,35 @@ public void testRecvWantsFilter()
 		assertEquals(-1, request.getFilterSpec().getTreeDepthLimit());
 	}
 
+	@Test
+	public void testRecvWantsCombinedFilter()
+			throws PackProtocolException, IOException {
+		PacketLineIn pckIn = formatAsPacketLine(
+				"want 4624442d68ee402a94364191085b77137618633e\n",
+				"filter combine:blob:limit=13000+tree:3+blob:limit=%31%30"
+						+ "+sparse:oid=f900c8326a43303685c46b279b9f70411bff1a4b\n",
+				PacketLineIn.end());
+		ProtocolV0Parser parser = new ProtocolV0Parser(defaultConfig());
+		FetchV0Request request = parser.recvWants(pckIn);
+		assertEquals(10, request.getFilterSpec().getBlobLimit());
+		assertEquals(3, request.getFilterSpec().getTreeDepthLimit());
+		assertEquals(
+				ObjectId.fromString("f900c8326a43303685c46b279b9f70411bff1a4b"),
+				request.getFilterSpec().getSparseOid());
+		assertEquals("filter combine:blob:limit=10+tree:3"
+				+ "+sparse:oid=f900c8326a43303685c46b279b9f70411bff1a4b",
+				request.getFilterSpec().filterLine());
+	}
+
+	@Test(expected = PackProtocolException.class)
+	public void testRecvWantsInvalidSparseFilter()
+			throws PackProtocolException, IOException {
+		PacketLineIn pckIn = formatAsPacketLine(
+				"want 4624442d68ee402a94364191085b77137618633e\n",
+				"filter sparse:oid=master:.sparse\n",
+				PacketLineIn.end());
+		ProtocolV0Parser parser = new ProtocolV0Parser(defaultConfig());
+		parser.recvWants(pckIn);
+	}
+
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsGarbageCollector;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReachableBitmapCacheTest {
+	private InMemoryRepository repo;
+
+	private TestRepository<InMemoryRepository> tr;
+
+	private RevCommit a;
+
+	private RevCommit b;
+
+	private RevBlob blobB;
+
+	private RevCommit c;
+
+	@Before
+	public void setUp() throws Exception {
+		repo = new InMemoryRepository(new DfsRepositoryDescription("test"));
+		tr = new TestRepository<>(repo);
+		a = tr.commit().add("a", "a").create();
+		blobB = tr.blob("b");
+		b = tr.commit().parent(a).add("b", blobB).create();
+		tr.update("master", b);
+		new DfsGarbageCollector(repo).pack(null);
+		repo.scanForRepoChanges();
+		c = tr.commit().parent(a).add("c", "c").create();
+	}
+
+	@Test
+	public void testFindUnreachable() throws Exception {
+		ReachableBitmapCache cache = new ReachableBitmapCache();
+		try (ObjectReader reader = repo.newObjectReader()) {
+			BitmapIndex index = reader.getBitmapIndex();
+			assertNotNull(index);
+			assertNull(cache.findUnreachable(reader, index, tips(b),
+					Arrays.asList(a, blobB)));
+			assertEquals(c, cache.findUnreachable(reader, index, tips(b),
+					Arrays.asList(a, c)));
+			assertEquals(1, cache.size());
+		}
+	}
+
+	@Test
+	public void testExtendSubsetOfTips() throws Exception {
+		ReachableBitmapCache cache = new ReachableBitmapCache();
+		try (ObjectReader reader = repo.newObjectReader()) {
+			BitmapIndex index = reader.getBitmapIndex();
+			assertEquals(c, cache.findUnreachable(reader, index, tips(b),
+					Collections.singletonList(c)));
+			assertNull(cache.findUnreachable(reader, index, tips(b, c),
+					Arrays.asList(a, blobB, c)));
+			assertEquals(2, cache.size());
+
+			// A subset of the tips must not see objects of the superset.
+			assertEquals(c, cache.findUnreachable(reader, index, tips(b),
+					Collections.singletonList(c)));
+			assertEquals(blobB, cache.findUnreachable(reader, index,
+					tips(c), Collections.singletonList(blobB)));
+		}
+	}
+
+	@Test
+	public void testRefsChangedKeepsMostRecentEntry() throws Exception {
+		ReachableBitmapCache cache = new ReachableBitmapCache();
+		try (ObjectReader reader = repo.newObjectReader()) {
+			BitmapIndex index = reader.getBitmapIndex();
+			cache.findUnreachable(reader, index, tips(b),
+					Collections.singletonList(a));
+			cache.findUnreachable(reader, index, tips(c),
+					Collections.singletonList(a));
+			assertEquals(2, cache.size());
+			cache.onRefsChanged();
+			assertEquals(1, cache.size());
+			assertNull(cache.findUnreachable(reader, index, tips(b, c),
+					Arrays.asList(blobB, c)));
+		}
+	}
+
+	@Test
+	public void testCallerIndexNotModified() throws Exception {
+		ReachableBitmapCache cache = new ReachableBitmapCache();
+		try (ObjectReader reader = repo.newObjectReader()) {
+			BitmapIndexImpl index = (BitmapIndexImpl) reader
+					.getBitmapIndex();
+			// c is not in the bitmapped pack.
+			assertNull(cache.findUnreachable(reader, index, tips(c),
+					Collections.singletonList(c)));
+			assertEquals(0, index.getObjectCountOutsidePack());
+		}
+	}
+
+	@Test
+	public void testCachePerRepository() {
+		ReachableBitmapCache cache = ReachableBitmapCache.get(repo);
+		assertSame(cache, ReachableBitmapCache.get(repo));
+	}
+
+	private static Set<ObjectId> tips(ObjectId... ids) {
+		return new HashSet<>(Arrays.asList(ids));
+	}
+}
@@ -25,6 +25,10 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import org.eclipse.jgit.dircache.DirCache;
@@ -125,6 +129,131 @@ public void testFetchParentOfShallowCommit() throws Exception {
 		}
 	}
 
+	@Test
+	public void testFetchNegotiatesWithBitmaps() throws Exception {
+		RevCommit commit0 = remote.commit().message("0").create();
+		RevCommit commit1 = remote.commit().message("1").parent(commit0)
+				.create();
+		remote.update("master", commit1);
+		remote.update("old", commit0);
+		generateBitmaps(server);
+		RevCommit tip = remote.commit().message("2").parent(commit1).create();
+		remote.update("master", tip);
+
+		testProtocol = new TestProtocol<>((Object req, Repository db) -> {
+			UploadPack up = new UploadPack(db);
+			up.setPostUploadHook((PackStatistics s) -> stats = s);
+			return up;
+		}, null);
+		uri = testProtocol.register(ctx, server);
+
+		try (Transport tn = testProtocol.open(uri, client, "server")) {
+			tn.fetch(NullProgressMonitor.INSTANCE, Collections.singletonList(
+					new RefSpec("refs/heads/old:refs/heads/old")));
+		}
+		try (TestRepository<InMemoryRepository> local = new TestRepository<>(
+				client)) {
+			// A stale branch the server does not know about.
+			local.branch("stale").commit().message("stale")
+					.parent(local.getRevWalk().parseCommit(commit0)).create();
+		}
+
+		try (Transport tn = testProtocol.open(uri, client, "server")) {
+			tn.fetch(NullProgressMonitor.INSTANCE, Collections.singletonList(
+					new RefSpec("refs/heads/master:refs/heads/master")));
+		}
+		assertTrue(client.getObjectDatabase().has(tip.toObjectId()));
+		assertTrue(stats.isBitmapNegotiation());
+		assertTrue(stats.getHaves() >= 2);
+		assertEquals(1, stats.getCommonHaves());
+		assertTrue(stats.getUninterestingObjects().contains(commit0));
+	}
+
+	@Test
+	public void testFetchUnadvertisedWantWithBitmaps() throws Exception {
+		RevCommit commit0 = remote.commit().message("0").create();
+		RevCommit commit1 = remote.commit().message("1").parent(commit0)
+				.create();
+		remote.update("master", commit1);
+		generateBitmaps(server);
+		RevCommit tip = remote.commit().message("2").parent(commit1).create();
+		remote.update("master", tip);
+		RevCommit unreachable = remote.commit().message("x").create();
+
+		testProtocol = new TestProtocol<>((Object req, Repository db) -> {
+			UploadPack up = new UploadPack(db);
+			up.setRequestPolicy(RequestPolicy.REACHABLE_COMMIT);
+			return up;
+		}, null);
+		uri = testProtocol.register(ctx, server);
+
+		try (Transport tn = testProtocol.open(uri, client, "server")) {
+			tn.fetch(NullProgressMonitor.INSTANCE,
+					Collections.singletonList(new RefSpec(commit0.name())));
+			assertTrue(client.getObjectDatabase().has(commit0.toObjectId()));
+		}
+
+		try (Transport tn = testProtocol.open(uri, client, "server")) {
+			TransportException e = assertThrows(TransportException.class,
+					() -> tn.fetch(NullProgressMonitor.INSTANCE,
+							Collections.singletonList(
+									new RefSpec(unreachable.name()))));
+			assertThat(e.getMessage(), containsString(
+					"want " + unreachable.name() + " not valid"));
+		}
+	}
+
+	@Test
+	public void testBitmapNegotiationRequiresReachableCommonCommit()
+			throws Exception {
+		RevCommit root = remote.commit().message("root").create();
+		RevCommit side = remote.commit().message("side").parent(root)
+				.create();
+		RevCommit tip = remote.commit().message("tip").parent(root).create();
+		remote.update("master", tip);
+		remote.update("side", side);
+		generateBitmaps(server);
+
+		// The side commit only shares the root with the want, so the client
+		// may still have a better base to offer.
+		assertEquals(Arrays.asList("ACK " + side.name() + " common", "NAK"),
+				negotiateV0(tip, side));
+
+		// The old shared root is an ancestor of the want.
+		assertEquals(Arrays.asList("ACK " + root.name() + " common",
+				"ACK " + root.name() + " ready", "NAK"),
+				negotiateV0(tip, root));
+	}
+
+	/*
+	 * Sends a stateless protocol v0 negotiation round with the given want and
+	 * have, and returns the acknowledgments of the server.
+	 */
+	private List<String> negotiateV0(RevCommit want, RevCommit have)
+			throws Exception {
+		ByteArrayOutputStream send = new ByteArrayOutputStream();
+		PacketLineOut pckOut = new PacketLineOut(send);
+		pckOut.writeString("want " + want.name() + " multi_ack_detailed\n");
+		pckOut.end();
+		pckOut.writeString("have " + have.name() + "\n");
+		pckOut.end();
+
+		UploadPack up = new UploadPack(server);
+		up.setBiDirectionalPipe(false);
+		ByteArrayOutputStream recv = new ByteArrayOutputStream();
+		up.upload(new ByteArrayInputStream(send.toByteArray()), recv, null);
+
+		PacketLineIn pckIn = new PacketLineIn(
+				new ByteArrayInputStream(recv.toByteArray()));
+		List<String> acks = new ArrayList<>();
+		String line;
+		do {
+			line = pckIn.readString();
+			acks.add(line);
+		} while (!line.equals("NAK"));
+		return acks;
+	}
+
 	@Test
 	public void testFetchWithBlobNoneFilter() throws Exception {
 		InMemoryRepository server2 = newRepo("server2");
@@ -223,6 +352,92 @@ public void testFetchWithBlobLimitFilter() throws Exception {
 		}
 	}
 
+	@Test
+	public void testFetchWithSparseFilter() throws Exception {
+		InMemoryRepository server2 = newRepo("server2");
+		try (TestRepository<InMemoryRepository> remote2 = new TestRepository<>(
+				server2)) {
+			RevBlob sparse = remote2.blob("/services/payments/\n");
+			RevBlob docs = remote2.blob("docs");
+			RevBlob shared = remote2.blob("shared");
+			RevBlob payments = remote2.blob("payments");
+			RevBlob top = remote2.blob("top");
+			RevTree tree = remote2.tree(remote2.file("README", top),
+					remote2.file("docs/readme", docs),
+					remote2.file("docs/shared", shared),
+					remote2.file("services/payments/a", payments),
+					remote2.file("services/payments/shared", shared));
+			RevCommit commit = remote2.commit(tree);
+			remote2.update("master", commit);
+
+			server2.getConfig().setBoolean("uploadpack", null, "allowfilter",
+					true);
+
+			testProtocol = new TestProtocol<>((Object req, Repository db) -> {
+				UploadPack up = new UploadPack(db);
+				return up;
+			}, null);
+			uri = testProtocol.register(ctx, server2);
+
+			try (Transport tn = testProtocol.open(uri, client, "server2")) {
+				tn.setFilterSpec(FilterSpec
+						.fromFilterLine("sparse:oid=" + sparse.name()));
+				tn.fetch(NullProgressMonitor.INSTANCE,
+						Collections.singletonList(new RefSpec(commit.name())));
+				assertTrue(client.getObjectDatabase().has(tree.toObjectId()));
+				assertTrue(
+						client.getObjectDatabase().has(payments.toObjectId()));
+				assertTrue(client.getObjectDatabase().has(shared.toObjectId()));
+				assertFalse(client.getObjectDatabase().has(docs.toObjectId()));
+				assertFalse(client.getObjectDatabase().has(top.toObjectId()));
+			}
+		}
+	}
+
+	@Test
+	public void testFetchWithCombinedFilterAndBitmaps() throws Exception {
+		InMemoryRepository server2 = newRepo("server2");
+		try (TestRepository<InMemoryRepository> remote2 = new TestRepository<>(
+				server2)) {
+			RevBlob sparse = remote2.blob("services/\n!services/docs/\n");
+			RevBlob longBlob = remote2.blob("foobar");
+			RevBlob shortBlob = remote2.blob("fooba");
+			RevBlob docs = remote2.blob("docs");
+			RevTree tree = remote2.tree(
+					remote2.file("services/docs/readme", docs),
+					remote2.file("services/long", longBlob),
+					remote2.file("services/short", shortBlob));
+			RevCommit commit = remote2.commit(tree);
+			remote2.update("master", commit);
+
+			server2.getConfig().setBoolean("uploadpack", null, "allowfilter",
+					true);
+
+			// generate bitmaps
+			new DfsGarbageCollector(server2).pack(null);
+			server2.scanForRepoChanges();
+
+			testProtocol = new TestProtocol<>((Object req, Repository db) -> {
+				UploadPack up = new UploadPack(db);
+				return up;
+			}, null);
+			uri = testProtocol.register(ctx, server2);
+
+			try (Transport tn = testProtocol.open(uri, client, "server2")) {
+				tn.setFilterSpec(FilterSpec.fromFilterLine("combine:blob:limit=5"
+						+ "+sparse:oid=" + sparse.name()));
+				tn.fetch(NullProgressMonitor.INSTANCE,
+						Collections.singletonList(new RefSpec(commit.name())));
+				assertTrue(client.getObjectDatabase().has(tree.toObjectId()));
+				assertTrue(
+						client.getObjectDatabase().has(shortBlob.toObjectId()));
+				assertFalse(
+						client.getObjectDatabase().has(longBlob.toObjectId()));
+				assertFalse(client.getObjectDatabase().has(docs.toObjectId()));
+			}
+		}
+	}
+
 	@Test
 	public void testFetchExplicitBlobWithFilterAndBitmaps() throws Exception {
 		InMemoryRepository server2 = newRepo("server2");
@@ -296,6 +511,70 @@ public void testFetchWithBlobLimitFilterAndBitmaps() throws Exception {
 		}
 	}
 
+	@Test
+	public void testFetchWithBlobLimitFilterAndBitmapsRepeated()
+			throws Exception {
+		InMemoryRepository server2 = newRepo("server2");
+		try (TestRepository<InMemoryRepository> remote2 = new TestRepository<>(
+				server2)) {
+			RevBlob longBlob = remote2.blob("foobar");
+			RevBlob shortBlob = remote2.blob("fooba");
+			RevCommit commit = remote2.commit(remote2.tree(
+					remote2.file("1", longBlob), remote2.file("2", shortBlob)));
+			remote2.update("master", commit);
+
+			server2.getConfig().setBoolean("uploadpack", null, "allowfilter",
+					true);
+
+			// generate bitmaps
+			new DfsGarbageCollector(server2).pack(null);
+			server2.scanForRepoChanges();
+
+			testProtocol = new TestProtocol<>((Object req, Repository db) -> {
+				UploadPack up = new UploadPack(db);
+				return up;
+			}, null);
+			uri = testProtocol.register(ctx, server2);
+
+			try (Transport tn = testProtocol.open(uri, client, "server2")) {
+				tn.setFilterSpec(FilterSpec.withBlobLimit(5));
+				tn.fetch(NullProgressMonitor.INSTANCE,
+						Collections.singletonList(new RefSpec(commit.name())));
+				assertFalse(
+						client.getObjectDatabase().has(longBlob.toObjectId()));
+				assertTrue(
+						client.getObjectDatabase().has(shortBlob.toObjectId()));
+			}
+
+			// Sizes of blobs in the bitmapped pack are now known; blobs
+			// written since must still be filtered.
+			RevBlob newLongBlob = remote2.blob("foobaz");
+			RevBlob newShortBlob = remote2.blob("foob");
+			RevCommit commit2 = remote2.commit(
+					remote2.tree(remote2.file("1", longBlob),
+							remote2.file("2", shortBlob),
+							remote2.file("3", newLongBlob),
+							remote2.file("4", newShortBlob)),
+					commit);
+			remote2.update("master", commit2);
+
+			InMemoryRepository client2 = newRepo("client2");
+			try (Transport tn = testProtocol.open(uri, client2, "server2")) {
+				tn.setFilterSpec(FilterSpec.withBlobLimit(5));
+				tn.fetch(NullProgressMonitor.INSTANCE,
+						Collections.singletonList(new RefSpec(commit2.name())));
+				assertFalse(
+						client2.getObjectDatabase().has(longBlob.toObjectId()));
+				assertFalse(client2.getObjectDatabase()
+						.has(newLongBlob.toObjectId()));
+				assertTrue(client2.getObjectDatabase()
+						.has(shortBlob.toObjectId()));
+				assertTrue(client2.getObjectDatabase()
+						.has(newShortBlob.toObjectId()));
+			}
+		}
+	}
+
 	@Test
 	public void testFetchWithNonSupportingServer() throws Exception {
 		InMemoryRepository server2 = newRepo("server2");
@@ -416,6 +695,110 @@ public void onFetch(FetchV2Request req) {
 		}
 	}
 
+	@Test
+	public void testFetchFromPackResponseCache() throws Exception {
+		RevBlob blob = remote.blob("foo");
+		RevCommit commit = remote.commit().add("foo", blob).create();
+		remote.update("master", commit);
+
+		AtomicInteger hits = new AtomicInteger();
+		InMemoryPackResponseCache cache = new InMemoryPackResponseCache(
+				1024 * 1024, 1024 * 1024) {
+			@Override
+			public synchronized Entry get(ObjectId key) {
+				Entry e = super.get(key);
+				if (e != null) {
+					hits.incrementAndGet();
+				}
+				return e;
+			}
+		};
+		testProtocol = new TestProtocol<>((Object req, Repository db) -> {
+			UploadPack up = new UploadPack(db);
+			up.setPackResponseCache(cache);
+			return up;
+		}, null);
+		uri = testProtocol.register(ctx, server);
+
+		fetchMaster(client);
+		assertTrue(client.getObjectDatabase().has(blob.toObjectId()));
+		assertEquals(0, hits.get());
+		long size = cache.getTotalBytes();
+		assertTrue(size > 0);
+
+		InMemoryRepository client2 = newRepo("client2");
+		fetchMaster(client2);
+		assertTrue(client2.getObjectDatabase().has(commit.toObjectId()));
+		assertTrue(client2.getObjectDatabase().has(blob.toObjectId()));
+		assertEquals(1, hits.get());
+		assertEquals(size, cache.getTotalBytes());
+
+		// Updating the advertised refs invalidates the response.
+		RevCommit commit2 = remote.commit().parent(commit).create();
+		remote.update("master", commit2);
+		InMemoryRepository client3 = newRepo("client3");
+		fetchMaster(client3);
+		assertTrue(client3.getObjectDatabase().has(commit2.toObjectId()));
+		assertEquals(1, hits.get());
+		assertTrue(cache.getTotalBytes() > size);
+	}
+
+	@Test
+	public void testPackResponseCacheSkipsLargePacks() throws Exception {
+		RevBlob blob = remote.blob("foo");
+		RevCommit commit = remote.commit().add("foo", blob).create();
+		remote.update("master", commit);
+
+		InMemoryPackResponseCache cache = new InMemoryPackResponseCache(
+				1024 * 1024, 10);
+		testProtocol = new TestProtocol<>((Object req, Repository db) -> {
+			UploadPack up = new UploadPack(db);
+			up.setPackResponseCache(cache);
+			return up;
+		}, null);
+		uri = testProtocol.register(ctx, server);
+
+		fetchMaster(client);
+		assertTrue(client.getObjectDatabase().has(blob.toObjectId()));
+		assertEquals(0, cache.getTotalBytes());
+	}
+
+	@Test
+	public void testFetchWithPackSendExecutor() throws Exception {
+		RevBlob blob = remote.blob("a blob larger than the send buffer");
+		RevCommit commit = remote.commit().add("foo", blob).create();
+		remote.update("master", commit);
+
+		ExecutorService executor = Executors.newCachedThreadPool();
+		AtomicReference<PackStatistics> uploadStats = new AtomicReference<>();
+		try {
+			testProtocol = new TestProtocol<>((Object req, Repository db) -> {
+				UploadPack up = new UploadPack(db);
+				up.setPackSendExecutor(executor);
+				up.setPackSendBufferSize(16);
+				up.setPostUploadHook(uploadStats::set);
+				return up;
+			}, null);
+			uri = testProtocol.register(ctx, server);
+
+			fetchMaster(client);
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(client.getObjectDatabase().has(commit.toObjectId()));
+		assertTrue(client.getObjectDatabase().has(blob.toObjectId()));
+		assertTrue(uploadStats.get().getMaxSendBuffered() > 0);
+		assertTrue(uploadStats.get().getMaxSendBuffered() <= 16);
+		assertTrue(uploadStats.get().getSendStalls() > 0);
+	}
+
+	private void fetchMaster(Repository dst) throws Exception {
+		try (Transport tn = testProtocol.open(uri, dst, "server")) {
+			tn.fetch(NullProgressMonitor.INSTANCE, Collections.singletonList(
+					new RefSpec("refs/heads/master")));
+		}
+	}
+
 	@Test
 	public void testV2Capabilities() throws Exception {
 		TestV2Hook hook = new TestV2Hook();
@@ -45,6 +45,7 @@
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
@@ -56,6 +57,7 @@
 import java.security.NoSuchAlgorithmException;
 
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.MutableObjectId;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.util.IO;
 import org.junit.Test;
@@ -218,6 +220,39 @@ public void detectsShatteredByDefault() throws IOException {
 		}
 	}
 
+	@Test
+	public void trustedInstanceMatchesPureJava() throws IOException {
+		byte[] pdf1 = read("shattered-1.pdf", 422435);
+		for (String in : new String[] { "", TEST1, TEST2 }) {
+			SHA1 s = SHA1.newInstance();
+			s.update(in.getBytes(UTF_8));
+			SHA1 t = SHA1.newTrustedInstance();
+			t.update(in.getBytes(UTF_8));
+			assertEquals(s.toObjectId(), t.toObjectId());
+		}
+
+		SHA1 t = SHA1.newTrustedInstance();
+		assertEquals(blob(pdf1, SHA1.newInstance()), blob(pdf1, t));
+
+		MutableObjectId id = new MutableObjectId();
+		t.reset();
+		t.update(TEST1.getBytes(UTF_8));
+		t.digest(id);
+		assertEquals(ObjectId.fromString(
+				"a9993e364706816aba3e25717850c26c9cd0d89d"), id);
+	}
+
+	@Test
+	public void trustedInstanceDoesNotDetectShattered() throws IOException {
+		byte[] pdf1 = read("shattered-1.pdf", 422435);
+		SHA1 t = SHA1.newTrustedInstance();
+		t.update(pdf1);
+		assertEquals(
+				ObjectId.fromString("38762cf7f55934b34d179ae6a4c80cadccbb7f0a"),
+				t.toObjectId());
+		assertFalse(t.hasCollision());
+	}
+
 	private static ObjectId blob(byte[] pdf1, SHA1 s) {
 		s.update(Constants.encodedTypeString(Constants.OBJ_BLOB));
 		s.update((byte) ' ');
@@ -54,6 +54,7 @@
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.submodule.SubmoduleWalk.IgnoreSubmoduleMode;
+import org.eclipse.jgit.treewalk.FileChangeMonitor;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.WorkingTreeIterator;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
@@ -75,6 +76,10 @@ public class StatusCommand extends GitCommand<Status> {
 
 	private IgnoreSubmoduleMode ignoreSubmoduleMode = null;
 
+	private int threads = 1;
+
+	private FileChangeMonitor fileChangeMonitor;
+
 	/**
 	 * Constructor for StatusCommand.
 	 *
@@ -151,6 +156,8 @@ public Status call() throws GitAPIException, NoWorkTreeException {
 				diff.setIgnoreSubmoduleMode(ignoreSubmoduleMode);
 			if (paths != null)
 				diff.setFilter(PathFilterGroup.createFromStrings(paths));
+			diff.setThreads(threads);
+			diff.setFileChangeMonitor(fileChangeMonitor);
 			if (progressMonitor == null)
 				diff.diff();
 			else
@@ -176,6 +183,40 @@ public StatusCommand setWorkingTreeIt(WorkingTreeIterator workingTreeIt) {
 		return this;
 	}
 
+	/**
+	 * Set the number of threads comparing the working tree.
+	 * <p>
+	 * With more than one thread, the working tree is read through
+	 * {@link org.eclipse.jgit.treewalk.FileTreeIterator}s instead of the
+	 * iterator set by {@link #setWorkingTreeIt(WorkingTreeIterator)}.
+	 *
+	 * @param threads
+	 *            number of threads to use; 0 to use one thread per processor.
+	 *            The default is 1.
+	 * @return {@code this}
+	 * @see IndexDiff#setThreads(int)
+	 * @since 5.6
+	 */
+	public StatusCommand setThreads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Set a monitor reporting the changes made to the working tree, so that
+	 * directories in which nothing changed are not read again.
+	 *
+	 * @param monitor
+	 *            the monitor, or {@code null} to read the whole working tree.
+	 * @return {@code this}
+	 * @see IndexDiff#setFileChangeMonitor(FileChangeMonitor)
+	 * @since 5.6
+	 */
+	public StatusCommand setFileChangeMonitor(FileChangeMonitor monitor) {
+		this.fileChangeMonitor = monitor;
+		return this;
+	}
+
 	/**
 	 * To set the {@link org.eclipse.jgit.lib.ProgressMonitor} which contains
 	 * callback methods to inform you about the progress of this command.
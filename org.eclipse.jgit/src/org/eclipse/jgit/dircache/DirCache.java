@@ -47,23 +47,36 @@
 
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardCopyOption;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.text.ParseException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IndexReadException;
 import org.eclipse.jgit.errors.LockFailedException;
@@ -74,6 +87,7 @@
 import org.eclipse.jgit.internal.storage.file.FileSnapshot;
 import org.eclipse.jgit.internal.storage.file.LockFile;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
@@ -84,12 +98,21 @@
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.GitDateParser;
 import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.MutableInteger;
 import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.eclipse.jgit.util.StringUtils;
+import org.eclipse.jgit.util.SystemReader;
 import org.eclipse.jgit.util.TemporaryBuffer;
+import org.eclipse.jgit.util.io.CountingOutputStream;
 import org.eclipse.jgit.util.io.SilentFileInputStream;
 
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+
 /**
  * Support for the Git dircache (aka index file).
  * <p>
@@ -108,6 +131,34 @@ public class DirCache {
 
 	private static final int EXT_TREE = 0x54524545 /* 'TREE' */;
 
+	private static final int EXT_UNTR = 0x554e5452 /* 'UNTR' */;
+
+	private static final int EXT_FSMN = 0x46534d4e /* 'FSMN' */;
+
+	private static final int FSMN_VERSION_1 = 1;
+
+	private static final int FSMN_VERSION_2 = 2;
+
+	private static final int EXT_LINK = 0x6c696e6b /* 'link' */;
+
+	private static final int EXT_EOIE = 0x454f4945 /* 'EOIE' */;
+
+	private static final int EXT_IEOT = 0x49454f54 /* 'IEOT' */;
+
+	private static final int IEOT_VERSION = 1;
+
+	/** Size of the end of index entry extension, including its header. */
+	private static final int EOIE_LENGTH = 8 + 4 + Constants.OBJECT_ID_LENGTH;
+
+	/** Number of entries worth parsing on a thread of its own. */
+	private static final int THREAD_COST = 10000;
+
+	private static final String SHARED_INDEX_PREFIX = "sharedindex."; //$NON-NLS-1$
+
+	private static final int DEFAULT_MAX_PERCENT_CHANGE = 20;
+
+	private static final String DEFAULT_SHARED_INDEX_EXPIRE = "2.weeks.ago"; //$NON-NLS-1$
+
 	private static final DirCacheEntry[] NO_ENTRIES = {};
 
 	private static final byte[] NO_CHECKSUM = {};
@@ -190,8 +241,10 @@ public static DirCache read(ObjectReader reader, AnyObjectId treeId)
 	 */
 	public static DirCache read(Repository repository)
 			throws CorruptObjectException, IOException {
-		final DirCache c = read(repository.getIndexFile(), repository.getFS());
+		final DirCache c = new DirCache(repository.getIndexFile(),
+				repository.getFS());
 		c.repository = repository;
+		c.read();
 		return c;
 	}
 
@@ -285,9 +338,20 @@ public static DirCache lock(File indexLocation, FS fs)
 	public static DirCache lock(final Repository repository,
 			final IndexChangedListener indexChangedListener)
 			throws CorruptObjectException, IOException {
-		DirCache c = lock(repository.getIndexFile(), repository.getFS(),
-				indexChangedListener);
+		final DirCache c = new DirCache(repository.getIndexFile(),
+				repository.getFS());
 		c.repository = repository;
+		if (!c.lock())
+			throw new LockFailedException(repository.getIndexFile());
+
+		try {
+			c.read();
+		} catch (IOException | RuntimeException | Error e) {
+			c.unlock();
+			throw e;
+		}
+
+		c.registerIndexChangedListener(indexChangedListener);
 		return c;
 	}
 
@@ -336,6 +400,21 @@ public static DirCache lock(final File indexLocation, final FS fs,
 	/** Cache tree for this index; null if the cache tree is not available. */
 	private DirCacheTree tree;
 
+	/** Git's untracked cache; null if the index has none. */
+	private UntrackedCache untrackedCache;
+
+	/** Token of the file monitor the entries' flags refer to; null if none. */
+	private String fileMonitorToken;
+
+	/** Format version of the index file read, 0 if none was read. */
+	private int version;
+
+	/** Checksum of the shared index, if the index is split. */
+	private ObjectId sharedIndexId;
+
+	/** Entries of the shared index in their stored order, if split. */
+	private DirCacheEntry[] sharedEntries;
+
 	/** Our active lock (if we hold it); null if we don't have it locked. */
 	private LockFile myLock;
 
@@ -398,6 +477,8 @@ public DirCacheEditor editor() {
 	}
 
 	void replace(DirCacheEntry[] e, int cnt) {
+		if (untrackedCache != null)
+			invalidateUntracked(e, cnt);
 		sortedEntries = e;
 		entryCnt = cnt;
 		tree = null;
@@ -426,7 +507,7 @@ else if (snapshot == null || snapshot.isModified(liveFile)) {
 			try (SilentFileInputStream inStream = new SilentFileInputStream(
 					liveFile)) {
 				clear();
-				readFrom(inStream);
+				readFrom(inStream, false);
 			} catch (FileNotFoundException fnfe) {
 				if (liveFile.exists()) {
 					// Panic: the index file exists but we can't read it
@@ -463,113 +544,476 @@ public void clear() {
 		sortedEntries = NO_ENTRIES;
 		entryCnt = 0;
 		tree = null;
+		untrackedCache = null;
+		fileMonitorToken = null;
+		version = 0;
+		sharedIndexId = null;
+		sharedEntries = null;
 		readIndexChecksum = NO_CHECKSUM;
 	}
 
-	private void readFrom(InputStream inStream) throws IOException,
-			CorruptObjectException {
-		final BufferedInputStream in = new BufferedInputStream(inStream);
-		final MessageDigest md = Constants.newMessageDigest();
+	private void readFrom(InputStream inStream, boolean shared)
+			throws IOException, CorruptObjectException {
+		// The whole file is loaded so that its checksum can be computed, and
+		// the blocks of entries listed in its offset table parsed, on other
+		// threads while the extensions are read.
+		//
+		final ByteBuffer bb = IO.readWholeStream(inStream,
+				(int) Math.min(liveFile.length(), Integer.MAX_VALUE));
+		final byte[] buf = bb.array();
+		final int len = bb.limit();
+		if (len < 12 + Constants.OBJECT_ID_LENGTH)
+			throw new EOFException(JGitText.get().shortReadOfBlock);
 
 		// Read the index header and verify we understand it.
 		//
 		final byte[] hdr = new byte[20];
-		IO.readFully(in, hdr, 0, 12);
-		md.update(hdr, 0, 12);
+		System.arraycopy(buf, 0, hdr, 0, 12);
 		if (!is_DIRC(hdr))
 			throw new CorruptObjectException(JGitText.get().notADIRCFile);
 		final int ver = NB.decodeInt32(hdr, 4);
-		boolean extended = false;
-		if (ver == 3)
-			extended = true;
-		else if (ver != 2)
+		if (ver != 2 && ver != 3 && ver != 4)
 			throw new CorruptObjectException(MessageFormat.format(
 					JGitText.get().unknownDIRCVersion, Integer.valueOf(ver)));
+		version = ver;
 		entryCnt = NB.decodeInt32(hdr, 8);
 		if (entryCnt < 0)
 			throw new CorruptObjectException(JGitText.get().DIRCHasTooManyEntries);
 
 		snapshot = FileSnapshot.save(liveFile);
-		Instant smudge = snapshot.lastModifiedInstant();
+		final Instant smudge = snapshot.lastModifiedInstant();
+		final boolean verify = !getBoolean(
+				ConfigConstants.CONFIG_KEY_SKIP_HASH, false);
+
+		int threads = getIndexThreads(0);
+		if (threads < 1)
+			threads = Math.min(Runtime.getRuntime().availableProcessors(),
+					entryCnt / THREAD_COST);
+		final int extensions = threads > 1 ? readEndOfIndexEntries(buf, len)
+				: 0;
+		final int[] blocks = extensions > 0
+				? readOffsetTable(buf, len, extensions, entryCnt)
+				: null;
+
+		ExecutorService pool = null;
+		final List<Future<DirCacheEntry[]>> parts = new ArrayList<>();
+		Future<byte[]> checksum = null;
+		try {
+			// Load the individual file entries.
+			//
+			final InputStream in;
+			if (blocks != null) {
+				pool = Executors.newFixedThreadPool(threads);
+				if (verify)
+					checksum = pool.submit(() -> digest(buf, len));
+				for (int i = 0; i < blocks.length; i += 2) {
+					final int off = blocks[i];
+					final int end = i + 2 < blocks.length ? blocks[i + 2]
+							: extensions;
+					final int cnt = blocks[i + 1];
+					parts.add(pool.submit(() -> readEntryBlock(buf, off, end,
+							ver, cnt, smudge)));
+				}
+				in = new ByteArrayInputStream(buf, extensions,
+						len - extensions);
+			} else {
+				in = new ByteArrayInputStream(buf, 12, len - 12);
+				sortedEntries = readEntries(in, ver, entryCnt, smudge);
+			}
 
-		// Load the individual file entries.
-		//
-		final int infoLength = DirCacheEntry.getMaximumInfoLength(extended);
-		final byte[] infos = new byte[infoLength * entryCnt];
-		sortedEntries = new DirCacheEntry[entryCnt];
+			// After the file entries are index extensions, and then a footer.
+			//
+			byte[] link = null;
+			byte[] fileMonitor = null;
+			for (;;) {
+				in.mark(21);
+				IO.readFully(in, hdr, 0, 20);
+				if (in.read() < 0) {
+					// No extensions present; the file ended where we
+					// expected.
+					//
+					break;
+				}
 
-		final MutableInteger infoAt = new MutableInteger();
-		for (int i = 0; i < entryCnt; i++) {
-			sortedEntries[i] = new DirCacheEntry(infos, infoAt, in, md, smudge);
-		}
+				in.reset();
+				IO.skipFully(in, 8);
 
-		// After the file entries are index extensions, and then a footer.
-		//
-		for (;;) {
-			in.mark(21);
-			IO.readFully(in, hdr, 0, 20);
-			if (in.read() < 0) {
-				// No extensions present; the file ended where we expected.
-				//
-				break;
+				long sz = NB.decodeUInt32(hdr, 4);
+				switch (NB.decodeInt32(hdr, 0)) {
+				case EXT_TREE: {
+					final byte[] raw = readExtension(in, hdr, sz);
+					tree = new DirCacheTree(raw, new MutableInteger(), null);
+					break;
+				}
+				case EXT_UNTR: {
+					final byte[] raw = readExtension(in, hdr, sz);
+					try {
+						untrackedCache = UntrackedCache.read(raw);
+					} catch (CorruptObjectException e) {
+						// The cache is only an optimization; without it
+						// the next status scans the working tree again.
+						untrackedCache = null;
+					}
+					break;
+				}
+				case EXT_LINK:
+					if (shared)
+						throw new CorruptObjectException(
+								JGitText.get().corruptSplitIndexExtension);
+					link = readExtension(in, hdr, sz);
+					break;
+				case EXT_FSMN:
+					fileMonitor = readExtension(in, hdr, sz);
+					break;
+				default:
+					if (hdr[0] >= 'A' && hdr[0] <= 'Z') {
+						// The extension is optional and is here only as
+						// a performance optimization. Since we do not
+						// understand it, we can safely skip past it.
+						// The end of index entry and offset table
+						// extensions were already used above.
+						//
+						skipOptionalExtension(in, hdr, sz);
+					} else {
+						// The extension is not an optimization and is
+						// _required_ to understand this index format.
+						// Since we did not trap it above we must abort.
+						//
+						throw new CorruptObjectException(MessageFormat.format(JGitText.get().DIRCExtensionNotSupportedByThisVersion
+								, formatExtensionName(hdr)));
+					}
+				}
 			}
 
-			in.reset();
-			md.update(hdr, 0, 8);
-			IO.skipFully(in, 8);
-
-			long sz = NB.decodeUInt32(hdr, 4);
-			switch (NB.decodeInt32(hdr, 0)) {
-			case EXT_TREE: {
-				if (Integer.MAX_VALUE < sz) {
-					throw new CorruptObjectException(MessageFormat.format(
-							JGitText.get().DIRCExtensionIsTooLargeAt,
-							formatExtensionName(hdr), Long.valueOf(sz)));
+			if (pool != null) {
+				sortedEntries = new DirCacheEntry[entryCnt];
+				int n = 0;
+				for (Future<DirCacheEntry[]> f : parts) {
+					final DirCacheEntry[] part = f.get();
+					System.arraycopy(part, 0, sortedEntries, n, part.length);
+					n += part.length;
 				}
-				final byte[] raw = new byte[(int) sz];
-				IO.readFully(in, raw, 0, raw.length);
-				md.update(raw, 0, raw.length);
-				tree = new DirCacheTree(raw, new MutableInteger(), null);
-				break;
 			}
-			default:
-				if (hdr[0] >= 'A' && hdr[0] <= 'Z') {
-					// The extension is optional and is here only as
-					// a performance optimization. Since we do not
-					// understand it, we can safely skip past it, after
-					// we include its data in our checksum.
-					//
-					skipOptionalExtension(in, md, hdr, sz);
-				} else {
-					// The extension is not an optimization and is
-					// _required_ to understand this index format.
-					// Since we did not trap it above we must abort.
-					//
-					throw new CorruptObjectException(MessageFormat.format(JGitText.get().DIRCExtensionNotSupportedByThisVersion
-							, formatExtensionName(hdr)));
+
+			// An index written without checksum has a null trailer.
+			//
+			readIndexChecksum = hdr;
+			if (verify && !isNullChecksum(hdr)) {
+				final byte[] sum = checksum != null ? checksum.get()
+						: digest(buf, len);
+				if (!Arrays.equals(sum, hdr)) {
+					throw new CorruptObjectException(
+							JGitText.get().DIRCChecksumMismatch);
 				}
 			}
+
+			// Entries without path replace those of the shared index. The
+			// positions of the file monitor are those of the merged index.
+			//
+			int stripped = 0;
+			for (int i = 0; i < entryCnt; i++) {
+				if (sortedEntries[i].path.length == 0)
+					stripped++;
+			}
+			if (link != null)
+				stripped -= mergeSharedIndex(link);
+			if (stripped != 0)
+				throw new CorruptObjectException(
+						JGitText.get().corruptObjectNameZeroLength);
+			if (fileMonitor != null)
+				readFileMonitor(fileMonitor);
+		} catch (InterruptedException e) {
+			for (Future<DirCacheEntry[]> f : parts)
+				f.cancel(true);
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable err = e.getCause();
+			if (err instanceof Error)
+				throw (Error) err;
+			if (err instanceof RuntimeException)
+				throw (RuntimeException) err;
+			if (err instanceof IOException)
+				throw (IOException) err;
+			throw new IOException(err.getMessage(), err);
+		} finally {
+			if (pool != null)
+				pool.shutdown();
 		}
+	}
+
+	private static DirCacheEntry[] readEntries(InputStream in, int ver,
+			int cnt, Instant smudge) throws IOException {
+		final int infoLength = DirCacheEntry.getMaximumInfoLength(ver != 2);
+		final byte[] infos = new byte[infoLength * cnt];
+		final DirCacheEntry[] entries = new DirCacheEntry[cnt];
 
-		readIndexChecksum = md.digest();
-		if (!Arrays.equals(readIndexChecksum, hdr)) {
-			throw new CorruptObjectException(JGitText.get().DIRCChecksumMismatch);
+		final MutableInteger infoAt = new MutableInteger();
+		byte[] previous = ver == 4 ? new byte[0] : null;
+		for (int i = 0; i < cnt; i++) {
+			final DirCacheEntry e = new DirCacheEntry(infos, infoAt, in,
+					smudge, previous);
+			if (previous != null)
+				previous = e.path;
+			entries[i] = e;
+		}
+		return entries;
+	}
+
+	// Parses the cnt entries stored in buf from off to end.
+	private static DirCacheEntry[] readEntryBlock(byte[] buf, int off, int end,
+			int ver, int cnt, Instant smudge) throws IOException {
+		final ByteArrayInputStream in = new ByteArrayInputStream(buf, off,
+				end - off);
+		final DirCacheEntry[] entries = readEntries(in, ver, cnt, smudge);
+		if (in.available() != 0)
+			throw new CorruptObjectException(
+					JGitText.get().corruptIndexOffsetTable);
+		return entries;
+	}
+
+	private static byte[] digest(byte[] buf, int len) {
+		final MessageDigest md = Constants.newMessageDigest();
+		md.update(buf, 0, len - Constants.OBJECT_ID_LENGTH);
+		return md.digest();
+	}
+
+	private static boolean isNullChecksum(byte[] sum) {
+		for (int i = 0; i < Constants.OBJECT_ID_LENGTH; i++) {
+			if (sum[i] != 0)
+				return false;
+		}
+		return true;
+	}
+
+	// Returns the offset of the first extension recorded by the end of index
+	// entry extension, or 0 if there is none or it does not match the
+	// extensions present.
+	private static int readEndOfIndexEntries(byte[] buf, int len) {
+		final int eoie = len - Constants.OBJECT_ID_LENGTH - EOIE_LENGTH;
+		if (eoie < 12 || NB.decodeInt32(buf, eoie) != EXT_EOIE
+				|| NB.decodeInt32(buf, eoie + 4) != EOIE_LENGTH - 8)
+			return 0;
+		final int extensions = NB.decodeInt32(buf, eoie + 8);
+		if (extensions < 12 || extensions > eoie)
+			return 0;
+
+		// The extension holds the hash of the headers of all extensions
+		// written before it, to verify the offset points to the first one.
+		//
+		final MessageDigest md = Constants.newMessageDigest();
+		long p = extensions;
+		while (p < eoie) {
+			if (p + 8 > eoie)
+				return 0;
+			md.update(buf, (int) p, 8);
+			p += 8 + NB.decodeUInt32(buf, (int) p + 4);
+		}
+		if (p != eoie)
+			return 0;
+		final byte[] sum = md.digest();
+		for (int i = 0; i < sum.length; i++) {
+			if (sum[i] != buf[eoie + 12 + i])
+				return 0;
+		}
+		return extensions;
+	}
+
+	// Returns the offset and number of entries of each block listed by the
+	// index entry offset table extension, or null if there is none or it does
+	// not match the entries present.
+	private static int[] readOffsetTable(byte[] buf, int len, int extensions,
+			int entryCnt) {
+		final int end = len - Constants.OBJECT_ID_LENGTH - EOIE_LENGTH;
+		int p = extensions;
+		while (p < end) {
+			final int sz = NB.decodeInt32(buf, p + 4);
+			if (NB.decodeInt32(buf, p) != EXT_IEOT) {
+				p += 8 + sz;
+				continue;
+			}
+			if (sz < 4 || (sz - 4) % 8 != 0
+					|| NB.decodeInt32(buf, p + 8) != IEOT_VERSION)
+				return null;
+			final int[] blocks = new int[(sz - 4) / 4];
+			long total = 0;
+			int last = 0;
+			for (int i = 0; i < blocks.length; i += 2) {
+				final int off = NB.decodeInt32(buf, p + 12 + 4 * i);
+				final int cnt = NB.decodeInt32(buf, p + 16 + 4 * i);
+				if (i == 0 ? off != 12 : off <= last)
+					return null;
+				if (off >= extensions || cnt <= 0)
+					return null;
+				blocks[i] = off;
+				blocks[i + 1] = cnt;
+				last = off;
+				total += cnt;
+			}
+			return blocks.length > 0 && total == entryCnt ? blocks : null;
+		}
+		return null;
+	}
+
+	private int mergeSharedIndex(byte[] raw) throws IOException {
+		final ObjectId id;
+		final EWAHCompressedBitmap deleted = new EWAHCompressedBitmap();
+		final EWAHCompressedBitmap replaced = new EWAHCompressedBitmap();
+		try {
+			id = ObjectId.fromRaw(raw, 0);
+			final int n = Constants.OBJECT_ID_LENGTH;
+			if (raw.length > n) {
+				DataInputStream in = new DataInputStream(
+						new ByteArrayInputStream(raw, n, raw.length - n));
+				deleted.deserialize(in);
+				replaced.deserialize(in);
+			}
+		} catch (IOException | RuntimeException e) {
+			throw corruptSplitIndex(e);
+		}
+		if (ObjectId.zeroId().equals(id))
+			return 0;
+
+		final DirCacheEntry[] base = readSharedIndex(id);
+		final DirCacheEntry[] merged = base.clone();
+		int r = 0;
+		for (IntIterator i = replaced.intIterator(); i.hasNext();) {
+			final int pos = i.next();
+			if (pos >= base.length || r >= entryCnt
+					|| sortedEntries[r].path.length != 0)
+				throw corruptSplitIndex(null);
+			merged[pos] = new DirCacheEntry(base[pos].path, sortedEntries[r++]);
 		}
+		int cnt = base.length;
+		for (IntIterator i = deleted.intIterator(); i.hasNext();) {
+			final int pos = i.next();
+			if (pos >= base.length || merged[pos] != base[pos])
+				throw corruptSplitIndex(null);
+			merged[pos] = null;
+			cnt--;
+		}
+
+		// The remaining entries are added, or replace an entry of the same
+		// path and stage.
+		//
+		final DirCacheEntry[] added = Arrays.copyOfRange(sortedEntries, r,
+				entryCnt);
+		Arrays.sort(added, ENT_CMP);
+		final DirCacheEntry[] result = new DirCacheEntry[cnt + added.length];
+		int n = 0;
+		int a = 0;
+		for (DirCacheEntry e : merged) {
+			if (e == null)
+				continue;
+			while (a < added.length && ENT_CMP.compare(added[a], e) < 0)
+				result[n++] = added[a++];
+			if (a < added.length && ENT_CMP.compare(added[a], e) == 0)
+				result[n++] = added[a++];
+			else
+				result[n++] = e;
+		}
+		while (a < added.length)
+			result[n++] = added[a++];
+
+		sortedEntries = result;
+		entryCnt = n;
+		sharedIndexId = id;
+		sharedEntries = base;
+		return r;
+	}
+
+	private DirCacheEntry[] readSharedIndex(ObjectId id) throws IOException {
+		final File file = sharedIndexFile(liveFile.getParentFile(), id);
+		final DirCache base = new DirCache(file, null);
+		try (SilentFileInputStream in = new SilentFileInputStream(file)) {
+			base.readFrom(in, true);
+		} catch (FileNotFoundException e) {
+			CorruptObjectException err = new CorruptObjectException(
+					MessageFormat.format(JGitText.get().corruptSharedIndex,
+							file.getAbsolutePath()));
+			err.initCause(e);
+			throw err;
+		}
+		if (!id.equals(ObjectId.fromRaw(base.readIndexChecksum)))
+			throw new CorruptObjectException(MessageFormat.format(
+					JGitText.get().corruptSharedIndex, file.getAbsolutePath()));
+		for (int i = 0; i < base.entryCnt; i++)
+			base.sortedEntries[i].setShared(true);
+		return base.sortedEntries;
+	}
+
+	private static CorruptObjectException corruptSplitIndex(
+			@Nullable Exception cause) {
+		CorruptObjectException err = new CorruptObjectException(
+				JGitText.get().corruptSplitIndexExtension);
+		if (cause != null)
+			err.initCause(cause);
+		return err;
+	}
+
+	private static File sharedIndexFile(File dir, AnyObjectId id) {
+		return new File(dir, SHARED_INDEX_PREFIX + id.name());
 	}
 
-	private void skipOptionalExtension(final InputStream in,
-			final MessageDigest md, final byte[] hdr, long sz)
+	private static byte[] readExtension(InputStream in, byte[] hdr, long sz)
 			throws IOException {
-		final byte[] b = new byte[4096];
+		if (Integer.MAX_VALUE < sz) {
+			throw new CorruptObjectException(MessageFormat.format(
+					JGitText.get().DIRCExtensionIsTooLargeAt,
+					formatExtensionName(hdr), Long.valueOf(sz)));
+		}
+		final byte[] raw = new byte[(int) sz];
+		IO.readFully(in, raw, 0, raw.length);
+		return raw;
+	}
+
+	// Applies an FSMN extension. Unreadable monitor state is dropped, which
+	// leaves every entry to be checked against the working tree.
+	private void readFileMonitor(byte[] raw) {
+		try {
+			int p;
+			String token;
+			switch (NB.decodeInt32(raw, 0)) {
+			case FSMN_VERSION_1:
+				token = Long.toUnsignedString(NB.decodeInt64(raw, 4));
+				p = 12;
+				break;
+			case FSMN_VERSION_2:
+				int eos = RawParseUtils.next(raw, 4, '\0') - 1;
+				token = RawParseUtils.decode(raw, 4, eos);
+				p = eos + 1;
+				break;
+			default:
+				return;
+			}
+			int size = NB.decodeInt32(raw, p);
+			EWAHCompressedBitmap notValid = new EWAHCompressedBitmap();
+			notValid.deserialize(new DataInputStream(
+					new ByteArrayInputStream(raw, p + 4, size)));
+			for (int i = 0; i < entryCnt; i++)
+				sortedEntries[i].setFileMonitorValid(true);
+			for (IntIterator i = notValid.intIterator(); i.hasNext();) {
+				int n = i.next();
+				if (n < entryCnt)
+					sortedEntries[n].setFileMonitorValid(false);
+			}
+			fileMonitorToken = token;
+		} catch (IOException | RuntimeException e) {
+			for (int i = 0; i < entryCnt; i++)
+				sortedEntries[i].setFileMonitorValid(false);
+			fileMonitorToken = null;
+		}
+	}
+
+	private static void skipOptionalExtension(final InputStream in,
+			final byte[] hdr, long sz) throws IOException {
 		while (0 < sz) {
-			int n = in.read(b, 0, (int) Math.min(b.length, sz));
-			if (n < 0) {
+			long n = in.skip(sz);
+			if (n <= 0) {
 				throw new EOFException(
 						MessageFormat.format(
 								JGitText.get().shortReadOfOptionalDIRCExtensionExpectedAnotherBytes,
 								formatExtensionName(hdr), Long.valueOf(sz)));
 			}
-			md.update(b, 0, n);
 			sz -= n;
 		}
 	}
@@ -639,24 +1083,6 @@ void writeTo(File dir, OutputStream os) throws IOException {
 		final MessageDigest foot = Constants.newMessageDigest();
 		final DigestOutputStream dos = new DigestOutputStream(os, foot);
 
-		boolean extended = false;
-		for (int i = 0; i < entryCnt; i++) {
-			if (sortedEntries[i].isExtended()) {
-				extended = true;
-				break;
-			}
-		}
-
-		// Write the header.
-		//
-		final byte[] tmp = new byte[128];
-		System.arraycopy(SIG_DIRC, 0, tmp, 0, SIG_DIRC.length);
-		NB.encodeInt32(tmp, 4, extended ? 3 : 2);
-		NB.encodeInt32(tmp, 8, entryCnt);
-		dos.write(tmp, 0, 12);
-
-		// Write the individual file entries.
-
 		Instant smudge;
 		if (myLock != null) {
 			// For new files we need to smudge the index entry
@@ -683,30 +1109,373 @@ void writeTo(File dir, OutputStream os) throws IOException {
 			if (e.mightBeRacilyClean(smudge)) {
 				e.smudgeRacilyClean();
 			}
-			e.write(dos);
 		}
 
+		// Write the header and the individual file entries.
+		//
+		final int ver = getFormatVersion();
+		final boolean threaded = getIndexThreads(1) != 1;
+		final List<int[]> blocks = getBoolean(
+				ConfigConstants.CONFIG_KEY_RECORD_OFFSET_TABLE, threaded)
+						? new ArrayList<>()
+						: null;
+		final boolean skipHash = getBoolean(
+				ConfigConstants.CONFIG_KEY_SKIP_HASH, false);
+		dos.on(!skipHash);
+		final CountingOutputStream out = new CountingOutputStream(dos);
+		final byte[] tmp = new byte[128];
+		ExtensionWriter link = null;
+		if (dir != null && isSplitIndex()) {
+			link = writeSplitIndex(dir, out, ver, blocks);
+		} else {
+			sharedIndexId = null;
+			sharedEntries = null;
+			writeEntries(out, ver, sortedEntries, entryCnt, 0, blocks);
+		}
+
+		// The offset table comes first so that readers find it quickly.
+		//
+		final int extensions = (int) out.getCount();
+		final MessageDigest headers = Constants.newMessageDigest();
+		if (blocks != null && blocks.size() > 1) {
+			writeExtension(dir, out, tmp, headers, EXT_IEOT,
+					bb -> writeOffsetTable(bb, blocks));
+		}
+		if (link != null) {
+			writeExtension(dir, out, tmp, headers, EXT_LINK, link);
+		}
 		if (writeTree) {
-			@SuppressWarnings("resource") // Explicitly closed in try block, and
-											// destroyed in finally
-			TemporaryBuffer bb = new TemporaryBuffer.LocalFile(dir, 5 << 20);
-			try {
-				tree.write(tmp, bb);
-				bb.close();
-
-				NB.encodeInt32(tmp, 0, EXT_TREE);
-				NB.encodeInt32(tmp, 4, (int) bb.length());
-				dos.write(tmp, 0, 8);
-				bb.writeTo(dos, null);
-			} finally {
-				bb.destroy();
-			}
+			writeExtension(dir, out, tmp, headers, EXT_TREE,
+					bb -> tree.write(tmp, bb));
+		}
+		if (untrackedCache != null) {
+			writeExtension(dir, out, tmp, headers, EXT_UNTR,
+					untrackedCache::write);
+		}
+		if (fileMonitorToken != null) {
+			writeExtension(dir, out, tmp, headers, EXT_FSMN,
+					this::writeFileMonitor);
+		}
+		if (getBoolean(ConfigConstants.CONFIG_KEY_RECORD_END_OF_INDEX_ENTRIES,
+				threaded)) {
+			NB.encodeInt32(tmp, 0, EXT_EOIE);
+			NB.encodeInt32(tmp, 4, EOIE_LENGTH - 8);
+			NB.encodeInt32(tmp, 8, extensions);
+			System.arraycopy(headers.digest(), 0, tmp, 12,
+					Constants.OBJECT_ID_LENGTH);
+			out.write(tmp, 0, EOIE_LENGTH);
+		}
+		if (skipHash) {
+			// Without checksum the index is always reported as changed.
+			writeIndexChecksum = null;
+			os.write(new byte[Constants.OBJECT_ID_LENGTH]);
+		} else {
+			writeIndexChecksum = foot.digest();
+			os.write(writeIndexChecksum);
 		}
-		writeIndexChecksum = foot.digest();
-		os.write(writeIndexChecksum);
 		os.close();
 	}
 
+	private int getFormatVersion() {
+		int ver = version;
+		if (repository != null)
+			ver = repository.getConfig().getInt(
+					ConfigConstants.CONFIG_INDEX_SECTION, null,
+					ConfigConstants.CONFIG_KEY_VERSION, ver);
+		if (ver == 4)
+			return 4;
+		for (int i = 0; i < entryCnt; i++) {
+			if (sortedEntries[i].isExtended())
+				return 3;
+		}
+		return 2;
+	}
+
+	private boolean getBoolean(String name, boolean defaultValue) {
+		if (repository == null)
+			return defaultValue;
+		return repository.getConfig().getBoolean(
+				ConfigConstants.CONFIG_INDEX_SECTION, null, name, defaultValue);
+	}
+
+	// Reads index.threads like git: a number of threads, 0 or true to choose
+	// it from the number of processors and entries, and false for a single
+	// thread. Returns unset if the key is not set.
+	private int getIndexThreads(int unset) {
+		if (repository == null)
+			return unset;
+		final String v = repository.getConfig().getString(
+				ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THREADS);
+		if (v == null)
+			return unset;
+		try {
+			return Math.max(Integer.parseInt(v.trim()), 0);
+		} catch (NumberFormatException e) {
+			final Boolean b = StringUtils.toBooleanOrNull(v);
+			if (b == null)
+				throw new IllegalArgumentException(MessageFormat.format(
+						JGitText.get().invalidIntegerValue,
+						ConfigConstants.CONFIG_INDEX_SECTION,
+						ConfigConstants.CONFIG_KEY_THREADS, v), e);
+			return b.booleanValue() ? 0 : 1;
+		}
+	}
+
+	// Returns the number of entries per block of the offset table, or 0 if
+	// the cnt entries are not worth splitting.
+	private int getOffsetTableBlockSize(int cnt) {
+		final int threads = getIndexThreads(1);
+		final int n;
+		if (threads == 0)
+			n = Math.min(cnt / THREAD_COST,
+					Runtime.getRuntime().availableProcessors() - 1);
+		else
+			n = Math.min(threads, cnt);
+		return n > 1 ? (cnt + n - 1) / n : 0;
+	}
+
+	private boolean isSplitIndex() {
+		boolean split = sharedIndexId != null;
+		if (repository != null)
+			split = repository.getConfig().getBoolean(
+					ConfigConstants.CONFIG_CORE_SECTION, null,
+					ConfigConstants.CONFIG_KEY_SPLIT_INDEX, split);
+		return split;
+	}
+
+	// Writes the index header and entries to os, which must be at the start
+	// of the file. If blocks is not null the offset and number of entries of
+	// each block of the offset table are added to it.
+	private void writeEntries(OutputStream os, int ver,
+			DirCacheEntry[] entries, int cnt, int stripped,
+			@Nullable List<int[]> blocks) throws IOException {
+		final CountingOutputStream out = new CountingOutputStream(os);
+		final byte[] hdr = new byte[12];
+		System.arraycopy(SIG_DIRC, 0, hdr, 0, SIG_DIRC.length);
+		NB.encodeInt32(hdr, 4, ver);
+		NB.encodeInt32(hdr, 8, cnt);
+		out.write(hdr);
+
+		final int blockSize = blocks != null ? getOffsetTableBlockSize(cnt)
+				: 0;
+		byte[] previous = ver == 4 ? new byte[0] : null;
+		for (int i = 0; i < cnt; i++) {
+			if (blocks != null && blockSize > 0 && i % blockSize == 0) {
+				blocks.add(new int[] { (int) out.getCount(),
+						Math.min(blockSize, cnt - i) });
+
+				// Like git, strip the whole previous path so that the block
+				// can also be parsed on its own.
+				if (previous != null)
+					previous = new byte[previous.length];
+			}
+			final byte[] name = entries[i].write(out, previous, i < stripped);
+			if (previous != null)
+				previous = name;
+		}
+	}
+
+	private static void writeOffsetTable(OutputStream os, List<int[]> blocks)
+			throws IOException {
+		final byte[] raw = new byte[4 + 8 * blocks.size()];
+		NB.encodeInt32(raw, 0, IEOT_VERSION);
+		int p = 4;
+		for (int[] b : blocks) {
+			NB.encodeInt32(raw, p, b[0]);
+			NB.encodeInt32(raw, p + 4, b[1]);
+			p += 8;
+		}
+		os.write(raw);
+	}
+
+	// Writes the entries differing from the shared index: first those
+	// replacing an entry of the shared index, stored without path, then those
+	// added. A new shared index holding all entries is written first if there
+	// is none yet, or too many entries differ from it. Returns the writer of
+	// the link extension naming the shared index and the entries deleted from
+	// and replaced in it.
+	private ExtensionWriter writeSplitIndex(File dir, OutputStream os,
+			int ver, @Nullable List<int[]> blocks) throws IOException {
+		EWAHCompressedBitmap deleted = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap replaced = new EWAHCompressedBitmap();
+		final List<DirCacheEntry> entries = new ArrayList<>();
+		final List<DirCacheEntry> added = new ArrayList<>();
+		final DirCacheEntry[] base = sharedEntries;
+		boolean reuse = false;
+		if (base != null && sharedIndexFile(dir, sharedIndexId).exists()) {
+			int i = 0;
+			int j = 0;
+			while (i < base.length || j < entryCnt) {
+				int c;
+				if (i == base.length)
+					c = 1;
+				else if (j == entryCnt)
+					c = -1;
+				else
+					c = ENT_CMP.compare(base[i], sortedEntries[j]);
+				if (c < 0) {
+					deleted.set(i++);
+				} else if (c > 0) {
+					added.add(sortedEntries[j++]);
+				} else {
+					final DirCacheEntry b = base[i];
+					final DirCacheEntry e = sortedEntries[j++];
+					if (!b.isShared() || (e != b && !e.hasSameInfo(b))) {
+						replaced.set(i);
+						entries.add(e);
+					}
+					i++;
+				}
+			}
+			reuse = !tooManyNotShared(entries.size() + added.size());
+		}
+		if (reuse) {
+			// Freshen the shared index so that it does not expire while in use.
+			sharedIndexFile(dir, sharedIndexId).setLastModified(
+					SystemReader.getInstance().getCurrentTime());
+		} else {
+			sharedIndexId = writeSharedIndex(dir, ver);
+			sharedEntries = Arrays.copyOf(sortedEntries, entryCnt);
+			for (DirCacheEntry e : sharedEntries)
+				e.setShared(true);
+			expireSharedIndexes(dir);
+			deleted = new EWAHCompressedBitmap();
+			replaced = new EWAHCompressedBitmap();
+			entries.clear();
+			added.clear();
+		}
+
+		final int stripped = entries.size();
+		entries.addAll(added);
+		writeEntries(os, ver, entries.toArray(new DirCacheEntry[0]),
+				entries.size(), stripped, blocks);
+
+		final ObjectId id = sharedIndexId;
+		final EWAHCompressedBitmap deletedBits = deleted;
+		final EWAHCompressedBitmap replacedBits = replaced;
+		return out -> {
+			id.copyRawTo(out);
+			DataOutputStream data = new DataOutputStream(out);
+			deletedBits.serialize(data);
+			replacedBits.serialize(data);
+			data.flush();
+		};
+	}
+
+	private boolean tooManyNotShared(int notShared) {
+		int max = DEFAULT_MAX_PERCENT_CHANGE;
+		if (repository != null)
+			max = repository.getConfig().getInt(
+					ConfigConstants.CONFIG_SPLIT_INDEX_SECTION, null,
+					ConfigConstants.CONFIG_KEY_MAX_PERCENT_CHANGE, max);
+		if (max < 0 || 100 < max)
+			max = DEFAULT_MAX_PERCENT_CHANGE;
+		if (max == 0)
+			return true;
+		if (max == 100)
+			return false;
+		return (long) entryCnt * max < (long) notShared * 100;
+	}
+
+	private ObjectId writeSharedIndex(File dir, int ver) throws IOException {
+		final File tmpFile = File.createTempFile("sharedindex_", null, dir); //$NON-NLS-1$
+		try {
+			final MessageDigest md = Constants.newMessageDigest();
+			final ObjectId id;
+			try (OutputStream out = new BufferedOutputStream(
+					new FileOutputStream(tmpFile))) {
+				writeEntries(new DigestOutputStream(out, md), ver,
+						sortedEntries, entryCnt, 0, null);
+				final byte[] sum = md.digest();
+				out.write(sum);
+				id = ObjectId.fromRaw(sum);
+			}
+			FileUtils.rename(tmpFile, sharedIndexFile(dir, id),
+					StandardCopyOption.ATOMIC_MOVE);
+			return id;
+		} finally {
+			FileUtils.delete(tmpFile, FileUtils.SKIP_MISSING);
+		}
+	}
+
+	private void expireSharedIndexes(File dir) {
+		String expire = null;
+		if (repository != null)
+			expire = repository.getConfig().getString(
+					ConfigConstants.CONFIG_SPLIT_INDEX_SECTION, null,
+					ConfigConstants.CONFIG_KEY_SHARED_INDEX_EXPIRE);
+		if (expire == null)
+			expire = DEFAULT_SHARED_INDEX_EXPIRE;
+		final long expireDate;
+		try {
+			Date date = GitDateParser.parse(expire, null,
+					SystemReader.getInstance().getLocale());
+			if (date == GitDateParser.NEVER)
+				return;
+			expireDate = date.getTime();
+		} catch (ParseException e) {
+			return;
+		}
+
+		final String current = SHARED_INDEX_PREFIX + sharedIndexId.name();
+		final File[] files = dir.listFiles((d, name) -> name
+				.startsWith(SHARED_INDEX_PREFIX) && !name.equals(current));
+		if (files == null)
+			return;
+		for (File f : files) {
+			if (f.lastModified() <= expireDate) {
+				try {
+					FileUtils.delete(f, FileUtils.SKIP_MISSING);
+				} catch (IOException e) {
+					// Deleting is retried when the next shared index is
+					// written.
+				}
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface ExtensionWriter {
+		void write(OutputStream out) throws IOException;
+	}
+
+	private static void writeExtension(File dir, OutputStream dos,
+			byte[] tmp, MessageDigest headers, int name,
+			ExtensionWriter writer) throws IOException {
+		@SuppressWarnings("resource") // Explicitly closed in try block, and
+										// destroyed in finally
+		TemporaryBuffer bb = new TemporaryBuffer.LocalFile(dir, 5 << 20);
+		try {
+			writer.write(bb);
+			bb.close();
+
+			NB.encodeInt32(tmp, 0, name);
+			NB.encodeInt32(tmp, 4, (int) bb.length());
+			headers.update(tmp, 0, 8);
+			dos.write(tmp, 0, 8);
+			bb.writeTo(dos, null);
+		} finally {
+			bb.destroy();
+		}
+	}
+
+	private void writeFileMonitor(OutputStream os) throws IOException {
+		EWAHCompressedBitmap notValid = new EWAHCompressedBitmap();
+		for (int i = 0; i < entryCnt; i++) {
+			if (!sortedEntries[i].isFileMonitorValid())
+				notValid.set(i);
+		}
+
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(FSMN_VERSION_2);
+		out.write(Constants.encode(fileMonitorToken));
+		out.write(0);
+		out.writeInt(notValid.serializedSizeInBytes());
+		notValid.serialize(out);
+		out.flush();
+	}
+
 	/**
 	 * Commit this change and release the lock.
 	 * <p>
@@ -754,6 +1523,79 @@ public void unlock() {
 		}
 	}
 
+	/**
+	 * Get the untracked cache stored with this index.
+	 *
+	 * @return the untracked cache, or {@code null} if the index has none.
+	 * @since 5.6
+	 */
+	@Nullable
+	public UntrackedCache getUntrackedCache() {
+		return untrackedCache;
+	}
+
+	/**
+	 * Set the untracked cache stored with this index.
+	 * <p>
+	 * Once set, the cache is invalidated for paths added to or removed from
+	 * this index by a builder or editor.
+	 *
+	 * @param cache
+	 *            the untracked cache, or {@code null} to remove it.
+	 * @since 5.6
+	 */
+	public void setUntrackedCache(@Nullable UntrackedCache cache) {
+		untrackedCache = cache;
+	}
+
+	/**
+	 * Get the token of the file monitor stored with this index.
+	 * <p>
+	 * The entries for which {@link DirCacheEntry#isFileMonitorValid()} is set
+	 * matched the working tree when the monitor issued this token.
+	 *
+	 * @return the token, or {@code null} if the index has none.
+	 * @since 5.6
+	 */
+	@Nullable
+	public String getFileMonitorToken() {
+		return fileMonitorToken;
+	}
+
+	/**
+	 * Set the token of the file monitor stored with this index.
+	 *
+	 * @param token
+	 *            the token, or {@code null} to not store any file monitor
+	 *            state.
+	 * @since 5.6
+	 */
+	public void setFileMonitorToken(@Nullable String token) {
+		fileMonitorToken = token;
+	}
+
+	private void invalidateUntracked(DirCacheEntry[] e, int cnt) {
+		int i = 0;
+		int j = 0;
+		while (i < entryCnt || j < cnt) {
+			int c;
+			if (i == entryCnt)
+				c = 1;
+			else if (j == cnt)
+				c = -1;
+			else
+				c = cmp(sortedEntries[i], e[j]);
+			if (c < 0)
+				untrackedCache.invalidate(sortedEntries[i++].getPathString());
+			else if (c > 0)
+				untrackedCache.invalidate(e[j++].getPathString());
+			else {
+				i++;
+				j++;
+			}
+		}
+	}
+
 	/**
 	 * Locate the position a path's entry is at in the index. For details refer
 	 * to #findEntry(byte[], int).
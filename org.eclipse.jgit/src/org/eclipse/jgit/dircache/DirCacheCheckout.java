@@ -52,10 +52,19 @@
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.jgit.api.errors.CanceledException;
 import org.eclipse.jgit.api.errors.FilterFailedException;
@@ -81,6 +90,7 @@
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.ThreadSafeProgressMonitor;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
@@ -567,41 +577,7 @@ private boolean doCheckout() throws CorruptObjectException, IOException,
 			}
 			removed = filterOut(removed, nonDeleted);
 			nonDeleted = null;
-			Iterator<Map.Entry<String, CheckoutMetadata>> toUpdate = updated
-					.entrySet().iterator();
-			Map.Entry<String, CheckoutMetadata> e = null;
-			try {
-				while (toUpdate.hasNext()) {
-					e = toUpdate.next();
-					String path = e.getKey();
-					CheckoutMetadata meta = e.getValue();
-					DirCacheEntry entry = dc.getEntry(path);
-					if (FileMode.GITLINK.equals(entry.getRawMode())) {
-						checkoutGitlink(path, entry);
-					} else {
-						checkoutEntry(repo, entry, objectReader, false, meta);
-					}
-					e = null;
-
-					monitor.update(1);
-					if (monitor.isCancelled()) {
-						throw new CanceledException(MessageFormat.format(
-								JGitText.get().operationCanceled,
-								JGitText.get().checkingOutFiles));
-					}
-				}
-			} catch (Exception ex) {
-				// We didn't actually modify the current entry nor any that
-				// might follow.
-				if (e != null) {
-					toUpdate.remove();
-				}
-				while (toUpdate.hasNext()) {
-					e = toUpdate.next();
-					toUpdate.remove();
-				}
-				throw ex;
-			}
+			checkoutUpdated(objectReader);
 			for (String conflict : conflicts) {
 				// the conflicts are likely to have multiple entries in the
 				// dircache, we only want to check out the one for the "theirs"
@@ -638,6 +614,204 @@ private boolean doCheckout() throws CorruptObjectException, IOException,
 		return toBeDeleted.isEmpty();
 	}
 
+	private void checkoutUpdated(ObjectReader objectReader)
+			throws IOException, CanceledException {
+		int workers = repo.getConfig().getInt(
+				ConfigConstants.CONFIG_CHECKOUT_SECTION,
+				ConfigConstants.CONFIG_KEY_WORKERS, 1);
+		if (workers < 1) {
+			workers = Runtime.getRuntime().availableProcessors();
+		}
+		int threshold = repo.getConfig().getInt(
+				ConfigConstants.CONFIG_CHECKOUT_SECTION,
+				ConfigConstants.CONFIG_KEY_THRESHOLD_FOR_PARALLELISM, 100);
+		if (workers > 1 && updated.size() >= threshold) {
+			checkoutInParallel(objectReader, workers);
+			return;
+		}
+
+		Iterator<Map.Entry<String, CheckoutMetadata>> toUpdate = updated
+				.entrySet().iterator();
+		Map.Entry<String, CheckoutMetadata> e = null;
+		try {
+			while (toUpdate.hasNext()) {
+				e = toUpdate.next();
+				String path = e.getKey();
+				CheckoutMetadata meta = e.getValue();
+				DirCacheEntry entry = dc.getEntry(path);
+				if (FileMode.GITLINK.equals(entry.getRawMode())) {
+					checkoutGitlink(path, entry);
+				} else {
+					checkoutEntry(repo, entry, objectReader, false, meta);
+				}
+				e = null;
+
+				monitor.update(1);
+				if (monitor.isCancelled()) {
+					throw new CanceledException(MessageFormat.format(
+							JGitText.get().operationCanceled,
+							JGitText.get().checkingOutFiles));
+				}
+			}
+		} catch (Exception ex) {
+			// We didn't actually modify the current entry nor any that
+			// might follow.
+			if (e != null) {
+				toUpdate.remove();
+			}
+			while (toUpdate.hasNext()) {
+				e = toUpdate.next();
+				toUpdate.remove();
+			}
+			throw ex;
+		}
+	}
+
+	// Writes the updated files on several threads. Files are grouped by
+	// directory, and each group is written by a single worker through its
+	// own reader. Parent directories are created before the workers start,
+	// so workers never race on them. Gitlinks and entries with a smudge
+	// filter are still handled one at a time on this thread. If any file
+	// fails, the remaining groups are abandoned and every path which was not
+	// written is dropped from getUpdated(), as the sequential checkout does.
+	private void checkoutInParallel(ObjectReader objectReader, int workers)
+			throws IOException, CanceledException {
+		Map<File, List<Map.Entry<String, CheckoutMetadata>>> groups = new TreeMap<>();
+		Set<String> done = ConcurrentHashMap.newKeySet();
+		try {
+			for (Map.Entry<String, CheckoutMetadata> e : updated.entrySet()) {
+				String path = e.getKey();
+				CheckoutMetadata meta = e.getValue();
+				DirCacheEntry entry = dc.getEntry(path);
+				if (FileMode.GITLINK.equals(entry.getRawMode())) {
+					checkoutGitlink(path, entry);
+				} else if (meta != null && meta.smudgeFilterCommand != null) {
+					checkoutEntry(repo, entry, objectReader, false, meta);
+				} else {
+					File dir = new File(repo.getWorkTree(), path)
+							.getParentFile();
+					groups.computeIfAbsent(dir, d -> new ArrayList<>())
+							.add(e);
+					continue;
+				}
+				done.add(path);
+				monitor.update(1);
+				if (monitor.isCancelled()) {
+					throw new CanceledException(MessageFormat.format(
+							JGitText.get().operationCanceled,
+							JGitText.get().checkingOutFiles));
+				}
+			}
+			for (File dir : groups.keySet()) {
+				if (dir.isFile()) {
+					FileUtils.delete(dir);
+				}
+				FileUtils.mkdirs(dir, true);
+			}
+			runCheckoutWorkers(objectReader, workers, groups.values(), done);
+		} finally {
+			if (done.size() < updated.size()) {
+				updated.keySet().retainAll(done);
+			}
+		}
+	}
+
+	private void runCheckoutWorkers(ObjectReader objectReader, int workers,
+			Collection<List<Map.Entry<String, CheckoutMetadata>>> groups,
+			Set<String> done)
+			throws IOException, CanceledException {
+		if (groups.isEmpty()) {
+			return;
+		}
+		ThreadSafeProgressMonitor pm = new ThreadSafeProgressMonitor(monitor);
+		Iterator<List<Map.Entry<String, CheckoutMetadata>>> queue = groups
+				.iterator();
+		AtomicBoolean stop = new AtomicBoolean();
+		List<Throwable> errors = Collections
+				.synchronizedList(new ArrayList<>());
+		workers = Math.min(workers, groups.size());
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			pm.startWorkers(workers);
+			for (int i = 0; i < workers; i++) {
+				pool.execute(() -> {
+					try (ObjectReader or = objectReader.newReader()) {
+						List<Map.Entry<String, CheckoutMetadata>> group;
+						while (!stop.get()) {
+							synchronized (queue) {
+								if (!queue.hasNext()) {
+									break;
+								}
+								group = queue.next();
+							}
+							for (Map.Entry<String, CheckoutMetadata> e : group) {
+								if (stop.get()) {
+									break;
+								}
+								String path = e.getKey();
+								checkoutEntry(repo, dc.getEntry(path), or,
+										false, e.getValue());
+								done.add(path);
+								pm.update(1);
+								if (pm.isCancelled()) {
+									stop.set(true);
+								}
+							}
+						}
+					} catch (Throwable failure) {
+						stop.set(true);
+						errors.add(failure);
+					} finally {
+						pm.endWorker();
+					}
+				});
+			}
+			pm.waitForCompletion();
+		} catch (InterruptedException e) {
+			stop.set(true);
+			throw new CanceledException(MessageFormat.format(
+					JGitText.get().operationCanceled,
+					JGitText.get().checkingOutFiles));
+		} finally {
+			pool.shutdown();
+			awaitTermination(pool);
+		}
+
+		if (!errors.isEmpty()) {
+			Throwable err = errors.get(0);
+			if (err instanceof Error)
+				throw (Error) err;
+			if (err instanceof RuntimeException)
+				throw (RuntimeException) err;
+			if (err instanceof IOException)
+				throw (IOException) err;
+			throw new IOException(err.getMessage(), err);
+		}
+		if (monitor.isCancelled()) {
+			throw new CanceledException(MessageFormat.format(
+					JGitText.get().operationCanceled,
+					JGitText.get().checkingOutFiles));
+		}
+	}
+
+	// Waits for the workers even when interrupted, so that the set of
+	// written paths is final when the caller reads it.
+	private static void awaitTermination(ExecutorService pool) {
+		boolean interrupted = false;
+		for (;;) {
+			try {
+				if (pool.awaitTermination(60, TimeUnit.SECONDS)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	private void checkoutGitlink(String path, DirCacheEntry entry)
 			throws IOException {
 		File gitlinkDir = new File(repo.getWorkTree(), path);
@@ -54,11 +54,11 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.Arrays;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.AnyObjectId;
@@ -80,6 +80,8 @@
 public class DirCacheEntry {
 	private static final byte[] nullpad = new byte[8];
 
+	private static final byte[] NO_NAME = {};
+
 	/** The standard (fully merged) stage for an entry. */
 	public static final int STAGE_0 = 0;
 
@@ -133,6 +135,18 @@ public class DirCacheEntry {
 	/** In-core flag signaling that the entry should be considered as modified. */
 	private static final int UPDATE_NEEDED = 0x1;
 
+	/**
+	 * In-core flag signaling that the working tree file is known to match the
+	 * entry, as no change was reported since the file was compared.
+	 */
+	private static final int FILE_MONITOR_VALID = 0x2;
+
+	/**
+	 * In-core flag signaling that the entry is unmodified from its copy in the
+	 * shared index of a split index.
+	 */
+	private static final int SHARED = 0x4;
+
 	/** (Possibly shared) header information storage. */
 	private final byte[] info;
 
@@ -146,8 +160,8 @@ public class DirCacheEntry {
 	private byte inCoreFlags;
 
 	DirCacheEntry(final byte[] sharedInfo, final MutableInteger infoAt,
-			final InputStream in, final MessageDigest md, final Instant smudge)
-			throws IOException {
+			final InputStream in, final Instant smudge,
+			@Nullable byte[] previous) throws IOException {
 		info = sharedInfo;
 		infoOffset = infoAt.value;
 
@@ -165,14 +179,16 @@ public class DirCacheEntry {
 			len = INFO_LEN;
 
 		infoAt.value += len;
-		md.update(info, infoOffset, len);
 
 		int pathLen = NB.decodeUInt16(info, infoOffset + P_FLAGS) & NAME_MASK;
 		int skipped = 0;
-		if (pathLen < NAME_MASK) {
+		if (previous != null) {
+			// Index format 4 strips the common prefix of the previous path.
+			path = readCompressedPath(in, previous);
+			pathLen = path.length;
+		} else if (pathLen < NAME_MASK) {
 			path = new byte[pathLen];
 			IO.readFully(in, path, 0, pathLen);
-			md.update(path, 0, pathLen);
 		} else {
 			final ByteArrayOutputStream tmp = new ByteArrayOutputStream();
 			{
@@ -191,29 +207,32 @@ public class DirCacheEntry {
 			path = tmp.toByteArray();
 			pathLen = path.length;
 			skipped = 1; // we already skipped 1 '\0' above to break the loop.
-			md.update(path, 0, pathLen);
-			md.update((byte) 0);
 		}
 
-		try {
-			checkPath(path);
-		} catch (InvalidPathException e) {
-			CorruptObjectException p =
-				new CorruptObjectException(e.getMessage());
-			if (e.getCause() != null)
-				p.initCause(e.getCause());
-			throw p;
+		// Only the replacement entries of a split index have no path, the
+		// caller verifies they are used as such.
+		if (pathLen > 0) {
+			try {
+				checkPath(path);
+			} catch (InvalidPathException e) {
+				CorruptObjectException p = new CorruptObjectException(
+						e.getMessage());
+				if (e.getCause() != null)
+					p.initCause(e.getCause());
+				throw p;
+			}
 		}
 
 		// Index records are padded out to the next 8 byte alignment
 		// for historical reasons related to how C Git read the files.
 		//
-		final int actLen = len + pathLen;
-		final int expLen = (actLen + 8) & ~7;
-		final int padLen = expLen - actLen - skipped;
-		if (padLen > 0) {
-			IO.skipFully(in, padLen);
-			md.update(nullpad, 0, padLen);
+		if (previous == null) {
+			final int actLen = len + pathLen;
+			final int expLen = (actLen + 8) & ~7;
+			final int padLen = expLen - actLen - skipped;
+			if (padLen > 0) {
+				IO.skipFully(in, padLen);
+			}
 		}
 
 		if (mightBeRacilyClean(smudge)) {
@@ -221,6 +240,42 @@ public class DirCacheEntry {
 		}
 	}
 
+	private static byte[] readCompressedPath(InputStream in, byte[] previous)
+			throws IOException {
+		int c = readByte(in);
+		long strip = c & 127;
+		while ((c & 128) != 0) {
+			if ((strip >>> 56) != 0)
+				throw new CorruptObjectException(
+						JGitText.get().corruptIndexPathCompression);
+			c = readByte(in);
+			strip = ((strip + 1) << 7) + (c & 127);
+		}
+		// The first entry of a block of the offset table strips the path
+		// preceding the block, which is unknown to the block's reader.
+		if (previous.length == 0)
+			strip = 0;
+		else if (strip > previous.length)
+			throw new CorruptObjectException(
+					JGitText.get().corruptIndexPathCompression);
+
+		int n = previous.length - (int) strip;
+		byte[] buf = Arrays.copyOf(previous, Math.max(2 * n, 64));
+		while ((c = readByte(in)) != 0) {
+			if (n == buf.length)
+				buf = Arrays.copyOf(buf, 2 * n);
+			buf[n++] = (byte) c;
+		}
+		return Arrays.copyOf(buf, n);
+	}
+
+	private static int readByte(InputStream in) throws IOException {
+		int c = in.read();
+		if (c < 0)
+			throw new EOFException(JGitText.get().shortReadOfBlock);
+		return c;
+	}
+
 	/**
 	 * Create an empty entry at stage 0.
 	 *
@@ -316,11 +371,70 @@ public DirCacheEntry(DirCacheEntry src) {
 		System.arraycopy(src.info, src.infoOffset, info, 0, INFO_LEN);
 	}
 
-	void write(OutputStream os) throws IOException {
+	/**
+	 * Create a copy of an entry of a split index replacing an entry of the
+	 * shared index.
+	 *
+	 * @param path
+	 *            path of the replaced entry.
+	 * @param src
+	 *            the replacement, stored without path.
+	 */
+	DirCacheEntry(byte[] path, DirCacheEntry src) {
+		final int len = src.isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		this.path = path;
+		info = new byte[len];
+		infoOffset = 0;
+		System.arraycopy(src.info, src.infoOffset, info, 0, len);
+		final int flags = NB.decodeUInt16(info, P_FLAGS) & ~NAME_MASK;
+		NB.encodeInt16(info, P_FLAGS,
+				flags | Math.min(path.length, NAME_MASK));
+	}
+
+	/**
+	 * Write this entry.
+	 *
+	 * @param os
+	 *            stream to write to.
+	 * @param previous
+	 *            for index format 4, the path written by the previous entry;
+	 *            {@code null} for the padded paths of formats 2 and 3.
+	 * @param stripName
+	 *            write the entry without its path, as a split index does for
+	 *            entries replacing those of its shared index.
+	 * @return the path written.
+	 * @throws IOException
+	 *             the stream could not be written to.
+	 */
+	byte[] write(OutputStream os, @Nullable byte[] previous, boolean stripName)
+			throws IOException {
 		final int len = isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
-		final int pathLen = path.length;
-		os.write(info, infoOffset, len);
-		os.write(path, 0, pathLen);
+		final byte[] name = stripName ? NO_NAME : path;
+		final int pathLen = name.length;
+		if (stripName) {
+			final byte[] hdr = Arrays.copyOfRange(info, infoOffset,
+					infoOffset + len);
+			NB.encodeInt16(hdr, P_FLAGS,
+					NB.decodeUInt16(hdr, P_FLAGS) & ~NAME_MASK);
+			os.write(hdr);
+		} else {
+			os.write(info, infoOffset, len);
+		}
+
+		if (previous != null) {
+			// Index format 4 only stores how much of the previous path to
+			// strip, then the new suffix terminated by NUL.
+			int common = 0;
+			final int max = Math.min(previous.length, pathLen);
+			while (common < max && previous[common] == name[common])
+				common++;
+			encodeVarint(os, previous.length - common);
+			os.write(name, common, pathLen - common);
+			os.write(0);
+			return name;
+		}
+
+		os.write(name, 0, pathLen);
 
 		// Index records are padded out to the next 8 byte alignment
 		// for historical reasons related to how C Git read the files.
@@ -329,6 +443,26 @@ void write(OutputStream os) throws IOException {
 		final int expLen = (actLen + 8) & ~7;
 		if (actLen != expLen)
 			os.write(nullpad, 0, expLen - actLen);
+		return name;
+	}
+
+	/**
+	 * Write a number in the variable length encoding of git.
+	 *
+	 * @param out
+	 *            stream to write to.
+	 * @param value
+	 *            non-negative number to write.
+	 * @throws IOException
+	 *             the stream could not be written to.
+	 */
+	static void encodeVarint(OutputStream out, long value) throws IOException {
+		byte[] buf = new byte[10];
+		int p = buf.length - 1;
+		buf[p] = (byte) (value & 127);
+		while ((value >>>= 7) != 0)
+			buf[--p] = (byte) (128 | (--value & 127));
+		out.write(buf, p, buf.length - p);
 	}
 
 	/**
@@ -400,6 +534,7 @@ public final void smudgeRacilyClean() {
 		// racily clean
 		final int base = infoOffset + P_SIZE;
 		Arrays.fill(info, base, base + 4, (byte) 0);
+		setShared(false);
 	}
 
 	/**
@@ -451,6 +586,7 @@ public void setAssumeValid(boolean assume) {
 			info[infoOffset + P_FLAGS] |= (byte) ASSUME_VALID;
 		else
 			info[infoOffset + P_FLAGS] &= (byte) ~ASSUME_VALID;
+		setShared(false);
 	}
 
 	/**
@@ -475,6 +611,72 @@ public void setUpdateNeeded(boolean updateNeeded) {
 			inCoreFlags &= (byte) ~UPDATE_NEEDED;
 	}
 
+	/**
+	 * Whether the working tree file is known to match this entry.
+	 * <p>
+	 * The flag is stored in the {@code FSMN} extension of the index, and is
+	 * only meaningful together with the changes a
+	 * {@link org.eclipse.jgit.treewalk.FileChangeMonitor} reported since the
+	 * token recorded with it, see {@link DirCache#getFileMonitorToken()}.
+	 * Modifying the entry clears the flag.
+	 *
+	 * @return {@code true} if the file matched the entry when the token was
+	 *         recorded.
+	 * @since 5.6
+	 */
+	public boolean isFileMonitorValid() {
+		return (inCoreFlags & FILE_MONITOR_VALID) != 0;
+	}
+
+	/**
+	 * Set whether the working tree file is known to match this entry.
+	 *
+	 * @param valid
+	 *            whether the file matched the entry when the token of the
+	 *            file monitor was recorded.
+	 * @since 5.6
+	 */
+	public void setFileMonitorValid(boolean valid) {
+		if (valid)
+			inCoreFlags |= (byte) FILE_MONITOR_VALID;
+		else
+			inCoreFlags &= (byte) ~FILE_MONITOR_VALID;
+	}
+
+	/**
+	 * Whether this entry is unmodified from its copy in the shared index.
+	 *
+	 * @return {@code true} if the entry was read from or written to the
+	 *         shared index of a split index and not modified since.
+	 */
+	boolean isShared() {
+		return (inCoreFlags & SHARED) != 0;
+	}
+
+	void setShared(boolean shared) {
+		if (shared)
+			inCoreFlags |= (byte) SHARED;
+		else
+			inCoreFlags &= (byte) ~SHARED;
+	}
+
+	/**
+	 * Whether this entry stores the same information as another one.
+	 *
+	 * @param other
+	 *            entry to compare with, usually of the same path.
+	 * @return {@code true} if both entries would be written identically,
+	 *         apart from their paths.
+	 */
+	boolean hasSameInfo(DirCacheEntry other) {
+		final int len = isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		for (int i = 0; i < len; i++) {
+			if (info[infoOffset + i] != other.info[other.infoOffset + i])
+				return false;
+		}
+		return true;
+	}
+
 	/**
 	 * Get the stage of this entry.
 	 * <p>
@@ -552,10 +754,12 @@ public void setFileMode(FileMode mode) {
 					JGitText.get().invalidModeForPath, mode, getPathString()));
 		}
 		NB.encodeInt32(info, infoOffset + P_MODE, mode.getBits());
+		changed();
 	}
 
 	void setFileMode(int mode) {
 		NB.encodeInt32(info, infoOffset + P_MODE, mode);
+		changed();
 	}
 
 	/**
@@ -576,6 +780,7 @@ public long getCreationTime() {
 	 */
 	public void setCreationTime(long when) {
 		encodeTS(P_CTIME, when);
+		setShared(false);
 	}
 
 	/**
@@ -618,6 +823,7 @@ public Instant getLastModifiedInstant() {
 	@Deprecated
 	public void setLastModified(long when) {
 		encodeTS(P_MTIME, when);
+		changed();
 	}
 
 	/**
@@ -629,6 +835,7 @@ public void setLastModified(long when) {
 	 */
 	public void setLastModified(Instant when) {
 		encodeTS(P_MTIME, when);
+		changed();
 	}
 
 	/**
@@ -661,6 +868,7 @@ public int getLength() {
 	 */
 	public void setLength(int sz) {
 		NB.encodeInt32(info, infoOffset + P_SIZE, sz);
+		changed();
 	}
 
 	/**
@@ -695,6 +903,7 @@ public ObjectId getObjectId() {
 	 */
 	public void setObjectId(AnyObjectId id) {
 		id.copyRawTo(idBuffer(), idOffset());
+		changed();
 	}
 
 	/**
@@ -709,6 +918,7 @@ public void setObjectId(AnyObjectId id) {
 	public void setObjectIdFromRaw(byte[] bs, int p) {
 		final int n = Constants.OBJECT_ID_LENGTH;
 		System.arraycopy(bs, p, idBuffer(), idOffset(), n);
+		changed();
 	}
 
 	/**
@@ -779,6 +989,7 @@ void copyMetaData(DirCacheEntry src, boolean keepStage) {
 		int origflags = NB.decodeUInt16(info, infoOffset + P_FLAGS);
 		int newflags = NB.decodeUInt16(src.info, src.infoOffset + P_FLAGS);
 		System.arraycopy(src.info, src.infoOffset, info, infoOffset, INFO_LEN);
+		changed();
 		final int pLen = origflags & NAME_MASK;
 		final int SHIFTED_STAGE_MASK = 0x3 << 12;
 		final int pStageShifted;
@@ -797,6 +1008,10 @@ boolean isExtended() {
 		return (info[infoOffset + P_FLAGS] & EXTENDED) != 0;
 	}
 
+	private void changed() {
+		inCoreFlags &= (byte) ~(FILE_MONITOR_VALID | SHARED);
+	}
+
 	private long decodeTS(int pIdx) {
 		final int base = infoOffset + pIdx;
 		final int sec = NB.decodeInt32(info, base);
@@ -0,0 +1,711 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.dircache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.eclipse.jgit.util.SystemReader;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+
+/**
+ * The untracked cache of a {@link org.eclipse.jgit.dircache.DirCache}.
+ * <p>
+ * Git keeps the untracked cache in the {@code UNTR} index extension. For each
+ * directory of the working tree it records the names of the untracked files
+ * and directories directly within it, together with the stat data of the
+ * directory and the id of its {@code .gitignore} at the time the directory was
+ * scanned. As long as neither changed, and the global exclude files did not
+ * change either, the untracked names of the directory are known without
+ * reading the directory again.
+ * <p>
+ * Directories are addressed by their path relative to the working tree, using
+ * {@code '/'} as separator; the root of the working tree is the empty path.
+ * Untracked directories are listed with a trailing {@code '/'} and are not
+ * scanned further.
+ *
+ * @since 5.6
+ */
+public class UntrackedCache {
+	/** DIR_SHOW_OTHER_DIRECTORIES | DIR_HIDE_EMPTY_DIRECTORIES, as git status. */
+	private static final int DIR_FLAGS = 0x2 | 0x4;
+
+	private static final int DIR_SHOW_OTHER_DIRECTORIES = 0x2;
+
+	private static final String EXCLUDE_PER_DIR = Constants.DOT_GIT_IGNORE;
+
+	/** Length of git's on-disk stat data: ctime, mtime, dev, ino, uid, gid, size. */
+	private static final int STAT_LEN = 36;
+
+	private static final byte[] NO_STAT = new byte[STAT_LEN];
+
+	/**
+	 * Create an empty untracked cache for a working tree.
+	 *
+	 * @param workTree
+	 *            the working tree the cache describes.
+	 * @return a cache that has no valid directories yet.
+	 */
+	public static UntrackedCache create(File workTree) {
+		UntrackedCache uc = new UntrackedCache(ident(workTree), DIR_FLAGS,
+				EXCLUDE_PER_DIR);
+		uc.root = new Directory(""); //$NON-NLS-1$
+		return uc;
+	}
+
+	/**
+	 * Parse the content of an {@code UNTR} extension.
+	 *
+	 * @param raw
+	 *            the extension data, without the extension header.
+	 * @return the untracked cache.
+	 * @throws CorruptObjectException
+	 *             the extension is malformed.
+	 */
+	static UntrackedCache read(byte[] raw) throws CorruptObjectException {
+		int end = raw.length;
+		if (end <= 1 || raw[end - 1] != 0)
+			throw corrupt();
+		end--;
+		int[] ptr = { 0 };
+		int identLen = (int) decodeVarint(raw, ptr, end);
+		int p = ptr[0];
+		if (identLen < 0 || p + identLen > end)
+			throw corrupt();
+		String ident = RawParseUtils.decode(raw, p, p + identLen);
+		p += identLen;
+		int idLen = Constants.OBJECT_ID_LENGTH;
+		if (p + 2 * STAT_LEN + 4 + 2 * idLen > end)
+			throw corrupt();
+		byte[] infoExcludeStat = Arrays.copyOfRange(raw, p, p + STAT_LEN);
+		p += STAT_LEN;
+		byte[] excludesFileStat = Arrays.copyOfRange(raw, p, p + STAT_LEN);
+		p += STAT_LEN;
+		int dirFlags = NB.decodeInt32(raw, p);
+		p += 4;
+		ObjectId infoExcludeId = readId(raw, p);
+		p += idLen;
+		ObjectId excludesFileId = readId(raw, p);
+		p += idLen;
+		int eos = nul(raw, p, end);
+		String excludePerDir = RawParseUtils.decode(raw, p, eos);
+		p = eos + 1;
+
+		UntrackedCache uc = new UntrackedCache(ident, dirFlags, excludePerDir);
+		uc.infoExcludeStat = infoExcludeStat;
+		uc.excludesFileStat = excludesFileStat;
+		uc.infoExcludeId = infoExcludeId;
+		uc.excludesFileId = excludesFileId;
+
+		ptr[0] = p;
+		long dirCount = decodeVarint(raw, ptr, end);
+		if (dirCount == 0)
+			return uc;
+		List<Directory> dirs = new ArrayList<>();
+		uc.root = readDirectory(raw, ptr, end, dirs);
+		if (dirs.size() != dirCount)
+			throw corrupt();
+
+		p = ptr[0];
+		ByteArrayInputStream bin = new ByteArrayInputStream(raw, p, end - p);
+		DataInputStream in = new DataInputStream(bin);
+		try {
+			EWAHCompressedBitmap valid = new EWAHCompressedBitmap();
+			valid.deserialize(in);
+			EWAHCompressedBitmap checkOnly = new EWAHCompressedBitmap();
+			checkOnly.deserialize(in);
+			EWAHCompressedBitmap excludeValid = new EWAHCompressedBitmap();
+			excludeValid.deserialize(in);
+
+			for (IntIterator i = checkOnly.intIterator(); i.hasNext();)
+				dir(dirs, i.next()).checkOnly = true;
+			for (IntIterator i = valid.intIterator(); i.hasNext();) {
+				Directory d = dir(dirs, i.next());
+				d.valid = true;
+				d.stat = new byte[STAT_LEN];
+				IO.readFully(in, d.stat, 0, STAT_LEN);
+			}
+			byte[] id = new byte[idLen];
+			for (IntIterator i = excludeValid.intIterator(); i.hasNext();) {
+				Directory d = dir(dirs, i.next());
+				IO.readFully(in, id, 0, idLen);
+				d.excludeId = ObjectId.fromRaw(id);
+			}
+		} catch (IOException | RuntimeException e) {
+			CorruptObjectException err = corrupt();
+			err.initCause(e);
+			throw err;
+		}
+		return uc;
+	}
+
+	private static Directory readDirectory(byte[] raw, int[] ptr, int end,
+			List<Directory> dirs) throws CorruptObjectException {
+		long untrackedCount = decodeVarint(raw, ptr, end);
+		long dirCount = decodeVarint(raw, ptr, end);
+		if (untrackedCount > end || dirCount > end)
+			throw corrupt();
+		int p = ptr[0];
+		int eos = nul(raw, p, end);
+		Directory d = new Directory(RawParseUtils.decode(raw, p, eos));
+		p = eos + 1;
+		if (untrackedCount > 0) {
+			List<String> untracked = new ArrayList<>((int) untrackedCount);
+			for (long i = 0; i < untrackedCount; i++) {
+				eos = nul(raw, p, end);
+				untracked.add(RawParseUtils.decode(raw, p, eos));
+				p = eos + 1;
+			}
+			d.untracked = untracked;
+		}
+		ptr[0] = p;
+		dirs.add(d);
+		for (long i = 0; i < dirCount; i++) {
+			Directory child = readDirectory(raw, ptr, end, dirs);
+			d.dirs.put(child.name, child);
+		}
+		return d;
+	}
+
+	private static Directory dir(List<Directory> dirs, int i)
+			throws CorruptObjectException {
+		if (i >= dirs.size())
+			throw corrupt();
+		return dirs.get(i);
+	}
+
+	private static int nul(byte[] raw, int p, int end)
+			throws CorruptObjectException {
+		for (int i = p; i < end; i++)
+			if (raw[i] == 0)
+				return i;
+		throw corrupt();
+	}
+
+	@Nullable
+	private static ObjectId readId(byte[] raw, int p) {
+		ObjectId id = ObjectId.fromRaw(raw, p);
+		return ObjectId.zeroId().equals(id) ? null : id;
+	}
+
+	private static long decodeVarint(byte[] raw, int[] ptr, int end)
+			throws CorruptObjectException {
+		int p = ptr[0];
+		if (p >= end)
+			throw corrupt();
+		int c = raw[p++] & 0xff;
+		long val = c & 127;
+		while ((c & 128) != 0) {
+			if (p >= end || (val >>> 56) != 0)
+				throw corrupt();
+			c = raw[p++] & 0xff;
+			val = ((val + 1) << 7) + (c & 127);
+		}
+		ptr[0] = p;
+		return val;
+	}
+
+	private static CorruptObjectException corrupt() {
+		return new CorruptObjectException(
+				JGitText.get().corruptUntrackedCacheExtension);
+	}
+
+	private static String ident(File workTree) {
+		// Same identification git uses, so that a cache is only used on the
+		// system and in the location it was created for.
+		return "Location " + workTree.getAbsolutePath() //$NON-NLS-1$
+				+ ", system " //$NON-NLS-1$
+				+ SystemReader.getInstance().getProperty("os.name") //$NON-NLS-1$
+				+ '\0';
+	}
+
+	private final String ident;
+
+	private final int dirFlags;
+
+	private final String excludePerDir;
+
+	private byte[] infoExcludeStat = NO_STAT;
+
+	private byte[] excludesFileStat = NO_STAT;
+
+	private ObjectId infoExcludeId;
+
+	private ObjectId excludesFileId;
+
+	private Directory root;
+
+	private UntrackedCache(String ident, int dirFlags, String excludePerDir) {
+		this.ident = ident;
+		this.dirFlags = dirFlags;
+		this.excludePerDir = excludePerDir;
+	}
+
+	/**
+	 * Whether this cache can be used and maintained for a working tree.
+	 * <p>
+	 * A cache created by git for another location or system, or while
+	 * scanning directories with options JGit does not implement, is kept in
+	 * the index unchanged but must not be used.
+	 *
+	 * @param workTree
+	 *            the working tree of the repository.
+	 * @return {@code true} if the cache describes {@code workTree}.
+	 */
+	public boolean isUsable(File workTree) {
+		return ident.equals(ident(workTree)) && dirFlags == DIR_FLAGS
+				&& EXCLUDE_PER_DIR.equals(excludePerDir);
+	}
+
+	/**
+	 * Check the global exclude files the cached directories depend on.
+	 * <p>
+	 * If the content of either file differs from the content recorded in the
+	 * cache all directories are dropped, as any of them may have a different
+	 * set of untracked files now.
+	 *
+	 * @param infoExclude
+	 *            the {@code info/exclude} file of the repository.
+	 * @param excludesFile
+	 *            the file configured as {@code core.excludesFile}, or
+	 *            {@code null}.
+	 * @return {@code true} if the cache was modified.
+	 * @throws IOException
+	 *             a file could not be read.
+	 */
+	public boolean updateExcludes(File infoExclude,
+			@Nullable File excludesFile) throws IOException {
+		ObjectId infoId = hash(infoExclude);
+		ObjectId excludesId = excludesFile != null ? hash(excludesFile) : null;
+		byte[] infoStat = stat(infoExclude);
+		byte[] excludesStat = excludesFile != null ? stat(excludesFile)
+				: NO_STAT;
+		boolean modified = false;
+		if (!equals(infoId, infoExcludeId)
+				|| !equals(excludesId, excludesFileId)) {
+			root = new Directory(""); //$NON-NLS-1$
+			modified = true;
+		}
+		if (!Arrays.equals(infoStat, infoExcludeStat)
+				|| !Arrays.equals(excludesStat, excludesFileStat))
+			modified = true;
+		infoExcludeId = infoId;
+		excludesFileId = excludesId;
+		infoExcludeStat = infoStat;
+		excludesFileStat = excludesStat;
+		return modified;
+	}
+
+	/**
+	 * Get the cached state of a directory.
+	 *
+	 * @param path
+	 *            path of the directory, the empty string for the root.
+	 * @return the directory, or {@code null} if the cache does not know it.
+	 */
+	@Nullable
+	public Directory getDirectory(String path) {
+		Directory d = root;
+		int p = 0;
+		while (d != null && p < path.length()) {
+			int slash = path.indexOf('/', p);
+			if (slash < 0)
+				slash = path.length();
+			d = d.dirs.get(path.substring(p, slash));
+			p = slash + 1;
+		}
+		return d;
+	}
+
+	/**
+	 * Invalidate the directory containing a path.
+	 * <p>
+	 * This must be called whenever a path is added to or removed from the
+	 * index, as that changes which files of its directory are untracked
+	 * without changing the directory itself. Like git, all parent directories
+	 * are invalidated as well, since an untracked directory becomes a tracked
+	 * one.
+	 *
+	 * @param path
+	 *            path of a file, relative to the working tree.
+	 */
+	public void invalidate(String path) {
+		if (root != null)
+			invalidate(root, path, 0);
+	}
+
+	private boolean invalidate(Directory d, String path, int p) {
+		int slash = path.indexOf('/', p);
+		if (slash < 0) {
+			d.invalidate();
+			return (dirFlags & DIR_SHOW_OTHER_DIRECTORIES) != 0;
+		}
+		Directory child = d.dirs.get(path.substring(p, slash));
+		boolean parents = child != null ? invalidate(child, path, slash + 1)
+				: (dirFlags & DIR_SHOW_OTHER_DIRECTORIES) != 0;
+		if (parents)
+			d.invalidate();
+		return parents;
+	}
+
+	/**
+	 * Record the result of scanning a directory.
+	 * <p>
+	 * If the directory was modified after {@code scanStart}, within the
+	 * timestamp resolution of its file system, it is recorded as invalid, as
+	 * the names may already be out of date.
+	 *
+	 * @param path
+	 *            path of the directory, the empty string for the root.
+	 * @param directory
+	 *            the directory in the working tree.
+	 * @param untracked
+	 *            names of the untracked files directly within the directory,
+	 *            and names of the untracked directories directly within it
+	 *            followed by {@code '/'}.
+	 * @param scanStart
+	 *            time the directory was scanned at the earliest.
+	 * @return {@code true} if the cache was modified.
+	 * @throws IOException
+	 *             the directory or its {@code .gitignore} could not be read.
+	 */
+	public boolean update(String path, File directory,
+			Collection<String> untracked, Instant scanStart)
+			throws IOException {
+		if (root == null)
+			root = new Directory(""); //$NON-NLS-1$
+		Directory d = root;
+		int p = 0;
+		while (p < path.length()) {
+			int slash = path.indexOf('/', p);
+			if (slash < 0)
+				slash = path.length();
+			d = d.dirs.computeIfAbsent(path.substring(p, slash),
+					Directory::new);
+			p = slash + 1;
+		}
+
+		byte[] stat = stat(directory);
+		if (stat == NO_STAT) {
+			boolean changed = d.valid;
+			d.invalidate();
+			return changed;
+		}
+		ObjectId excludeId = hash(new File(directory, excludePerDir));
+		Duration resolution = FS.getFileStoreAttributes(directory.toPath())
+				.getFsTimestampResolution();
+		Instant modified = Instant.ofEpochSecond(NB.decodeUInt32(stat, 8),
+				NB.decodeUInt32(stat, 12));
+		if (!modified.plus(resolution).isBefore(scanStart)) {
+			boolean changed = d.valid;
+			d.invalidate();
+			return changed;
+		}
+
+		List<String> names = new ArrayList<>(untracked);
+		Collections.sort(names, UntrackedCache::compare);
+		boolean changed = !d.valid || !Arrays.equals(stat, d.stat)
+				|| !equals(excludeId, d.excludeId)
+				|| !names.equals(d.untracked);
+		d.valid = true;
+		d.checkOnly = false;
+		d.stat = stat;
+		d.excludeId = excludeId;
+		d.untracked = names;
+		return changed;
+	}
+
+	void write(OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(os);
+		byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+		byte[] b = Constants.encode(ident);
+		DirCacheEntry.encodeVarint(out, b.length);
+		out.write(b);
+		out.write(infoExcludeStat);
+		out.write(excludesFileStat);
+		out.writeInt(dirFlags);
+		writeId(out, infoExcludeId, id);
+		writeId(out, excludesFileId, id);
+		out.write(Constants.encode(excludePerDir));
+		out.write(0);
+
+		List<Directory> dirs = new ArrayList<>();
+		if (root != null)
+			collect(root, dirs);
+		DirCacheEntry.encodeVarint(out, dirs.size());
+		if (!dirs.isEmpty()) {
+			EWAHCompressedBitmap valid = new EWAHCompressedBitmap();
+			EWAHCompressedBitmap checkOnly = new EWAHCompressedBitmap();
+			EWAHCompressedBitmap excludeValid = new EWAHCompressedBitmap();
+			for (int i = 0; i < dirs.size(); i++) {
+				Directory d = dirs.get(i);
+				if (d.checkOnly)
+					checkOnly.set(i);
+				if (d.valid)
+					valid.set(i);
+				if (d.excludeId != null)
+					excludeValid.set(i);
+				DirCacheEntry.encodeVarint(out, d.untracked.size());
+				DirCacheEntry.encodeVarint(out, d.dirs.size());
+				out.write(Constants.encode(d.name));
+				out.write(0);
+				for (String name : d.untracked) {
+					out.write(Constants.encode(name));
+					out.write(0);
+				}
+			}
+			valid.serialize(out);
+			checkOnly.serialize(out);
+			excludeValid.serialize(out);
+			for (Directory d : dirs)
+				if (d.valid)
+					out.write(d.stat);
+			for (Directory d : dirs)
+				if (d.excludeId != null)
+					writeId(out, d.excludeId, id);
+		}
+		out.write(0);
+		out.flush();
+	}
+
+	private static void collect(Directory d, List<Directory> dirs) {
+		dirs.add(d);
+		for (Directory child : d.dirs.values())
+			collect(child, dirs);
+	}
+
+	private static void writeId(OutputStream out, @Nullable ObjectId id,
+			byte[] buf) throws IOException {
+		if (id != null)
+			id.copyRawTo(buf, 0);
+		else
+			Arrays.fill(buf, (byte) 0);
+		out.write(buf);
+	}
+
+	private static boolean equals(@Nullable ObjectId a, @Nullable ObjectId b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	// Names are sorted as git compares them, by their UTF-8 encoding, which
+	// orders them by code point.
+	private static int compare(String a, String b) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length() && j < b.length()) {
+			int ca = a.codePointAt(i);
+			int cb = b.codePointAt(j);
+			if (ca != cb)
+				return ca - cb;
+			i += Character.charCount(ca);
+			j += Character.charCount(cb);
+		}
+		return (a.length() - i) - (b.length() - j);
+	}
+
+	@Nullable
+	private static ObjectId hash(File f) throws IOException {
+		byte[] content;
+		try {
+			content = Files.readAllBytes(f.toPath());
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			return fmt.idFor(Constants.OBJ_BLOB, content);
+		}
+	}
+
+	// Git's on-disk stat data. Fields the platform does not expose are left
+	// zero, which makes git rescan rather than trust the entry.
+	private static byte[] stat(File f) throws IOException {
+		Path path = f.toPath();
+		byte[] stat = new byte[STAT_LEN];
+		Map<String, Object> unix;
+		try {
+			unix = Files.readAttributes(path, "unix:ctime,dev,ino,uid,gid", //$NON-NLS-1$
+					LinkOption.NOFOLLOW_LINKS);
+		} catch (UnsupportedOperationException | IllegalArgumentException e) {
+			unix = Collections.emptyMap();
+		} catch (NoSuchFileException e) {
+			return NO_STAT;
+		}
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(path, BasicFileAttributes.class,
+					LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException e) {
+			return NO_STAT;
+		}
+		FileTime ctime = (FileTime) unix.get("ctime"); //$NON-NLS-1$
+		if (ctime != null)
+			encodeTime(stat, 0, ctime.toInstant());
+		encodeTime(stat, 8, attrs.lastModifiedTime().toInstant());
+		encodeNumber(stat, 16, unix.get("dev")); //$NON-NLS-1$
+		encodeNumber(stat, 20, unix.get("ino")); //$NON-NLS-1$
+		encodeNumber(stat, 24, unix.get("uid")); //$NON-NLS-1$
+		encodeNumber(stat, 28, unix.get("gid")); //$NON-NLS-1$
+		NB.encodeInt32(stat, 32, (int) attrs.size());
+		return stat;
+	}
+
+	private static void encodeTime(byte[] buf, int p, Instant when) {
+		NB.encodeInt32(buf, p, (int) when.getEpochSecond());
+		NB.encodeInt32(buf, p + 4, when.getNano());
+	}
+
+	private static void encodeNumber(byte[] buf, int p, Object n) {
+		if (n instanceof Number)
+			NB.encodeInt32(buf, p, ((Number) n).intValue());
+	}
+
+	/** The cached state of one directory of the working tree. */
+	public static class Directory {
+		final String name;
+
+		boolean valid;
+
+		boolean checkOnly;
+
+		byte[] stat = NO_STAT;
+
+		ObjectId excludeId;
+
+		List<String> untracked = Collections.emptyList();
+
+		final Map<String, Directory> dirs = new TreeMap<>(
+				UntrackedCache::compare);
+
+		Directory(String name) {
+			this.name = name;
+		}
+
+		void invalidate() {
+			valid = false;
+			checkOnly = false;
+			untracked = Collections.emptyList();
+		}
+
+		/**
+		 * Get the name of this directory within its parent.
+		 *
+		 * @return the name, the empty string for the root.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Whether the untracked names of this directory are known.
+		 *
+		 * @return {@code true} if {@link #getUntracked()} is complete.
+		 */
+		public boolean isValid() {
+			return valid;
+		}
+
+		/**
+		 * Get the id of the {@code .gitignore} file of this directory.
+		 *
+		 * @return id of the file's content when the directory was scanned,
+		 *         or {@code null} if there was none.
+		 */
+		@Nullable
+		public ObjectId getExcludeId() {
+			return excludeId;
+		}
+
+		/**
+		 * Get the untracked names directly within this directory.
+		 *
+		 * @return names of untracked files, and names of untracked
+		 *         directories followed by {@code '/'}; empty if the directory
+		 *         is not valid.
+		 */
+		public List<String> getUntracked() {
+			return Collections.unmodifiableList(untracked);
+		}
+
+		/**
+		 * Get the directories below this one that the cache knows.
+		 *
+		 * @return the sub-directories.
+		 */
+		public Collection<Directory> getDirectories() {
+			return Collections.unmodifiableCollection(dirs.values());
+		}
+	}
+}
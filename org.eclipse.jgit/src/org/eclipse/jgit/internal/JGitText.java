@@ -141,6 +141,7 @@ public static JGitText get() {
 	/***/ public String cannotListRefs;
 	/***/ public String cannotLock;
 	/***/ public String cannotLockPackIn;
+	/***/ public String cannotMapPackFile;
 	/***/ public String cannotMatchOnEmptyString;
 	/***/ public String cannotMkdirObjectPath;
 	/***/ public String cannotMoveIndexTo;
@@ -184,11 +185,17 @@ public static JGitText get() {
 	/***/ public String commandClosedStderrButDidntExit;
 	/***/ public String commandRejectedByHook;
 	/***/ public String commandWasCalledInTheWrongState;
+	/***/ public String commitGraphChunkNeeded;
+	/***/ public String commitGraphChunkRepeated;
+	/***/ public String commitGraphFileIsTooLargeForJgit;
 	/***/ public String commitMessageNotSpecified;
 	/***/ public String commitOnRepoWithoutHEADCurrentlyNotSupported;
 	/***/ public String commitAmendOnInitialNotPossible;
 	/***/ public String commitsHaveAlreadyBeenMarkedAsStart;
 	/***/ public String compressingObjects;
+	/***/ public String computingChangedPathFilters;
+	/***/ public String computingCommitGeneration;
+	/***/ public String concurrentReadNotImplemented;
 	/***/ public String configSubsectionContainsNewline;
 	/***/ public String configSubsectionContainsNullByte;
 	/***/ public String configValueContainsNullByte;
@@ -197,7 +204,11 @@ public static JGitText get() {
 	/***/ public String connectionFailed;
 	/***/ public String connectionTimeOut;
 	/***/ public String contextMustBeNonNegative;
+	/***/ public String corruptCommitGraph;
+	/***/ public String corruptIndexOffsetTable;
+	/***/ public String corruptIndexPathCompression;
 	/***/ public String corruptionDetectedReReadingAt;
+	/***/ public String corruptMultiPackIndex;
 	/***/ public String corruptObjectBadDate;
 	/***/ public String corruptObjectBadEmail;
 	/***/ public String corruptObjectBadStream;
@@ -247,6 +258,9 @@ public static JGitText get() {
 	/***/ public String corruptObjectTruncatedInObjectId;
 	/***/ public String corruptObjectZeroId;
 	/***/ public String corruptPack;
+	/***/ public String corruptSharedIndex;
+	/***/ public String corruptSplitIndexExtension;
+	/***/ public String corruptUntrackedCacheExtension;
 	/***/ public String corruptUseCnt;
 	/***/ public String couldNotFindTabInLine;
 	/***/ public String couldNotFindSixTabsInLine;
@@ -352,6 +366,7 @@ public static JGitText get() {
 	/***/ public String filterExecutionFailed;
 	/***/ public String filterExecutionFailedRc;
 	/***/ public String filterRequiresCapability;
+	/***/ public String findingCommitsForCommitGraph;
 	/***/ public String findingGarbage;
 	/***/ public String flagIsDisposed;
 	/***/ public String flagNotFromThis;
@@ -424,6 +439,7 @@ public static JGitText get() {
 	/***/ public String invalidObject;
 	/***/ public String invalidOldIdSent;
 	/***/ public String invalidPacketLineHeader;
+	/***/ public String invalidPackfileUri;
 	/***/ public String invalidPath;
 	/***/ public String invalidPurgeFactor;
 	/***/ public String invalidRedirectLocation;
@@ -495,6 +511,9 @@ public static JGitText get() {
 	/***/ public String month;
 	/***/ public String months;
 	/***/ public String monthsAgo;
+	/***/ public String multiPackIndexChunkNeeded;
+	/***/ public String multiPackIndexChunkRepeated;
+	/***/ public String multiPackIndexFileIsTooLargeForJgit;
 	/***/ public String multipleMergeBasesFor;
 	/***/ public String nameMustNotBeNullOrEmpty;
 	/***/ public String need2Arguments;
@@ -515,8 +534,10 @@ public static JGitText get() {
 	/***/ public String noSuchSubmodule;
 	/***/ public String notABoolean;
 	/***/ public String notABundle;
+	/***/ public String notACommitGraph;
 	/***/ public String notADIRCFile;
 	/***/ public String notAGitDirectory;
+	/***/ public String notAMultiPackIndex;
 	/***/ public String notAPACKFile;
 	/***/ public String notARef;
 	/***/ public String notASCIIString;
@@ -553,6 +574,8 @@ public static JGitText get() {
 	/***/ public String packFileInvalid;
 	/***/ public String packfileIsTruncated;
 	/***/ public String packfileIsTruncatedNoParam;
+	/***/ public String packfileUriChecksumMismatch;
+	/***/ public String packfileUriDownloadFailed;
 	/***/ public String packHandleIsStale;
 	/***/ public String packHasUnresolvedDeltas;
 	/***/ public String packInaccessible;
@@ -610,6 +633,9 @@ public static JGitText get() {
 	/***/ public String refAlreadyExists1;
 	/***/ public String reflogEntryNotFound;
 	/***/ public String refNotResolved;
+	/***/ public String refStorageConversionNotSupported;
+	/***/ public String reftableDirExists;
+	/***/ public String reftableStackOutOfOrder;
 	/***/ public String refTableRecordsMustIncrease;
 	/***/ public String refUpdateReturnCodeWas;
 	/***/ public String remoteConfigHasNoURIAssociated;
@@ -786,10 +812,14 @@ public static JGitText get() {
 	/***/ public String unsupportedAlternates;
 	/***/ public String unsupportedArchiveFormat;
 	/***/ public String unsupportedCommand0;
+	/***/ public String unsupportedCommitGraphHashVersion;
+	/***/ public String unsupportedCommitGraphVersion;
 	/***/ public String unsupportedEncryptionAlgorithm;
 	/***/ public String unsupportedEncryptionVersion;
 	/***/ public String unsupportedGC;
 	/***/ public String unsupportedMark;
+	/***/ public String unsupportedMultiPackIndexHashVersion;
+	/***/ public String unsupportedMultiPackIndexVersion;
 	/***/ public String unsupportedOperationNotAddAtEnd;
 	/***/ public String unsupportedPackIndexVersion;
 	/***/ public String unsupportedPackVersion;
@@ -817,6 +847,8 @@ public static JGitText get() {
 	/***/ public String writingNotPermitted;
 	/***/ public String writingNotSupported;
 	/***/ public String writingObjects;
+	/***/ public String writingOutCommitGraph;
+	/***/ public String writingOutMultiPackIndex;
 	/***/ public String wrongDecompressedLength;
 	/***/ public String wrongRepositoryState;
 	/***/ public String year;
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.BLOOM_FILTER_BITS_PER_ENTRY;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.BLOOM_FILTER_NUM_HASHES;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A changed path Bloom filter of a single commit.
+ * <p>
+ * The filter records the paths, and all of their leading directories, which
+ * differ between the commit and its first parent. A negative answer of
+ * {@link #maybeContains(byte[])} is definite, the commit did not touch the
+ * path; a positive answer may be a false positive.
+ * <p>
+ * The filter is compatible with git's changed path Bloom filters, version 1:
+ * 32-bit murmur3 hashes, combined by double hashing.
+ *
+ * @see <a href=
+ *      "https://github.com/git/git/blob/master/Documentation/technical/commit-graph-format.txt">
+ *      commit-graph format</a>
+ */
+public class ChangedPathFilter {
+	private static final int SEED0 = 0x293ae76f;
+
+	private static final int SEED1 = 0x7e646e2c;
+
+	/** Filter of a commit which changed too many paths; contains anything. */
+	static final ChangedPathFilter FULL = new ChangedPathFilter(
+			new byte[] { (byte) 0xff }, 0, 1, BLOOM_FILTER_NUM_HASHES);
+
+	/**
+	 * Create a filter containing the given paths.
+	 *
+	 * @param paths
+	 *            paths to add, including the leading directories of changed
+	 *            files. Paths must not have a trailing '/'.
+	 * @return the filter.
+	 */
+	static ChangedPathFilter fromPaths(Collection<byte[]> paths) {
+		int len = (paths.size() * BLOOM_FILTER_BITS_PER_ENTRY + 7) / 8;
+		if (len == 0) {
+			// An empty filter would denote "not computed", store one byte.
+			len = 1;
+		}
+		byte[] data = new byte[len];
+		for (byte[] path : paths) {
+			int h0 = murmur3(SEED0, path, path.length);
+			int h1 = murmur3(SEED1, path, path.length);
+			for (int i = 0; i < BLOOM_FILTER_NUM_HASHES; i++) {
+				long pos = Integer.toUnsignedLong(h0 + i * h1) % (len * 8L);
+				data[(int) (pos >>> 3)] |= (byte) (1 << (pos & 7));
+			}
+		}
+		return new ChangedPathFilter(data, 0, len, BLOOM_FILTER_NUM_HASHES);
+	}
+
+	private final byte[] data;
+
+	private final int offset;
+
+	private final int length;
+
+	private final int numHashes;
+
+	ChangedPathFilter(byte[] data, int offset, int length, int numHashes) {
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+		this.numHashes = numHashes;
+	}
+
+	/**
+	 * Check whether the commit may have changed a path.
+	 *
+	 * @param path
+	 *            the path, without trailing '/'.
+	 * @return {@code false} if the commit definitely did not change the path
+	 *         or anything below it; {@code true} if it may have.
+	 */
+	public boolean maybeContains(byte[] path) {
+		return maybeContains(path, path.length);
+	}
+
+	private boolean maybeContains(byte[] path, int len) {
+		int h0 = murmur3(SEED0, path, len);
+		int h1 = murmur3(SEED1, path, len);
+		long bits = length * 8L;
+		for (int i = 0; i < numHashes; i++) {
+			long pos = Integer.toUnsignedLong(h0 + i * h1) % bits;
+			if ((data[offset + (int) (pos >>> 3)] & (1 << (pos & 7))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether the commit may have changed any of the paths.
+	 *
+	 * @param paths
+	 *            the paths, without trailing '/'.
+	 * @return {@code false} if the commit definitely did not change any of
+	 *         the paths or anything below them; {@code true} if it may have.
+	 */
+	public boolean maybeContainsAny(Collection<byte[]> paths) {
+		for (byte[] path : paths) {
+			if (maybeContains(path) && maybeContainsDirectories(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean maybeContainsDirectories(byte[] path) {
+		// Every leading directory of a changed path was added to the
+		// filter, checking them lowers the false positive rate.
+		for (int i = path.length - 1; i > 0; i--) {
+			if (path[i] == '/' && !maybeContains(path, i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	int getLength() {
+		return length;
+	}
+
+	byte[] toByteArray() {
+		return Arrays.copyOfRange(data, offset, offset + length);
+	}
+
+	// 32-bit murmur3 hash, as implemented by version 1 of git's changed path
+	// Bloom filters. Bytes are sign extended, as git's implementation does on
+	// platforms with a signed char.
+	static int murmur3(int seed, byte[] data, int len) {
+		final int c1 = 0xcc9e2d51;
+		final int c2 = 0x1b873593;
+		int h = seed;
+		int len4 = len / 4;
+		for (int i = 0; i < len4; i++) {
+			int k = data[4 * i] | (data[4 * i + 1] << 8)
+					| (data[4 * i + 2] << 16) | (data[4 * i + 3] << 24);
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+		}
+
+		int tail = 4 * len4;
+		int k1 = 0;
+		switch (len & 3) {
+		case 3:
+			k1 ^= data[tail + 2] << 16;
+			//$FALL-THROUGH$
+		case 2:
+			k1 ^= data[tail + 1] << 8;
+			//$FALL-THROUGH$
+		case 1:
+			k1 ^= data[tail];
+			k1 *= c1;
+			k1 = Integer.rotateLeft(k1, 15);
+			k1 *= c2;
+			h ^= k1;
+			break;
+		default:
+			break;
+		}
+
+		h ^= len;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * The commit-graph stores the commit graph structure of a repository.
+ * <p>
+ * Commits are addressed by their position in the graph, which is the index
+ * of the commit's object id in the sorted list of all commit ids stored in the
+ * file. For each commit the graph stores the root tree, the positions of the
+ * parents, the commit time and the generation number, so that walkers can
+ * traverse history without inflating commit objects.
+ * <p>
+ * A commit-graph is immutable once loaded and may be shared by any number of
+ * threads.
+ *
+ * @see <a href=
+ *      "https://github.com/git/git/blob/master/Documentation/technical/commit-graph-format.txt">
+ *      commit-graph format</a>
+ */
+public interface CommitGraph {
+
+	/** Empty commit-graph, containing no commits. */
+	CommitGraph EMPTY = new CommitGraph() {
+		@Override
+		public int findGraphPosition(AnyObjectId commit) {
+			return -1;
+		}
+
+		@Override
+		public ObjectId getObjectId(int graphPos) {
+			return null;
+		}
+
+		@Override
+		public CommitData getCommitData(int graphPos) {
+			return null;
+		}
+
+		@Override
+		public ChangedPathFilter getChangedPathFilter(int graphPos) {
+			return null;
+		}
+
+		@Override
+		public long getCommitCnt() {
+			return 0;
+		}
+	};
+
+	/**
+	 * Find the position in the commit-graph of the commit.
+	 * <p>
+	 * The position can only be used within the commit-graph it was obtained
+	 * from.
+	 *
+	 * @param commit
+	 *            the commit for which the commit-graph position will be found.
+	 * @return the commit-graph position or -1 if the object was not found.
+	 */
+	int findGraphPosition(AnyObjectId commit);
+
+	/**
+	 * Get the object at the commit-graph position.
+	 *
+	 * @param graphPos
+	 *            the position in the commit-graph of the object.
+	 * @return the ObjectId or null if the position was out of bounds.
+	 */
+	ObjectId getObjectId(int graphPos);
+
+	/**
+	 * Get the metadata of a commit.
+	 *
+	 * @param graphPos
+	 *            the position in the commit-graph of the object.
+	 * @return the metadata of a commit or null if the position was out of
+	 *         bounds.
+	 */
+	CommitData getCommitData(int graphPos);
+
+	/**
+	 * Get the changed path Bloom filter of a commit.
+	 *
+	 * @param graphPos
+	 *            the position in the commit-graph of the object.
+	 * @return the filter of the paths changed by the commit relative to its
+	 *         first parent, or null if the commit-graph has no filter for the
+	 *         commit.
+	 */
+	ChangedPathFilter getChangedPathFilter(int graphPos);
+
+	/**
+	 * Obtain the total number of commits described by this commit-graph.
+	 *
+	 * @return number of commits in this commit-graph.
+	 */
+	long getCommitCnt();
+
+	/** Metadata of a commit in the commit-graph. */
+	interface CommitData {
+
+		/**
+		 * Get a reference to this commit's tree.
+		 *
+		 * @return tree of this commit.
+		 */
+		ObjectId getTree();
+
+		/**
+		 * Obtain an array of all parents.
+		 * <p>
+		 * The method only provides the graph positions of parents in the
+		 * commit-graph; callers should use
+		 * {@link CommitGraph#getObjectId(int)} to resolve them. A corrupt
+		 * commit-graph may contain positions which cannot be resolved.
+		 *
+		 * @return the array of parents, or null if the parents of an octopus
+		 *         merge cannot be read from a corrupt commit-graph.
+		 */
+		int[] getParents();
+
+		/**
+		 * Time from the "committer" line.
+		 *
+		 * @return commit time in seconds since the epoch.
+		 */
+		long getCommitTime();
+
+		/**
+		 * Get the generation number (the distance from the root) of the
+		 * commit.
+		 *
+		 * @return the generation number or
+		 *         {@link CommitGraphConstants#GENERATION_NUMBER_ZERO} if the
+		 *         number was not computed by the writer.
+		 */
+		int getGeneration();
+	}
+}
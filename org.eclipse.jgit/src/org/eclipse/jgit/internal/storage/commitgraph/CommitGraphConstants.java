@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+/**
+ * Constants relating to commit-graph.
+ */
+public final class CommitGraphConstants {
+
+	/** Magic number identifying a commit-graph file: "CGPH". */
+	public static final int COMMIT_GRAPH_MAGIC = 0x43475048;
+
+	/** Version 1 of the commit-graph format. */
+	public static final int COMMIT_GRAPH_VERSION_1 = 1;
+
+	/** Hash version of SHA-1 object ids. */
+	public static final int OID_HASH_VERSION = 1;
+
+	/** "OIDF" chunk, the fanout table of the object ids. */
+	public static final int CHUNK_ID_OID_FANOUT = 0x4f494446;
+
+	/** "OIDL" chunk, the sorted list of object ids. */
+	public static final int CHUNK_ID_OID_LOOKUP = 0x4f49444c;
+
+	/** "CDAT" chunk, the per commit data. */
+	public static final int CHUNK_ID_COMMIT_DATA = 0x43444154;
+
+	/** "EDGE" chunk, the extra parents of octopus merges. */
+	public static final int CHUNK_ID_EXTRA_EDGE_LIST = 0x45444745;
+
+	/** "BIDX" chunk, the end offsets of the changed path Bloom filters. */
+	public static final int CHUNK_ID_BLOOM_FILTER_INDEX = 0x42494458;
+
+	/** "BDAT" chunk, the changed path Bloom filters. */
+	public static final int CHUNK_ID_BLOOM_FILTER_DATA = 0x42444154;
+
+	/** Length of the commit-graph file header. */
+	public static final int COMMIT_GRAPH_HEADER_LEN = 8;
+
+	/** Length of a single entry in the chunk lookup table. */
+	public static final int CHUNK_LOOKUP_WIDTH = 12;
+
+	/** Length of a single entry in the commit data chunk. */
+	public static final int COMMIT_DATA_WIDTH = 36;
+
+	/** Length of the fanout table. */
+	public static final int FANOUT_LEN = 256 * 4;
+
+	/** Parent position denoting the absence of a parent. */
+	public static final int GRAPH_NO_PARENT = 0x70000000;
+
+	/** Mask of the second parent position pointing to the extra edge list. */
+	public static final int GRAPH_EXTRA_EDGES_NEEDED = 0x80000000;
+
+	/** Mask of the last entry of an octopus merge in the extra edge list. */
+	public static final int GRAPH_LAST_EDGE = 0x80000000;
+
+	/** Mask of an extra edge list entry to obtain the parent position. */
+	public static final int GRAPH_EDGE_MASK = 0x7fffffff;
+
+	/** Generation number of a commit not stored in any commit-graph. */
+	public static final int GENERATION_NUMBER_INFINITY = 0xffffffff;
+
+	/** Generation number of a commit written by a writer not computing it. */
+	public static final int GENERATION_NUMBER_ZERO = 0;
+
+	/** Largest generation number representable in the commit data chunk. */
+	public static final int GENERATION_NUMBER_MAX = 0x3fffffff;
+
+	/** Length of the header of the Bloom filter data chunk. */
+	public static final int BLOOM_FILTER_DATA_HEADER_LEN = 12;
+
+	/** Version of the hash function used by changed path Bloom filters. */
+	public static final int BLOOM_FILTER_HASH_VERSION = 1;
+
+	/** Number of hash functions applied to each path. */
+	public static final int BLOOM_FILTER_NUM_HASHES = 7;
+
+	/** Number of bits reserved in a Bloom filter for each path. */
+	public static final int BLOOM_FILTER_BITS_PER_ENTRY = 10;
+
+	/**
+	 * Maximum number of changed paths per commit; commits changing more paths
+	 * get a filter with all bits set.
+	 */
+	public static final int BLOOM_FILTER_MAX_CHANGED_PATHS = 512;
+
+	private CommitGraphConstants() {
+		// Not instantiable.
+	}
+}
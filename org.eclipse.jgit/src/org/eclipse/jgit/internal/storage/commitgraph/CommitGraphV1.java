@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.BLOOM_FILTER_DATA_HEADER_LEN;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.BLOOM_FILTER_HASH_VERSION;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_DATA_WIDTH;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.FANOUT_LEN;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_EDGE_MASK;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_EXTRA_EDGES_NEEDED;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_LAST_EDGE;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_NO_PARENT;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Support for the commit-graph v1 format.
+ *
+ * @see CommitGraph
+ */
+class CommitGraphV1 implements CommitGraph {
+	private static final int[] NO_PARENTS = {};
+
+	private static final int FANOUT = 256;
+
+	private static final int OID_LENGTH = Constants.OBJECT_ID_LENGTH;
+
+	private final int[] fanoutTable;
+
+	/** Sorted object ids of all commits, {@link #OID_LENGTH} bytes each. */
+	private final byte[] oidLookup;
+
+	/** Commit data, {@link CommitGraphConstants#COMMIT_DATA_WIDTH} each. */
+	private final byte[] commitData;
+
+	/** Extra parents of octopus merges; may be null. */
+	private final byte[] extraEdgeList;
+
+	/** End offsets of the changed path filters, 4 bytes each; may be null. */
+	private final byte[] bloomFilterIndex;
+
+	/** Changed path filters, including the chunk header; may be null. */
+	private final byte[] bloomFilterData;
+
+	private final int bloomFilterNumHashes;
+
+	private final int commitCnt;
+
+	CommitGraphV1(byte[] oidFanout, byte[] oidLookup, byte[] commitData,
+			byte[] extraEdgeList, byte[] bloomFilterIndex,
+			byte[] bloomFilterData) throws CommitGraphFormatException {
+		if (oidFanout.length != FANOUT_LEN) {
+			throw new CommitGraphFormatException(
+					JGitText.get().notACommitGraph);
+		}
+		fanoutTable = new int[FANOUT];
+		for (int k = 0; k < FANOUT; k++) {
+			fanoutTable[k] = NB.decodeInt32(oidFanout, k * 4);
+			if (fanoutTable[k] < 0
+					|| (k > 0 && fanoutTable[k] < fanoutTable[k - 1])) {
+				throw new CommitGraphFormatException(
+						JGitText.get().notACommitGraph);
+			}
+		}
+		commitCnt = fanoutTable[FANOUT - 1];
+		if ((long) commitCnt * OID_LENGTH != oidLookup.length
+				|| (long) commitCnt * COMMIT_DATA_WIDTH != commitData.length) {
+			throw new CommitGraphFormatException(
+					JGitText.get().notACommitGraph);
+		}
+
+		this.oidLookup = oidLookup;
+		this.commitData = commitData;
+		this.extraEdgeList = extraEdgeList;
+
+		if (bloomFilterIndex != null && bloomFilterData != null
+				&& (long) commitCnt * 4 == bloomFilterIndex.length
+				&& bloomFilterData.length >= BLOOM_FILTER_DATA_HEADER_LEN
+				&& NB.decodeInt32(bloomFilterData,
+						0) == BLOOM_FILTER_HASH_VERSION) {
+			this.bloomFilterIndex = bloomFilterIndex;
+			this.bloomFilterData = bloomFilterData;
+			this.bloomFilterNumHashes = NB.decodeInt32(bloomFilterData, 4);
+		} else {
+			// Filters written with an unknown hash version are ignored.
+			this.bloomFilterIndex = null;
+			this.bloomFilterData = null;
+			this.bloomFilterNumHashes = 0;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int findGraphPosition(AnyObjectId commit) {
+		int levelOne = commit.getFirstByte();
+		int high = fanoutTable[levelOne];
+		int low = levelOne == 0 ? 0 : fanoutTable[levelOne - 1];
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = commit.compareTo(oidLookup, OID_LENGTH * mid);
+			if (cmp < 0) {
+				high = mid;
+			} else if (cmp == 0) {
+				return mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return -1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ObjectId getObjectId(int graphPos) {
+		if (graphPos < 0 || graphPos >= commitCnt) {
+			return null;
+		}
+		return ObjectId.fromRaw(oidLookup, OID_LENGTH * graphPos);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public CommitData getCommitData(int graphPos) {
+		if (graphPos < 0 || graphPos >= commitCnt) {
+			return null;
+		}
+
+		int ptr = COMMIT_DATA_WIDTH * graphPos;
+		ObjectId tree = ObjectId.fromRaw(commitData, ptr);
+
+		int[] parents;
+		int p1 = NB.decodeInt32(commitData, ptr + OID_LENGTH);
+		int p2 = NB.decodeInt32(commitData, ptr + OID_LENGTH + 4);
+		if (p1 == GRAPH_NO_PARENT) {
+			parents = NO_PARENTS;
+		} else if (p2 == GRAPH_NO_PARENT) {
+			parents = new int[] { p1 };
+		} else if ((p2 & GRAPH_EXTRA_EDGES_NEEDED) == 0) {
+			parents = new int[] { p1, p2 };
+		} else {
+			parents = findParentsForOctopusMerge(p1,
+					p2 & GRAPH_EDGE_MASK);
+		}
+
+		long upper = NB.decodeUInt32(commitData, ptr + OID_LENGTH + 8);
+		long lower = NB.decodeUInt32(commitData, ptr + OID_LENGTH + 12);
+		int generation = (int) (upper >>> 2);
+		long commitTime = ((upper & 0x3L) << 32) | lower;
+		return new CommitDataImpl(tree, parents, commitTime, generation);
+	}
+
+	private int[] findParentsForOctopusMerge(int p1, int edgeStart) {
+		if (extraEdgeList == null
+				|| (long) edgeStart * 4 >= extraEdgeList.length) {
+			// Corrupt commit-graph, the edge list does not have the parents.
+			return null;
+		}
+		int cnt = 1;
+		boolean last = false;
+		for (int i = edgeStart * 4; i < extraEdgeList.length; i += 4) {
+			cnt++;
+			if ((NB.decodeInt32(extraEdgeList, i) & GRAPH_LAST_EDGE) != 0) {
+				last = true;
+				break;
+			}
+		}
+		if (!last) {
+			return null;
+		}
+		int[] parents = new int[cnt];
+		parents[0] = p1;
+		for (int i = 1; i < cnt; i++) {
+			int edge = NB.decodeInt32(extraEdgeList, (edgeStart + i - 1) * 4);
+			parents[i] = edge & GRAPH_EDGE_MASK;
+		}
+		return parents;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ChangedPathFilter getChangedPathFilter(int graphPos) {
+		if (bloomFilterIndex == null || graphPos < 0
+				|| graphPos >= commitCnt) {
+			return null;
+		}
+		int end = NB.decodeInt32(bloomFilterIndex, graphPos * 4);
+		int start = graphPos == 0 ? 0
+				: NB.decodeInt32(bloomFilterIndex, (graphPos - 1) * 4);
+		int len = end - start;
+		if (len <= 0 || start < 0 || BLOOM_FILTER_DATA_HEADER_LEN
+				+ (long) end > bloomFilterData.length) {
+			// Filter was not computed for this commit.
+			return null;
+		}
+		return new ChangedPathFilter(bloomFilterData,
+				BLOOM_FILTER_DATA_HEADER_LEN + start, len,
+				bloomFilterNumHashes);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getCommitCnt() {
+		return commitCnt;
+	}
+
+	private static class CommitDataImpl implements CommitData {
+		private final ObjectId tree;
+
+		private final int[] parents;
+
+		private final long commitTime;
+
+		private final int generation;
+
+		CommitDataImpl(ObjectId tree, int[] parents, long commitTime,
+				int generation) {
+			this.tree = tree;
+			this.parents = parents;
+			this.commitTime = commitTime;
+			this.generation = generation;
+		}
+
+		@Override
+		public ObjectId getTree() {
+			return tree;
+		}
+
+		@Override
+		public int[] getParents() {
+			return parents;
+		}
+
+		@Override
+		public long getCommitTime() {
+			return commitTime;
+		}
+
+		@Override
+		public int getGeneration() {
+			return generation;
+		}
+	}
+}
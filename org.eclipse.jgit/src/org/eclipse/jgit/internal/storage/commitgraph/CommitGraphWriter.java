@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.BLOOM_FILTER_BITS_PER_ENTRY;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.BLOOM_FILTER_DATA_HEADER_LEN;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.BLOOM_FILTER_HASH_VERSION;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.BLOOM_FILTER_MAX_CHANGED_PATHS;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.BLOOM_FILTER_NUM_HASHES;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_BLOOM_FILTER_DATA;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_BLOOM_FILTER_INDEX;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_COMMIT_DATA;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_EXTRA_EDGE_LIST;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_OID_FANOUT;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_OID_LOOKUP;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_LOOKUP_WIDTH;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_DATA_WIDTH;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_HEADER_LEN;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_MAGIC;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_VERSION_1;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.FANOUT_LEN;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GENERATION_NUMBER_MAX;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_EXTRA_EDGES_NEEDED;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_LAST_EDGE;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_NO_PARENT;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.OID_HASH_VERSION;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.DigestOutputStream;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.annotations.NonNull;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Writes a commit-graph formatted file.
+ * <p>
+ * The commits to be written are supplied as {@link GraphCommits}, sorted by
+ * object id. Generation numbers are computed by the writer; the parents of
+ * every commit must be part of the supplied commits.
+ */
+public class CommitGraphWriter {
+
+	private static final int COMMIT_GRAPH_BASE_GRAPH_COUNT = 0;
+
+	private final int hashsz;
+
+	private final GraphCommits graphCommits;
+
+	private final boolean generateChangedPathFilters;
+
+	/**
+	 * Create commit-graph writer for these commits.
+	 *
+	 * @param graphCommits
+	 *            the commits which will be written to the commit-graph.
+	 */
+	public CommitGraphWriter(@NonNull GraphCommits graphCommits) {
+		this(graphCommits, false);
+	}
+
+	/**
+	 * Create commit-graph writer for these commits.
+	 *
+	 * @param graphCommits
+	 *            the commits which will be written to the commit-graph.
+	 * @param generateChangedPathFilters
+	 *            whether to compute and write changed path Bloom filters,
+	 *            allowing path limited walks to skip tree diffs of commits
+	 *            which did not touch the path.
+	 */
+	public CommitGraphWriter(@NonNull GraphCommits graphCommits,
+			boolean generateChangedPathFilters) {
+		this.graphCommits = graphCommits;
+		this.hashsz = Constants.OBJECT_ID_LENGTH;
+		this.generateChangedPathFilters = generateChangedPathFilters;
+	}
+
+	/**
+	 * Write commit-graph to the supplied stream.
+	 *
+	 * @param monitor
+	 *            progress monitor to report the number of items written.
+	 * @param commitGraphStream
+	 *            output stream of commit-graph data. The stream should be
+	 *            buffered by the caller. The caller is responsible for closing
+	 *            the stream.
+	 * @throws IOException
+	 *             if an error occurred
+	 */
+	public void write(@NonNull ProgressMonitor monitor,
+			@NonNull OutputStream commitGraphStream) throws IOException {
+		int[] generations = computeGenerationNumbers(monitor);
+		ChangedPathFilter[] filters = generateChangedPathFilters
+				? computeChangedPathFilters(monitor)
+				: null;
+		List<ChunkHeader> chunks = createChunks(filters);
+		long writeCount = 256 + 2 * graphCommits.size()
+				+ graphCommits.getExtraEdgeCnt();
+		monitor.beginTask(
+				MessageFormat.format(JGitText.get().writingOutCommitGraph,
+						Integer.valueOf(chunks.size())),
+				(int) writeCount);
+
+		DigestOutputStream out = new DigestOutputStream(
+				commitGraphStream instanceof BufferedOutputStream
+						? commitGraphStream
+						: new BufferedOutputStream(commitGraphStream),
+				Constants.newMessageDigest());
+		writeHeader(out, chunks.size());
+		writeChunkLookup(out, chunks);
+		writeChunks(monitor, out, chunks, generations, filters);
+		writeCheckSum(out);
+		out.flush();
+		monitor.endTask();
+	}
+
+	private List<ChunkHeader> createChunks(ChangedPathFilter[] filters) {
+		List<ChunkHeader> chunks = new ArrayList<>();
+		chunks.add(new ChunkHeader(CHUNK_ID_OID_FANOUT, FANOUT_LEN));
+		chunks.add(new ChunkHeader(CHUNK_ID_OID_LOOKUP,
+				(long) hashsz * graphCommits.size()));
+		chunks.add(new ChunkHeader(CHUNK_ID_COMMIT_DATA,
+				(long) COMMIT_DATA_WIDTH * graphCommits.size()));
+		if (graphCommits.getExtraEdgeCnt() > 0) {
+			chunks.add(new ChunkHeader(CHUNK_ID_EXTRA_EDGE_LIST,
+					4L * graphCommits.getExtraEdgeCnt()));
+		}
+		if (filters != null) {
+			long dataLen = BLOOM_FILTER_DATA_HEADER_LEN;
+			for (ChangedPathFilter f : filters) {
+				dataLen += f.getLength();
+			}
+			chunks.add(new ChunkHeader(CHUNK_ID_BLOOM_FILTER_INDEX,
+					4L * graphCommits.size()));
+			chunks.add(new ChunkHeader(CHUNK_ID_BLOOM_FILTER_DATA, dataLen));
+		}
+		return chunks;
+	}
+
+	private static void writeHeader(OutputStream out, int numChunks)
+			throws IOException {
+		byte[] headerBuffer = new byte[COMMIT_GRAPH_HEADER_LEN];
+		NB.encodeInt32(headerBuffer, 0, COMMIT_GRAPH_MAGIC);
+		byte[] buff = { (byte) COMMIT_GRAPH_VERSION_1,
+				(byte) OID_HASH_VERSION, (byte) numChunks,
+				(byte) COMMIT_GRAPH_BASE_GRAPH_COUNT };
+		System.arraycopy(buff, 0, headerBuffer, 4, 4);
+		out.write(headerBuffer, 0, 8);
+	}
+
+	private static void writeChunkLookup(OutputStream out,
+			List<ChunkHeader> chunks) throws IOException {
+		int numChunks = chunks.size();
+		long chunkOffset = COMMIT_GRAPH_HEADER_LEN
+				+ (numChunks + 1) * CHUNK_LOOKUP_WIDTH;
+		byte[] buffer = new byte[CHUNK_LOOKUP_WIDTH];
+		for (ChunkHeader chunk : chunks) {
+			NB.encodeInt32(buffer, 0, chunk.id);
+			NB.encodeInt64(buffer, 4, chunkOffset);
+			out.write(buffer);
+			chunkOffset += chunk.size;
+		}
+		NB.encodeInt32(buffer, 0, 0);
+		NB.encodeInt64(buffer, 4, chunkOffset);
+		out.write(buffer);
+	}
+
+	private void writeChunks(ProgressMonitor monitor, OutputStream out,
+			List<ChunkHeader> chunks, int[] generations,
+			ChangedPathFilter[] filters) throws IOException {
+		for (ChunkHeader chunk : chunks) {
+			switch (chunk.id) {
+			case CHUNK_ID_OID_FANOUT:
+				writeFanoutTable(out);
+				monitor.update(256);
+				break;
+			case CHUNK_ID_OID_LOOKUP:
+				writeOidLookUp(monitor, out);
+				break;
+			case CHUNK_ID_COMMIT_DATA:
+				writeCommitData(monitor, out, generations);
+				break;
+			case CHUNK_ID_EXTRA_EDGE_LIST:
+				writeExtraEdges(monitor, out);
+				break;
+			case CHUNK_ID_BLOOM_FILTER_INDEX:
+				writeBloomFilterIndex(out, filters);
+				break;
+			case CHUNK_ID_BLOOM_FILTER_DATA:
+				writeBloomFilterData(out, filters);
+				break;
+			default:
+				throw new IllegalStateException();
+			}
+		}
+	}
+
+	private static void writeCheckSum(DigestOutputStream out)
+			throws IOException {
+		out.on(false);
+		out.write(out.getMessageDigest().digest());
+	}
+
+	private void writeFanoutTable(OutputStream out) throws IOException {
+		byte[] tmp = new byte[4];
+		int[] fanout = new int[256];
+		for (RevCommit c : graphCommits) {
+			fanout[c.getFirstByte() & 0xff]++;
+		}
+		for (int i = 1; i < fanout.length; i++) {
+			fanout[i] += fanout[i - 1];
+		}
+		for (int n : fanout) {
+			NB.encodeInt32(tmp, 0, n);
+			out.write(tmp, 0, 4);
+		}
+	}
+
+	private void writeOidLookUp(ProgressMonitor monitor, OutputStream out)
+			throws IOException {
+		byte[] tmp = new byte[hashsz];
+		for (RevCommit c : graphCommits) {
+			c.copyRawTo(tmp, 0);
+			out.write(tmp);
+			monitor.update(1);
+		}
+	}
+
+	private void writeCommitData(ProgressMonitor monitor, OutputStream out,
+			int[] generations) throws IOException {
+		int num = 0;
+		byte[] tmp = new byte[COMMIT_DATA_WIDTH];
+		int i = 0;
+		for (RevCommit commit : graphCommits) {
+			commit.getTree().copyRawTo(tmp, 0);
+
+			RevCommit[] parents = commit.getParents();
+			if (parents.length == 0) {
+				NB.encodeInt32(tmp, hashsz, GRAPH_NO_PARENT);
+			} else {
+				NB.encodeInt32(tmp, hashsz,
+						graphCommits.getOidPosition(parents[0]));
+			}
+
+			if (parents.length <= 1) {
+				NB.encodeInt32(tmp, hashsz + 4, GRAPH_NO_PARENT);
+			} else if (parents.length == 2) {
+				NB.encodeInt32(tmp, hashsz + 4,
+						graphCommits.getOidPosition(parents[1]));
+			} else {
+				NB.encodeInt32(tmp, hashsz + 4,
+						GRAPH_EXTRA_EDGES_NEEDED | num);
+				num += parents.length - 1;
+			}
+
+			// The commit time is stored in the lower 34 bits, the generation
+			// number in the upper 30 bits of the 64 bit field.
+			long commitTime = commit.getCommitTime() & 0xffffffffL;
+			NB.encodeInt32(tmp, hashsz + 8, (generations[i] << 2)
+					| (int) ((commitTime >>> 32) & 0x3L));
+			NB.encodeInt32(tmp, hashsz + 12, (int) commitTime);
+
+			out.write(tmp, 0, COMMIT_DATA_WIDTH);
+			monitor.update(1);
+			i++;
+		}
+	}
+
+	private int[] computeGenerationNumbers(ProgressMonitor monitor)
+			throws IOException {
+		int[] generations = new int[graphCommits.size()];
+		monitor.beginTask(JGitText.get().computingCommitGeneration,
+				graphCommits.size());
+		Deque<RevCommit> stack = new ArrayDeque<>();
+		for (int pos = 0; pos < generations.length; pos++) {
+			if (generations[pos] != 0) {
+				monitor.update(1);
+				continue;
+			}
+			stack.push(graphCommits.get(pos));
+			while (!stack.isEmpty()) {
+				RevCommit cmit = stack.peek();
+				int max = 0;
+				boolean allParentComputed = true;
+				for (RevCommit p : cmit.getParents()) {
+					int gen = generations[graphCommits.getOidPosition(p)];
+					if (gen == 0) {
+						allParentComputed = false;
+						stack.push(p);
+						break;
+					}
+					max = Math.max(max, gen);
+				}
+
+				if (allParentComputed) {
+					stack.pop();
+					generations[graphCommits.getOidPosition(cmit)] = Math
+							.min(max + 1, GENERATION_NUMBER_MAX);
+				}
+			}
+			monitor.update(1);
+		}
+		monitor.endTask();
+		return generations;
+	}
+
+	private void writeExtraEdges(ProgressMonitor monitor, OutputStream out)
+			throws IOException {
+		byte[] tmp = new byte[4];
+		for (RevCommit commit : graphCommits) {
+			RevCommit[] parents = commit.getParents();
+			if (parents.length > 2) {
+				int edgeValue;
+				for (int n = 1; n < parents.length; n++) {
+					RevCommit parent = parents[n];
+					edgeValue = graphCommits.getOidPosition(parent);
+					if (n == parents.length - 1) {
+						edgeValue |= GRAPH_LAST_EDGE;
+					}
+					NB.encodeInt32(tmp, 0, edgeValue);
+					out.write(tmp);
+					monitor.update(1);
+				}
+			}
+		}
+	}
+
+	private ChangedPathFilter[] computeChangedPathFilters(
+			ProgressMonitor monitor) throws IOException {
+		ChangedPathFilter[] filters = new ChangedPathFilter[graphCommits
+				.size()];
+		monitor.beginTask(JGitText.get().computingChangedPathFilters,
+				graphCommits.size());
+		try (TreeWalk tw = new TreeWalk(graphCommits.getObjectReader())) {
+			tw.setRecursive(true);
+			tw.setFilter(TreeFilter.ANY_DIFF);
+			for (int pos = 0; pos < filters.length; pos++) {
+				RevCommit c = graphCommits.get(pos);
+				tw.reset();
+				if (c.getParentCount() == 0) {
+					tw.addTree(new EmptyTreeIterator());
+				} else {
+					tw.addTree(c.getParent(0).getTree());
+				}
+				tw.addTree(c.getTree());
+				filters[pos] = computeChangedPathFilter(tw);
+				monitor.update(1);
+			}
+		}
+		monitor.endTask();
+		return filters;
+	}
+
+	private static ChangedPathFilter computeChangedPathFilter(TreeWalk tw)
+			throws IOException {
+		Set<ByteBuffer> paths = new HashSet<>();
+		int changes = 0;
+		while (tw.next()) {
+			if (++changes > BLOOM_FILTER_MAX_CHANGED_PATHS) {
+				return ChangedPathFilter.FULL;
+			}
+			byte[] path = tw.getRawPath();
+			paths.add(ByteBuffer.wrap(path));
+			for (int i = path.length - 1; i > 0; i--) {
+				if (path[i] == '/') {
+					paths.add(ByteBuffer.wrap(Arrays.copyOf(path, i)));
+				}
+			}
+		}
+		List<byte[]> keys = new ArrayList<>(paths.size());
+		for (ByteBuffer p : paths) {
+			keys.add(p.array());
+		}
+		return ChangedPathFilter.fromPaths(keys);
+	}
+
+	private static void writeBloomFilterIndex(OutputStream out,
+			ChangedPathFilter[] filters) throws IOException {
+		byte[] tmp = new byte[4];
+		int end = 0;
+		for (ChangedPathFilter f : filters) {
+			end += f.getLength();
+			NB.encodeInt32(tmp, 0, end);
+			out.write(tmp);
+		}
+	}
+
+	private static void writeBloomFilterData(OutputStream out,
+			ChangedPathFilter[] filters) throws IOException {
+		byte[] hdr = new byte[BLOOM_FILTER_DATA_HEADER_LEN];
+		NB.encodeInt32(hdr, 0, BLOOM_FILTER_HASH_VERSION);
+		NB.encodeInt32(hdr, 4, BLOOM_FILTER_NUM_HASHES);
+		NB.encodeInt32(hdr, 8, BLOOM_FILTER_BITS_PER_ENTRY);
+		out.write(hdr);
+		for (ChangedPathFilter f : filters) {
+			out.write(f.toByteArray());
+		}
+	}
+
+	private static class ChunkHeader {
+		final int id;
+
+		final long size;
+
+		ChunkHeader(int id, long size) {
+			this.id = id;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Reading and writing of the commit-graph, a serialized representation of
+ * the commit graph structure.
+ */
+package org.eclipse.jgit.internal.storage.commitgraph;
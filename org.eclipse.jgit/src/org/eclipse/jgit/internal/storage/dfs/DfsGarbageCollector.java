@@ -52,6 +52,7 @@
 import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.UNREACHABLE_GARBAGE;
 import static org.eclipse.jgit.internal.storage.dfs.DfsPackCompactor.configureReftable;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.BITMAP_INDEX;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.COMMIT_GRAPH;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.INDEX;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.REFTABLE;
@@ -70,6 +71,8 @@
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
 import org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource;
 import org.eclipse.jgit.internal.storage.file.PackIndex;
 import org.eclipse.jgit.internal.storage.file.PackReverseIndex;
@@ -111,6 +114,8 @@ public class DfsGarbageCollector {
 	private ReftableConfig reftableConfig;
 	private boolean convertToReftable = true;
 	private boolean includeDeletes;
+	private boolean writeCommitGraph;
+	private boolean writeChangedPaths;
 	private long reftableInitialMinUpdateIndex = 1;
 	private long reftableInitialMaxUpdateIndex = 1;
 
@@ -199,6 +204,38 @@ public DfsGarbageCollector setConvertToReftable(boolean convert) {
 		return this;
 	}
 
+	/**
+	 * Whether the garbage collector should write a commit-graph.
+	 *
+	 * @param enable
+	 *            if {@code true}, a commit-graph covering all commits reachable
+	 *            from heads and tags is written next to the GC pack. Default
+	 *            is {@code false}.
+	 * @return {@code this}
+	 * @since 5.6
+	 */
+	public DfsGarbageCollector setWriteCommitGraph(boolean enable) {
+		writeCommitGraph = enable;
+		return this;
+	}
+
+	/**
+	 * Whether the commit-graph written by the garbage collector should
+	 * contain changed path Bloom filters.
+	 *
+	 * @param enable
+	 *            if {@code true} and {@link #setWriteCommitGraph(boolean)} is
+	 *            enabled, the commit-graph records the paths changed by each
+	 *            commit, speeding up path limited history walks. Default is
+	 *            {@code false}.
+	 * @return {@code this}
+	 * @since 5.6
+	 */
+	public DfsGarbageCollector setWriteChangedPaths(boolean enable) {
+		writeChangedPaths = enable;
+		return this;
+	}
+
 	/**
 	 * Whether the garbage collector will include tombstones for deleted
 	 * references in the reftable.
@@ -720,6 +757,10 @@ private DfsPackDescription writePack(PackSource source, PackWriter pw,
 			}
 		}
 
+		if (source == GC && writeCommitGraph) {
+			writeCommitGraph(pack, pm);
+		}
+
 		PackStatistics stats = pw.getStatistics();
 		pack.setPackStats(stats);
 		pack.setLastModified(startTimeMillis);
@@ -729,6 +770,21 @@ private DfsPackDescription writePack(PackSource source, PackWriter pw,
 		return pack;
 	}
 
+	private void writeCommitGraph(DfsPackDescription pack, ProgressMonitor pm)
+			throws IOException {
+		try (DfsOutputStream out = objdb.writeFile(pack, COMMIT_GRAPH);
+				RevWalk pool = new RevWalk(ctx)) {
+			GraphCommits gcs = GraphCommits.fromWalk(pm, allHeadsAndTags, pool);
+			CountingOutputStream cnt = new CountingOutputStream(out);
+			CommitGraphWriter writer = new CommitGraphWriter(gcs,
+					writeChangedPaths);
+			writer.write(pm, cnt);
+			pack.addFileExt(COMMIT_GRAPH);
+			pack.setFileSize(COMMIT_GRAPH, cnt.getCount());
+			pack.setBlockSize(COMMIT_GRAPH, out.blockSize());
+		}
+	}
+
 	private void writeReftable() throws IOException {
 		if (reftableConfig != null) {
 			DfsPackDescription pack = objdb.newPack(GC);
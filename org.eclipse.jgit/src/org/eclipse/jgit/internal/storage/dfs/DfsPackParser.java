@@ -44,6 +44,8 @@
 package org.eclipse.jgit.internal.storage.dfs;
 
 import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_THREADS;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_PACK_SECTION;
 
 import java.io.EOFException;
 import java.io.IOException;
@@ -132,6 +134,10 @@ protected DfsPackParser(DfsObjDatabase db, DfsInserter ins, InputStream in) {
 		this.objins = ins;
 		this.crc = new CRC32();
 		this.packDigest = Constants.newMessageDigest();
+		// Resolving deltas in parallel is opt-in, only an explicit
+		// pack.threads enables it. 0 then means all processors.
+		setThreads(db.getRepository().getConfig().getInt(CONFIG_PACK_SECTION,
+				CONFIG_KEY_THREADS, 1));
 	}
 
 	/** {@inheritDoc} */
@@ -375,24 +381,56 @@ protected int readDatabase(byte[] dst, int pos, int cnt) throws IOException {
 			return n;
 		}
 
-		if (readBlock == null || !readBlock.contains(packKey, readPos)) {
-			long start = toBlockStart(readPos);
-			readBlock = blockCache.get(packKey, start);
-			if (readBlock == null) {
-				int size = (int) Math.min(blockSize, packEnd - start);
-				byte[] buf = new byte[size];
-				if (read(start, buf, 0, size) != size)
-					throw new EOFException();
-				readBlock = new DfsBlock(packKey, start, buf);
-				blockCache.put(readBlock);
-			}
-		}
+		if (readBlock == null || !readBlock.contains(packKey, readPos))
+			readBlock = getBlock(readPos);
 
 		int n = readBlock.copy(readPos, dst, pos, cnt);
 		readPos += n;
 		return n;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected boolean isConcurrentReadSupported() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected int readDatabase(long position, byte[] dst, int pos, int cnt)
+			throws IOException {
+		if (cnt == 0)
+			return 0;
+
+		if (currPos <= position) {
+			// Only data already received can be read back.
+			if (currPos + currEnd <= position)
+				throw new EOFException();
+			int p = (int) (position - currPos);
+			int n = Math.min(cnt, currEnd - p);
+			System.arraycopy(currBuf, p, dst, pos, n);
+			return n;
+		}
+		return getBlock(position).copy(position, dst, pos, cnt);
+	}
+
+	private DfsBlock getBlock(long pos) throws IOException {
+		long start = toBlockStart(pos);
+		DfsBlock b = blockCache.get(packKey, start);
+		if (b == null) {
+			int size = (int) Math.min(blockSize, packEnd - start);
+			byte[] buf = new byte[size];
+			// DfsOutputStream is not required to support concurrent reads.
+			synchronized (out) {
+				if (read(start, buf, 0, size) != size)
+					throw new EOFException();
+			}
+			b = new DfsBlock(packKey, start, buf);
+			blockCache.put(b);
+		}
+		return b;
+	}
+
 	private int read(long pos, byte[] dst, int off, int len) throws IOException {
 		if (len == 0)
 			return 0;
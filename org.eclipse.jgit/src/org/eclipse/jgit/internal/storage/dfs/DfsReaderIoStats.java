@@ -58,10 +58,13 @@ public static class Accumulator {
 		/** Total number of complete bitmap indexes read into memory. */
 		long readBitmap;
 
+		/** Total number of complete commit-graphs read into memory. */
+		long readCommitGraph;
+
 		/** Total number of bytes read from indexes. */
 		long readIdxBytes;
 
-		/** Total microseconds spent reading pack or bitmap indexes. */
+		/** Total microseconds spent reading pack, bitmap or commit-graph indexes. */
 		long readIdxMicros;
 
 		/** Total number of block cache hits. */
@@ -125,6 +128,16 @@ public long getReadBitmapIndexCount() {
 		return stats.readBitmap;
 	}
 
+	/**
+	 * Get total number of complete commit-graphs read into memory.
+	 *
+	 * @return total number of complete commit-graphs read into memory.
+	 * @since 5.6
+	 */
+	public long getReadCommitGraphCount() {
+		return stats.readCommitGraph;
+	}
+
 	/**
 	 * Get total number of bytes read from indexes.
 	 *
@@ -43,6 +43,7 @@
 
 package org.eclipse.jgit.internal.storage.file;
 
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -54,6 +55,7 @@
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.util.BlockList;
 
 import com.googlecode.javaewah.EWAHCompressedBitmap;
@@ -83,10 +85,28 @@ public BitmapIndexImpl(PackBitmapIndex packIndex) {
 		indexObjectCount = packIndex.getObjectCount();
 	}
 
-	PackBitmapIndex getPackBitmapIndex() {
+	/**
+	 * Get the bitmap index of the pack backing this index.
+	 *
+	 * @return the bitmap index of the pack backing this index.
+	 */
+	public PackBitmapIndex getPackBitmapIndex() {
 		return packIndex;
 	}
 
+	/**
+	 * Get the number of objects outside of the pack known to this index.
+	 * <p>
+	 * Objects not in the bitmapped pack are given a position when first added
+	 * to a bitmap built from this index, and keep it for the lifetime of the
+	 * index.
+	 *
+	 * @return number of objects outside of the pack with a position.
+	 */
+	public int getObjectCountOutsidePack() {
+		return mutableIndex.revList.size();
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public CompressedBitmap getBitmap(AnyObjectId objectId) {
@@ -102,6 +122,78 @@ public CompressedBitmapBuilder newBitmapBuilder() {
 		return new CompressedBitmapBuilder(this);
 	}
 
+	/**
+	 * Get all objects of a type known to this index.
+	 *
+	 * @param type
+	 *            the Git type, e.g. {@link Constants#OBJ_BLOB}.
+	 * @return the objects of this index having the given type.
+	 */
+	public CompressedBitmap getObjectsOfType(int type) {
+		EWAHCompressedBitmap r = packIndex.ofObjectType(ones(indexObjectCount),
+				type);
+		return new CompressedBitmap(
+				r.or(mutableIndex.ofObjectType(type, indexObjectCount)), this);
+	}
+
+	/**
+	 * Find the blobs of a bitmap whose size exceeds a limit.
+	 * <p>
+	 * Sizes of blobs in the bitmapped pack are remembered for the lifetime of
+	 * its {@link PackBitmapIndex}, so repeated calls with the same limit
+	 * mostly avoid looking objects up.
+	 *
+	 * @param objects
+	 *            the objects to check, built from this index.
+	 * @param limit
+	 *            the size limit in bytes.
+	 * @param reader
+	 *            reader to look up object sizes with.
+	 * @return the blobs in {@code objects} larger than {@code limit} bytes.
+	 * @throws java.io.IOException
+	 *             the size of a blob could not be read.
+	 */
+	public CompressedBitmap findBlobsLargerThan(Bitmap objects, long limit,
+			ObjectReader reader) throws IOException {
+		EWAHCompressedBitmap bits = ewahBitmap(objects);
+		EWAHCompressedBitmap large = LargeBlobBitmapCache.get(packIndex)
+				.findLarger(packIndex,
+						packIndex.ofObjectType(bits, Constants.OBJ_BLOB),
+						limit, reader);
+
+		// Objects outside of the pack are few; check them directly.
+		EWAHCompressedBitmap extra = new EWAHCompressedBitmap();
+		IntIterator i = bits.andNot(ones(indexObjectCount)).intIterator();
+		while (i.hasNext()) {
+			int position = i.next();
+			MutableEntry entry = mutableIndex
+					.getObject(position - indexObjectCount);
+			if (entry.type == Constants.OBJ_BLOB
+					&& reader.getObjectSize(entry, Constants.OBJ_BLOB) > limit) {
+				extra.set(position);
+			}
+		}
+		return new CompressedBitmap(large.or(extra), this);
+	}
+
+	EWAHCompressedBitmap ewahBitmap(Bitmap other) {
+		if (other instanceof CompressedBitmap) {
+			CompressedBitmap b = (CompressedBitmap) other;
+			if (b.bitmapIndex != this) {
+				throw new IllegalArgumentException();
+			}
+			return b.bitmap;
+		}
+		if (other instanceof CompressedBitmapBuilder) {
+			CompressedBitmapBuilder b = (CompressedBitmapBuilder) other;
+			if (b.bitmapIndex != this) {
+				throw new IllegalArgumentException();
+			}
+			return b.bitset.combine();
+		}
+		throw new IllegalArgumentException();
+	}
+
 	int findPosition(AnyObjectId objectId) {
 		int position = packIndex.findPosition(objectId);
 		if (position < 0) {
@@ -286,21 +378,7 @@ public BitmapIndexImpl getBitmapIndex() {
 		}
 
 		private EWAHCompressedBitmap ewahBitmap(Bitmap other) {
-			if (other instanceof CompressedBitmap) {
-				CompressedBitmap b = (CompressedBitmap) other;
-				if (b.bitmapIndex != bitmapIndex) {
-					throw new IllegalArgumentException();
-				}
-				return b.bitmap;
-			}
-			if (other instanceof CompressedBitmapBuilder) {
-				CompressedBitmapBuilder b = (CompressedBitmapBuilder) other;
-				if (b.bitmapIndex != bitmapIndex) {
-					throw new IllegalArgumentException();
-				}
-				return b.bitset.combine();
-			}
-			throw new IllegalArgumentException();
+			return bitmapIndex.ewahBitmap(other);
 		}
 	}
 
@@ -410,21 +488,7 @@ EWAHCompressedBitmap getEwahCompressedBitmap() {
 		}
 
 		private EWAHCompressedBitmap ewahBitmap(Bitmap other) {
-			if (other instanceof CompressedBitmap) {
-				CompressedBitmap b = (CompressedBitmap) other;
-				if (b.bitmapIndex != bitmapIndex) {
-					throw new IllegalArgumentException();
-				}
-				return b.bitmap;
-			}
-			if (other instanceof CompressedBitmapBuilder) {
-				CompressedBitmapBuilder b = (CompressedBitmapBuilder) other;
-				if (b.bitmapIndex != bitmapIndex) {
-					throw new IllegalArgumentException();
-				}
-				return b.bitset.combine();
-			}
-			throw new IllegalArgumentException();
+			return bitmapIndex.ewahBitmap(other);
 		}
 	}
 
@@ -455,6 +519,16 @@ MutableEntry getObject(int position) {
 			}
 		}
 
+		EWAHCompressedBitmap ofObjectType(int type, int offset) {
+			EWAHCompressedBitmap out = new EWAHCompressedBitmap();
+			for (MutableEntry entry : revList) {
+				if (entry.type == type) {
+					out.set(offset + entry.position);
+				}
+			}
+			return out;
+		}
+
 		int findOrInsert(AnyObjectId objectId, int type) {
 			MutableEntry entry = new MutableEntry(
 					objectId, type, revList.size());
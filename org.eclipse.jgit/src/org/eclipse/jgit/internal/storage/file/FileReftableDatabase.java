@@ -0,0 +1,763 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.eclipse.jgit.lib.Ref.Storage.NEW;
+import static org.eclipse.jgit.lib.Ref.Storage.PACKED;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jgit.annotations.NonNull;
+import org.eclipse.jgit.errors.LockFailedException;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.internal.storage.reftable.MergedReftable;
+import org.eclipse.jgit.internal.storage.reftable.ReftableBatchRefUpdate;
+import org.eclipse.jgit.internal.storage.reftable.ReftableConfig;
+import org.eclipse.jgit.internal.storage.reftable.ReftableDatabase;
+import org.eclipse.jgit.internal.storage.reftable.ReftableWriter;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.RefRename;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.ReflogEntry;
+import org.eclipse.jgit.lib.ReflogReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.SymbolicRef;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.RefList;
+import org.eclipse.jgit.util.RefMap;
+
+/**
+ * Implements RefDatabase using reftable for storage.
+ * <p>
+ * The references are stored in a stack of reftables under
+ * {@code $GIT_DIR/reftable}, see {@link FileReftableStack}. Every update
+ * writes a small table holding only the changed references and their reflog
+ * entries, so the cost of an update does not depend on the number of
+ * references in the repository.
+ * <p>
+ * This class is thread-safe.
+ */
+public class FileReftableDatabase extends RefDatabase {
+	private final ReftableDatabase reftableDatabase;
+
+	private final FileRepository fileRepository;
+
+	private final FileReftableStack reftableStack;
+
+	FileReftableDatabase(FileRepository repo) throws IOException {
+		this(repo, new File(new File(repo.getDirectory(), Constants.REFTABLE),
+				Constants.TABLES_LIST));
+	}
+
+	FileReftableDatabase(FileRepository repo, File refstackName)
+			throws IOException {
+		this.fileRepository = repo;
+		this.reftableStack = new FileReftableStack(refstackName,
+				new File(fileRepository.getDirectory(), Constants.REFTABLE),
+				() -> fileRepository.fireEvent(new RefsChangedEvent()),
+				() -> fileRepository.getConfig());
+		this.reftableDatabase = new ReftableDatabase() {
+			@Override
+			public MergedReftable openMergedReftable() throws IOException {
+				return reftableStack.getMergedReftable();
+			}
+		};
+	}
+
+	ReflogReader getReflogReader(String refname) throws IOException {
+		reloadIfModified();
+		return reftableDatabase.getReflogReader(refname);
+	}
+
+	/**
+	 * Whether the given repository uses reftable for storing its references.
+	 *
+	 * @param repoDir
+	 *            the GIT_DIR of the repository.
+	 * @return whether the given repository uses reftable for refs storage.
+	 */
+	public static boolean isReftable(File repoDir) {
+		return new File(repoDir, Constants.REFTABLE).isDirectory()
+				&& new File(new File(repoDir, Constants.REFTABLE),
+						Constants.TABLES_LIST).isFile();
+	}
+
+	/**
+	 * Merge all tables of the stack into a single table.
+	 *
+	 * @throws java.io.IOException
+	 *             on I/O problems.
+	 */
+	public void compactFully() throws IOException {
+		getLock().lock();
+		try {
+			reftableStack.compactFully();
+			reftableDatabase.clearCache();
+		} finally {
+			getLock().unlock();
+		}
+	}
+
+	private ReentrantLock getLock() {
+		return reftableDatabase.getLock();
+	}
+
+	// Reload the stack if another process modified it.
+	private void reloadIfModified() throws IOException {
+		getLock().lock();
+		try {
+			if (reftableStack.isModified()) {
+				reftableStack.reload();
+				reftableDatabase.clearCache();
+			}
+		} finally {
+			getLock().unlock();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasVersioning() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean performsAtomicTransactions() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@NonNull
+	@Override
+	public BatchRefUpdate newBatchUpdate() {
+		return new FileReftableBatchRefUpdate(this, fileRepository);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public RefUpdate newUpdate(String refName, boolean detach)
+			throws IOException {
+		boolean detachingSymbolicRef = false;
+		Ref ref = exactRef(refName);
+		if (ref == null) {
+			ref = new ObjectIdRef.Unpeeled(NEW, refName, null);
+		} else {
+			detachingSymbolicRef = detach && ref.isSymbolic();
+		}
+
+		RefUpdate update = new FileReftableRefUpdate(ref);
+		if (detachingSymbolicRef) {
+			update.setDetachingSymbolicRef();
+		}
+		return update;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public RefRename newRename(String fromName, String toName)
+			throws IOException {
+		RefUpdate src = newUpdate(fromName, true);
+		RefUpdate dst = newUpdate(toName, true);
+		return new FileReftableRefRename(src, dst);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isNameConflicting(String name) throws IOException {
+		reloadIfModified();
+		return reftableDatabase.isNameConflicting(name, new TreeSet<>(),
+				new HashSet<>());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Ref exactRef(String name) throws IOException {
+		reloadIfModified();
+		return reftableDatabase.exactRef(name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Map<String, Ref> getRefs(String prefix) throws IOException {
+		List<Ref> refs = getRefsByPrefix(prefix);
+		RefList.Builder<Ref> builder = new RefList.Builder<>(refs.size());
+		for (Ref r : refs) {
+			builder.add(r);
+		}
+		return new RefMap(prefix, builder.toRefList(), RefList.emptyList(),
+				RefList.emptyList());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public List<Ref> getRefsByPrefix(String prefix) throws IOException {
+		reloadIfModified();
+		return reftableDatabase.getRefsByPrefix(prefix);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<Ref> getTipsWithSha1(ObjectId id) throws IOException {
+		if (!new ReftableConfig(fileRepository).isIndexObjects()) {
+			return super.getTipsWithSha1(id);
+		}
+		reloadIfModified();
+		return reftableDatabase.getTipsWithSha1(id);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public List<Ref> getAdditionalRefs() throws IOException {
+		return Collections.emptyList();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Ref peel(Ref ref) throws IOException {
+		Ref oldLeaf = ref.getLeaf();
+		if (oldLeaf.isPeeled() || oldLeaf.getObjectId() == null) {
+			return ref;
+		}
+		return recreate(ref, doPeel(oldLeaf));
+	}
+
+	private Ref doPeel(Ref leaf) throws IOException {
+		try (RevWalk rw = new RevWalk(fileRepository)) {
+			RevObject obj = rw.parseAny(leaf.getObjectId());
+			if (obj instanceof RevTag) {
+				return new ObjectIdRef.PeeledTag(leaf.getStorage(),
+						leaf.getName(), leaf.getObjectId(), rw.peel(obj).copy(),
+						leaf.getUpdateIndex());
+			}
+			return new ObjectIdRef.PeeledNonTag(leaf.getStorage(),
+					leaf.getName(), leaf.getObjectId(), leaf.getUpdateIndex());
+		}
+	}
+
+	private static Ref recreate(Ref old, Ref leaf) {
+		if (old.isSymbolic()) {
+			Ref dst = recreate(old.getTarget(), leaf);
+			return new SymbolicRef(old.getName(), dst, old.getUpdateIndex());
+		}
+		return leaf;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void refresh() {
+		getLock().lock();
+		try {
+			reftableStack.reload();
+			reftableDatabase.clearCache();
+		} catch (IOException e) {
+			// Keep the current stack; the next read retries.
+		} finally {
+			getLock().unlock();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void create() throws IOException {
+		File dir = fileRepository.getDirectory();
+		FileUtils.mkdir(new File(dir, Constants.REFTABLE), true);
+		createCompatibilityFiles(dir);
+	}
+
+	/**
+	 * Create the files git expects to find in every repository.
+	 * <p>
+	 * Repository detection requires {@code refs/} and a valid {@code HEAD}.
+	 * {@code HEAD} points to an invalid branch name, and {@code refs/heads}
+	 * is a file, so tools unaware of reftable fail instead of writing loose
+	 * refs which would be ignored.
+	 *
+	 * @param dir
+	 *            the GIT_DIR of the repository.
+	 * @throws IOException
+	 *             the files could not be written.
+	 */
+	static void createCompatibilityFiles(File dir) throws IOException {
+		File refsDir = new File(dir, Constants.R_REFS);
+		FileUtils.mkdir(refsDir, true);
+		FileUtils.createNewFile(new File(refsDir, "heads")); //$NON-NLS-1$
+		try (OutputStream out = new FileOutputStream(
+				new File(dir, Constants.HEAD))) {
+			out.write(Constants.encodeASCII("ref: refs/heads/.invalid\n")); //$NON-NLS-1$
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() {
+		getLock().lock();
+		try {
+			reftableStack.close();
+			reftableDatabase.clearCache();
+		} finally {
+			getLock().unlock();
+		}
+	}
+
+	private boolean addReftable(FileReftableStack.Writer w)
+			throws IOException {
+		getLock().lock();
+		try {
+			boolean ok = reftableStack.addReftable(w);
+			if (!ok) {
+				reftableStack.reload();
+			}
+			reftableDatabase.clearCache();
+			return ok;
+		} finally {
+			getLock().unlock();
+		}
+	}
+
+	private static ObjectId toId(Ref ref) {
+		return toId(ref != null ? ref.getObjectId() : null);
+	}
+
+	private static ObjectId toId(ObjectId id) {
+		return id != null ? id : ObjectId.zeroId();
+	}
+
+	private PersonIdent defaultIdent(PersonIdent who) {
+		return who != null ? who : new PersonIdent(fileRepository);
+	}
+
+	private class FileReftableBatchRefUpdate extends ReftableBatchRefUpdate {
+		FileReftableBatchRefUpdate(FileReftableDatabase db,
+				Repository repository) {
+			super(db, db.reftableDatabase, db.getLock(), repository);
+		}
+
+		@Override
+		public void execute(RevWalk rw, ProgressMonitor pm,
+				List<String> options) {
+			try {
+				reloadIfModified();
+			} catch (IOException e) {
+				// Commands are checked against the loaded stack; writing
+				// fails if it is stale.
+			}
+			super.execute(rw, pm, options);
+		}
+
+		@Override
+		protected void applyUpdates(List<Ref> newRefs,
+				List<ReceiveCommand> pending) throws IOException {
+			if (!addReftable(w -> write(w, newRefs, pending))) {
+				for (ReceiveCommand c : pending) {
+					if (c.getResult() == ReceiveCommand.Result.NOT_ATTEMPTED) {
+						c.setResult(RefUpdate.Result.LOCK_FAILURE);
+					}
+				}
+			}
+		}
+	}
+
+	private class FileReftableRefUpdate extends RefUpdate {
+		private RevWalk rw;
+
+		private Ref dstRef;
+
+		FileReftableRefUpdate(Ref ref) {
+			super(ref);
+		}
+
+		@Override
+		protected RefDatabase getRefDatabase() {
+			return FileReftableDatabase.this;
+		}
+
+		@Override
+		protected Repository getRepository() {
+			return fileRepository;
+		}
+
+		@Override
+		public Result update(RevWalk walk) throws IOException {
+			try {
+				rw = walk;
+				return super.update(walk);
+			} finally {
+				rw = null;
+			}
+		}
+
+		@Override
+		protected boolean tryLock(boolean deref) throws IOException {
+			// The table list is only locked while writing the new table. A
+			// concurrent update is detected by checkUnchanged() instead.
+			dstRef = getRef();
+			if (deref) {
+				dstRef = dstRef.getLeaf();
+			}
+			Ref current = exactRef(dstRef.getName());
+			setOldObjectId(current != null ? current.getObjectId() : null);
+			return true;
+		}
+
+		@Override
+		protected void unlock() {
+			// Nothing to release.
+		}
+
+		@Override
+		public PersonIdent getRefLogIdent() {
+			return defaultIdent(super.getRefLogIdent());
+		}
+
+		// Check that the ref still has the value read by tryLock(). Must
+		// hold the database lock.
+		private boolean checkUnchanged() throws IOException {
+			return AnyObjectId.isEqual(toId(getOldObjectId()),
+					toId(exactRef(dstRef.getName())));
+		}
+
+		private String refLogMessage(Result status) {
+			String msg = getRefLogMessage();
+			if (msg != null && isRefLogIncludingResult()) {
+				String strResult = toResultString(status);
+				if (strResult != null) {
+					msg = msg.isEmpty() ? strResult : msg + ": " + strResult; //$NON-NLS-1$
+				}
+			}
+			return msg;
+		}
+
+		private String toResultString(Result status) {
+			switch (status) {
+			case FORCED:
+				return ReflogEntry.PREFIX_FORCED_UPDATE;
+			case FAST_FORWARD:
+				return ReflogEntry.PREFIX_FAST_FORWARD;
+			case NEW:
+				return ReflogEntry.PREFIX_CREATED;
+			default:
+				return null;
+			}
+		}
+
+		private void writeUpdate(ReftableWriter w, String msg)
+				throws IOException {
+			Ref newRef = null;
+			if (rw != null && !ObjectId.zeroId().equals(getNewObjectId())) {
+				RevObject obj = rw.parseAny(getNewObjectId());
+				if (obj instanceof RevTag) {
+					newRef = new ObjectIdRef.PeeledTag(PACKED,
+							dstRef.getName(), getNewObjectId(),
+							rw.peel(obj).copy());
+				}
+			}
+			if (newRef == null) {
+				newRef = new ObjectIdRef.PeeledNonTag(PACKED,
+						dstRef.getName(), getNewObjectId());
+			}
+
+			long idx = reftableDatabase.nextUpdateIndex();
+			w.setMinUpdateIndex(idx).setMaxUpdateIndex(idx).begin()
+					.writeRef(newRef);
+			if (msg != null) {
+				w.writeLog(dstRef.getName(), idx, getRefLogIdent(),
+						toId(getOldObjectId()), getNewObjectId(), msg);
+			}
+		}
+
+		private void writeDelete(ReftableWriter w, String msg)
+				throws IOException {
+			long idx = reftableDatabase.nextUpdateIndex();
+			w.setMinUpdateIndex(idx).setMaxUpdateIndex(idx).begin()
+					.writeRef(new ObjectIdRef.Unpeeled(NEW, dstRef.getName(),
+							null));
+			if (msg != null) {
+				w.writeLog(dstRef.getName(), idx, getRefLogIdent(),
+						toId(getOldObjectId()), ObjectId.zeroId(), msg);
+			}
+		}
+
+		private void writeLink(ReftableWriter w, String target, String msg)
+				throws IOException {
+			long idx = reftableDatabase.nextUpdateIndex();
+			Ref link = new SymbolicRef(getName(),
+					new ObjectIdRef.Unpeeled(NEW, target, null), idx);
+			w.setMinUpdateIndex(idx).setMaxUpdateIndex(idx).begin()
+					.writeRef(link);
+			if (msg != null) {
+				w.writeLog(getName(), idx, getRefLogIdent(),
+						toId(getOldObjectId()), toId(exactRef(target)), msg);
+			}
+		}
+
+		@Override
+		protected Result doUpdate(Result desiredResult) throws IOException {
+			String msg = refLogMessage(desiredResult);
+			getLock().lock();
+			try {
+				if (!checkUnchanged()
+						|| !addReftable(w -> writeUpdate(w, msg))) {
+					return Result.LOCK_FAILURE;
+				}
+			} finally {
+				getLock().unlock();
+			}
+			return desiredResult;
+		}
+
+		@Override
+		protected Result doDelete(Result desiredResult) throws IOException {
+			if (getRef().getStorage() == NEW) {
+				return desiredResult;
+			}
+			String msg = refLogMessage(desiredResult);
+			getLock().lock();
+			try {
+				if (!checkUnchanged()
+						|| !addReftable(w -> writeDelete(w, msg))) {
+					return Result.LOCK_FAILURE;
+				}
+			} finally {
+				getLock().unlock();
+			}
+			return desiredResult;
+		}
+
+		@Override
+		protected Result doLink(String target) throws IOException {
+			boolean exists = exactRef(getName()) != null;
+			String msg = getRefLogMessage();
+			if (!addReftable(w -> writeLink(w, target, msg))) {
+				return Result.LOCK_FAILURE;
+			}
+			return exists ? Result.FORCED : Result.NEW;
+		}
+	}
+
+	private class FileReftableRefRename extends RefRename {
+		FileReftableRefRename(RefUpdate src, RefUpdate dst) {
+			super(src, dst);
+		}
+
+		private void writeRename(ReftableWriter w) throws IOException {
+			long idx = reftableDatabase.nextUpdateIndex();
+			w.setMinUpdateIndex(idx).setMaxUpdateIndex(idx).begin();
+
+			ObjectId id = source.getRef().getObjectId();
+			List<Ref> refs = new ArrayList<>(3);
+			refs.add(new ObjectIdRef.PeeledNonTag(PACKED,
+					destination.getName(), id));
+			refs.add(new ObjectIdRef.Unpeeled(NEW, source.getName(), null));
+			boolean updateHead = needToUpdateHEAD();
+			if (updateHead) {
+				refs.add(new SymbolicRef(Constants.HEAD,
+						new ObjectIdRef.Unpeeled(NEW, destination.getName(),
+								null),
+						idx));
+			}
+			w.sortAndWriteRefs(refs);
+
+			String msg = destination.getRefLogMessage();
+			if (msg == null) {
+				return;
+			}
+			PersonIdent who = defaultIdent(destination.getRefLogIdent());
+			// Log records must be sorted by name, too.
+			List<String> names = new ArrayList<>(3);
+			names.add(destination.getName());
+			names.add(source.getName());
+			if (updateHead) {
+				names.add(Constants.HEAD);
+			}
+			Collections.sort(names);
+			for (String name : names) {
+				ObjectId oldId = name.equals(destination.getName())
+						? ObjectId.zeroId()
+						: id;
+				ObjectId newId = name.equals(source.getName())
+						? ObjectId.zeroId()
+						: id;
+				w.writeLog(name, idx, who, oldId, newId, msg);
+			}
+		}
+
+		@Override
+		protected RefUpdate.Result doRename() throws IOException {
+			getLock().lock();
+			try {
+				Ref src = exactRef(source.getName());
+				if (exactRef(destination.getName()) != null || src == null
+						|| !AnyObjectId.isEqual(toId(source.getRef()),
+								toId(src))) {
+					return RefUpdate.Result.LOCK_FAILURE;
+				}
+				if (src.isSymbolic()) {
+					// Like RefDirectory, only rename refs holding an id.
+					return RefUpdate.Result.IO_FAILURE;
+				}
+				if (!addReftable(this::writeRename)) {
+					return RefUpdate.Result.LOCK_FAILURE;
+				}
+			} finally {
+				getLock().unlock();
+			}
+			return RefUpdate.Result.RENAMED;
+		}
+	}
+
+	/**
+	 * Write the references (and optionally the reflogs) of a repository into
+	 * a new reftable stack.
+	 *
+	 * @param repo
+	 *            the repository to convert; its refs are read through its
+	 *            current ref database.
+	 * @param writeLogs
+	 *            whether to convert the reflogs.
+	 * @throws java.io.IOException
+	 *             on I/O problems.
+	 */
+	static void convertFrom(FileRepository repo, boolean writeLogs)
+			throws IOException {
+		File reftableDir = new File(repo.getDirectory(), Constants.REFTABLE);
+		FileUtils.mkdir(reftableDir, true);
+		try (FileReftableStack stack = new FileReftableStack(
+				new File(reftableDir, Constants.TABLES_LIST), reftableDir,
+				null, () -> repo.getConfig())) {
+			if (!stack.addReftable(w -> writeConvertTable(repo, w, writeLogs))) {
+				throw new LockFailedException(reftableDir);
+			}
+		}
+	}
+
+	private static void writeConvertTable(Repository repo, ReftableWriter w,
+			boolean writeLogs) throws IOException {
+		List<Ref> refs = new ArrayList<>(
+				repo.getRefDatabase().getRefsByPrefix(RefDatabase.ALL));
+		Ref head = repo.exactRef(Constants.HEAD);
+		if (head != null && head.getObjectId() == null) {
+			// An unborn HEAD is not returned with the other refs.
+			refs.add(head);
+		}
+
+		List<List<ReflogEntry>> logs = new ArrayList<>(refs.size());
+		int maxLogs = 0;
+		for (Ref r : refs) {
+			List<ReflogEntry> log = Collections.emptyList();
+			if (writeLogs) {
+				ReflogReader reader = repo.getReflogReader(r.getName());
+				if (reader != null) {
+					log = reader.getReverseEntries();
+				}
+			}
+			logs.add(log);
+			maxLogs = Math.max(maxLogs, log.size());
+		}
+
+		// Log records of a ref need distinct update indexes; the newest one
+		// gets the highest index. Refs are written at the index following
+		// all logs.
+		w.setMinUpdateIndex(1).setMaxUpdateIndex(maxLogs + 1).begin();
+		try (RevWalk rw = new RevWalk(repo)) {
+			List<Ref> toWrite = new ArrayList<>(refs.size());
+			for (Ref r : refs) {
+				toWrite.add(refForWrite(rw, r));
+			}
+			w.sortAndWriteRefs(toWrite);
+		}
+
+		List<Integer> byName = new ArrayList<>(refs.size());
+		for (int i = 0; i < refs.size(); i++) {
+			byName.add(Integer.valueOf(i));
+		}
+		byName.sort((a, b) -> refs.get(a.intValue()).getName()
+				.compareTo(refs.get(b.intValue()).getName()));
+		for (Integer i : byName) {
+			String name = refs.get(i.intValue()).getName();
+			long idx = maxLogs;
+			for (ReflogEntry e : logs.get(i.intValue())) {
+				w.writeLog(name, idx--, e.getWho(), e.getOldId(), e.getNewId(),
+						e.getComment());
+			}
+		}
+	}
+
+	private static Ref refForWrite(RevWalk rw, Ref r) throws IOException {
+		if (r.isSymbolic()) {
+			return new SymbolicRef(r.getName(), new ObjectIdRef.Unpeeled(NEW,
+					r.getTarget().getName(), null));
+		}
+		ObjectId id = r.getObjectId();
+		RevObject obj = rw.parseAny(id);
+		if (obj instanceof RevTag) {
+			return new ObjectIdRef.PeeledTag(PACKED, r.getName(), id,
+					rw.peel(obj).copy());
+		}
+		return new ObjectIdRef.PeeledNonTag(PACKED, r.getName(), id);
+	}
+}
@@ -0,0 +1,593 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.StandardCopyOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.errors.LockFailedException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.io.BlockSource;
+import org.eclipse.jgit.internal.storage.reftable.MergedReftable;
+import org.eclipse.jgit.internal.storage.reftable.ReftableCompactor;
+import org.eclipse.jgit.internal.storage.reftable.ReftableConfig;
+import org.eclipse.jgit.internal.storage.reftable.ReftableReader;
+import org.eclipse.jgit.internal.storage.reftable.ReftableWriter;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * A stack of reftables stored in a directory on the local file system.
+ * <p>
+ * The file {@code tables.list} names the tables of the stack, oldest first.
+ * A transaction writes a new table and appends its name to the list by
+ * atomically replacing {@code tables.list}, so the cost of an update is
+ * proportional to the size of the update rather than to the number of
+ * references in the repository. To keep the stack shallow, small tables at
+ * the top of the stack are merged after each update (see
+ * {@link #autoCompactCandidate(long[])}).
+ * <p>
+ * This class is not thread-safe; callers must serialize access to it.
+ */
+public class FileReftableStack implements AutoCloseable {
+	private static class StackEntry {
+		final String name;
+
+		final ReftableReader reftableReader;
+
+		StackEntry(String name, ReftableReader reftableReader) {
+			this.name = name;
+			this.reftableReader = reftableReader;
+		}
+	}
+
+	/**
+	 * Writes the content of a new table.
+	 */
+	public interface Writer {
+		/**
+		 * Write the records of the new table.
+		 * <p>
+		 * The writer is already configured; implementations must call
+		 * {@link ReftableWriter#begin()} but not
+		 * {@link ReftableWriter#finish()}.
+		 *
+		 * @param w
+		 *            writer to write the table with.
+		 * @throws IOException
+		 *             on I/O problems.
+		 */
+		void call(ReftableWriter w) throws IOException;
+	}
+
+	/** Statistics about the compactions performed by this stack. */
+	static class CompactionStats {
+		/** Number of tables merged by compactions. */
+		long tables;
+
+		/** Number of bytes read by compactions. */
+		long bytes;
+
+		/** Number of compactions attempted. */
+		int attempted;
+
+		/** Number of compactions that could not be committed. */
+		int failed;
+	}
+
+	private final File stackPath;
+
+	private final File reftableDir;
+
+	private final Runnable onChange;
+
+	private final Supplier<Config> configSupplier;
+
+	private final CompactionStats stats = new CompactionStats();
+
+	private List<StackEntry> stack = new ArrayList<>();
+
+	private MergedReftable mergedReftable;
+
+	private FileSnapshot snapshot = FileSnapshot.DIRTY;
+
+	private long lastNextUpdateIndex;
+
+	/**
+	 * Open the stack of reftables.
+	 *
+	 * @param stackPath
+	 *            the {@code tables.list} file naming the tables.
+	 * @param reftableDir
+	 *            the directory holding the tables.
+	 * @param onChange
+	 *            invoked when the tables changed after the stack was first
+	 *            loaded; may be null.
+	 * @param configSupplier
+	 *            supplies the configuration new tables are written with.
+	 * @throws java.io.IOException
+	 *             the tables could not be read.
+	 */
+	public FileReftableStack(File stackPath, File reftableDir,
+			@Nullable Runnable onChange, Supplier<Config> configSupplier)
+			throws IOException {
+		this.stackPath = stackPath;
+		this.reftableDir = reftableDir;
+		this.onChange = onChange;
+		this.configSupplier = configSupplier;
+		reload();
+	}
+
+	CompactionStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Get the merged view of all tables of the stack.
+	 *
+	 * @return the merged view of all tables of the stack.
+	 */
+	public MergedReftable getMergedReftable() {
+		return mergedReftable;
+	}
+
+	/**
+	 * Whether {@code tables.list} may have been modified since it was last
+	 * read.
+	 *
+	 * @return {@code true} if the stack should be reloaded.
+	 */
+	boolean isModified() {
+		return snapshot.isModified(stackPath);
+	}
+
+	/**
+	 * Reload the stack from disk, reusing the readers of tables which are
+	 * still part of the stack.
+	 *
+	 * @throws java.io.IOException
+	 *             the tables could not be read.
+	 */
+	void reload() throws IOException {
+		// A concurrent compaction may delete a table after we read its name
+		// from the list. Retry for a while; a transaction only takes a few
+		// file operations to complete.
+		long deadline = System.currentTimeMillis() + 2500;
+		long delay = 1;
+		for (int tries = 0;; tries++) {
+			FileSnapshot s = FileSnapshot.save(stackPath);
+			List<String> names = readTableNames();
+			try {
+				reloadOnce(names);
+				snapshot = s;
+				break;
+			} catch (FileNotFoundException e) {
+				if (readTableNames().equals(names)) {
+					// The list is stable, so a table is really missing.
+					throw e;
+				}
+			}
+			if (tries >= 3 && System.currentTimeMillis() > deadline) {
+				throw new LockFailedException(stackPath);
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new LockFailedException(stackPath);
+			}
+			delay = Math.min(2 * delay, 100);
+		}
+
+		List<ReftableReader> readers = new ArrayList<>(stack.size());
+		for (StackEntry e : stack) {
+			readers.add(e.reftableReader);
+		}
+		mergedReftable = new MergedReftable(readers);
+		long next = nextUpdateIndex();
+		if (lastNextUpdateIndex > 0 && lastNextUpdateIndex != next
+				&& onChange != null) {
+			onChange.run();
+		}
+		lastNextUpdateIndex = next;
+	}
+
+	private void reloadOnce(List<String> names) throws IOException {
+		Map<String, ReftableReader> current = new HashMap<>();
+		for (StackEntry e : stack) {
+			current.put(e.name, e.reftableReader);
+		}
+
+		List<ReftableReader> opened = new ArrayList<>();
+		List<StackEntry> newStack = new ArrayList<>(names.size());
+		try {
+			ReftableReader last = null;
+			for (String name : names) {
+				ReftableReader t = current.remove(name);
+				if (t == null) {
+					FileInputStream in = new FileInputStream(
+							new File(reftableDir, name));
+					t = new ReftableReader(BlockSource.from(in));
+					opened.add(t);
+				}
+				if (last != null
+						&& last.maxUpdateIndex() >= t.minUpdateIndex()) {
+					throw new IOException(MessageFormat.format(
+							JGitText.get().reftableStackOutOfOrder, name));
+				}
+				last = t;
+				newStack.add(new StackEntry(name, t));
+			}
+			opened.clear();
+		} finally {
+			// Close tables opened for a stack that could not be loaded.
+			for (ReftableReader t : opened) {
+				closeQuietly(t);
+			}
+		}
+
+		stack = newStack;
+		for (ReftableReader t : current.values()) {
+			closeQuietly(t);
+		}
+	}
+
+	private List<String> readTableNames() throws IOException {
+		List<String> names = new ArrayList<>(stack.size() + 1);
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(
+				new FileInputStream(stackPath), UTF_8))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (!line.isEmpty()) {
+					names.add(line);
+				}
+			}
+		} catch (FileNotFoundException e) {
+			// No tables.list yet: no refs.
+		}
+		return names;
+	}
+
+	private boolean isUpToDate() throws IOException {
+		List<String> names = readTableNames();
+		if (names.size() != stack.size()) {
+			return false;
+		}
+		for (int i = 0; i < names.size(); i++) {
+			if (!names.get(i).equals(stack.get(i).name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long nextUpdateIndex() throws IOException {
+		return stack.isEmpty() ? 1
+				: stack.get(stack.size() - 1).reftableReader.maxUpdateIndex()
+						+ 1;
+	}
+
+	private static String filename(long low, long high) {
+		return String.format("%012x-%012x", Long.valueOf(low), //$NON-NLS-1$
+				Long.valueOf(high));
+	}
+
+	/**
+	 * Add a new table to the top of the stack.
+	 *
+	 * @param w
+	 *            writes the content of the new table.
+	 * @return {@code false} if the stack was modified concurrently; the
+	 *         caller should reload the stack and retry.
+	 * @throws java.io.IOException
+	 *             on I/O problems.
+	 */
+	public boolean addReftable(Writer w) throws IOException {
+		LockFile lock = new LockFile(stackPath);
+		try {
+			if (!lock.lockForAppend() || !isUpToDate()) {
+				return false;
+			}
+
+			long next = nextUpdateIndex();
+			String fn = filename(next, next);
+			File tmpTable = File.createTempFile(fn + "_", ".ref", //$NON-NLS-1$ //$NON-NLS-2$
+					reftableDir);
+			try {
+				ReftableWriter.Stats s;
+				try (FileOutputStream out = new FileOutputStream(tmpTable)) {
+					ReftableWriter rw = new ReftableWriter(reftableConfig(),
+							out);
+					w.call(rw);
+					rw.finish();
+					s = rw.getStats();
+				}
+				if (s.minUpdateIndex() < next) {
+					return false;
+				}
+
+				fn += s.refCount() > 0 ? ".ref" : ".log"; //$NON-NLS-1$ //$NON-NLS-2$
+				File dest = new File(reftableDir, fn);
+				FileUtils.rename(tmpTable, dest,
+						StandardCopyOption.ATOMIC_MOVE);
+				lock.write((fn + '\n').getBytes(UTF_8));
+				if (!lock.commit()) {
+					FileUtils.delete(dest, FileUtils.SKIP_MISSING);
+					return false;
+				}
+			} finally {
+				FileUtils.delete(tmpTable, FileUtils.SKIP_MISSING);
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		reload();
+		autoCompact();
+		return true;
+	}
+
+	/**
+	 * Merge the tables {@code first} to {@code last} (inclusive) into a
+	 * single table.
+	 *
+	 * @param first
+	 *            index of the oldest table to merge.
+	 * @param last
+	 *            index of the newest table to merge.
+	 * @return {@code false} if the stack was modified concurrently or a table
+	 *         is locked by a concurrent compaction.
+	 * @throws java.io.IOException
+	 *             on I/O problems.
+	 */
+	boolean compactRange(int first, int last) throws IOException {
+		if (first >= last) {
+			return true;
+		}
+
+		LockFile lock = new LockFile(stackPath);
+		List<LockFile> tableLocks = new ArrayList<>();
+		File tmpTable = null;
+		try {
+			if (!lock.lock() || !isUpToDate()) {
+				return false;
+			}
+			List<File> compacted = new ArrayList<>();
+			for (int i = first; i <= last; i++) {
+				File f = new File(reftableDir, stack.get(i).name);
+				LockFile lf = new LockFile(f);
+				if (!lf.lock()) {
+					return false;
+				}
+				tableLocks.add(lf);
+				compacted.add(f);
+			}
+
+			// Do not block transactions while merging; the table locks keep
+			// concurrent compactions away from the same tables.
+			lock.unlock();
+			lock = null;
+
+			tmpTable = compactLocked(first, last);
+
+			lock = new LockFile(stackPath);
+			if (!lock.lock() || !isUpToDate()) {
+				return false;
+			}
+
+			String fn = filename(
+					stack.get(first).reftableReader.minUpdateIndex(),
+					stack.get(last).reftableReader.maxUpdateIndex())
+					+ ".ref"; //$NON-NLS-1$
+			File dest = new File(reftableDir, fn);
+			FileUtils.rename(tmpTable, dest, StandardCopyOption.ATOMIC_MOVE);
+			tmpTable = null;
+
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < first; i++) {
+				sb.append(stack.get(i).name).append('\n');
+			}
+			sb.append(fn).append('\n');
+			for (int i = last + 1; i < stack.size(); i++) {
+				sb.append(stack.get(i).name).append('\n');
+			}
+			lock.write(sb.toString().getBytes(UTF_8));
+			if (!lock.commit()) {
+				FileUtils.delete(dest, FileUtils.SKIP_MISSING);
+				return false;
+			}
+
+			reload();
+			for (File f : compacted) {
+				FileUtils.delete(f, FileUtils.SKIP_MISSING);
+			}
+			return true;
+		} finally {
+			if (tmpTable != null) {
+				FileUtils.delete(tmpTable, FileUtils.SKIP_MISSING);
+			}
+			for (LockFile lf : tableLocks) {
+				lf.unlock();
+			}
+			if (lock != null) {
+				lock.unlock();
+			}
+		}
+	}
+
+	private File compactLocked(int first, int last) throws IOException {
+		File tmpTable = File.createTempFile(
+				filename(first, last) + "_", ".ref", reftableDir); //$NON-NLS-1$ //$NON-NLS-2$
+		try (FileOutputStream out = new FileOutputStream(tmpTable)) {
+			ReftableCompactor c = new ReftableCompactor(out)
+					.setConfig(reftableConfig())
+					// Deletions must shadow refs in older tables.
+					.setIncludeDeletes(first > 0);
+			List<ReftableReader> tables = new ArrayList<>();
+			for (int i = first; i <= last; i++) {
+				ReftableReader t = stack.get(i).reftableReader;
+				tables.add(t);
+				stats.bytes += t.size();
+			}
+			c.addAll(tables);
+			c.compact();
+			stats.tables += last - first + 1;
+			stats.attempted++;
+		} catch (IOException e) {
+			FileUtils.delete(tmpTable, FileUtils.SKIP_MISSING);
+			throw e;
+		}
+		return tmpTable;
+	}
+
+	/**
+	 * Merge all tables of the stack into one table.
+	 *
+	 * @throws java.io.IOException
+	 *             on I/O problems.
+	 */
+	void compactFully() throws IOException {
+		if (!compactRange(0, stack.size() - 1)) {
+			stats.failed++;
+		}
+	}
+
+	private void autoCompact() throws IOException {
+		long[] sizes = new long[stack.size()];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = stack.get(i).reftableReader.size();
+		}
+		int[] range = autoCompactCandidate(sizes);
+		if (range != null && !compactRange(range[0], range[1])) {
+			stats.failed++;
+		}
+	}
+
+	/**
+	 * Select the tables to merge after adding a table.
+	 * <p>
+	 * Merging costs time proportional to the size of the merged tables, so
+	 * large tables at the bottom of the stack should be rewritten rarely.
+	 * Tables are grouped by the binary logarithm of their size. The newest
+	 * run of at least two tables of the smallest such size class is merged,
+	 * together with older tables that are not larger than the result. This
+	 * keeps the stack depth logarithmic in the number of updates, and the
+	 * amortized cost of an update logarithmic in the size of the stack.
+	 *
+	 * @param sizes
+	 *            sizes of the tables, oldest first.
+	 * @return indexes of the oldest and newest table to merge, or null if no
+	 *         merge is needed.
+	 */
+	static int[] autoCompactCandidate(long[] sizes) {
+		int bestStart = -1;
+		int bestEnd = -1;
+		int bestLog = Integer.MAX_VALUE;
+		for (int start = 0; start < sizes.length;) {
+			int l = log2(sizes[start]);
+			int end = start + 1;
+			while (end < sizes.length && log2(sizes[end]) == l) {
+				end++;
+			}
+			if (end - start > 1 && l <= bestLog) {
+				bestStart = start;
+				bestEnd = end - 1;
+				bestLog = l;
+			}
+			start = end;
+		}
+		if (bestStart < 0) {
+			return null;
+		}
+
+		long bytes = 0;
+		for (int i = bestStart; i <= bestEnd; i++) {
+			bytes += sizes[i];
+		}
+		while (bestStart > 0 && log2(sizes[bestStart - 1]) <= log2(bytes)) {
+			bestStart--;
+			bytes += sizes[bestStart];
+		}
+		return new int[] { bestStart, bestEnd };
+	}
+
+	private static int log2(long size) {
+		return 63 - Long.numberOfLeadingZeros(Math.max(size, 1));
+	}
+
+	private ReftableConfig reftableConfig() {
+		return new ReftableConfig(configSupplier.get());
+	}
+
+	private static void closeQuietly(ReftableReader t) {
+		try {
+			t.close();
+		} catch (IOException e) {
+			// Ignore close failures.
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() {
+		for (StackEntry e : stack) {
+			closeQuietly(e.reftableReader);
+		}
+	}
+}
@@ -121,7 +121,8 @@ public class FileRepository extends Repository {
 	private static final String UNNAMED = "Unnamed repository; edit this file to name it for gitweb."; //$NON-NLS-1$
 
 	private final FileBasedConfig repoConfig;
-	private final RefDatabase refs;
+	// Replaced by convertToReftable() while other threads may read it.
+	private volatile RefDatabase refs;
 	private final ObjectDirectory objectDatabase;
 
 	private final Object snapshotLock = new Object();
@@ -197,9 +198,14 @@ public FileRepository(BaseRepositoryBuilder options) throws IOException {
 				ConfigConstants.CONFIG_KEY_REPO_FORMAT_VERSION, 0);
 
 		String reftype = repoConfig.getString(
-				"extensions", null, "refStorage"); //$NON-NLS-1$ //$NON-NLS-2$
+				ConfigConstants.CONFIG_EXTENSIONS_SECTION, null,
+				ConfigConstants.CONFIG_KEY_REF_STORAGE);
 		if (repositoryFormatVersion >= 1 && reftype != null) {
-			if (StringUtils.equalsIgnoreCase(reftype, "reftree")) { //$NON-NLS-1$
+			if (StringUtils.equalsIgnoreCase(reftype,
+					ConfigConstants.CONFIG_REF_STORAGE_REFTABLE)) {
+				refs = new FileReftableDatabase(this);
+			} else if (StringUtils.equalsIgnoreCase(reftype,
+					ConfigConstants.CONFIG_REF_STORAGE_REFTREE)) {
 				refs = new RefTreeDatabase(this, new RefDirectory(this));
 			} else {
 				throw new IOException(JGitText.get().unknownRepositoryFormat);
@@ -532,9 +538,82 @@ public void notifyIndexChanged(boolean internal) {
 	@Override
 	public ReflogReader getReflogReader(String refName) throws IOException {
 		Ref ref = findRef(refName);
-		if (ref != null)
-			return new ReflogReaderImpl(this, ref.getName());
-		return null;
+		if (ref == null) {
+			return null;
+		}
+		if (refs instanceof FileReftableDatabase) {
+			return ((FileReftableDatabase) refs)
+					.getReflogReader(ref.getName());
+		}
+		return new ReflogReaderImpl(this, ref.getName());
+	}
+
+	/**
+	 * Convert the references of this repository to reftable.
+	 * <p>
+	 * All references, and optionally their reflogs, are written into a new
+	 * reftable stack under {@code $GIT_DIR/reftable}. The loose refs,
+	 * {@code packed-refs} and the reflogs are then removed (or renamed if a
+	 * backup is requested), and {@code extensions.refStorage} is set so that
+	 * the repository is opened with a reftable based ref database from now
+	 * on. The conversion is not atomic; no other process may access the
+	 * repository while it runs.
+	 *
+	 * @param writeLogs
+	 *            whether to convert the reflogs.
+	 * @param backup
+	 *            whether to keep the old refs and logs, renamed to
+	 *            {@code refs.old}, {@code packed-refs.old} and
+	 *            {@code logs.old}.
+	 * @throws java.io.IOException
+	 *             on I/O problems.
+	 * @since 5.6
+	 */
+	public void convertToReftable(boolean writeLogs, boolean backup)
+			throws IOException {
+		if (!(refs instanceof RefDirectory)) {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().refStorageConversionNotSupported,
+					getDirectory()));
+		}
+		File reftableDir = new File(getDirectory(), Constants.REFTABLE);
+		String[] existing = reftableDir.list();
+		if (existing != null && existing.length > 0) {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().reftableDirExists, reftableDir));
+		}
+
+		FileReftableDatabase.convertFrom(this, writeLogs);
+
+		File refsDir = new File(getDirectory(), Constants.R_REFS);
+		File packedRefs = new File(getDirectory(), Constants.PACKED_REFS);
+		File logsDir = new File(getDirectory(), Constants.LOGS);
+		if (backup) {
+			FileUtils.rename(refsDir, new File(getDirectory(), "refs.old")); //$NON-NLS-1$
+			if (packedRefs.exists()) {
+				FileUtils.rename(packedRefs, new File(getDirectory(),
+						Constants.PACKED_REFS + ".old")); //$NON-NLS-1$
+			}
+			if (logsDir.exists()) {
+				FileUtils.rename(logsDir, new File(getDirectory(),
+						Constants.LOGS + ".old")); //$NON-NLS-1$
+			}
+		} else {
+			FileUtils.delete(packedRefs, FileUtils.SKIP_MISSING);
+			FileUtils.delete(logsDir,
+					FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+			FileUtils.delete(refsDir, FileUtils.RECURSIVE);
+		}
+		FileReftableDatabase.createCompatibilityFiles(getDirectory());
+
+		repoConfig.setLong(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_REPO_FORMAT_VERSION, 1);
+		repoConfig.setString(ConfigConstants.CONFIG_EXTENSIONS_SECTION, null,
+				ConfigConstants.CONFIG_KEY_REF_STORAGE,
+				ConfigConstants.CONFIG_REF_STORAGE_REFTABLE);
+		repoConfig.save();
+		refs.close();
+		refs = new FileReftableDatabase(this);
 	}
 
 	/** {@inheritDoc} */
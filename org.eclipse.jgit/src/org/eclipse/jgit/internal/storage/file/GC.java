@@ -71,6 +71,7 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -88,9 +89,13 @@
 import org.eclipse.jgit.errors.CancelledException;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.LockFailedException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.NoWorkTreeException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndexWriter;
 import org.eclipse.jgit.internal.storage.pack.PackExt;
 import org.eclipse.jgit.internal.storage.pack.PackWriter;
 import org.eclipse.jgit.internal.storage.reftree.RefTreeNames;
@@ -772,10 +777,25 @@ private static boolean equals(Ref r1, Ref r2) {
 
 	/**
 	 * Packs all non-symbolic, loose refs into packed-refs.
+	 * <p>
+	 * If the repository stores its refs in reftable, the stack of reftables is
+	 * compacted into a single table instead.
 	 *
 	 * @throws java.io.IOException
 	 */
 	public void packRefs() throws IOException {
+		RefDatabase refDb = repo.getRefDatabase();
+		if (refDb instanceof FileReftableDatabase) {
+			// Pack the whole stack, as reftable has no loose refs.
+			pm.beginTask(JGitText.get().packRefs, 1);
+			try {
+				((FileReftableDatabase) refDb).compactFully();
+			} finally {
+				pm.endTask();
+			}
+			return;
+		}
+
 		Collection<Ref> refs = repo.getRefDatabase()
 				.getRefsByPrefix(Constants.R_REFS);
 		List<String> refsToBePacked = new ArrayList<>(refs.size());
@@ -899,11 +919,152 @@ public Collection<PackFile> repack() throws IOException {
 		deleteOrphans();
 		deleteTempPacksIdx();
 
+		if (shouldWriteCommitGraphWhenGc()) {
+			Set<ObjectId> tips = new HashSet<>(allHeadsAndTags);
+			tips.addAll(nonHeads);
+			writeCommitGraph(tips);
+		}
+		if (shouldWriteMultiPackIndexWhenGc()) {
+			writeMultiPackIndex();
+		} else {
+			// The old index references the packs which were just deleted.
+			deleteMultiPackIndex();
+		}
+
 		lastPackedRefs = refsBefore;
 		lastRepackTime = time;
 		return ret;
 	}
 
+	/**
+	 * Generate a new commit-graph file covering all commits reachable from
+	 * the given objects.
+	 * <p>
+	 * The commit-graph is written to {@code objects/info/commit-graph},
+	 * replacing any existing one. Nothing is written for shallow
+	 * repositories, as the commit-graph would record truncated parents.
+	 * Changed path Bloom filters are included if {@code gc.writeChangedPaths}
+	 * is set.
+	 *
+	 * @param wants
+	 *            the objects to start the walk from; usually the tips of all
+	 *            references. Objects which are not commits or annotated tags
+	 *            are ignored.
+	 * @throws java.io.IOException
+	 *             if an object could not be read or the commit-graph could
+	 *             not be written.
+	 * @since 5.6
+	 */
+	public void writeCommitGraph(@NonNull Set<? extends ObjectId> wants)
+			throws IOException {
+		checkCancelled();
+		if (wants.isEmpty()) {
+			return;
+		}
+		File graphFile = new File(repo.getObjectsDirectory(),
+				Constants.INFO_COMMIT_GRAPH);
+		try (RevWalk walk = new RevWalk(repo)) {
+			if (!walk.getObjectReader().getShallowCommits().isEmpty()) {
+				return;
+			}
+			CommitGraphWriter writer = new CommitGraphWriter(
+					GraphCommits.fromWalk(pm, wants, walk),
+					repo.getConfig().getBoolean(
+							ConfigConstants.CONFIG_GC_SECTION,
+							ConfigConstants.CONFIG_KEY_WRITE_CHANGED_PATHS,
+							false));
+			checkCancelled();
+
+			LockFile lock = new LockFile(graphFile);
+			if (!lock.lock()) {
+				throw new LockFailedException(graphFile);
+			}
+			try {
+				lock.setFSync(true);
+				try (OutputStream out = lock.getOutputStream()) {
+					writer.write(pm, out);
+				}
+				if (!lock.commit()) {
+					throw new IOException(MessageFormat.format(
+							JGitText.get().cannotCommitWriteTo, graphFile));
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Generate a new multi-pack-index file covering all packs of the
+	 * repository.
+	 * <p>
+	 * The multi-pack-index is written to {@code objects/pack/multi-pack-index},
+	 * replacing any existing one. It allows object lookups to search a single
+	 * index instead of the indexes of all packs, which keeps lookups fast in
+	 * repositories accumulating many packs between repacks. Objects contained
+	 * in several packs are attributed to the most recently modified pack.
+	 *
+	 * @throws java.io.IOException
+	 *             if a pack index could not be read or the multi-pack-index
+	 *             could not be written.
+	 * @since 5.6
+	 */
+	public void writeMultiPackIndex() throws IOException {
+		checkCancelled();
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		for (PackFile p : repo.getObjectDatabase().getPacks()) {
+			packs.put(p.getIndexFileName(), p.getIndex());
+		}
+		if (packs.isEmpty()) {
+			deleteMultiPackIndex();
+			return;
+		}
+		MultiPackIndexWriter writer = new MultiPackIndexWriter(packs);
+		checkCancelled();
+
+		File midxFile = new File(repo.getObjectsDirectory(),
+				Constants.PACK_MULTI_PACK_INDEX);
+		LockFile lock = new LockFile(midxFile);
+		if (!lock.lock()) {
+			throw new LockFailedException(midxFile);
+		}
+		try {
+			lock.setFSync(true);
+			try (OutputStream out = lock.getOutputStream()) {
+				writer.write(pm, out);
+			}
+			if (!lock.commit()) {
+				throw new IOException(MessageFormat.format(
+						JGitText.get().cannotCommitWriteTo, midxFile));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void deleteMultiPackIndex() throws IOException {
+		FileUtils.delete(new File(repo.getObjectsDirectory(),
+				Constants.PACK_MULTI_PACK_INDEX),
+				FileUtils.SKIP_MISSING | FileUtils.RETRY);
+	}
+
+	private boolean shouldWriteMultiPackIndexWhenGc() {
+		return repo.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_KEY_MULTI_PACK_INDEX, true)
+				&& repo.getConfig().getBoolean(
+						ConfigConstants.CONFIG_GC_SECTION,
+						ConfigConstants.CONFIG_KEY_WRITE_MULTI_PACK_INDEX,
+						false);
+	}
+
+	private boolean shouldWriteCommitGraphWhenGc() {
+		return repo.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_KEY_COMMIT_GRAPH, false)
+				&& repo.getConfig().getBoolean(
+						ConfigConstants.CONFIG_GC_SECTION,
+						ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, false);
+	}
+
 	private static boolean isHead(Ref ref) {
 		return ref.getName().startsWith(Constants.R_HEADS);
 	}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.jgit.lib.ObjectReader;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+
+/**
+ * Remembers which blobs of a bitmapped pack exceed a size limit.
+ * <p>
+ * Serving a "blob:limit" filter needs the size of every blob in the pack
+ * being sent. Sizes learned while serving one request are kept here as a pair
+ * of bitmaps per limit, so later requests with the same limit only have to
+ * look up blobs they are the first to send, and can otherwise drop the large
+ * blobs with a single bitmap operation.
+ * <p>
+ * One cache is kept per {@link PackBitmapIndex} instance and is discarded
+ * together with that index. The cache holds no reference to its index, so
+ * that the weak key can be collected.
+ */
+final class LargeBlobBitmapCache {
+	private static final int MAX_LIMITS = 4;
+
+	private static final Map<PackBitmapIndex, LargeBlobBitmapCache> caches = new WeakHashMap<>();
+
+	private static final EWAHCompressedBitmap EMPTY = new EWAHCompressedBitmap();
+
+	/**
+	 * Get the cache for a pack bitmap index.
+	 *
+	 * @param index
+	 *            the bitmap index of the pack.
+	 * @return the cache of {@code index}.
+	 */
+	static LargeBlobBitmapCache get(PackBitmapIndex index) {
+		synchronized (caches) {
+			return caches.computeIfAbsent(index,
+					i -> new LargeBlobBitmapCache());
+		}
+	}
+
+	private final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+			return size() > MAX_LIMITS;
+		}
+	};
+
+	/**
+	 * Find the blobs larger than a limit.
+	 *
+	 * @param index
+	 *            the bitmap index this cache was obtained for.
+	 * @param blobs
+	 *            positions in the pack of the blobs to check.
+	 * @param limit
+	 *            the size limit in bytes.
+	 * @param reader
+	 *            reader to look up the size of blobs not yet known to this
+	 *            cache.
+	 * @return positions of the blobs in {@code blobs} whose size exceeds
+	 *         {@code limit}.
+	 * @throws IOException
+	 *             the size of a blob could not be read.
+	 */
+	EWAHCompressedBitmap findLarger(PackBitmapIndex index,
+			EWAHCompressedBitmap blobs, long limit, ObjectReader reader)
+			throws IOException {
+		Long key = Long.valueOf(limit);
+		Entry e;
+		synchronized (this) {
+			e = entries.get(key);
+		}
+		EWAHCompressedBitmap checked = e != null ? e.checked : EMPTY;
+		EWAHCompressedBitmap large = e != null ? e.large : EMPTY;
+
+		// Look sizes up outside of the lock; concurrent requests for the
+		// same limit may duplicate work but always agree on the result.
+		EWAHCompressedBitmap unchecked = blobs.andNot(checked);
+		if (!unchecked.isEmpty()) {
+			EWAHCompressedBitmap found = new EWAHCompressedBitmap();
+			IntIterator i = unchecked.intIterator();
+			while (i.hasNext()) {
+				int pos = i.next();
+				if (reader.getObjectSize(index.getObject(pos),
+						OBJ_BLOB) > limit) {
+					found.set(pos);
+				}
+			}
+			large = large.or(found);
+			synchronized (this) {
+				Entry cur = entries.get(key);
+				if (cur != null) {
+					entries.put(key, new Entry(cur.checked.or(unchecked),
+							cur.large.or(found)));
+				} else {
+					entries.put(key,
+							new Entry(checked.or(unchecked), large));
+				}
+			}
+		}
+		return blobs.and(large);
+	}
+
+	private static class Entry {
+		final EWAHCompressedBitmap checked;
+
+		final EWAHCompressedBitmap large;
+
+		Entry(EWAHCompressedBitmap checked, EWAHCompressedBitmap large) {
+			this.checked = checked;
+			this.large = large;
+		}
+	}
+}
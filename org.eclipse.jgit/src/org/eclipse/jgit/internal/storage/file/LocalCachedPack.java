@@ -101,7 +101,7 @@ public boolean hasObject(ObjectToPack obj, StoredObjectRepresentation rep) {
 		}
 	}
 
-	private PackFile[] getPacks() throws FileNotFoundException {
+	PackFile[] getPacks() throws FileNotFoundException {
 		if (packs == null) {
 			PackFile[] p = new PackFile[packNames.length];
 			for (int i = 0; i < packNames.length; i++)
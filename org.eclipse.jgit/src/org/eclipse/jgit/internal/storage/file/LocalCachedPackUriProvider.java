@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.internal.storage.pack.CachedPack;
+import org.eclipse.jgit.internal.storage.pack.CachedPackUriProvider;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * Offloads cached packs of an {@link ObjectDirectory} to a static file
+ * directory.
+ * <p>
+ * The first time a cached pack is offered to a client, its pack file is
+ * published into the directory, as a hard link if possible and as a copy
+ * otherwise, and the client is told to download it from
+ * {@code baseUri + "pack-" + name + ".pack"}. The directory must be served at
+ * {@code baseUri}, for example by
+ * {@code org.eclipse.jgit.http.server.PublishedPackServlet}.
+ * <p>
+ * Published packs are not removed when the repository is repacked, so that
+ * clients can finish downloads that are in progress. Operators should prune
+ * the directory periodically.
+ *
+ * @since 5.6
+ */
+public class LocalCachedPackUriProvider implements CachedPackUriProvider {
+	private final File directory;
+
+	private final String baseUri;
+
+	private final String protocol;
+
+	/**
+	 * Create a provider publishing to a directory.
+	 *
+	 * @param directory
+	 *            directory the packs are published to; created if it does
+	 *            not exist.
+	 * @param baseUri
+	 *            URI the directory is served at, for example
+	 *            {@code https://example.com/packs/}.
+	 */
+	public LocalCachedPackUriProvider(File directory, String baseUri) {
+		this.directory = directory;
+		this.baseUri = baseUri.endsWith("/") ? baseUri : baseUri + '/'; //$NON-NLS-1$
+		int colon = baseUri.indexOf(':');
+		this.protocol = colon > 0 ? baseUri.substring(0, colon) : baseUri;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	@Nullable
+	public PackInfo getInfo(CachedPack pack,
+			Collection<String> protocolsSupported) throws IOException {
+		if (!(pack instanceof LocalCachedPack)
+				|| !protocolsSupported.contains(protocol)) {
+			return null;
+		}
+		PackFile[] packs = ((LocalCachedPack) pack).getPacks();
+		if (packs.length != 1) {
+			// The client can only be given one URI per pack.
+			return null;
+		}
+		PackFile p = packs[0];
+		File src = p.getPackFile();
+		File dst = publish(src);
+		String hash = ObjectId.fromRaw(p.getIndex().packChecksum).name();
+		return new PackInfo(hash,
+				baseUri + dst.getName(), dst.length());
+	}
+
+	private File publish(File src) throws IOException {
+		File dst = new File(directory, src.getName());
+		if (dst.isFile() && dst.length() == src.length()) {
+			return dst;
+		}
+
+		FileUtils.mkdirs(directory, true);
+		Path tmp = File.createTempFile("tmp_", ".pack", directory).toPath(); //$NON-NLS-1$ //$NON-NLS-2$
+		Files.delete(tmp);
+		try {
+			Files.createLink(tmp, src.toPath());
+		} catch (IOException | UnsupportedOperationException e) {
+			// Different file system, or no hard links; copy instead.
+			Files.copy(src.toPath(), tmp);
+		}
+		try {
+			Files.move(tmp, dst.toPath(), ATOMIC_MOVE);
+		} catch (FileAlreadyExistsException e) {
+			// Published concurrently.
+			Files.deleteIfExists(tmp);
+		}
+		return dst;
+	}
+}
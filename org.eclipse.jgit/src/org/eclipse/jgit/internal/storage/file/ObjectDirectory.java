@@ -56,15 +56,18 @@
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -72,6 +75,10 @@
 import org.eclipse.jgit.errors.PackInvalidException;
 import org.eclipse.jgit.errors.PackMismatchException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphLoader;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndex;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndexLoader;
 import org.eclipse.jgit.internal.storage.pack.ObjectToPack;
 import org.eclipse.jgit.internal.storage.pack.PackExt;
 import org.eclipse.jgit.internal.storage.pack.PackWriter;
@@ -112,8 +119,14 @@ public class ObjectDirectory extends FileObjectDatabase {
 	private final static Logger LOG = LoggerFactory
 			.getLogger(ObjectDirectory.class);
 
+	private static final MultiPackIndexSnapshot NO_MULTI_PACK_INDEX = new MultiPackIndexSnapshot(
+			FileSnapshot.DIRTY, null);
+
 	private static final PackList NO_PACKS = new PackList(
-			FileSnapshot.DIRTY, new PackFile[0]);
+			FileSnapshot.DIRTY, new PackFile[0], NO_MULTI_PACK_INDEX);
+
+	private static final CommitGraphSnapshot NO_COMMIT_GRAPH = new CommitGraphSnapshot(
+			FileSnapshot.DIRTY, null);
 
 	/** Maximum number of candidates offered as resolutions of abbreviation. */
 	private static final int RESOLVE_ABBREV_LIMIT = 256;
@@ -144,6 +157,12 @@ public class ObjectDirectory extends FileObjectDatabase {
 
 	private Set<ObjectId> shallowCommitsIds;
 
+	private final File multiPackIndexFile;
+
+	private final File commitGraphFile;
+
+	private final AtomicReference<CommitGraphSnapshot> commitGraph;
+
 	final AtomicReference<PackList> packList;
 
 	/**
@@ -176,6 +195,10 @@ public ObjectDirectory(final Config cfg, final File dir,
 		unpackedObjectCache = new UnpackedObjectCache();
 		this.fs = fs;
 		this.shallowFile = shallowFile;
+		multiPackIndexFile = new File(objects,
+				Constants.PACK_MULTI_PACK_INDEX);
+		commitGraphFile = new File(objects, Constants.INFO_COMMIT_GRAPH);
+		commitGraph = new AtomicReference<>(NO_COMMIT_GRAPH);
 
 		alternates = new AtomicReference<>();
 		if (alternatePaths != null) {
@@ -350,20 +373,38 @@ private boolean hasLooseInSelfOrAlternate(AnyObjectId objectId,
 	boolean hasPackedObject(AnyObjectId objectId) {
 		PackList pList;
 		do {
-			pList = packList.get();
-			for (PackFile p : pList.packs) {
-				try {
-					if (p.hasObject(objectId))
+			SEARCH: for (;;) {
+				pList = packList.get();
+				int pos = pList.findInMultiPackIndex(objectId);
+				if (pos >= 0) {
+					PackFile p = pList.getMultiPackIndexPack(pos);
+					if (p.invalid()) {
+						// Only offsets are checked here, which an invalid
+						// pack still has. Drop it as a failed read would.
+						removePack(p);
+						continue SEARCH;
+					}
+					if (p.hasObjectAtOffset(
+							pList.midx.index.getOffset(pos))) {
 						return true;
-				} catch (IOException e) {
-					// The hasObject call should have only touched the index,
-					// so any failure here indicates the index is unreadable
-					// by this process, and the pack is likewise not readable.
-					LOG.warn(MessageFormat.format(
-							JGitText.get().unableToReadPackfile,
-							p.getPackFile().getAbsolutePath()), e);
-					removePack(p);
+					}
+				}
+				for (PackFile p : pList.searchAfterMultiPackIndex(pos)) {
+					try {
+						if (p.hasObject(objectId))
+							return true;
+					} catch (IOException e) {
+						// The hasObject call should have only touched the
+						// index, so any failure here indicates the index is
+						// unreadable by this process, and the pack is
+						// likewise not readable.
+						LOG.warn(MessageFormat.format(
+								JGitText.get().unableToReadPackfile,
+								p.getPackFile().getAbsolutePath()), e);
+						removePack(p);
+					}
 				}
+				break SEARCH;
 			}
 		} while (searchPacksAgain(pList));
 		return false;
@@ -483,7 +524,26 @@ ObjectLoader openPackedObject(WindowCursor curs, AnyObjectId objectId) {
 		do {
 			SEARCH: for (;;) {
 				pList = packList.get();
-				for (PackFile p : pList.packs) {
+				int pos = pList.findInMultiPackIndex(objectId);
+				if (pos >= 0) {
+					PackFile p = pList.getMultiPackIndexPack(pos);
+					try {
+						ObjectLoader ldr = p.getAtOffset(curs,
+								pList.midx.index.getOffset(pos));
+						p.resetTransientErrorCount();
+						if (ldr != null)
+							return ldr;
+					} catch (PackMismatchException e) {
+						// Pack was modified; refresh the entire pack list.
+						if (searchPacksAgain(pList))
+							continue SEARCH;
+					} catch (IOException e) {
+						handlePackError(e, p);
+						if (packList.get() != pList)
+							continue SEARCH;
+					}
+				}
+				for (PackFile p : pList.searchAfterMultiPackIndex(pos)) {
 					try {
 						ObjectLoader ldr = p.get(curs, objectId);
 						p.resetTransientErrorCount();
@@ -576,7 +636,26 @@ private long getPackedObjectSize(WindowCursor curs, AnyObjectId id) {
 		do {
 			SEARCH: for (;;) {
 				pList = packList.get();
-				for (PackFile p : pList.packs) {
+				int pos = pList.findInMultiPackIndex(id);
+				if (pos >= 0) {
+					PackFile p = pList.getMultiPackIndexPack(pos);
+					try {
+						long len = p.getObjectSize(curs,
+								pList.midx.index.getOffset(pos));
+						p.resetTransientErrorCount();
+						if (0 <= len)
+							return len;
+					} catch (PackMismatchException e) {
+						// Pack was modified; refresh the entire pack list.
+						if (searchPacksAgain(pList))
+							continue SEARCH;
+					} catch (IOException e) {
+						handlePackError(e, p);
+						if (packList.get() != pList)
+							continue SEARCH;
+					}
+				}
+				for (PackFile p : pList.searchAfterMultiPackIndex(pos)) {
 					try {
 						long len = p.getObjectSize(curs, id);
 						p.resetTransientErrorCount();
@@ -813,6 +892,48 @@ Set<ObjectId> getShallowCommits() throws IOException {
 		return shallowCommitsIds;
 	}
 
+	/**
+	 * Get the commit-graph of this object directory.
+	 * <p>
+	 * The commit-graph is only consulted if {@code core.commitGraph} is
+	 * enabled. It is reloaded whenever the file on disk was modified, e.g. by
+	 * a garbage collection.
+	 *
+	 * @return the commit-graph or empty if the commit-graph does not exist, is
+	 *         disabled or cannot be read.
+	 */
+	@Override
+	Optional<CommitGraph> getCommitGraph() {
+		if (!config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_KEY_COMMIT_GRAPH, false)) {
+			return Optional.empty();
+		}
+
+		CommitGraphSnapshot o = commitGraph.get();
+		if (!o.snapshot.isModified(commitGraphFile)) {
+			return Optional.ofNullable(o.graph);
+		}
+
+		// Save the snapshot before reading the file, so that a concurrent
+		// modification is noticed by the next call.
+		FileSnapshot snapshot = FileSnapshot.save(commitGraphFile);
+		CommitGraph graph = null;
+		if (commitGraphFile.isFile()) {
+			try {
+				graph = CommitGraphLoader.open(commitGraphFile);
+			} catch (FileNotFoundException e) {
+				// Deleted concurrently; fall back to parsing commits.
+			} catch (IOException e) {
+				LOG.warn(MessageFormat.format(
+						JGitText.get().corruptCommitGraph,
+						commitGraphFile.getAbsolutePath()), e);
+			}
+		}
+		CommitGraphSnapshot n = new CommitGraphSnapshot(snapshot, graph);
+		commitGraph.compareAndSet(o, n);
+		return Optional.ofNullable(graph);
+	}
+
 	private void insertPack(PackFile pf) {
 		PackList o, n;
 		do {
@@ -832,7 +953,7 @@ private void insertPack(PackFile pf) {
 			final PackFile[] newList = new PackFile[1 + oldList.length];
 			newList[0] = pf;
 			System.arraycopy(oldList, 0, newList, 1, oldList.length);
-			n = new PackList(o.snapshot, newList);
+			n = new PackList(o.snapshot, newList, o.midx);
 		} while (!packList.compareAndSet(o, n));
 	}
 
@@ -849,7 +970,7 @@ private void removePack(PackFile deadPack) {
 			final PackFile[] newList = new PackFile[oldList.length - 1];
 			System.arraycopy(oldList, 0, newList, 0, j);
 			System.arraycopy(oldList, j + 1, newList, j, newList.length - j);
-			n = new PackList(o.snapshot, newList);
+			n = new PackList(o.snapshot, newList, o.midx);
 		} while (!packList.compareAndSet(o, n));
 		deadPack.close();
 	}
@@ -884,6 +1005,7 @@ private PackList scanPacks(PackList original) {
 	private PackList scanPacksImpl(PackList old) {
 		final Map<String, PackFile> forReuse = reuseMap(old);
 		final FileSnapshot snapshot = FileSnapshot.save(packDirectory);
+		final MultiPackIndexSnapshot midx = scanMultiPackIndex(old.midx);
 		final Set<String> names = listPackDirectory();
 		final List<PackFile> list = new ArrayList<>(names.size() >> 2);
 		boolean foundNew = false;
@@ -927,7 +1049,8 @@ private PackList scanPacksImpl(PackList old) {
 		// the same as the set we were given. Instead of building a new object
 		// return the same collection.
 		//
-		if (!foundNew && forReuse.isEmpty() && snapshot.equals(old.snapshot)) {
+		if (!foundNew && forReuse.isEmpty() && snapshot.equals(old.snapshot)
+				&& midx == old.midx) {
 			old.snapshot.setClean(snapshot);
 			return old;
 		}
@@ -937,11 +1060,39 @@ private PackList scanPacksImpl(PackList old) {
 		}
 
 		if (list.isEmpty())
-			return new PackList(snapshot, NO_PACKS.packs);
+			return new PackList(snapshot, NO_PACKS.packs, midx);
 
 		final PackFile[] r = list.toArray(new PackFile[0]);
 		Arrays.sort(r, PackFile.SORT);
-		return new PackList(snapshot, r);
+		return new PackList(snapshot, r, midx);
+	}
+
+	private MultiPackIndexSnapshot scanMultiPackIndex(
+			MultiPackIndexSnapshot old) {
+		if (!config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_KEY_MULTI_PACK_INDEX, true)) {
+			return NO_MULTI_PACK_INDEX;
+		}
+		if (!old.snapshot.isModified(multiPackIndexFile)) {
+			return old;
+		}
+
+		// Save the snapshot before reading the file, so that a concurrent
+		// modification is noticed by the next scan.
+		FileSnapshot snapshot = FileSnapshot.save(multiPackIndexFile);
+		MultiPackIndex index = null;
+		if (multiPackIndexFile.isFile()) {
+			try {
+				index = MultiPackIndexLoader.open(multiPackIndexFile);
+			} catch (FileNotFoundException e) {
+				// Deleted concurrently; search all packs.
+			} catch (IOException e) {
+				LOG.warn(MessageFormat.format(
+						JGitText.get().corruptMultiPackIndex,
+						multiPackIndexFile.getAbsolutePath()), e);
+			}
+		}
+		return new MultiPackIndexSnapshot(snapshot, index);
 	}
 
 	private static Map<String, PackFile> reuseMap(PackList old) {
@@ -1070,6 +1221,32 @@ public File fileFor(AnyObjectId objectId) {
 		return new File(new File(getDirectory(), d), f);
 	}
 
+	private static final class CommitGraphSnapshot {
+		/** State just before the commit-graph file was last read. */
+		final FileSnapshot snapshot;
+
+		/** The loaded commit-graph; null if the file did not exist. */
+		final CommitGraph graph;
+
+		CommitGraphSnapshot(FileSnapshot snapshot, CommitGraph graph) {
+			this.snapshot = snapshot;
+			this.graph = graph;
+		}
+	}
+
+	private static final class MultiPackIndexSnapshot {
+		/** State just before the multi-pack-index file was last read. */
+		final FileSnapshot snapshot;
+
+		/** The loaded index; null if the file did not exist. */
+		final MultiPackIndex index;
+
+		MultiPackIndexSnapshot(FileSnapshot snapshot, MultiPackIndex index) {
+			this.snapshot = snapshot;
+			this.index = index;
+		}
+	}
+
 	static final class PackList {
 		/** State just before reading the pack directory. */
 		final FileSnapshot snapshot;
@@ -1077,9 +1254,94 @@ static final class PackList {
 		/** All known packs, sorted by {@link PackFile#SORT}. */
 		final PackFile[] packs;
 
-		PackList(FileSnapshot monitor, PackFile[] packs) {
+		/** The multi-pack-index read with this pack list. */
+		final MultiPackIndexSnapshot midx;
+
+		/**
+		 * Packs by their id in {@link #midx}; null if the multi-pack-index
+		 * does not exist or does not match the packs of this list.
+		 */
+		final PackFile[] indexedPacks;
+
+		/**
+		 * Packs not covered by the multi-pack-index, sorted by
+		 * {@link PackFile#SORT}. These have to be searched one by one.
+		 */
+		final PackFile[] unindexedPacks;
+
+		PackList(FileSnapshot monitor, PackFile[] packs,
+				MultiPackIndexSnapshot midx) {
 			this.snapshot = monitor;
 			this.packs = packs;
+			this.midx = midx;
+			this.indexedPacks = matchMultiPackIndex(packs, midx);
+			if (indexedPacks == null) {
+				unindexedPacks = packs;
+			} else {
+				Set<PackFile> indexed = Collections.newSetFromMap(
+						new IdentityHashMap<>());
+				indexed.addAll(Arrays.asList(indexedPacks));
+				List<PackFile> r = new ArrayList<>();
+				for (PackFile p : packs) {
+					if (!indexed.contains(p)) {
+						r.add(p);
+					}
+				}
+				unindexedPacks = r.toArray(new PackFile[0]);
+			}
+		}
+
+		private static PackFile[] matchMultiPackIndex(PackFile[] packs,
+				MultiPackIndexSnapshot midx) {
+			if (midx.index == null) {
+				return null;
+			}
+			Map<String, PackFile> byIndexName = new HashMap<>();
+			for (PackFile p : packs) {
+				byIndexName.put(p.getIndexFileName(), p);
+			}
+			Instant written = midx.snapshot.lastModifiedInstant();
+			String[] names = midx.index.getPackNames();
+			PackFile[] r = new PackFile[names.length];
+			for (int i = 0; i < names.length; i++) {
+				PackFile p = byIndexName.get(names[i]);
+				if (p == null || p.packLastModified.isAfter(written)) {
+					// A pack was deleted or rewritten after the index was
+					// written; its offsets can no longer be trusted.
+					return null;
+				}
+				r[i] = p;
+			}
+			return r;
+		}
+
+		/**
+		 * Find an object in the multi-pack-index.
+		 *
+		 * @param id
+		 *            the object to look for.
+		 * @return position of the object in the multi-pack-index, or -1 if
+		 *         the object must be searched in {@link #unindexedPacks}.
+		 */
+		int findInMultiPackIndex(AnyObjectId id) {
+			return indexedPacks != null ? midx.index.findPosition(id) : -1;
+		}
+
+		PackFile getMultiPackIndexPack(int pos) {
+			return indexedPacks[midx.index.getPackId(pos)];
+		}
+
+		/**
+		 * Get the packs to search after consulting the multi-pack-index.
+		 *
+		 * @param pos
+		 *            result of {@link #findInMultiPackIndex(AnyObjectId)}.
+		 * @return the packs not covered by the index if the object was not
+		 *         in the index; all packs if the object was in the index but
+		 *         could not be read from the pack the index pointed to.
+		 */
+		PackFile[] searchAfterMultiPackIndex(int pos) {
+			return pos < 0 ? unindexedPacks : packs;
 		}
 	}
 
@@ -45,11 +45,15 @@
 
 package org.eclipse.jgit.internal.storage.file;
 
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_THREADS;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_PACK_SECTION;
+
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
@@ -130,6 +134,10 @@ public class ObjectDirectoryPackParser extends PackParser {
 		this.db = odb;
 		this.pconfig = new PackConfig(odb.getConfig());
 		this.crc = new CRC32();
+		// Resolving deltas in parallel is opt-in, only an explicit
+		// pack.threads enables it. 0 then means all processors.
+		setThreads(odb.getConfig().getInt(CONFIG_PACK_SECTION,
+				CONFIG_KEY_THREADS, 1));
 		this.tailDigest = Constants.newMessageDigest();
 
 		indexVersion = db.getConfig().get(CoreConfig.KEY).getPackIndexVersion();
@@ -326,6 +334,19 @@ protected int readDatabase(byte[] dst, int pos, int cnt) throws IOException {
 		return out.read(dst, pos, cnt);
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected boolean isConcurrentReadSupported() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected int readDatabase(long position, byte[] dst, int pos, int cnt)
+			throws IOException {
+		return out.getChannel().read(ByteBuffer.wrap(dst, pos, cnt), position);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	protected boolean checkCRC(int oldCRC) {
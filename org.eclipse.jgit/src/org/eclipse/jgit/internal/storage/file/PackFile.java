@@ -133,6 +133,9 @@ public int compare(PackFile a, PackFile b) {
 
 	private int activeCopyRawData;
 
+	/** Whole pack mapping shared by all cursors, if mapped. */
+	private volatile PackMapping mapping;
+
 	Instant packLastModified;
 
 	private PackFileSnapshot fileSnapshot;
@@ -253,6 +256,10 @@ public PackIndex getIndex() throws IOException {
 		return idx();
 	}
 
+	String getIndexFileName() {
+		return extFile(INDEX).getName();
+	}
+
 	/**
 	 * Get name extracted from {@code pack-*.pack} pattern.
 	 *
@@ -318,6 +325,27 @@ ObjectLoader get(WindowCursor curs, AnyObjectId id)
 		return 0 < offset && !isCorrupt(offset) ? load(curs, offset) : null;
 	}
 
+	/**
+	 * Get an object at a known offset, e.g. found in a multi-pack-index.
+	 *
+	 * @param curs
+	 *            temporary working space associated with the calling thread.
+	 * @param offset
+	 *            position of the object in this pack.
+	 * @return the object loader, or null if the object was found to be
+	 *         corrupt.
+	 * @throws IOException
+	 *             the pack file or the index could not be read.
+	 */
+	ObjectLoader getAtOffset(WindowCursor curs, long offset)
+			throws IOException {
+		return 0 < offset && !isCorrupt(offset) ? load(curs, offset) : null;
+	}
+
+	boolean hasObjectAtOffset(long offset) {
+		return 0 < offset && !isCorrupt(offset);
+	}
+
 	void resolve(Set<ObjectId> matches, AbbreviatedObjectId id, int matchLimit)
 			throws IOException {
 		idx().resolve(matches, id, matchLimit);
@@ -331,6 +359,10 @@ public void close() {
 		synchronized (this) {
 			loadedIdx = null;
 			reverseIdx = null;
+			if (mapping != null) {
+				mapping.close();
+				mapping = null;
+			}
 		}
 	}
 
@@ -784,6 +816,58 @@ ByteWindow mmap(long pos, int size) throws IOException {
 		}
 	}
 
+	/**
+	 * Acquire a reference to the mapping of the whole pack.
+	 * <p>
+	 * The pack is mapped on first use. The caller must
+	 * {@link PackMapping#release()} the returned mapping once it no longer
+	 * uses any window obtained from it.
+	 *
+	 * @return the mapping, or null if whole packs are not mapped or this pack
+	 *         could not be mapped, in which case the window cache should be
+	 *         used.
+	 * @throws IOException
+	 *             the pack is invalid, or could not be opened.
+	 */
+	PackMapping acquireMapping() throws IOException {
+		if (!WindowCache.isMapWholePack())
+			return null;
+		PackMapping m = mapping;
+		if (m != null && m.acquire())
+			return m;
+		synchronized (this) {
+			m = mapping;
+			if (m != null && m.acquire())
+				return m;
+			m = map();
+			if (m == null)
+				return null;
+			// One reference for this pack, one for the caller.
+			m.acquire();
+			mapping = m;
+			return m;
+		}
+	}
+
+	private PackMapping map() throws IOException {
+		boolean opened = activeWindows == 0 && activeCopyRawData == 0;
+		if (opened)
+			doOpen();
+		try {
+			synchronized (readLock) {
+				return PackMapping.map(this, fd.getChannel(), length);
+			}
+		} catch (IOException e) {
+			// Most likely out of address space, use the window cache.
+			LOG.warn(MessageFormat.format(JGitText.get().cannotMapPackFile,
+					packFile.getPath()), e);
+			return null;
+		} finally {
+			if (opened)
+				doClose();
+		}
+	}
+
 	private void onOpenPack() throws IOException {
 		final PackIndex idx = idx();
 		final byte[] buf = new byte[20];
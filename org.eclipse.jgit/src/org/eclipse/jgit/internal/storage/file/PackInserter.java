@@ -330,7 +330,7 @@ private static void writePackIndex(File idx, byte[] packHash,
 	}
 
 	private ObjectId computeName(List<PackedObjectInfo> list) {
-		SHA1 md = digest().reset();
+		SHA1 md = SHA1.newTrustedInstance();
 		byte[] buf = buffer();
 		for (PackedObjectInfo otp : list) {
 			otp.copyRawTo(buf, 0);
@@ -484,7 +484,8 @@ byte[] finishPack() throws IOException {
 				out.write(hdrBuf, 0, writePackHeader(hdrBuf, objectList.size()));
 
 				byte[] buf = buffer();
-				SHA1 md = digest().reset();
+				// The pack was just written by this process.
+				SHA1 md = SHA1.newTrustedInstance();
 				file.seek(0);
 				while (true) {
 					int r = file.read(buf);
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A whole {@link PackFile} mapped into memory.
+ * <p>
+ * The pack is mapped once, as a series of aligned regions of at most
+ * {@link #REGION_SIZE} bytes, and every {@link WindowCursor} reading the pack
+ * shares the same mappings. The mapped data lives outside of the Java heap and
+ * no file descriptor is held open once the regions are mapped.
+ * <p>
+ * Mappings are reference counted. The owning PackFile holds one reference
+ * until it is closed, and a cursor holds one while it has a window of the
+ * mapping pinned. When the last reference is released the regions are unmapped
+ * immediately, rather than when the garbage collector finds the buffers.
+ * Unmapping while a reader still uses a region would crash the JVM, so cursors
+ * must release their reference before dropping the window.
+ * <p>
+ * If the JVM does not allow buffers to be unmapped explicitly the mappings are
+ * left to the garbage collector.
+ */
+final class PackMapping {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(PackMapping.class);
+
+	/** Size of a mapped region; the last region may be shorter. */
+	static final long REGION_SIZE = 1L << 30;
+
+	private static final Unmapper UNMAPPER = Unmapper.create();
+
+	/**
+	 * Map a pack into memory.
+	 *
+	 * @param pack
+	 *            the pack being mapped.
+	 * @param channel
+	 *            open channel of the pack file.
+	 * @param length
+	 *            length of the pack file.
+	 * @return the mapping, holding one reference for the caller.
+	 * @throws IOException
+	 *             the pack could not be mapped.
+	 */
+	static PackMapping map(PackFile pack, FileChannel channel, long length)
+			throws IOException {
+		int cnt = (int) ((length + REGION_SIZE - 1) / REGION_SIZE);
+		MappedByteBuffer[] regions = new MappedByteBuffer[cnt];
+		try {
+			for (int i = 0; i < cnt; i++) {
+				long pos = i * REGION_SIZE;
+				long size = Math.min(REGION_SIZE, length - pos);
+				regions[i] = channel.map(MapMode.READ_ONLY, pos, size);
+			}
+		} catch (IOException | RuntimeException e) {
+			unmap(regions);
+			throw e;
+		}
+		return new PackMapping(pack, regions);
+	}
+
+	private final MappedByteBuffer[] regions;
+
+	private final ByteBufferWindow[] windows;
+
+	private final AtomicInteger refs = new AtomicInteger(1);
+
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	private PackMapping(PackFile pack, MappedByteBuffer[] regions) {
+		this.regions = regions;
+		this.windows = new ByteBufferWindow[regions.length];
+		for (int i = 0; i < regions.length; i++) {
+			windows[i] = new ByteBufferWindow(pack, i * REGION_SIZE,
+					regions[i]);
+		}
+	}
+
+	/**
+	 * Get the window covering a position.
+	 * <p>
+	 * The caller must hold a reference for as long as it uses the window.
+	 *
+	 * @param position
+	 *            offset within the pack.
+	 * @return the window of the region containing {@code position}.
+	 * @throws EOFException
+	 *             position is beyond the end of the pack.
+	 */
+	ByteWindow window(long position) throws EOFException {
+		long i = position / REGION_SIZE;
+		if (position < 0 || windows.length <= i)
+			throw new EOFException();
+		return windows[(int) i];
+	}
+
+	/**
+	 * Add a reference to this mapping.
+	 *
+	 * @return true if a reference was added; false if the mapping was already
+	 *         released and must not be used.
+	 */
+	boolean acquire() {
+		for (;;) {
+			int n = refs.get();
+			if (n <= 0)
+				return false;
+			if (refs.compareAndSet(n, n + 1))
+				return true;
+		}
+	}
+
+	/** Drop a reference, unmapping the pack when none remain. */
+	void release() {
+		if (refs.decrementAndGet() == 0)
+			unmap(regions);
+	}
+
+	/**
+	 * Drop the reference of the owning pack.
+	 * <p>
+	 * The regions are unmapped as soon as all cursors release the mapping.
+	 */
+	void close() {
+		if (closed.compareAndSet(false, true))
+			release();
+	}
+
+	private static void unmap(MappedByteBuffer[] regions) {
+		for (MappedByteBuffer b : regions) {
+			if (b != null)
+				UNMAPPER.unmap(b);
+		}
+	}
+
+	/** Releases the memory of a buffer without waiting for the GC. */
+	private static class Unmapper {
+		static Unmapper create() {
+			try {
+				// Java 9 and later.
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe"); //$NON-NLS-1$
+				Field f = unsafeClass.getDeclaredField("theUnsafe"); //$NON-NLS-1$
+				f.setAccessible(true);
+				Object unsafe = f.get(null);
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", //$NON-NLS-1$
+						ByteBuffer.class);
+				return new Unmapper() {
+					@Override
+					void clean(ByteBuffer b) throws Exception {
+						invokeCleaner.invoke(unsafe, b);
+					}
+				};
+			} catch (Exception | LinkageError notJava9) {
+				// Fall through to the Java 8 approach.
+			}
+			try {
+				Method cleaner = Class.forName("sun.nio.ch.DirectBuffer") //$NON-NLS-1$
+						.getMethod("cleaner"); //$NON-NLS-1$
+				Method clean = Class.forName("sun.misc.Cleaner") //$NON-NLS-1$
+						.getMethod("clean"); //$NON-NLS-1$
+				return new Unmapper() {
+					@Override
+					void clean(ByteBuffer b) throws Exception {
+						Object c = cleaner.invoke(b);
+						if (c != null)
+							clean.invoke(c);
+					}
+				};
+			} catch (Exception | LinkageError unsupported) {
+				LOG.debug("Explicit unmapping of pack files unsupported", //$NON-NLS-1$
+						unsupported);
+				return new Unmapper();
+			}
+		}
+
+		void clean(ByteBuffer b) throws Exception {
+			// Leave it to the garbage collector.
+		}
+
+		final void unmap(MappedByteBuffer b) {
+			try {
+				clean(b);
+			} catch (Exception e) {
+				LOG.debug("Cannot unmap pack file buffer", e); //$NON-NLS-1$
+			}
+		}
+	}
+}
@@ -47,10 +47,19 @@
 import java.io.IOException;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.jgit.internal.JGitText;
@@ -82,9 +91,22 @@
  * comprised of roughly 10% of the cache, and evicting the oldest accessed entry
  * within that window.
  * <p>
- * Entities created by the cache are held under SoftReferences, permitting the
- * Java runtime's garbage collector to evict entries when heap memory gets low.
- * Most JREs implement a loose least recently used algorithm for this eviction.
+ * By default entities created by the cache are held under SoftReferences,
+ * permitting the Java runtime's garbage collector to evict entries when heap
+ * memory gets low. Most JREs implement a loose least recently used algorithm
+ * for this eviction. A full garbage collection may however clear the entire
+ * cache at once.
+ * <p>
+ * If {@link WindowCacheConfig#isPackedGitUseStrongRefs()} is set, entities are
+ * instead held under strong references and are only removed by the cache
+ * itself, keeping the cache within its configured byte limit. In this mode a
+ * frequency sketch records how often each window is accessed, and a window
+ * loaded by a miss is only admitted into a full cache if it has been accessed
+ * more often than the entry it would evict (a TinyLFU admission policy). This
+ * prevents one-time scans over large packs from flushing windows which are
+ * used over and over. A window which is not admitted is only dropped; the
+ * file of its pack is kept open for a few of the most recently rejected packs,
+ * so that such a scan does not reopen the file for every window.
  * <p>
  * The internal hash table does not expand at runtime, instead it is fixed in
  * size at cache creation time. The internal lock table used to gate load
@@ -101,21 +123,22 @@
  * for a given <code>(PackFile,position)</code> tuple.</li>
  * <li>For every <code>load()</code> invocation there is exactly one
  * {@link #createRef(PackFile, long, ByteWindow)} invocation to wrap a
- * SoftReference around the cached entity.</li>
+ * reference around the cached entity, unless the entity is not admitted into
+ * the cache, in which case the pack is held open by {@link #hold(PackFile)}
+ * instead.</li>
  * <li>For every Reference created by <code>createRef()</code> there will be
- * exactly one call to {@link #clear(Ref)} to cleanup any resources associated
- * with the (now expired) cached entity.</li>
+ * exactly one call to {@link #clear(PageRef)} to cleanup any resources
+ * associated with the (now expired) cached entity.</li>
  * </ul>
  * <p>
  * Therefore, it is safe to perform resource accounting increments during the
  * {@link #load(PackFile, long)} or
  * {@link #createRef(PackFile, long, ByteWindow)} methods, and matching
- * decrements during {@link #clear(Ref)}. Implementors may need to override
+ * decrements during {@link #clear(PageRef)}. Implementors may need to override
  * {@link #createRef(PackFile, long, ByteWindow)} in order to embed additional
  * accounting information into an implementation specific
- * {@link org.eclipse.jgit.internal.storage.file.WindowCache.Ref} subclass, as
- * the cached entity may have already been evicted by the JRE's garbage
- * collector.
+ * {@link org.eclipse.jgit.internal.storage.file.WindowCache.PageRef}, as the
+ * cached entity may have already been evicted by the JRE's garbage collector.
  * <p>
  * To maintain higher concurrency workloads, during eviction only one thread
  * performs the eviction work, while other threads can continue to insert new
@@ -132,12 +155,17 @@ private static final int bits(int newSize) {
 		return Integer.numberOfTrailingZeros(newSize);
 	}
 
+	/** Most packs kept open for windows which were not admitted. */
+	private static final int MAX_HELD_PACKS = 8;
+
 	private static final Random rng = new Random();
 
 	private static volatile WindowCache cache;
 
 	private static volatile int streamFileThreshold;
 
+	private static volatile boolean mapWholePack;
+
 	static {
 		reconfigure(new WindowCacheConfig());
 	}
@@ -164,6 +192,7 @@ public static void reconfigure(WindowCacheConfig cfg) {
 			oc.removeAll();
 		cache = nc;
 		streamFileThreshold = cfg.getStreamFileThreshold();
+		mapWholePack = cfg.isPackedGitMMAPWholePack();
 		DeltaBaseCache.reconfigure(cfg);
 	}
 
@@ -171,6 +200,10 @@ static int getStreamFileThreshold() {
 		return streamFileThreshold;
 	}
 
+	static boolean isMapWholePack() {
+		return mapWholePack;
+	}
+
 	/**
 	 * @return the cached instance.
 	 */
@@ -200,6 +233,9 @@ static final void purge(PackFile pack) {
 	/** ReferenceQueue to cleanup released and garbage collected windows. */
 	private final ReferenceQueue<ByteWindow> queue;
 
+	/** Queue of strongly referenced windows removed from the cache. */
+	private final Queue<PageRef> strongQueue;
+
 	/** Number of entries in {@link #table}. */
 	private final int tableSize;
 
@@ -224,6 +260,11 @@ static final void purge(PackFile pack) {
 
 	private final boolean mmap;
 
+	private final boolean useStrongRefs;
+
+	/** Access frequencies for admission; null unless using strong refs. */
+	private final FrequencySketch sketch;
+
 	private final int windowSizeShift;
 
 	private final int windowSize;
@@ -232,6 +273,27 @@ static final void purge(PackFile pack) {
 
 	private final AtomicLong openBytes;
 
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder loadSuccessCount = new LongAdder();
+
+	private final LongAdder loadFailureCount = new LongAdder();
+
+	private final LongAdder totalLoadTime = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	private final LongAdder admissionRejectCount = new LongAdder();
+
+	/**
+	 * Packs kept open for windows not admitted, in access order. Each holds
+	 * one {@link PackFile#beginWindowCache()} of the pack.
+	 */
+	private final LinkedHashMap<PackFile, Boolean> heldPacks = new LinkedHashMap<>(
+			16, 0.75f, true);
+
 	private WindowCache(WindowCacheConfig cfg) {
 		tableSize = tableSize(cfg);
 		final int lockCount = lockCount(cfg);
@@ -241,6 +303,7 @@ private WindowCache(WindowCacheConfig cfg) {
 			throw new IllegalArgumentException(JGitText.get().lockCountMustBeGreaterOrEqual1);
 
 		queue = new ReferenceQueue<>();
+		strongQueue = new ConcurrentLinkedQueue<>();
 		clock = new AtomicLong(1);
 		table = new AtomicReferenceArray<>(tableSize);
 		locks = new Lock[lockCount];
@@ -260,8 +323,12 @@ else if (eb < 4)
 		maxFiles = cfg.getPackedGitOpenFiles();
 		maxBytes = cfg.getPackedGitLimit();
 		mmap = cfg.isPackedGitMMAP();
+		useStrongRefs = cfg.isPackedGitUseStrongRefs();
 		windowSizeShift = bits(cfg.getPackedGitWindowSize());
 		windowSize = 1 << windowSizeShift;
+		sketch = useStrongRefs
+				? new FrequencySketch(maxBytes >>> windowSizeShift)
+				: null;
 
 		openFiles = new AtomicInteger();
 		openBytes = new AtomicLong();
@@ -286,33 +353,139 @@ public long getOpenBytes() {
 		return openBytes.get();
 	}
 
+	/**
+	 * @return the number of requests served by a window already in the cache.
+	 * @since 5.6
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return the number of requests which had to load a window.
+	 * @since 5.6
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return the number of windows loaded successfully.
+	 * @since 5.6
+	 */
+	public long getLoadSuccessCount() {
+		return loadSuccessCount.sum();
+	}
+
+	/**
+	 * @return the number of window loads which failed with an exception.
+	 * @since 5.6
+	 */
+	public long getLoadFailureCount() {
+		return loadFailureCount.sum();
+	}
+
+	/**
+	 * @return total time in nanoseconds spent loading windows.
+	 * @since 5.6
+	 */
+	public long getTotalLoadTime() {
+		return totalLoadTime.sum();
+	}
+
+	/**
+	 * @return the number of windows evicted to keep the cache within its
+	 *         limits.
+	 * @since 5.6
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * @return the number of loaded windows not admitted into the cache because
+	 *         they were accessed less often than the window they would evict.
+	 * @since 5.6
+	 */
+	public long getAdmissionRejectCount() {
+		return admissionRejectCount.sum();
+	}
+
+	/**
+	 * Get the number of cached bytes of each pack file.
+	 * <p>
+	 * The result is computed by scanning the cache, and should not be called
+	 * on a hot code path.
+	 *
+	 * @return number of cached bytes keyed by the path of the pack file.
+	 * @since 5.6
+	 */
+	public Map<String, Long> getOpenByteCountPerPack() {
+		Map<String, Long> bytes = new HashMap<>();
+		for (int s = 0; s < tableSize; s++) {
+			for (Entry e = table.get(s); e != null; e = e.next) {
+				if (e.dead || e.ref.get() == null)
+					continue;
+				bytes.merge(e.ref.getPack().getPackFile().getPath(),
+						Long.valueOf(e.ref.size()), (a, b) -> Long
+								.valueOf(a.longValue() + b.longValue()));
+			}
+		}
+		return Collections.unmodifiableMap(bytes);
+	}
+
+	/**
+	 * Reset the hit, miss, load, eviction and admission counters to zero.
+	 *
+	 * @since 5.6
+	 */
+	public void resetCounters() {
+		hitCount.reset();
+		missCount.reset();
+		loadSuccessCount.reset();
+		loadFailureCount.reset();
+		totalLoadTime.reset();
+		evictionCount.reset();
+		admissionRejectCount.reset();
+	}
+
 	private int hash(int packHash, long off) {
 		return packHash + (int) (off >>> windowSizeShift);
 	}
 
 	private ByteWindow load(PackFile pack, long offset)
 			throws IOException {
+		long startTime = System.nanoTime();
 		if (pack.beginWindowCache())
 			openFiles.incrementAndGet();
 		try {
+			ByteWindow v;
 			if (mmap)
-				return pack.mmap(offset, windowSize);
-			return pack.read(offset, windowSize);
+				v = pack.mmap(offset, windowSize);
+			else
+				v = pack.read(offset, windowSize);
+			loadSuccessCount.increment();
+			return v;
 		} catch (IOException | RuntimeException | Error e) {
 			close(pack);
+			loadFailureCount.increment();
 			throw e;
+		} finally {
+			totalLoadTime.add(System.nanoTime() - startTime);
 		}
 	}
 
-	private Ref createRef(PackFile p, long o, ByteWindow v) {
-		final Ref ref = new Ref(p, o, v, queue);
-		openBytes.addAndGet(ref.size);
+	private PageRef createRef(PackFile p, long o, ByteWindow v) {
+		final PageRef ref = useStrongRefs
+				? new StrongRef(p, o, v, strongQueue)
+				: new SoftRef(p, o, v, queue);
+		openBytes.addAndGet(ref.size());
 		return ref;
 	}
 
-	private void clear(Ref ref) {
-		openBytes.addAndGet(-ref.size);
-		close(ref.pack);
+	private void clear(PageRef ref) {
+		openBytes.addAndGet(-ref.size());
+		close(ref.getPack());
 	}
 
 	private void close(PackFile pack) {
@@ -320,6 +493,46 @@ private void close(PackFile pack) {
 			openFiles.decrementAndGet();
 	}
 
+	// Keeps the file of a pack whose window was not admitted open, instead
+	// of closing it only to open it again for the next window.
+	private void hold(PackFile pack) {
+		PackFile release = null;
+		synchronized (heldPacks) {
+			if (heldPacks.put(pack, Boolean.TRUE) != null) {
+				// Already held open; this load's reference is not needed.
+				release = pack;
+			} else if (heldPacks.size() > Math.min(MAX_HELD_PACKS, maxFiles)) {
+				Iterator<PackFile> i = heldPacks.keySet().iterator();
+				release = i.next();
+				i.remove();
+			}
+		}
+		if (release != null)
+			close(release);
+	}
+
+	private boolean release(PackFile pack) {
+		synchronized (heldPacks) {
+			if (heldPacks.remove(pack) == null)
+				return false;
+		}
+		close(pack);
+		return true;
+	}
+
+	private boolean releaseEldestHeldPack() {
+		PackFile pack;
+		synchronized (heldPacks) {
+			Iterator<PackFile> i = heldPacks.keySet().iterator();
+			if (!i.hasNext())
+				return false;
+			pack = i.next();
+			i.remove();
+		}
+		close(pack);
+		return true;
+	}
+
 	private boolean isFull() {
 		return maxFiles < openFiles.get() || maxBytes < openBytes.get();
 	}
@@ -356,22 +569,38 @@ private static int lockCount(WindowCacheConfig cfg) {
 	 */
 	private ByteWindow getOrLoad(PackFile pack, long position)
 			throws IOException {
+		if (sketch != null)
+			sketch.increment(hash(pack.hash, position));
+
 		final int slot = slot(pack, position);
 		final Entry e1 = table.get(slot);
 		ByteWindow v = scan(e1, pack, position);
-		if (v != null)
+		if (v != null) {
+			hitCount.increment();
 			return v;
+		}
 
 		synchronized (lock(pack, position)) {
 			Entry e2 = table.get(slot);
 			if (e2 != e1) {
 				v = scan(e2, pack, position);
-				if (v != null)
+				if (v != null) {
+					hitCount.increment();
 					return v;
+				}
 			}
 
+			missCount.increment();
 			v = load(pack, position);
-			final Ref ref = createRef(pack, position, v);
+			if (!admit(pack, position, v.size())) {
+				// The caller may still use the window, it just isn't
+				// retained by the cache.
+				admissionRejectCount.increment();
+				hold(pack);
+				return v;
+			}
+
+			final PageRef ref = createRef(pack, position, v);
 			hit(ref);
 			for (;;) {
 				final Entry n = new Entry(clean(e2), ref);
@@ -395,8 +624,8 @@ private ByteWindow getOrLoad(PackFile pack, long position)
 
 	private ByteWindow scan(Entry n, PackFile pack, long position) {
 		for (; n != null; n = n.next) {
-			final Ref r = n.ref;
-			if (r.pack == pack && r.position == position) {
+			final PageRef r = n.ref;
+			if (r.getPack() == pack && r.getPosition() == position) {
 				final ByteWindow v = r.get();
 				if (v != null) {
 					hit(r);
@@ -409,7 +638,7 @@ private ByteWindow scan(Entry n, PackFile pack, long position) {
 		return null;
 	}
 
-	private void hit(Ref r) {
+	private void hit(PageRef r) {
 		// We don't need to be 100% accurate here. Its sufficient that at least
 		// one thread performs the increment. Any other concurrent access at
 		// exactly the same time can simply use the same clock value.
@@ -419,29 +648,60 @@ private void hit(Ref r) {
 		//
 		final long c = clock.get();
 		clock.compareAndSet(c, c + 1);
-		r.lastAccess = c;
+		r.setLastAccess(c);
+	}
+
+	// Decide if a newly loaded window should be retained by the cache.
+	// Without a frequency sketch every window is admitted. Otherwise, if
+	// adding the window requires an eviction, the window is only admitted
+	// if it was accessed more often than the entry eviction would pick.
+	private boolean admit(PackFile pack, long position, int size) {
+		if (sketch == null)
+			return true;
+		if (openBytes.get() + size <= maxBytes && openFiles.get() <= maxFiles)
+			return true;
+
+		final Entry victim = selectVictim();
+		if (victim == null)
+			return true;
+		final PageRef r = victim.ref;
+		return sketch.frequency(hash(r.getPack().hash, r.getPosition()))
+				< sketch.frequency(hash(pack.hash, position));
+	}
+
+	/**
+	 * Pick the oldest accessed live entry from a random window of buckets.
+	 *
+	 * @return the selected entry, or null if the sampled buckets are empty.
+	 */
+	private Entry selectVictim() {
+		int ptr = rng.nextInt(tableSize);
+		Entry old = null;
+		for (int b = evictBatch - 1; b >= 0; b--, ptr++) {
+			if (tableSize <= ptr)
+				ptr = 0;
+			for (Entry e = table.get(ptr); e != null; e = e.next) {
+				if (e.dead)
+					continue;
+				if (old == null
+						|| e.ref.getLastAccess() < old.ref.getLastAccess())
+					old = e;
+			}
+		}
+		return old;
 	}
 
 	private void evict() {
 		while (isFull()) {
-			int ptr = rng.nextInt(tableSize);
-			Entry old = null;
-			int slot = 0;
-			for (int b = evictBatch - 1; b >= 0; b--, ptr++) {
-				if (tableSize <= ptr)
-					ptr = 0;
-				for (Entry e = table.get(ptr); e != null; e = e.next) {
-					if (e.dead)
-						continue;
-					if (old == null || e.ref.lastAccess < old.ref.lastAccess) {
-						old = e;
-						slot = ptr;
-					}
-				}
-			}
+			if (maxFiles < openFiles.get() && releaseEldestHeldPack())
+				continue;
+			final Entry old = selectVictim();
 			if (old != null) {
 				old.kill();
+				evictionCount.increment();
 				gc();
+				final int slot = slot(old.ref.getPack(),
+						old.ref.getPosition());
 				final Entry e1 = table.get(slot);
 				table.compareAndSet(slot, e1, clean(e1));
 			}
@@ -453,9 +713,9 @@ private void evict() {
 	 * <p>
 	 * This is a last-ditch effort to clear out the cache, such as before it
 	 * gets replaced by another cache that is configured differently. This
-	 * method tries to force every cached entry through {@link #clear(Ref)} to
-	 * ensure that resources are correctly accounted for and cleaned up by the
-	 * subclass. A concurrent reader loading entries while this method is
+	 * method tries to force every cached entry through {@link #clear(PageRef)}
+	 * to ensure that resources are correctly accounted for and cleaned up by
+	 * the subclass. A concurrent reader loading entries while this method is
 	 * running may cause resource accounting failures.
 	 */
 	private void removeAll() {
@@ -467,6 +727,9 @@ private void removeAll() {
 					e.kill();
 			} while (!table.compareAndSet(s, e1, null));
 		}
+		while (releaseEldestHeldPack()) {
+			// Release every held pack.
+		}
 		gc();
 	}
 
@@ -486,7 +749,7 @@ private void removeAll(PackFile pack) {
 			final Entry e1 = table.get(s);
 			boolean hasDead = false;
 			for (Entry e = e1; e != null; e = e.next) {
-				if (e.ref.pack == pack) {
+				if (e.ref.getPack() == pack) {
 					e.kill();
 					hasDead = true;
 				} else if (e.dead)
@@ -495,15 +758,16 @@ private void removeAll(PackFile pack) {
 			if (hasDead)
 				table.compareAndSet(s, e1, clean(e1));
 		}
+		release(pack);
 		gc();
 	}
 
 	private void gc() {
-		Ref r;
-		while ((r = (Ref) queue.poll()) != null) {
+		PageRef r;
+		while ((r = poll()) != null) {
 			clear(r);
 
-			final int s = slot(r.pack, r.position);
+			final int s = slot(r.getPack(), r.getPosition());
 			final Entry e1 = table.get(s);
 			for (Entry n = e1; n != null; n = n.next) {
 				if (n.ref == r) {
@@ -515,6 +779,12 @@ private void gc() {
 		}
 	}
 
+	private PageRef poll() {
+		if (useStrongRefs)
+			return strongQueue.poll();
+		return (PageRef) queue.poll();
+	}
+
 	private int slot(PackFile pack, long position) {
 		return (hash(pack.hash, position) >>> 1) % tableSize;
 	}
@@ -539,7 +809,7 @@ private static class Entry {
 		final Entry next;
 
 		/** The referenced object. */
-		final Ref ref;
+		final PageRef ref;
 
 		/**
 		 * Marked true when ref.get() returns null and the ref is dead.
@@ -550,7 +820,7 @@ private static class Entry {
 		 */
 		volatile boolean dead;
 
-		Entry(Entry n, Ref r) {
+		Entry(Entry n, PageRef r) {
 			next = n;
 			ref = r;
 		}
@@ -561,23 +831,244 @@ final void kill() {
 		}
 	}
 
+	/** A reference wrapped around a cached window. */
+	private interface PageRef {
+		/**
+		 * @return the window, or null if it was already released.
+		 */
+		ByteWindow get();
+
+		/**
+		 * Release the window and add this reference to its cleanup queue.
+		 *
+		 * @return true if this call enqueued the reference; false if it was
+		 *         already enqueued.
+		 */
+		boolean enqueue();
+
+		/**
+		 * @return the pack the window belongs to.
+		 */
+		PackFile getPack();
+
+		/**
+		 * @return offset of the window within the pack.
+		 */
+		long getPosition();
+
+		/**
+		 * @return size of the window in bytes.
+		 */
+		int size();
+
+		/**
+		 * @return clock value of the last access.
+		 */
+		long getLastAccess();
+
+		/**
+		 * @param time
+		 *            clock value of the last access.
+		 */
+		void setLastAccess(long time);
+	}
+
 	/** A soft reference wrapped around a cached object. */
-	private static class Ref extends SoftReference<ByteWindow> {
-		final PackFile pack;
+	private static class SoftRef extends SoftReference<ByteWindow>
+			implements PageRef {
+		private final PackFile pack;
 
-		final long position;
+		private final long position;
 
-		final int size;
+		private final int size;
 
-		long lastAccess;
+		private long lastAccess;
 
-		protected Ref(final PackFile pack, final long position,
+		protected SoftRef(final PackFile pack, final long position,
 				final ByteWindow v, final ReferenceQueue<ByteWindow> queue) {
 			super(v, queue);
 			this.pack = pack;
 			this.position = position;
 			this.size = v.size();
 		}
+
+		@Override
+		public PackFile getPack() {
+			return pack;
+		}
+
+		@Override
+		public long getPosition() {
+			return position;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public long getLastAccess() {
+			return lastAccess;
+		}
+
+		@Override
+		public void setLastAccess(long time) {
+			lastAccess = time;
+		}
+	}
+
+	/** A strong reference wrapped around a cached object. */
+	private static class StrongRef implements PageRef {
+		private volatile ByteWindow ref;
+
+		private final PackFile pack;
+
+		private final long position;
+
+		private final int size;
+
+		private final Queue<PageRef> queue;
+
+		private long lastAccess;
+
+		protected StrongRef(final PackFile pack, final long position,
+				final ByteWindow v, final Queue<PageRef> queue) {
+			this.pack = pack;
+			this.position = position;
+			this.ref = v;
+			this.queue = queue;
+			this.size = v.size();
+		}
+
+		@Override
+		public ByteWindow get() {
+			return ref;
+		}
+
+		@Override
+		public synchronized boolean enqueue() {
+			if (ref == null)
+				return false;
+			ref = null;
+			return queue.add(this);
+		}
+
+		@Override
+		public PackFile getPack() {
+			return pack;
+		}
+
+		@Override
+		public long getPosition() {
+			return position;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public long getLastAccess() {
+			return lastAccess;
+		}
+
+		@Override
+		public void setLastAccess(long time) {
+			lastAccess = time;
+		}
+	}
+
+	/**
+	 * Approximate count of accesses to each window.
+	 * <p>
+	 * A count-min sketch of 4 bit counters, sixteen counters packed into each
+	 * long. Every key updates one counter in each of four rows and its
+	 * frequency is the smallest of those counters. After a number of
+	 * increments proportional to the cache capacity all counters are halved,
+	 * so windows which were popular a long time ago do not block windows
+	 * which are popular now.
+	 * <p>
+	 * Concurrent updates may occasionally lose an increment or a halving;
+	 * the sketch only needs to be approximately right.
+	 */
+	private static final class FrequencySketch {
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+				0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+				0xcbf29ce484222325L };
+
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private final AtomicLongArray table;
+
+		private final int tableMask;
+
+		private final int sampleSize;
+
+		private final AtomicInteger size = new AtomicInteger();
+
+		FrequencySketch(long capacity) {
+			int n = (int) Math.min(Math.max(capacity, 16), 1 << 26);
+			n = Integer.highestOneBit(n - 1) << 1;
+			table = new AtomicLongArray(n);
+			tableMask = n - 1;
+			sampleSize = 10 * n;
+		}
+
+		int frequency(int key) {
+			int freq = 15;
+			for (int i = 0; i < SEEDS.length; i++) {
+				long h = indexHash(key, i);
+				int shift = counterShift(h);
+				long v = table.get(index(h));
+				freq = Math.min(freq, (int) ((v >>> shift) & 15));
+			}
+			return freq;
+		}
+
+		void increment(int key) {
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				long h = indexHash(key, i);
+				added |= incrementAt(index(h), counterShift(h));
+			}
+			if (added && size.incrementAndGet() >= sampleSize)
+				reset();
+		}
+
+		private boolean incrementAt(int i, int shift) {
+			for (;;) {
+				long v = table.get(i);
+				if (((v >>> shift) & 15) == 15)
+					return false;
+				if (table.compareAndSet(i, v, v + (1L << shift)))
+					return true;
+			}
+		}
+
+		private void reset() {
+			int n = size.get();
+			if (n < sampleSize || !size.compareAndSet(n, n / 2))
+				return;
+			for (int i = 0; i < table.length(); i++) {
+				long v = table.get(i);
+				table.compareAndSet(i, v, (v >>> 1) & RESET_MASK);
+			}
+		}
+
+		private static long indexHash(int key, int row) {
+			long h = (key + SEEDS[row]) * SEEDS[row];
+			return h ^ (h >>> 32);
+		}
+
+		private int index(long h) {
+			return (int) (h >>> 4) & tableMask;
+		}
+
+		private static int counterShift(long h) {
+			return ((int) h & 15) << 2;
+		}
 	}
 
 	private static final class Lock {
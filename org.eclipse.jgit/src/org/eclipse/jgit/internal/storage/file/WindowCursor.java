@@ -49,6 +49,7 @@
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
@@ -58,6 +59,7 @@
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StoredObjectRepresentationNotAvailableException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.internal.storage.pack.CachedPack;
 import org.eclipse.jgit.internal.storage.pack.ObjectReuseAsIs;
 import org.eclipse.jgit.internal.storage.pack.ObjectToPack;
@@ -84,6 +86,9 @@ final class WindowCursor extends ObjectReader implements ObjectReuseAsIs {
 
 	private ByteWindow window;
 
+	/** Mapping {@link #window} belongs to, if the whole pack is mapped. */
+	private PackMapping mapping;
+
 	private DeltaBaseCache baseCache;
 
 	@Nullable
@@ -127,6 +132,12 @@ public BitmapIndex getBitmapIndex() throws IOException {
 		return null;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Optional<CommitGraph> getCommitGraph() throws IOException {
+		return db.getCommitGraph();
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public Collection<CachedPack> getCachedPacksAndUpdate(
@@ -357,7 +368,22 @@ void pin(PackFile pack, long position)
 			// it again.
 			//
 			window = null;
-			window = WindowCache.get(pack, position);
+			unpinMapping();
+			PackMapping m = pack.acquireMapping();
+			if (m != null) {
+				mapping = m;
+				window = m.window(position);
+			} else {
+				window = WindowCache.get(pack, position);
+			}
+		}
+	}
+
+	private void unpinMapping() {
+		PackMapping m = mapping;
+		if (m != null) {
+			mapping = null;
+			m.release();
 		}
 	}
 
@@ -376,6 +402,7 @@ public ObjectInserter getCreatedFromInserter() {
 	@Override
 	public void close() {
 		window = null;
+		unpinMapping();
 		baseCache = null;
 		try {
 			InflaterCache.release(inf);
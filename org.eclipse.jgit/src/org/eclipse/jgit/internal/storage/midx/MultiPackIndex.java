@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * The multi-pack-index maps every object of a set of packs to the pack
+ * containing it and the offset of the object within that pack.
+ * <p>
+ * Objects are addressed by their position in the index, which is the index
+ * of the object's id in the sorted list of all object ids stored in the file.
+ * Objects contained in several packs are listed only once. Looking up an
+ * object costs a single binary search, independent of the number of packs.
+ * <p>
+ * A multi-pack-index is immutable once loaded and may be shared by any number
+ * of threads.
+ *
+ * @see <a href=
+ *      "https://github.com/git/git/blob/master/Documentation/technical/multi-pack-index.txt">
+ *      multi-pack-index format</a>
+ */
+public interface MultiPackIndex {
+
+	/**
+	 * Get the names of the packs covered by this index.
+	 * <p>
+	 * The names are the file names of the pack indexes, e.g.
+	 * {@code pack-1234...abcd.idx}, in sorted order. The position of a name
+	 * in the array is the pack id returned by {@link #getPackId(int)}.
+	 *
+	 * @return the names of the pack indexes; the caller must not modify the
+	 *         array.
+	 */
+	String[] getPackNames();
+
+	/**
+	 * Find the position of an object in the multi-pack-index.
+	 *
+	 * @param id
+	 *            the object to look for.
+	 * @return the position or -1 if the object is not covered by the index.
+	 */
+	int findPosition(AnyObjectId id);
+
+	/**
+	 * Get the object at a position.
+	 *
+	 * @param pos
+	 *            the position in the index.
+	 * @return the ObjectId or null if the position was out of bounds.
+	 */
+	ObjectId getObjectId(int pos);
+
+	/**
+	 * Get the pack containing the object at a position.
+	 *
+	 * @param pos
+	 *            the position in the index, as returned by
+	 *            {@link #findPosition(AnyObjectId)}.
+	 * @return index into {@link #getPackNames()}.
+	 */
+	int getPackId(int pos);
+
+	/**
+	 * Get the offset of the object at a position within its pack.
+	 *
+	 * @param pos
+	 *            the position in the index, as returned by
+	 *            {@link #findPosition(AnyObjectId)}.
+	 * @return offset of the object in the pack {@link #getPackId(int)}.
+	 */
+	long getOffset(int pos);
+
+	/**
+	 * Obtain the total number of objects described by this index.
+	 *
+	 * @return number of objects in this index.
+	 */
+	long getObjectCount();
+}
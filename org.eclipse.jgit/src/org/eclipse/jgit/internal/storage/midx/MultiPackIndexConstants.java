@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+/**
+ * Constants relating to multi-pack-index.
+ */
+public final class MultiPackIndexConstants {
+
+	/** Magic number identifying a multi-pack-index file: "MIDX". */
+	public static final int MIDX_MAGIC = 0x4d494458;
+
+	/** Version 1 of the multi-pack-index format. */
+	public static final int MIDX_VERSION_1 = 1;
+
+	/** Hash version of SHA-1 object ids. */
+	public static final int OID_HASH_VERSION = 1;
+
+	/** "PNAM" chunk, the sorted names of the packs. */
+	public static final int CHUNK_ID_PACK_NAMES = 0x504e414d;
+
+	/** "OIDF" chunk, the fanout table of the object ids. */
+	public static final int CHUNK_ID_OID_FANOUT = 0x4f494446;
+
+	/** "OIDL" chunk, the sorted list of object ids. */
+	public static final int CHUNK_ID_OID_LOOKUP = 0x4f49444c;
+
+	/** "OOFF" chunk, the pack and offset of each object. */
+	public static final int CHUNK_ID_OBJECT_OFFSETS = 0x4f4f4646;
+
+	/** "LOFF" chunk, offsets which do not fit into 31 bits. */
+	public static final int CHUNK_ID_LARGE_OFFSETS = 0x4c4f4646;
+
+	/** Length of the multi-pack-index file header. */
+	public static final int MIDX_HEADER_LEN = 12;
+
+	/** Length of a single entry in the chunk lookup table. */
+	public static final int CHUNK_LOOKUP_WIDTH = 12;
+
+	/** Length of a single entry in the object offsets chunk. */
+	public static final int OBJECT_OFFSET_WIDTH = 8;
+
+	/** Length of a single entry in the large offsets chunk. */
+	public static final int LARGE_OFFSET_WIDTH = 8;
+
+	/** Length of the fanout table. */
+	public static final int FANOUT_LEN = 256 * 4;
+
+	/** Mask of an object offset pointing into the large offsets chunk. */
+	public static final int MIDX_LARGE_OFFSET_NEEDED = 0x80000000;
+
+	/** Mask of an object offset to obtain the large offset position. */
+	public static final int MIDX_LARGE_OFFSET_MASK = 0x7fffffff;
+
+	private MultiPackIndexConstants() {
+		// Not instantiable.
+	}
+}
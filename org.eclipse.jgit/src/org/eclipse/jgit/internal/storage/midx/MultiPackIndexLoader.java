@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_LARGE_OFFSETS;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OBJECT_OFFSETS;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OID_FANOUT;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OID_LOOKUP;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_PACK_NAMES;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_LOOKUP_WIDTH;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_HEADER_LEN;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_MAGIC;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_VERSION_1;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.OID_HASH_VERSION;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * The loader returns the representation of the multi-pack-index file content.
+ */
+public class MultiPackIndexLoader {
+
+	private MultiPackIndexLoader() {
+		// Not instantiable.
+	}
+
+	/**
+	 * Open an existing multi-pack-index file for reading.
+	 * <p>
+	 * The format of the file will be automatically detected and a proper access
+	 * implementation for that format will be constructed and returned to the
+	 * caller. The file may or may not be held open by the returned instance.
+	 *
+	 * @param midxFile
+	 *            existing multi-pack-index to read.
+	 * @return a copy of the multi-pack-index file in memory
+	 * @throws FileNotFoundException
+	 *             the file does not exist.
+	 * @throws MultiPackIndexFormatException
+	 *             multi-pack-index file's format is different from what we
+	 *             expected.
+	 * @throws java.io.IOException
+	 *             the file exists but could not be read due to security errors
+	 *             or unexpected data corruption.
+	 */
+	public static MultiPackIndex open(File midxFile)
+			throws FileNotFoundException, MultiPackIndexFormatException,
+			IOException {
+		try (InputStream fd = new BufferedInputStream(
+				new FileInputStream(midxFile))) {
+			try {
+				return read(fd);
+			} catch (MultiPackIndexFormatException fe) {
+				throw fe;
+			} catch (IOException ioe) {
+				throw new IOException(MessageFormat.format(
+						JGitText.get().corruptMultiPackIndex,
+						midxFile.getAbsolutePath()), ioe);
+			}
+		}
+	}
+
+	/**
+	 * Read an existing multi-pack-index file from a buffered stream.
+	 * <p>
+	 * The format of the file will be automatically detected and a proper access
+	 * implementation for that format will be constructed and returned to the
+	 * caller. The file may or may not be held open by the returned instance.
+	 *
+	 * @param fd
+	 *            stream to read the multi-pack-index file from. The stream
+	 *            must be buffered as some small IOs are performed against the
+	 *            stream. The caller is responsible for closing the stream.
+	 * @return a copy of the multi-pack-index file in memory
+	 * @throws MultiPackIndexFormatException
+	 *             the multi-pack-index file's format is different from what we
+	 *             expected.
+	 * @throws java.io.IOException
+	 *             the stream cannot be read.
+	 */
+	public static MultiPackIndex read(InputStream fd)
+			throws MultiPackIndexFormatException, IOException {
+		byte[] hdr = new byte[MIDX_HEADER_LEN];
+		IO.readFully(fd, hdr, 0, hdr.length);
+
+		int magic = NB.decodeInt32(hdr, 0);
+		if (magic != MIDX_MAGIC) {
+			throw new MultiPackIndexFormatException(
+					JGitText.get().notAMultiPackIndex);
+		}
+
+		int v = hdr[4];
+		if (v != MIDX_VERSION_1) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().unsupportedMultiPackIndexVersion,
+					Integer.valueOf(v)));
+		}
+
+		int hashVersion = hdr[5];
+		if (hashVersion != OID_HASH_VERSION) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().unsupportedMultiPackIndexHashVersion,
+					Integer.valueOf(hashVersion)));
+		}
+
+		int numberOfChunks = hdr[6] & 0xff;
+		int numberOfBaseFiles = hdr[7] & 0xff;
+		int numberOfPacks = NB.decodeInt32(hdr, 8);
+		if (numberOfBaseFiles != 0 || numberOfPacks < 0) {
+			throw new MultiPackIndexFormatException(
+					JGitText.get().notAMultiPackIndex);
+		}
+
+		byte[] lookupBuffer = new byte[CHUNK_LOOKUP_WIDTH
+				* (numberOfChunks + 1)];
+		IO.readFully(fd, lookupBuffer, 0, lookupBuffer.length);
+
+		int[] chunkIds = new int[numberOfChunks + 1];
+		long[] chunkOffsets = new long[numberOfChunks + 1];
+		for (int i = 0; i <= numberOfChunks; i++) {
+			chunkIds[i] = NB.decodeInt32(lookupBuffer, i * CHUNK_LOOKUP_WIDTH);
+			chunkOffsets[i] = NB.decodeInt64(lookupBuffer,
+					i * CHUNK_LOOKUP_WIDTH + 4);
+			if (i > 0 && chunkOffsets[i] < chunkOffsets[i - 1]) {
+				throw new MultiPackIndexFormatException(
+						JGitText.get().notAMultiPackIndex);
+			}
+		}
+
+		byte[] packNames = null;
+		byte[] oidFanout = null;
+		byte[] oidLookup = null;
+		byte[] objectOffsets = null;
+		byte[] largeOffsets = null;
+
+		long pos = MIDX_HEADER_LEN + lookupBuffer.length;
+		for (int i = 0; i < numberOfChunks; i++) {
+			long skip = chunkOffsets[i] - pos;
+			if (skip < 0) {
+				throw new MultiPackIndexFormatException(
+						JGitText.get().notAMultiPackIndex);
+			}
+			IO.skipFully(fd, skip);
+			pos += skip;
+
+			long len = chunkOffsets[i + 1] - chunkOffsets[i];
+			if (len > Integer.MAX_VALUE - 8) { // http://stackoverflow.com/a/8381338
+				throw new MultiPackIndexFormatException(
+						JGitText.get().multiPackIndexFileIsTooLargeForJgit);
+			}
+
+			switch (chunkIds[i]) {
+			case CHUNK_ID_PACK_NAMES:
+				packNames = readChunk(fd, packNames, chunkIds[i], len);
+				break;
+			case CHUNK_ID_OID_FANOUT:
+				oidFanout = readChunk(fd, oidFanout, chunkIds[i], len);
+				break;
+			case CHUNK_ID_OID_LOOKUP:
+				oidLookup = readChunk(fd, oidLookup, chunkIds[i], len);
+				break;
+			case CHUNK_ID_OBJECT_OFFSETS:
+				objectOffsets = readChunk(fd, objectOffsets, chunkIds[i], len);
+				break;
+			case CHUNK_ID_LARGE_OFFSETS:
+				largeOffsets = readChunk(fd, largeOffsets, chunkIds[i], len);
+				break;
+			default:
+				// Unknown chunks are optional, skip them.
+				IO.skipFully(fd, len);
+			}
+			pos += len;
+		}
+
+		return new MultiPackIndexV1(numberOfPacks,
+				require(packNames, CHUNK_ID_PACK_NAMES),
+				require(oidFanout, CHUNK_ID_OID_FANOUT),
+				require(oidLookup, CHUNK_ID_OID_LOOKUP),
+				require(objectOffsets, CHUNK_ID_OBJECT_OFFSETS),
+				largeOffsets);
+	}
+
+	private static byte[] readChunk(InputStream fd, byte[] previous,
+			int chunkId, long len) throws IOException {
+		if (previous != null) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().multiPackIndexChunkRepeated,
+					Integer.toHexString(chunkId)));
+		}
+		byte[] buffer = new byte[(int) len];
+		IO.readFully(fd, buffer, 0, buffer.length);
+		return buffer;
+	}
+
+	private static byte[] require(byte[] chunk, int chunkId)
+			throws MultiPackIndexFormatException {
+		if (chunk == null) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().multiPackIndexChunkNeeded,
+					Integer.toHexString(chunkId)));
+		}
+		return chunk;
+	}
+}
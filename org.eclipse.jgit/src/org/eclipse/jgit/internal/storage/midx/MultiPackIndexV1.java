@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.FANOUT_LEN;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.LARGE_OFFSET_WIDTH;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_LARGE_OFFSET_MASK;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_LARGE_OFFSET_NEEDED;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.OBJECT_OFFSET_WIDTH;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Support for the multi-pack-index v1 format.
+ *
+ * @see MultiPackIndex
+ */
+class MultiPackIndexV1 implements MultiPackIndex {
+	private static final int FANOUT = 256;
+
+	private static final int OID_LENGTH = Constants.OBJECT_ID_LENGTH;
+
+	private final String[] packNames;
+
+	private final int[] fanoutTable;
+
+	/** Sorted object ids of all objects, {@link #OID_LENGTH} bytes each. */
+	private final byte[] oidLookup;
+
+	/** Pack id and offset of each object, 8 bytes each. */
+	private final byte[] objectOffsets;
+
+	/** 64 bit offsets of objects beyond 2 GiB; may be null. */
+	private final byte[] largeOffsets;
+
+	private final int objectCnt;
+
+	MultiPackIndexV1(int packCnt, byte[] packNames, byte[] oidFanout,
+			byte[] oidLookup, byte[] objectOffsets, byte[] largeOffsets)
+			throws MultiPackIndexFormatException {
+		this.packNames = parsePackNames(packCnt, packNames);
+		if (oidFanout.length != FANOUT_LEN) {
+			throw new MultiPackIndexFormatException(
+					JGitText.get().notAMultiPackIndex);
+		}
+		fanoutTable = new int[FANOUT];
+		for (int k = 0; k < FANOUT; k++) {
+			fanoutTable[k] = NB.decodeInt32(oidFanout, k * 4);
+			if (fanoutTable[k] < 0
+					|| (k > 0 && fanoutTable[k] < fanoutTable[k - 1])) {
+				throw new MultiPackIndexFormatException(
+						JGitText.get().notAMultiPackIndex);
+			}
+		}
+		objectCnt = fanoutTable[FANOUT - 1];
+		if ((long) objectCnt * OID_LENGTH != oidLookup.length
+				|| (long) objectCnt * OBJECT_OFFSET_WIDTH != objectOffsets.length
+				|| (largeOffsets != null
+						&& largeOffsets.length % LARGE_OFFSET_WIDTH != 0)) {
+			throw new MultiPackIndexFormatException(
+					JGitText.get().notAMultiPackIndex);
+		}
+		for (int pos = 0; pos < objectCnt; pos++) {
+			int packId = NB.decodeInt32(objectOffsets,
+					pos * OBJECT_OFFSET_WIDTH);
+			if (packId < 0 || packId >= packCnt) {
+				throw new MultiPackIndexFormatException(
+						JGitText.get().notAMultiPackIndex);
+			}
+		}
+
+		this.oidLookup = oidLookup;
+		this.objectOffsets = objectOffsets;
+		this.largeOffsets = largeOffsets;
+	}
+
+	private static String[] parsePackNames(int packCnt, byte[] raw)
+			throws MultiPackIndexFormatException {
+		List<String> names = new ArrayList<>(packCnt);
+		int ptr = 0;
+		while (ptr < raw.length && raw[ptr] != 0) {
+			int end = RawParseUtils.next(raw, ptr, '\0');
+			if (end > raw.length || raw[end - 1] != 0) {
+				throw new MultiPackIndexFormatException(
+						JGitText.get().notAMultiPackIndex);
+			}
+			names.add(RawParseUtils.decode(raw, ptr, end - 1));
+			ptr = end;
+		}
+		// The remainder is padding to a multiple of 4 bytes.
+		if (names.size() != packCnt) {
+			throw new MultiPackIndexFormatException(
+					JGitText.get().notAMultiPackIndex);
+		}
+		return names.toArray(new String[0]);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String[] getPackNames() {
+		return packNames;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int findPosition(AnyObjectId id) {
+		int levelOne = id.getFirstByte();
+		int high = fanoutTable[levelOne];
+		int low = levelOne == 0 ? 0 : fanoutTable[levelOne - 1];
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = id.compareTo(oidLookup, OID_LENGTH * mid);
+			if (cmp < 0) {
+				high = mid;
+			} else if (cmp == 0) {
+				return mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return -1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ObjectId getObjectId(int pos) {
+		if (pos < 0 || pos >= objectCnt) {
+			return null;
+		}
+		return ObjectId.fromRaw(oidLookup, OID_LENGTH * pos);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getPackId(int pos) {
+		return NB.decodeInt32(objectOffsets, pos * OBJECT_OFFSET_WIDTH);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getOffset(int pos) {
+		int offset = NB.decodeInt32(objectOffsets,
+				pos * OBJECT_OFFSET_WIDTH + 4);
+		if ((offset & MIDX_LARGE_OFFSET_NEEDED) == 0) {
+			return offset;
+		}
+		int idx = (offset & MIDX_LARGE_OFFSET_MASK) * LARGE_OFFSET_WIDTH;
+		if (largeOffsets == null
+				|| idx + LARGE_OFFSET_WIDTH > largeOffsets.length) {
+			return -1;
+		}
+		return NB.decodeInt64(largeOffsets, idx);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getObjectCount() {
+		return objectCnt;
+	}
+}
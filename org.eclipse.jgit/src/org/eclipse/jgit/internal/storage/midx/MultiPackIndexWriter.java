@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_LARGE_OFFSETS;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OBJECT_OFFSETS;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OID_FANOUT;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OID_LOOKUP;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_PACK_NAMES;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_LOOKUP_WIDTH;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.FANOUT_LEN;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.LARGE_OFFSET_WIDTH;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_HEADER_LEN;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_LARGE_OFFSET_MASK;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_LARGE_OFFSET_NEEDED;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_MAGIC;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_VERSION_1;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.OBJECT_OFFSET_WIDTH;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.OID_HASH_VERSION;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.annotations.NonNull;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Writes a multi-pack-index formatted file.
+ * <p>
+ * The indexes of the packs are merged into a single sorted table. If an
+ * object is contained in more than one pack, the entry of the preferred pack
+ * is written.
+ */
+public class MultiPackIndexWriter {
+
+	private static final int MIDX_BASE_FILE_COUNT = 0;
+
+	private final int hashsz;
+
+	/** Pack index names in sorted order; the position is the pack id. */
+	private final String[] packNames;
+
+	/** Pack indexes, in the same order as {@link #packNames}. */
+	private final PackIndex[] indexes;
+
+	/** Preference of each pack; lower values win for duplicate objects. */
+	private final int[] ranks;
+
+	private int objectCnt;
+
+	private int largeOffsetCnt;
+
+	/**
+	 * Create a multi-pack-index writer for these packs.
+	 *
+	 * @param packs
+	 *            the file names of the pack indexes, e.g.
+	 *            {@code pack-1234...abcd.idx}, and their loaded indexes. The
+	 *            iteration order of the map defines the preference of the
+	 *            packs: an object contained in several packs is recorded at
+	 *            the first pack containing it.
+	 */
+	public MultiPackIndexWriter(@NonNull Map<String, PackIndex> packs) {
+		this.hashsz = Constants.OBJECT_ID_LENGTH;
+		Map<String, Integer> rankByName = new TreeMap<>();
+		for (String name : packs.keySet()) {
+			rankByName.put(name, Integer.valueOf(rankByName.size()));
+		}
+		int n = rankByName.size();
+		packNames = new String[n];
+		indexes = new PackIndex[n];
+		ranks = new int[n];
+		int packId = 0;
+		for (Map.Entry<String, Integer> e : rankByName.entrySet()) {
+			packNames[packId] = e.getKey();
+			indexes[packId] = packs.get(e.getKey());
+			ranks[packId] = e.getValue().intValue();
+			packId++;
+		}
+	}
+
+	/**
+	 * Write the multi-pack-index to the supplied stream.
+	 *
+	 * @param monitor
+	 *            progress monitor to report the number of objects written.
+	 * @param midxStream
+	 *            output stream of multi-pack-index data. The stream should be
+	 *            buffered by the caller. The caller is responsible for closing
+	 *            the stream.
+	 * @throws IOException
+	 *             if an error occurred
+	 */
+	public void write(@NonNull ProgressMonitor monitor,
+			@NonNull OutputStream midxStream) throws IOException {
+		int[] fanout = new int[256];
+		objectCnt = 0;
+		largeOffsetCnt = 0;
+		forEachObject((id, packId, offset) -> {
+			fanout[id.getFirstByte()]++;
+			objectCnt++;
+			if (needsLargeOffset(offset)) {
+				largeOffsetCnt++;
+			}
+		});
+		for (int i = 1; i < fanout.length; i++) {
+			fanout[i] += fanout[i - 1];
+		}
+
+		byte[] names = encodePackNames();
+		List<ChunkHeader> chunks = new ArrayList<>();
+		chunks.add(new ChunkHeader(CHUNK_ID_PACK_NAMES, names.length));
+		chunks.add(new ChunkHeader(CHUNK_ID_OID_FANOUT, FANOUT_LEN));
+		chunks.add(new ChunkHeader(CHUNK_ID_OID_LOOKUP,
+				(long) hashsz * objectCnt));
+		chunks.add(new ChunkHeader(CHUNK_ID_OBJECT_OFFSETS,
+				(long) OBJECT_OFFSET_WIDTH * objectCnt));
+		if (largeOffsetCnt > 0) {
+			chunks.add(new ChunkHeader(CHUNK_ID_LARGE_OFFSETS,
+					(long) LARGE_OFFSET_WIDTH * largeOffsetCnt));
+		}
+
+		monitor.beginTask(JGitText.get().writingOutMultiPackIndex,
+				objectCnt);
+		DigestOutputStream out = new DigestOutputStream(
+				midxStream instanceof BufferedOutputStream ? midxStream
+						: new BufferedOutputStream(midxStream),
+				Constants.newMessageDigest());
+		writeHeader(out, chunks.size(), packNames.length);
+		writeChunkLookup(out, chunks);
+		out.write(names);
+		writeFanoutTable(out, fanout);
+		writeOidLookup(monitor, out);
+		writeObjectOffsets(out);
+		if (largeOffsetCnt > 0) {
+			writeLargeOffsets(out);
+		}
+		writeCheckSum(out);
+		out.flush();
+		monitor.endTask();
+	}
+
+	private static boolean needsLargeOffset(long offset) {
+		return offset > MIDX_LARGE_OFFSET_MASK;
+	}
+
+	private byte[] encodePackNames() {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		for (String name : packNames) {
+			byte[] raw = name.getBytes(UTF_8);
+			buf.write(raw, 0, raw.length);
+			buf.write(0);
+		}
+		// The chunk is padded to a multiple of 4 bytes.
+		while (buf.size() % 4 != 0) {
+			buf.write(0);
+		}
+		return buf.toByteArray();
+	}
+
+	private static void writeHeader(OutputStream out, int numChunks,
+			int numPacks) throws IOException {
+		byte[] headerBuffer = new byte[MIDX_HEADER_LEN];
+		NB.encodeInt32(headerBuffer, 0, MIDX_MAGIC);
+		headerBuffer[4] = (byte) MIDX_VERSION_1;
+		headerBuffer[5] = (byte) OID_HASH_VERSION;
+		headerBuffer[6] = (byte) numChunks;
+		headerBuffer[7] = (byte) MIDX_BASE_FILE_COUNT;
+		NB.encodeInt32(headerBuffer, 8, numPacks);
+		out.write(headerBuffer);
+	}
+
+	private static void writeChunkLookup(OutputStream out,
+			List<ChunkHeader> chunks) throws IOException {
+		int numChunks = chunks.size();
+		long chunkOffset = MIDX_HEADER_LEN
+				+ (numChunks + 1) * CHUNK_LOOKUP_WIDTH;
+		byte[] buffer = new byte[CHUNK_LOOKUP_WIDTH];
+		for (ChunkHeader chunk : chunks) {
+			NB.encodeInt32(buffer, 0, chunk.id);
+			NB.encodeInt64(buffer, 4, chunkOffset);
+			out.write(buffer);
+			chunkOffset += chunk.size;
+		}
+		NB.encodeInt32(buffer, 0, 0);
+		NB.encodeInt64(buffer, 4, chunkOffset);
+		out.write(buffer);
+	}
+
+	private static void writeFanoutTable(OutputStream out, int[] fanout)
+			throws IOException {
+		byte[] tmp = new byte[4];
+		for (int n : fanout) {
+			NB.encodeInt32(tmp, 0, n);
+			out.write(tmp, 0, 4);
+		}
+	}
+
+	private void writeOidLookup(ProgressMonitor monitor, OutputStream out)
+			throws IOException {
+		byte[] tmp = new byte[hashsz];
+		forEachObject((id, packId, offset) -> {
+			id.copyRawTo(tmp, 0);
+			out.write(tmp);
+			monitor.update(1);
+		});
+	}
+
+	private void writeObjectOffsets(OutputStream out) throws IOException {
+		byte[] tmp = new byte[OBJECT_OFFSET_WIDTH];
+		int[] large = { 0 };
+		forEachObject((id, packId, offset) -> {
+			NB.encodeInt32(tmp, 0, packId);
+			if (needsLargeOffset(offset)) {
+				NB.encodeInt32(tmp, 4, MIDX_LARGE_OFFSET_NEEDED | large[0]++);
+			} else {
+				NB.encodeInt32(tmp, 4, (int) offset);
+			}
+			out.write(tmp);
+		});
+	}
+
+	private void writeLargeOffsets(OutputStream out) throws IOException {
+		byte[] tmp = new byte[LARGE_OFFSET_WIDTH];
+		forEachObject((id, packId, offset) -> {
+			if (needsLargeOffset(offset)) {
+				NB.encodeInt64(tmp, 0, offset);
+				out.write(tmp);
+			}
+		});
+	}
+
+	private static void writeCheckSum(DigestOutputStream out)
+			throws IOException {
+		out.on(false);
+		out.write(out.getMessageDigest().digest());
+	}
+
+	// Merge the sorted pack indexes, visiting each object once in object id
+	// order, at its most preferred pack.
+	private void forEachObject(ObjectVisitor visitor) throws IOException {
+		PriorityQueue<PackCursor> queue = new PriorityQueue<>(
+				Math.max(1, indexes.length));
+		for (int packId = 0; packId < indexes.length; packId++) {
+			PackCursor c = new PackCursor(packId, ranks[packId],
+					indexes[packId].iterator());
+			if (c.next()) {
+				queue.add(c);
+			}
+		}
+		ObjectId last = null;
+		while (!queue.isEmpty()) {
+			PackCursor c = queue.poll();
+			if (last == null || !last.equals(c.id)) {
+				visitor.visit(c.id, c.packId, c.offset);
+				last = c.id;
+			}
+			if (c.next()) {
+				queue.add(c);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface ObjectVisitor {
+		void visit(ObjectId id, int packId, long offset) throws IOException;
+	}
+
+	private static class PackCursor implements Comparable<PackCursor> {
+		final int packId;
+
+		final int rank;
+
+		final Iterator<PackIndex.MutableEntry> entries;
+
+		ObjectId id;
+
+		long offset;
+
+		PackCursor(int packId, int rank,
+				Iterator<PackIndex.MutableEntry> entries) {
+			this.packId = packId;
+			this.rank = rank;
+			this.entries = entries;
+		}
+
+		boolean next() {
+			if (!entries.hasNext()) {
+				return false;
+			}
+			PackIndex.MutableEntry e = entries.next();
+			id = e.toObjectId();
+			offset = e.getOffset();
+			return true;
+		}
+
+		@Override
+		public int compareTo(PackCursor o) {
+			int cmp = id.compareTo(o.id);
+			return cmp != 0 ? cmp : Integer.compare(rank, o.rank);
+		}
+	}
+
+	private static class ChunkHeader {
+		final int id;
+
+		final long size;
+
+		ChunkHeader(int id, long size) {
+			this.id = id;
+			this.size = size;
+		}
+	}
+}
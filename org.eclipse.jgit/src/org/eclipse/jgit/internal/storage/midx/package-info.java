@@ -0,0 +1,5 @@
+/**
+ * Reading and writing of the multi-pack-index, a single index of the objects
+ * in all packs of a repository.
+ */
+package org.eclipse.jgit.internal.storage.midx;
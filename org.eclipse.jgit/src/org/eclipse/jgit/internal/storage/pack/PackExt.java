@@ -64,6 +64,9 @@ public class PackExt {
 	/** A reftable file. */
 	public static final PackExt REFTABLE = newPackExt("ref"); //$NON-NLS-1$
 
+	/** A commit-graph file. */
+	public static final PackExt COMMIT_GRAPH = newPackExt("graph"); //$NON-NLS-1$
+
 	/**
 	 * Get all of the PackExt values.
 	 *
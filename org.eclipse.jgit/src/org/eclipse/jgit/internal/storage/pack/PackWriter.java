@@ -54,6 +54,7 @@
 import static org.eclipse.jgit.lib.Constants.OBJ_TREE;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.WeakReference;
 import java.security.MessageDigest;
@@ -69,6 +70,7 @@
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -88,7 +90,9 @@
 import org.eclipse.jgit.errors.LargeObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StoredObjectRepresentationNotAvailableException;
+import org.eclipse.jgit.ignore.IgnoreNode;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl;
 import org.eclipse.jgit.internal.storage.file.PackBitmapIndexBuilder;
 import org.eclipse.jgit.internal.storage.file.PackBitmapIndexWriterV1;
 import org.eclipse.jgit.internal.storage.file.PackIndexWriter;
@@ -169,6 +173,9 @@
 public class PackWriter implements AutoCloseable {
 	private static final int PACK_VERSION_GENERATED = 2;
 
+	/** Fewest objects worth handing to another thread in searchForReuse. */
+	private static final int MIN_REUSE_SLICE = 4096;
+
 	/** Empty set of objects for {@code preparePack()}. */
 	public static final Set<ObjectId> NONE = Collections.emptySet();
 
@@ -288,7 +295,7 @@ public static Iterable<PackWriter> getInstances() {
 
 	private boolean ignoreMissingUninteresting = true;
 
-	private boolean pruneCurrentObjectList;
+	private volatile boolean pruneCurrentObjectList;
 
 	private boolean shallowPack;
 
@@ -308,6 +315,10 @@ public static Iterable<PackWriter> getInstances() {
 
 	private FilterSpec filterSpec = FilterSpec.NO_FILTER;
 
+	private IgnoreNode sparseRules;
+
+	private SparseVisitationPolicy sparsePolicy;
+
 	private PackfileUriConfig packfileUriConfig;
 
 	/**
@@ -934,6 +945,32 @@ public void visited(RevObject o) {
 		}
 	}
 
+	/**
+	 * A visitation policy which lets a blob rejected by the sparse:oid filter
+	 * be visited again, as the same content may also appear at a path the
+	 * sparse-checkout patterns do include.
+	 */
+	private static class SparseVisitationPolicy
+			implements ObjectWalk.VisitationPolicy {
+		final Set<ObjectId> rejected = new HashSet<>();
+
+		private final ObjectWalk.VisitationPolicy delegate;
+
+		SparseVisitationPolicy(ObjectWalk.VisitationPolicy delegate) {
+			this.delegate = requireNonNull(delegate);
+		}
+
+		@Override
+		public boolean shouldVisit(RevObject o) {
+			return rejected.contains(o) || delegate.shouldVisit(o);
+		}
+
+		@Override
+		public void visited(RevObject o) {
+			delegate.visited(o);
+		}
+	}
+
 	/**
 	 * Prepare the list of objects to be written to the pack stream.
 	 * <p>
@@ -975,9 +1012,16 @@ public void preparePack(ProgressMonitor countingMonitor,
 		if (shallowPack && !(walk instanceof DepthWalk.ObjectWalk))
 			throw new IllegalArgumentException(
 					JGitText.get().shallowPacksRequireDepthWalk);
+		ObjectWalk.VisitationPolicy policy = ObjectWalk.SIMPLE_VISITATION_POLICY;
 		if (filterSpec.getTreeDepthLimit() >= 0) {
-			walk.setVisitationPolicy(new DepthAwareVisitationPolicy(walk));
+			policy = new DepthAwareVisitationPolicy(walk);
+		}
+		if (filterSpec.getSparseOid() != null) {
+			sparseRules = loadSparseRules(filterSpec.getSparseOid());
+			sparsePolicy = new SparseVisitationPolicy(policy);
+			policy = sparsePolicy;
 		}
+		walk.setVisitationPolicy(policy);
 		findObjectsToPack(countingMonitor, walk, interestingObjects,
 				uninterestingObjects, noBitmaps);
 	}
@@ -1361,11 +1405,66 @@ private void searchForReuse(ProgressMonitor monitor) throws IOException {
 	private void searchForReuse(ProgressMonitor monitor, List<ObjectToPack> list)
 			throws IOException, MissingObjectException {
 		pruneCurrentObjectList = false;
-		reuseSupport.selectObjectRepresentation(this, monitor, list);
+		int threads = config.getThreads();
+		if (threads == 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		threads = Math.min(threads, list.size() / MIN_REUSE_SLICE);
+
+		// The bitmap of objects the client has inflates itself lazily on
+		// lookups from select(), so it must not be shared between threads.
+		if (threads <= 1 || haveObjects != null)
+			reuseSupport.selectObjectRepresentation(this, monitor, list);
+		else
+			parallelSearchForReuse(monitor, list, threads);
 		if (pruneCurrentObjectList)
 			pruneEdgesFromObjectList(list);
 	}
 
+	private void parallelSearchForReuse(ProgressMonitor monitor,
+			List<ObjectToPack> list, int threads) throws IOException {
+		// Each slice is looked up through its own reader, as readers are
+		// not thread safe. select() only updates the ObjectToPack it is
+		// given, so the slices do not interfere with each other.
+		List<ObjectReader> readers = new ArrayList<>(threads);
+		try {
+			for (int i = 0; i < threads; i++) {
+				ObjectReader or = reader.newReader();
+				readers.add(or);
+				if (!(or instanceof ObjectReuseAsIs)) {
+					reuseSupport.selectObjectRepresentation(this, monitor,
+							list);
+					return;
+				}
+			}
+
+			ThreadSafeProgressMonitor pm = new ThreadSafeProgressMonitor(
+					monitor);
+			List<Callable<Object>> tasks = new ArrayList<>(threads);
+			int cnt = list.size();
+			for (int i = 0; i < threads; i++) {
+				ObjectReuseAsIs or = (ObjectReuseAsIs) readers.get(i);
+				List<ObjectToPack> slice = list.subList(
+						(int) ((long) cnt * i / threads),
+						(int) ((long) cnt * (i + 1) / threads));
+				tasks.add(() -> {
+					try {
+						or.selectObjectRepresentation(PackWriter.this, pm,
+								slice);
+					} finally {
+						pm.endWorker();
+					}
+					return null;
+				});
+			}
+			pm.startWorkers(threads);
+			runTasks(pm, tasks, threads);
+		} finally {
+			for (ObjectReader or : readers) {
+				or.close();
+			}
+		}
+	}
+
 	private void cutDeltaChains(BlockList<ObjectToPack> list)
 			throws IOException {
 		int max = config.getMaxDeltaDepth();
@@ -1592,19 +1691,25 @@ private void parallelDeltaSearch(ProgressMonitor monitor,
 		taskBlock.partitionTasks();
 		beginPhase(PackingPhase.COMPRESSING, monitor, taskBlock.cost());
 		pm.startWorkers(taskBlock.tasks.size());
+		runTasks(pm, taskBlock.tasks, threads);
+		endPhase(monitor);
+	}
 
+	private void runTasks(ThreadSafeProgressMonitor pm,
+			List<? extends Callable<Object>> tasks, int threads)
+			throws IOException {
 		Executor executor = config.getExecutor();
 		final List<Throwable> errors =
 				Collections.synchronizedList(new ArrayList<>(threads));
 		if (executor instanceof ExecutorService) {
 			// Caller supplied us a service, use it directly.
-			runTasks((ExecutorService) executor, pm, taskBlock, errors);
+			runTasks((ExecutorService) executor, pm, tasks, errors);
 		} else if (executor == null) {
 			// Caller didn't give us a way to run the tasks, spawn up a
 			// temporary thread pool and make sure it tears down cleanly.
 			ExecutorService pool = Executors.newFixedThreadPool(threads);
 			try {
-				runTasks(pool, pm, taskBlock, errors);
+				runTasks(pool, pm, tasks, errors);
 			} finally {
 				pool.shutdown();
 				for (;;) {
@@ -1621,7 +1726,7 @@ private void parallelDeltaSearch(ProgressMonitor monitor,
 			// The caller gave us an executor, but it might not do
 			// asynchronous execution.  Wrap everything and hope it
 			// can schedule these for us.
-			for (DeltaTask task : taskBlock.tasks) {
+			for (Callable<Object> task : tasks) {
 				executor.execute(() -> {
 					try {
 						task.call();
@@ -1655,14 +1760,14 @@ private void parallelDeltaSearch(ProgressMonitor monitor,
 
 			throw new IOException(err.getMessage(), err);
 		}
-		endPhase(monitor);
 	}
 
 	private static void runTasks(ExecutorService pool,
 			ThreadSafeProgressMonitor pm,
-			DeltaTask.Block tb, List<Throwable> errors) throws IOException {
-		List<Future<?>> futures = new ArrayList<>(tb.tasks.size());
-		for (DeltaTask task : tb.tasks)
+			List<? extends Callable<Object>> tasks, List<Throwable> errors)
+			throws IOException {
+		List<Future<?>> futures = new ArrayList<>(tasks.size());
+		for (Callable<Object> task : tasks)
 			futures.add(pool.submit(task));
 
 		try {
@@ -1879,7 +1984,7 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 				&& !shallowPack
 				&& have.isEmpty()
 				&& (excludeInPacks == null || excludeInPacks.length == 0);
-		if (!shallowPack && useBitmaps) {
+		if (!shallowPack && useBitmaps && sparseRules == null) {
 			BitmapIndex bitmapIndex = reader.getBitmapIndex();
 			if (bitmapIndex != null) {
 				BitmapWalker bitmapWalker = new BitmapWalker(
@@ -2062,7 +2167,7 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 				byte[] pathBuf = walker.getPathBuffer();
 				int pathLen = walker.getPathLength();
 				bases.addBase(o.getType(), pathBuf, pathLen, pathHash);
-				if (!depthSkip(o, walker)) {
+				if (!depthSkip(o, walker) && !sparseSkip(o, walker, want)) {
 					filterAndAddObject(o, o.getType(), pathHash, want);
 				}
 				countingMonitor.update(1);
@@ -2074,7 +2179,7 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 					continue;
 				if (exclude(o))
 					continue;
-				if (!depthSkip(o, walker)) {
+				if (!depthSkip(o, walker) && !sparseSkip(o, walker, want)) {
 					filterAndAddObject(o, o.getType(), walker.getPathHashCode(),
 									   want);
 				}
@@ -2104,19 +2209,65 @@ private void findObjectsToPackUsingBitmaps(
 			cachedPacks.addAll(
 					reuseSupport.getCachedPacksAndUpdate(needBitmap));
 
+		boolean filtered = filterBlobsUsingBitmaps(needBitmap, want);
 		for (BitmapObject obj : needBitmap) {
 			ObjectId objectId = obj.getObjectId();
 			if (exclude(objectId)) {
 				needBitmap.remove(objectId);
 				continue;
 			}
-			filterAndAddObject(objectId, obj.getType(), 0, want);
+			if (filtered) {
+				addObject(objectId, obj.getType(), 0);
+			} else {
+				filterAndAddObject(objectId, obj.getType(), 0, want);
+			}
 		}
 
 		if (thin)
 			haveObjects = haveBitmap;
 	}
 
+	/**
+	 * Applies a blob:none or blob:limit filter to {@code needBitmap} with
+	 * bitmap operations, rather than checking each object on its own.
+	 * <p>
+	 * blob:none drops the type bitmap of blobs; blob:limit drops the blobs
+	 * known to be too large, reusing sizes looked up by earlier requests for
+	 * the same pack and limit. Blobs the client wants explicitly are kept.
+	 *
+	 * @param needBitmap
+	 *            the objects to be sent, updated in place.
+	 * @param want
+	 *            objects explicitly requested by the client.
+	 * @return whether the filter was applied, making it unnecessary to filter
+	 *         the objects in {@code needBitmap} on their own.
+	 * @throws IOException
+	 *             the size of a blob could not be read.
+	 */
+	private boolean filterBlobsUsingBitmaps(BitmapBuilder needBitmap,
+			Set<? extends ObjectId> want) throws IOException {
+		long blobLimit = filterSpec.getBlobLimit();
+		if (blobLimit < 0) {
+			return true;
+		}
+		if (!(needBitmap.getBitmapIndex() instanceof BitmapIndexImpl)) {
+			return false;
+		}
+		BitmapIndexImpl index = (BitmapIndexImpl) needBitmap.getBitmapIndex();
+		BitmapBuilder rejected = index.newBitmapBuilder();
+		if (blobLimit == 0) {
+			rejected.or(index.getObjectsOfType(OBJ_BLOB));
+		} else {
+			rejected.or(index.findBlobsLargerThan(needBitmap, blobLimit,
+					reader));
+		}
+		for (ObjectId id : want) {
+			rejected.remove(id);
+		}
+		needBitmap.andNot(rejected);
+		return true;
+	}
+
 	private static void pruneEdgesFromObjectList(List<ObjectToPack> list) {
 		final int size = list.size();
 		int src = 0;
@@ -2207,6 +2358,64 @@ private boolean depthSkip(@NonNull RevObject obj, ObjectWalk walker) {
 		return true;
 	}
 
+	/**
+	 * Determines if the object should be omitted from the pack because its
+	 * path is outside of the sparse-checkout patterns of a sparse:oid filter.
+	 * <p>
+	 * Only blobs are omitted; trees are always sent so that the client can
+	 * build its index and lazily fetch the blobs it is missing later.
+	 *
+	 * @param obj
+	 *            the object to check whether it should be omitted.
+	 * @param walker
+	 *            the walker being used for traversal.
+	 * @param want
+	 *            objects explicitly requested by the client, which are never
+	 *            omitted.
+	 * @return whether the given object should be skipped.
+	 */
+	private boolean sparseSkip(@NonNull RevObject obj, ObjectWalk walker,
+			@NonNull Set<? extends AnyObjectId> want) {
+		if (sparseRules == null || obj.getType() != OBJ_BLOB
+				|| want.contains(obj)) {
+			return false;
+		}
+		if (isSparseIncluded(walker.getPathString())) {
+			sparsePolicy.rejected.remove(obj);
+			return false;
+		}
+		sparsePolicy.rejected.add(obj);
+		return true;
+	}
+
+	// Sparse-checkout patterns use .gitignore syntax, with a match meaning
+	// the path is checked out. A path without a match of its own inherits
+	// the decision of its closest matching parent directory.
+	private boolean isSparseIncluded(String path) {
+		String p = path;
+		boolean dir = false;
+		for (;;) {
+			Boolean r = sparseRules.checkIgnored(p, dir);
+			if (r != null) {
+				return r.booleanValue();
+			}
+			int s = p.lastIndexOf('/');
+			if (s < 0) {
+				return false;
+			}
+			p = p.substring(0, s);
+			dir = true;
+		}
+	}
+
+	private IgnoreNode loadSparseRules(ObjectId sparseOid) throws IOException {
+		IgnoreNode rules = new IgnoreNode();
+		try (InputStream in = reader.open(sparseOid, OBJ_BLOB).openStream()) {
+			rules.parse(in);
+		}
+		return rules;
+	}
+
 	// Adds the given object as an object to be packed, first performing
 	// filtering on blobs at or exceeding a given size.
 	private void filterAndAddObject(@NonNull AnyObjectId src, int type,
@@ -125,6 +125,12 @@ public final class ConfigConstants {
 	 */
 	public static final String CONFIG_GPG_SECTION = "gpg";
 
+	/**
+	 * The "extensions" section
+	 * @since 5.6
+	 */
+	public static final String CONFIG_EXTENSIONS_SECTION = "extensions";
+
 	/**
 	 * The "format" key
 	 * @since 5.2
@@ -495,4 +501,158 @@ public final class ConfigConstants {
 	 * @since 5.1.9
 	 */
 	public static final String CONFIG_KEY_MIN_RACY_THRESHOLD = "minRacyThreshold";
+
+	/**
+	 * The "commitGraph" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_COMMIT_GRAPH = "commitGraph";
+
+	/**
+	 * The "writeCommitGraph" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_WRITE_COMMIT_GRAPH = "writeCommitGraph";
+
+	/**
+	 * The "multiPackIndex" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_MULTI_PACK_INDEX = "multiPackIndex";
+
+	/**
+	 * The "writeMultiPackIndex" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_WRITE_MULTI_PACK_INDEX = "writeMultiPackIndex";
+
+	/**
+	 * The "writeChangedPaths" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_WRITE_CHANGED_PATHS = "writeChangedPaths";
+
+	/**
+	 * The "refStorage" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_REF_STORAGE = "refStorage";
+
+	/**
+	 * The "reftable" value of the "extensions.refStorage" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_REF_STORAGE_REFTABLE = "reftable";
+
+	/**
+	 * The "reftree" value of the "extensions.refStorage" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_REF_STORAGE_REFTREE = "reftree";
+
+	/**
+	 * The "checkout" section
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_CHECKOUT_SECTION = "checkout";
+
+	/**
+	 * The "workers" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_WORKERS = "workers";
+
+	/**
+	 * The "thresholdForParallelism" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_THRESHOLD_FOR_PARALLELISM = "thresholdForParallelism";
+
+	/**
+	 * The "untrackedCache" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_UNTRACKED_CACHE = "untrackedCache";
+
+	/**
+	 * The "index" section
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_INDEX_SECTION = "index";
+
+	/**
+	 * The "version" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_VERSION = "version";
+
+	/**
+	 * The "splitIndex" section
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_SPLIT_INDEX_SECTION = "splitIndex";
+
+	/**
+	 * The "splitIndex" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_SPLIT_INDEX = "splitIndex";
+
+	/**
+	 * The "maxPercentChange" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_MAX_PERCENT_CHANGE = "maxPercentChange";
+
+	/**
+	 * The "sharedIndexExpire" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_SHARED_INDEX_EXPIRE = "sharedIndexExpire";
+
+	/**
+	 * The "threads" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_THREADS = "threads";
+
+	/**
+	 * The "recordEndOfIndexEntries" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_RECORD_END_OF_INDEX_ENTRIES = "recordEndOfIndexEntries";
+
+	/**
+	 * The "recordOffsetTable" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_RECORD_OFFSET_TABLE = "recordOffsetTable";
+
+	/**
+	 * The "skipHash" key
+	 *
+	 * @since 5.6
+	 */
+	public static final String CONFIG_KEY_SKIP_HASH = "skipHash";
 }
@@ -296,9 +296,33 @@ public final class Constants {
 	 */
 	public static final String INFO_HTTP_ALTERNATES = "info/http-alternates";
 
+	/**
+	 * Commit-graph file (goes under OBJECTS)
+	 * @since 5.6
+	 */
+	public static final String INFO_COMMIT_GRAPH = "info/commit-graph";
+
+	/**
+	 * Multi-pack-index file (goes under OBJECTS)
+	 * @since 5.6
+	 */
+	public static final String PACK_MULTI_PACK_INDEX = "pack/multi-pack-index";
+
 	/** Packed refs file */
 	public static final String PACKED_REFS = "packed-refs";
 
+	/**
+	 * Directory holding the reftable stack (goes under GIT_DIR)
+	 * @since 5.6
+	 */
+	public static final String REFTABLE = "reftable";
+
+	/**
+	 * List of the tables of the reftable stack (goes under REFTABLE)
+	 * @since 5.6
+	 */
+	public static final String TABLES_LIST = "tables.list";
+
 	/**
 	 * Excludes-file
 	 *
@@ -49,21 +49,30 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.text.MessageFormat;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.UntrackedCache;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -74,14 +83,18 @@
 import org.eclipse.jgit.submodule.SubmoduleWalk.IgnoreSubmoduleMode;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileChangeMonitor;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
 import org.eclipse.jgit.treewalk.WorkingTreeIterator;
 import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.IndexDiffFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.treewalk.filter.SkipWorkTreeFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.StringUtils;
 
 /**
  * Compares the index, a tree, and the working directory Ignored files are not
@@ -243,6 +256,107 @@ public TreeFilter clone() {
 		}
 	}
 
+	// Accepts the paths below the top-level names hashing to one partition.
+	private static final class TopLevelPartitionFilter extends TreeFilter {
+		private final int partition;
+
+		private final int count;
+
+		TopLevelPartitionFilter(int partition, int count) {
+			this.partition = partition;
+			this.count = count;
+		}
+
+		@Override
+		public boolean include(TreeWalk walker) {
+			byte[] path = walker.getRawPath();
+			int len = walker.getPathLength();
+			int h = 0;
+			for (int i = 0; i < len && path[i] != '/'; i++)
+				h = 31 * h + path[i];
+			return (h & Integer.MAX_VALUE) % count == partition;
+		}
+
+		@Override
+		public boolean shouldBeRecursive() {
+			return false;
+		}
+
+		@Override
+		public TreeFilter clone() {
+			return this;
+		}
+	}
+
+	// Skips the directories in which nothing changed since the file monitor
+	// token of the index, collecting their paths.
+	private static final class UnchangedDirectoryFilter extends TreeFilter {
+		private final Set<String> indexDirs;
+
+		private final Set<String> dirty;
+
+		private final Set<String> dirtyTrees;
+
+		final Set<String> skipped = new HashSet<>();
+
+		UnchangedDirectoryFilter(Set<String> indexDirs, Set<String> dirty,
+				Set<String> dirtyTrees) {
+			this.indexDirs = indexDirs;
+			this.dirty = dirty;
+			this.dirtyTrees = dirtyTrees;
+		}
+
+		@Override
+		public boolean include(TreeWalk walker) {
+			if (!walker.isSubtree())
+				return true;
+			String path = walker.getPathString();
+			if (!indexDirs.contains(path) || dirty.contains(path)
+					|| within(path, dirtyTrees))
+				return true;
+			skipped.add(path);
+			return false;
+		}
+
+		@Override
+		public boolean shouldBeRecursive() {
+			return false;
+		}
+
+		@Override
+		public TreeFilter clone() {
+			throw new IllegalStateException(
+					"Do not clone this kind of filter: " //$NON-NLS-1$
+							+ getClass().getName());
+		}
+	}
+
+	// Accepts the paths whose index entry differs from the tree.
+	private static final class IndexChangedFilter extends TreeFilter {
+		@Override
+		public boolean include(TreeWalk walker) {
+			if (!walker.isSubtree()) {
+				DirCacheIterator i = walker.getTree(INDEX,
+						DirCacheIterator.class);
+				DirCacheEntry e = i != null ? i.getDirCacheEntry() : null;
+				if (e != null && e.getStage() > 0)
+					return true;
+			}
+			return walker.getRawMode(TREE) != walker.getRawMode(INDEX)
+					|| !walker.idEqual(TREE, INDEX);
+		}
+
+		@Override
+		public boolean shouldBeRecursive() {
+			return false;
+		}
+
+		@Override
+		public TreeFilter clone() {
+			return this;
+		}
+	}
+
 	private final static int TREE = 0;
 
 	private final static int INDEX = 1;
@@ -279,7 +393,7 @@ public TreeFilter clone() {
 
 	private DirCache dirCache;
 
-	private IndexDiffFilter indexDiffFilter;
+	private Set<String> untrackedFolders;
 
 	private Map<String, IndexDiff> submoduleIndexDiffs = new HashMap<>();
 
@@ -287,6 +401,10 @@ public TreeFilter clone() {
 
 	private Map<FileMode, Set<String>> fileModes = new HashMap<>();
 
+	private int threads = 1;
+
+	private FileChangeMonitor fileChangeMonitor;
+
 	/**
 	 * Construct an IndexDiff
 	 *
@@ -328,6 +446,15 @@ public IndexDiff(Repository repository, ObjectId objectId,
 		this.initialWorkingTreeIterator = workingTreeIterator;
 	}
 
+	// Creates a diff over one partition of the paths of parent.
+	private IndexDiff(IndexDiff parent, WorkingTreeIterator workingTreeIterator) {
+		this.repository = parent.repository;
+		this.tree = parent.tree;
+		this.dirCache = parent.dirCache;
+		this.ignoreSubmoduleMode = parent.ignoreSubmoduleMode;
+		this.initialWorkingTreeIterator = workingTreeIterator;
+	}
+
 	/**
 	 * Defines how modifications in submodules are treated
 	 *
@@ -375,6 +502,47 @@ public void setFilter(TreeFilter filter) {
 		this.filter = filter;
 	}
 
+	/**
+	 * Set the number of threads comparing the working tree.
+	 * <p>
+	 * With more than one thread the paths are split by their top-level
+	 * directory, and each part is walked on its own thread. Those walks read
+	 * the working tree through iterators from the
+	 * {@link #setWorkingTreeItFactory(WorkingTreeIteratorFactory)} factory,
+	 * and the filter set by {@link #setFilter(TreeFilter)} is cloned for each
+	 * of them. By default a single thread walks the working tree iterator
+	 * passed to the constructor.
+	 *
+	 * @param threads
+	 *            number of threads to use; 0 to use one thread per processor.
+	 * @since 5.6
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Set a monitor reporting the changes made to the working tree.
+	 * <p>
+	 * With a monitor, directories in which nothing changed since the index
+	 * was last updated by a diff are not read again. Their untracked files
+	 * are taken from the untracked cache of the index, which is created unless
+	 * {@code core.untrackedCache} is {@code false}, and the state needed to
+	 * do so is written back to the index if it can be locked. Ignored paths
+	 * within those directories are not reported by
+	 * {@link #getIgnoredNotInIndex()}.
+	 * <p>
+	 * The monitor is not used if a filter is set. It implies a single thread
+	 * walking the working tree iterator passed to the constructor.
+	 *
+	 * @param monitor
+	 *            the monitor, or {@code null} to read the whole working tree.
+	 * @since 5.6
+	 */
+	public void setFileChangeMonitor(FileChangeMonitor monitor) {
+		this.fileChangeMonitor = monitor;
+	}
+
 	/**
 	 * Run the diff operation. Until this is called, all lists will be empty.
 	 * Use {@link #diff(ProgressMonitor, int, int, String)} if a progress
@@ -411,7 +579,121 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 			int estIndexSize, final String title)
 			throws IOException {
 		dirCache = repository.readDirCache();
+		fileModes.clear();
+
+		int total = 0;
+		if (monitor != null) {
+			// Get the maximum size of the work tree and index
+			// and add some (quite arbitrary)
+			if (estIndexSize == 0)
+				estIndexSize = dirCache.getEntryCount();
+			total = Math.max(estIndexSize * 10 / 9,
+					estWorkTreeSize * 10 / 9);
+			monitor.beginTask(title, total);
+		}
+
+		int n = threads > 0 ? threads
+				: Runtime.getRuntime().availableProcessors();
+		if (fileChangeMonitor != null && filter == null) {
+			diffWithFileChangeMonitor(monitor, total);
+		} else if (n > 1) {
+			diffInParallel(monitor, total, n);
+		} else {
+			IndexDiffFilter indexDiffFilter = walk(
+					new DirCacheIterator(dirCache),
+					initialWorkingTreeIterator, filter, monitor, total, null);
+			ignored = indexDiffFilter.getIgnoredPaths();
+			untrackedFolders = new HashSet<>(
+					indexDiffFilter.getUntrackedFolders());
+		}
+
+		if (ignoreSubmoduleMode != IgnoreSubmoduleMode.ALL) {
+			IgnoreSubmoduleMode localIgnoreSubmoduleMode = ignoreSubmoduleMode;
+			try (SubmoduleWalk smw = new SubmoduleWalk(repository)) {
+				smw.setTree(new DirCacheIterator(dirCache));
+				while (smw.next()) {
+					try {
+						if (localIgnoreSubmoduleMode == null)
+							localIgnoreSubmoduleMode = smw.getModulesIgnore();
+						if (IgnoreSubmoduleMode.ALL
+								.equals(localIgnoreSubmoduleMode))
+							continue;
+					} catch (ConfigInvalidException e) {
+						throw new IOException(MessageFormat.format(
+								JGitText.get().invalidIgnoreParamSubmodule,
+								smw.getPath()), e);
+					}
+					try (Repository subRepo = smw.getRepository()) {
+						String subRepoPath = smw.getPath();
+						if (subRepo != null) {
+							ObjectId subHead = subRepo.resolve("HEAD"); //$NON-NLS-1$
+							if (subHead != null
+									&& !subHead.equals(smw.getObjectId())) {
+								modified.add(subRepoPath);
+								recordFileMode(subRepoPath, FileMode.GITLINK);
+							} else if (ignoreSubmoduleMode != IgnoreSubmoduleMode.DIRTY) {
+								IndexDiff smid = submoduleIndexDiffs
+										.get(smw.getPath());
+								if (smid == null) {
+									smid = new IndexDiff(subRepo,
+											smw.getObjectId(),
+											wTreeIt.getWorkingTreeIterator(
+													subRepo));
+									submoduleIndexDiffs.put(subRepoPath, smid);
+								}
+								if (smid.diff()) {
+									if (ignoreSubmoduleMode == IgnoreSubmoduleMode.UNTRACKED
+											&& smid.getAdded().isEmpty()
+											&& smid.getChanged().isEmpty()
+											&& smid.getConflicting().isEmpty()
+											&& smid.getMissing().isEmpty()
+											&& smid.getModified().isEmpty()
+											&& smid.getRemoved().isEmpty()) {
+										continue;
+									}
+									modified.add(subRepoPath);
+									recordFileMode(subRepoPath,
+											FileMode.GITLINK);
+								}
+							}
+						} else if (missingSubmodules.remove(subRepoPath)) {
+							// If the directory is there and empty but the
+							// submodule repository in .git/modules doesn't
+							// exist yet it isn't "missing".
+							File gitDir = new File(
+									new File(repository.getDirectory(),
+											Constants.MODULES),
+									subRepoPath);
+							if (!gitDir.isDirectory()) {
+								File dir = SubmoduleWalk.getSubmoduleDirectory(
+										repository, subRepoPath);
+								if (dir.isDirectory() && !hasFiles(dir)) {
+									missing.remove(subRepoPath);
+								}
+							}
+						}
+					}
+				}
+			}
+
+		}
+
+		// consume the remaining work
+		if (monitor != null)
+			monitor.endTask();
 
+		if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()
+				&& missing.isEmpty() && modified.isEmpty()
+				&& untracked.isEmpty())
+			return false;
+		else
+			return true;
+	}
+
+	private IndexDiffFilter walk(DirCacheIterator dirCacheIt,
+			WorkingTreeIterator workingTreeIt, TreeFilter pathFilter,
+			ProgressMonitor monitor, int total, TreeFilter partition)
+			throws IOException {
 		try (TreeWalk treeWalk = new TreeWalk(repository)) {
 			treeWalk.setOperationType(OperationType.CHECKIN_OP);
 			treeWalk.setRecursive(true);
@@ -420,29 +702,31 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 				treeWalk.addTree(tree);
 			else
 				treeWalk.addTree(new EmptyTreeIterator());
-			treeWalk.addTree(new DirCacheIterator(dirCache));
-			treeWalk.addTree(initialWorkingTreeIterator);
-			initialWorkingTreeIterator.setDirCacheIterator(treeWalk, 1);
-			Collection<TreeFilter> filters = new ArrayList<>(4);
-
-			if (monitor != null) {
-				// Get the maximum size of the work tree and index
-				// and add some (quite arbitrary)
-				if (estIndexSize == 0)
-					estIndexSize = dirCache.getEntryCount();
-				int total = Math.max(estIndexSize * 10 / 9,
-						estWorkTreeSize * 10 / 9);
-				monitor.beginTask(title, total);
-				filters.add(new ProgressReportingFilter(monitor, total));
+			treeWalk.addTree(dirCacheIt);
+			boolean indexOnly = workingTreeIt == null;
+			if (workingTreeIt == null) {
+				treeWalk.addTree(new EmptyTreeIterator());
+			} else {
+				treeWalk.addTree(workingTreeIt);
+				workingTreeIt.setDirCacheIterator(treeWalk, 1);
 			}
+			Collection<TreeFilter> filters = new ArrayList<>(5);
 
-			if (filter != null)
-				filters.add(filter);
+			if (monitor != null)
+				filters.add(new ProgressReportingFilter(monitor, total));
+			if (partition != null)
+				filters.add(partition);
+			if (pathFilter != null)
+				filters.add(pathFilter);
 			filters.add(new SkipWorkTreeFilter(INDEX));
-			indexDiffFilter = new IndexDiffFilter(INDEX, WORKDIR);
-			filters.add(indexDiffFilter);
+			IndexDiffFilter indexDiffFilter = null;
+			if (indexOnly) {
+				filters.add(new IndexChangedFilter());
+			} else {
+				indexDiffFilter = new IndexDiffFilter(INDEX, WORKDIR);
+				filters.add(indexDiffFilter);
+			}
 			treeWalk.setFilter(AndTreeFilter.create(filters));
-			fileModes.clear();
 			while (treeWalk.next()) {
 				AbstractTreeIterator treeIterator = treeWalk.getTree(TREE,
 						AbstractTreeIterator.class);
@@ -499,7 +783,7 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 					}
 				}
 
-				if (dirCacheIterator != null) {
+				if (dirCacheIterator != null && !indexOnly) {
 					if (workingTreeIterator == null) {
 						// in index, not in workdir => missing
 						boolean isGitLink = isEntryGitLink(dirCacheIterator);
@@ -527,95 +811,291 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 
 				String path = treeWalk.getPathString();
 				if (path != null) {
-					for (int i = 0; i < treeWalk.getTreeCount(); i++) {
+					int trees = indexOnly ? WORKDIR : treeWalk.getTreeCount();
+					for (int i = 0; i < trees; i++) {
 						recordFileMode(path, treeWalk.getFileMode(i));
 					}
 				}
 			}
+			return indexDiffFilter;
 		}
+	}
 
-		if (ignoreSubmoduleMode != IgnoreSubmoduleMode.ALL) {
-			IgnoreSubmoduleMode localIgnoreSubmoduleMode = ignoreSubmoduleMode;
-			try (SubmoduleWalk smw = new SubmoduleWalk(repository)) {
-				smw.setTree(new DirCacheIterator(dirCache));
-				while (smw.next()) {
-					try {
-						if (localIgnoreSubmoduleMode == null)
-							localIgnoreSubmoduleMode = smw.getModulesIgnore();
-						if (IgnoreSubmoduleMode.ALL
-								.equals(localIgnoreSubmoduleMode))
-							continue;
-					} catch (ConfigInvalidException e) {
-						throw new IOException(MessageFormat.format(
-								JGitText.get().invalidIgnoreParamSubmodule,
-								smw.getPath()), e);
-					}
-					try (Repository subRepo = smw.getRepository()) {
-						String subRepoPath = smw.getPath();
-						if (subRepo != null) {
-							ObjectId subHead = subRepo.resolve("HEAD"); //$NON-NLS-1$
-							if (subHead != null
-									&& !subHead.equals(smw.getObjectId())) {
-								modified.add(subRepoPath);
-								recordFileMode(subRepoPath, FileMode.GITLINK);
-							} else if (ignoreSubmoduleMode != IgnoreSubmoduleMode.DIRTY) {
-								IndexDiff smid = submoduleIndexDiffs
-										.get(smw.getPath());
-								if (smid == null) {
-									smid = new IndexDiff(subRepo,
-											smw.getObjectId(),
-											wTreeIt.getWorkingTreeIterator(
-													subRepo));
-									submoduleIndexDiffs.put(subRepoPath, smid);
-								}
-								if (smid.diff()) {
-									if (ignoreSubmoduleMode == IgnoreSubmoduleMode.UNTRACKED
-											&& smid.getAdded().isEmpty()
-											&& smid.getChanged().isEmpty()
-											&& smid.getConflicting().isEmpty()
-											&& smid.getMissing().isEmpty()
-											&& smid.getModified().isEmpty()
-											&& smid.getRemoved().isEmpty()) {
-										continue;
-									}
-									modified.add(subRepoPath);
-									recordFileMode(subRepoPath,
-											FileMode.GITLINK);
-								}
-							}
-						} else if (missingSubmodules.remove(subRepoPath)) {
-							// If the directory is there and empty but the
-							// submodule repository in .git/modules doesn't
-							// exist yet it isn't "missing".
-							File gitDir = new File(
-									new File(repository.getDirectory(),
-											Constants.MODULES),
-									subRepoPath);
-							if (!gitDir.isDirectory()) {
-								File dir = SubmoduleWalk.getSubmoduleDirectory(
-										repository, subRepoPath);
-								if (dir.isDirectory() && !hasFiles(dir)) {
-									missing.remove(subRepoPath);
-								}
-							}
-						}
-					}
-				}
+	private void diffWithFileChangeMonitor(ProgressMonitor monitor,
+			int total) throws IOException {
+		File workTree = repository.getWorkTree();
+		String token = fileChangeMonitor.getToken();
+		String since = dirCache.getFileMonitorToken();
+		Set<String> changedPaths = since != null
+				? fileChangeMonitor.getChangedPaths(since)
+				: null;
+		// Without the changes since the recorded token the new one must be
+		// written, even if the result is the same.
+		boolean update = changedPaths == null;
+
+		UntrackedCache cache = dirCache.getUntrackedCache();
+		String useCache = repository.getConfig().getString(
+				ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE);
+		if (Boolean.FALSE.equals(StringUtils.toBooleanOrNull(useCache))) {
+			update |= cache != null;
+			dirCache.setUntrackedCache(null);
+			cache = null;
+		} else if (cache == null) {
+			cache = UntrackedCache.create(workTree);
+			dirCache.setUntrackedCache(cache);
+			update = true;
+		} else if (!cache.isUsable(workTree)) {
+			cache = null;
+		}
+		if (cache != null) {
+			FS fs = repository.getFS();
+			update |= cache.updateExcludes(
+					fs.resolve(repository.getDirectory(),
+							Constants.INFO_EXCLUDE),
+					getExcludesFile());
+		}
+
+		Set<String> indexDirs = new HashSet<>();
+		Set<String> dirty = new HashSet<>();
+		indexDirs.add(""); //$NON-NLS-1$
+		for (int i = 0; i < dirCache.getEntryCount(); i++) {
+			DirCacheEntry e = dirCache.getEntry(i);
+			String dir = parent(e.getPathString());
+			addWithParents(indexDirs, dir);
+			if (!e.isFileMonitorValid())
+				addWithParents(dirty, dir);
+		}
+		UnchangedDirectoryFilter unchanged = null;
+		if (changedPaths != null && cache != null) {
+			// A change to ignore or attribute rules may change the state of
+			// every file below the directory holding them.
+			Set<String> dirtyTrees = new HashSet<>();
+			for (String path : changedPaths) {
+				addWithParents(dirty, path);
+				dirtyTrees.add(path);
+				String name = path.substring(path.lastIndexOf('/') + 1);
+				if (Constants.DOT_GIT_IGNORE.equals(name)
+						|| Constants.DOT_GIT_ATTRIBUTES.equals(name))
+					dirtyTrees.add(parent(path));
 			}
+			for (String dir : indexDirs) {
+				UntrackedCache.Directory d = cache.getDirectory(dir);
+				if (d == null || !d.isValid() || hasUntrackedDirectory(d))
+					addWithParents(dirty, dir);
+			}
+			unchanged = new UnchangedDirectoryFilter(indexDirs, dirty,
+					dirtyTrees);
+		}
 
+		Instant scanStart = Instant.now();
+		IndexDiffFilter indexDiffFilter = walk(new DirCacheIterator(dirCache),
+				initialWorkingTreeIterator, unchanged, monitor, total, null);
+		ignored = indexDiffFilter.getIgnoredPaths();
+		untrackedFolders = new HashSet<>(indexDiffFilter.getUntrackedFolders());
+		Set<String> skipped = unchanged != null ? unchanged.skipped
+				: Collections.emptySet();
+		if (!skipped.isEmpty()) {
+			walk(new DirCacheIterator(dirCache), null,
+					PathFilterGroup.createFromStrings(skipped), null, 0, null);
+			for (String dir : skipped)
+				addCachedUntracked(cache, indexDirs, dir);
 		}
 
-		// consume the remaining work
-		if (monitor != null)
-			monitor.endTask();
+		for (int i = 0; i < dirCache.getEntryCount(); i++) {
+			DirCacheEntry e = dirCache.getEntry(i);
+			String path = e.getPathString();
+			boolean valid = e.getStage() == 0
+					&& e.getRawMode() != FileMode.TYPE_GITLINK
+					&& !modified.contains(path) && !missing.contains(path);
+			if (valid != e.isFileMonitorValid()) {
+				e.setFileMonitorValid(valid);
+				update = true;
+			}
+		}
+		if (cache != null) {
+			Map<String, Set<String>> names = untrackedNames(indexDirs);
+			for (String dir : indexDirs) {
+				if (within(dir, skipped))
+					continue;
+				Set<String> n = names.get(dir);
+				update |= cache.update(dir, new File(workTree, dir),
+						n != null ? n : Collections.emptySet(), scanStart);
+			}
+		}
 
-		ignored = indexDiffFilter.getIgnoredPaths();
-		if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()
-				&& missing.isEmpty() && modified.isEmpty()
-				&& untracked.isEmpty())
+		if (update) {
+			dirCache.setFileMonitorToken(token);
+			writeDirCache();
+		}
+	}
+
+	private File getExcludesFile() {
+		String path = repository.getConfig().get(CoreConfig.KEY)
+				.getExcludesFile();
+		if (path == null)
+			return null;
+		FS fs = repository.getFS();
+		if (path.startsWith("~/")) //$NON-NLS-1$
+			return fs.resolve(fs.userHome(), path.substring(2));
+		return fs.resolve(null, path);
+	}
+
+	// Untracked names directly within each directory holding index entries,
+	// with untracked directories listed as a whole.
+	private Map<String, Set<String>> untrackedNames(Set<String> indexDirs) {
+		Set<String> gitlinks = fileModes.getOrDefault(FileMode.GITLINK,
+				Collections.emptySet());
+		Map<String, Set<String>> names = new HashMap<>();
+		for (String path : untracked) {
+			String child = path;
+			String dir = parent(path);
+			boolean directory = gitlinks.contains(path);
+			while (!indexDirs.contains(dir)) {
+				child = dir;
+				dir = parent(dir);
+				directory = true;
+			}
+			String name = child.substring(dir.isEmpty() ? 0 : dir.length() + 1);
+			if (directory)
+				name += '/';
+			names.computeIfAbsent(dir, d -> new HashSet<>()).add(name);
+		}
+		return names;
+	}
+
+	private void addCachedUntracked(UntrackedCache cache,
+			Set<String> indexDirs, String dir) {
+		UntrackedCache.Directory d = cache.getDirectory(dir);
+		if (d == null)
+			return;
+		for (String name : d.getUntracked())
+			untracked.add(dir + '/' + name);
+		for (UntrackedCache.Directory sub : d.getDirectories()) {
+			String path = dir + '/' + sub.getName();
+			if (indexDirs.contains(path))
+				addCachedUntracked(cache, indexDirs, path);
+		}
+	}
+
+	private void writeDirCache() throws IOException {
+		// Like git, only update the index when nobody else is using it.
+		if (!dirCache.lock())
+			return;
+		try {
+			if (!dirCache.isOutdated()) {
+				dirCache.write();
+				dirCache.commit();
+			}
+		} finally {
+			dirCache.unlock();
+		}
+	}
+
+	private static boolean hasUntrackedDirectory(UntrackedCache.Directory d) {
+		for (String name : d.getUntracked())
+			if (name.endsWith("/")) //$NON-NLS-1$
+				return true;
+		return false;
+	}
+
+	private static String parent(String path) {
+		int slash = path.lastIndexOf('/');
+		return slash < 0 ? "" : path.substring(0, slash); //$NON-NLS-1$
+	}
+
+	private static void addWithParents(Set<String> dirs, String path) {
+		while (dirs.add(path) && !path.isEmpty())
+			path = parent(path);
+	}
+
+	// Whether path or one of its parents is in dirs.
+	private static boolean within(String path, Set<String> dirs) {
+		if (dirs.isEmpty())
 			return false;
-		else
-			return true;
+		for (String p = path;; p = parent(p)) {
+			if (dirs.contains(p))
+				return true;
+			if (p.isEmpty())
+				return false;
+		}
+	}
+
+	private void diffInParallel(ProgressMonitor monitor, int total, int n)
+			throws IOException {
+		// Iterators are created here, as creating a DirCacheIterator
+		// validates the cache tree shared by all of them.
+		List<IndexDiff> parts = new ArrayList<>(n);
+		List<Callable<IndexDiffFilter>> tasks = new ArrayList<>(n);
+		ThreadSafeProgressMonitor pm = monitor != null
+				? new ThreadSafeProgressMonitor(monitor)
+				: null;
+		for (int i = 0; i < n; i++) {
+			IndexDiff part = new IndexDiff(this,
+					wTreeIt.getWorkingTreeIterator(repository));
+			DirCacheIterator dirCacheIt = new DirCacheIterator(dirCache);
+			TreeFilter pathFilter = filter != null ? filter.clone() : null;
+			TreeFilter partition = new TopLevelPartitionFilter(i, n);
+			parts.add(part);
+			tasks.add(() -> {
+				try {
+					return part.walk(dirCacheIt,
+							part.initialWorkingTreeIterator, pathFilter, pm,
+							total, partition);
+				} finally {
+					if (pm != null)
+						pm.endWorker();
+				}
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(n);
+		List<Future<IndexDiffFilter>> futures = new ArrayList<>(n);
+		ignored = new HashSet<>();
+		untrackedFolders = new HashSet<>();
+		try {
+			if (pm != null)
+				pm.startWorkers(n);
+			for (Callable<IndexDiffFilter> task : tasks)
+				futures.add(pool.submit(task));
+			if (pm != null)
+				pm.waitForCompletion();
+			for (int i = 0; i < n; i++) {
+				IndexDiffFilter indexDiffFilter = futures.get(i).get();
+				ignored.addAll(indexDiffFilter.getIgnoredPaths());
+				untrackedFolders.addAll(indexDiffFilter.getUntrackedFolders());
+				merge(parts.get(i));
+			}
+		} catch (InterruptedException e) {
+			for (Future<IndexDiffFilter> f : futures)
+				f.cancel(true);
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable err = e.getCause();
+			if (err instanceof Error)
+				throw (Error) err;
+			if (err instanceof RuntimeException)
+				throw (RuntimeException) err;
+			if (err instanceof IOException)
+				throw (IOException) err;
+			throw new IOException(err.getMessage(), err);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void merge(IndexDiff part) {
+		added.addAll(part.added);
+		changed.addAll(part.changed);
+		removed.addAll(part.removed);
+		missing.addAll(part.missing);
+		missingSubmodules.addAll(part.missingSubmodules);
+		modified.addAll(part.modified);
+		untracked.addAll(part.untracked);
+		conflicts.putAll(part.conflicts);
+		for (Map.Entry<FileMode, Set<String>> e : part.fileModes.entrySet())
+			fileModes.computeIfAbsent(e.getKey(), m -> new HashSet<>())
+					.addAll(e.getValue());
 	}
 
 	private boolean hasFiles(File directory) {
@@ -768,8 +1248,8 @@ public Set<String> getAssumeUnchanged() {
 	 * @return list of folders containing only untracked files/folders
 	 */
 	public Set<String> getUntrackedFolders() {
-		return ((indexDiffFilter == null) ? Collections.<String> emptySet()
-				: new HashSet<>(indexDiffFilter.getUntrackedFolders()));
+		return ((untrackedFolders == null) ? Collections.<String> emptySet()
+				: new HashSet<>(untrackedFolders));
 	}
 
 	/**
@@ -117,6 +117,12 @@ public ObjectId idFor(int type, byte[] data, int off, int len) {
 			return delegate().idFor(type, data, off, len);
 		}
 
+		@Override
+		public void idFor(int type, byte[] data, int off, int len,
+				MutableObjectId id) {
+			delegate().idFor(type, data, off, len, id);
+		}
+
 		@Override
 		public ObjectId idFor(int objectType, long length, InputStream in)
 				throws IOException {
@@ -177,11 +183,15 @@ public void close() {
 		}
 	}
 
-	private final SHA1 hasher = SHA1.newInstance();
+	/** Digest reused by {@link #digest()}, created on first demand. */
+	private SHA1 hasher;
 
 	/** Temporary working buffer for streaming data through. */
 	private byte[] tempBuffer;
 
+	/** Digits of an object length, reused so hashing does not allocate. */
+	private final byte[] lengthBuffer = new byte[20];
+
 	/**
 	 * Create a new inserter for a database.
 	 */
@@ -226,7 +236,10 @@ protected byte[] buffer() {
 	 * @since 4.7
 	 */
 	protected SHA1 digest() {
-		return hasher.reset();
+		SHA1 md = hasher;
+		if (md == null)
+			hasher = md = SHA1.newInstance();
+		return md.reset();
 	}
 
 	/**
@@ -256,13 +269,50 @@ public ObjectId idFor(int type, byte[] data) {
 	 * @return the name of the object.
 	 */
 	public ObjectId idFor(int type, byte[] data, int off, int len) {
-		SHA1 md = SHA1.newInstance();
+		return hash(type, data, off, len).toObjectId();
+	}
+
+	/**
+	 * Compute the name of an object, without inserting it.
+	 * <p>
+	 * Unlike the other {@code idFor} methods this does not allocate, so it is
+	 * suitable for hashing a large batch of small objects.
+	 *
+	 * @param type
+	 *            type code of the object to store.
+	 * @param data
+	 *            complete content of the object.
+	 * @param off
+	 *            first position within {@code data}.
+	 * @param len
+	 *            number of bytes to copy from {@code data}.
+	 * @param id
+	 *            receives the name of the object.
+	 * @since 5.6
+	 */
+	public void idFor(int type, byte[] data, int off, int len,
+			MutableObjectId id) {
+		hash(type, data, off, len).digest(id);
+	}
+
+	private SHA1 hash(int type, byte[] data, int off, int len) {
+		SHA1 md = digest();
+		hashHeader(md, type, len);
+		md.update(data, off, len);
+		return md;
+	}
+
+	private void hashHeader(SHA1 md, int type, long length) {
 		md.update(Constants.encodedTypeString(type));
 		md.update((byte) ' ');
-		md.update(Constants.encodeASCII(len));
+		byte[] b = lengthBuffer;
+		int p = b.length;
+		do {
+			b[--p] = (byte) ('0' + length % 10);
+			length /= 10;
+		} while (length > 0);
+		md.update(b, p, b.length - p);
 		md.update((byte) 0);
-		md.update(data, off, len);
-		return md.toObjectId();
 	}
 
 	/**
@@ -281,11 +331,8 @@ public ObjectId idFor(int type, byte[] data, int off, int len) {
 	 */
 	public ObjectId idFor(int objectType, long length, InputStream in)
 			throws IOException {
-		SHA1 md = SHA1.newInstance();
-		md.update(Constants.encodedTypeString(objectType));
-		md.update((byte) ' ');
-		md.update(Constants.encodeASCII(length));
-		md.update((byte) 0);
+		SHA1 md = digest();
+		hashHeader(md, objectType, length);
 		byte[] buf = buffer();
 		while (length > 0) {
 			int n = in.read(buf, 0, (int) Math.min(length, buf.length));
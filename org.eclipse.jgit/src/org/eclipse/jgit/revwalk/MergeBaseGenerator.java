@@ -43,6 +43,9 @@
 
 package org.eclipse.jgit.revwalk;
 
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GENERATION_NUMBER_INFINITY;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GENERATION_NUMBER_ZERO;
+
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.LinkedList;
@@ -66,6 +69,13 @@
  * Several internal flags are reused here for a different purpose, but this
  * should not have any impact as this generator should be run alone, and without
  * any other generators wrapped around it.
+ * <p>
+ * If the walk is only interested in whether one commit is reachable from
+ * another, and the repository provides generation numbers through its
+ * commit-graph, parents whose generation number is lower than the generation
+ * number of the searched commit are not queued: they cannot reach it, so the
+ * walk stays proportional to the distance between both commits instead of
+ * draining the complete history.
  */
 class MergeBaseGenerator extends Generator {
 	private static final int PARSED = RevWalk.PARSED;
@@ -76,6 +86,8 @@ class MergeBaseGenerator extends Generator {
 	private final RevWalk walker;
 	private final DateRevQueue pending;
 
+	private final int minGeneration;
+
 	private int branchMask;
 	private int recarryTest;
 	private int recarryMask;
@@ -88,6 +100,7 @@ class MergeBaseGenerator extends Generator {
 		super(w.isFirstParent());
 		walker = w;
 		pending = new DateRevQueue(firstParent);
+		minGeneration = w.minMergeBaseGeneration;
 	}
 
 	void init(AbstractRevQueue p) throws IOException {
@@ -150,6 +163,8 @@ private RevCommit _next() throws MissingObjectException,
 			for (RevCommit p : c.parents) {
 				if ((p.flags & IN_PENDING) != 0)
 					continue;
+				if (isBelowMinGeneration(p))
+					continue;
 				if ((p.flags & PARSED) == 0)
 					p.parseHeaders(walker);
 				p.flags |= IN_PENDING;
@@ -186,6 +201,15 @@ private RevCommit _next() throws MissingObjectException,
 		}
 	}
 
+	private boolean isBelowMinGeneration(RevCommit c) {
+		if (minGeneration == GENERATION_NUMBER_ZERO) {
+			return false;
+		}
+		int generation = walker.generation(c);
+		return generation != GENERATION_NUMBER_INFINITY
+				&& generation < minGeneration;
+	}
+
 	@Override
 	RevCommit next() throws MissingObjectException,
 			IncorrectObjectTypeException, IOException {
@@ -58,9 +58,11 @@
 import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.MutableObjectId;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -156,7 +158,66 @@ protected RevCommit(AnyObjectId id) {
 	@Override
 	void parseHeaders(RevWalk walk) throws MissingObjectException,
 			IncorrectObjectTypeException, IOException {
-		parseCanonical(walk, walk.getCachedBytes(this));
+		if (walk.isRetainBody() || !parseInGraph(walk)) {
+			parseCanonical(walk, walk.getCachedBytes(this));
+		}
+	}
+
+	/**
+	 * Parse the headers of this commit from the commit-graph.
+	 * <p>
+	 * Only the tree, the parents and the commit time are available from the
+	 * commit-graph, so this is only used when the walk does not retain the
+	 * commit body.
+	 *
+	 * @param walk
+	 *            the walk this commit belongs to.
+	 * @return true if the commit was found in the commit-graph and its headers
+	 *         have been parsed; false if the commit object must be parsed.
+	 * @throws IOException
+	 *             the shallow commits cannot be read.
+	 */
+	boolean parseInGraph(RevWalk walk) throws IOException {
+		CommitGraph graph = walk.commitGraph();
+		int graphPos = graph.findGraphPosition(this);
+		if (graphPos < 0) {
+			return false;
+		}
+		CommitGraph.CommitData data = graph.getCommitData(graphPos);
+		if (data == null) {
+			return false;
+		}
+
+		RevCommit[] pList = null;
+		if (parents == null) {
+			int[] pGraphList = data.getParents();
+			if (pGraphList == null) {
+				return false;
+			}
+			pList = new RevCommit[pGraphList.length];
+			for (int i = 0; i < pList.length; i++) {
+				// A corrupt commit-graph may point outside of itself;
+				// parse the commit object instead.
+				ObjectId p = graph.getObjectId(pGraphList[i]);
+				if (p == null) {
+					return false;
+				}
+				pList[i] = walk.lookupCommit(p);
+			}
+		}
+
+		if (!walk.shallowCommitsInitialized) {
+			walk.initializeShallowCommits(this);
+		}
+
+		tree = walk.lookupTree(data.getTree());
+		if (parents == null && pList != null) {
+			// Still unset unless this commit is shallow.
+			parents = pList.length == 0 ? NO_PARENTS : pList;
+		}
+		commitTime = (int) data.getCommitTime();
+		flags |= PARSED;
+		return true;
 	}
 
 	@Override
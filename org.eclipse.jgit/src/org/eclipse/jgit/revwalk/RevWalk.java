@@ -45,6 +45,9 @@
 
 package org.eclipse.jgit.revwalk;
 
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GENERATION_NUMBER_INFINITY;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GENERATION_NUMBER_ZERO;
+
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -61,6 +64,7 @@
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.RevWalkException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.AsyncObjectLoaderQueue;
 import org.eclipse.jgit.lib.Constants;
@@ -205,6 +209,15 @@ public class RevWalk implements Iterable<RevCommit>, AutoCloseable {
 
 	boolean shallowCommitsInitialized;
 
+	private CommitGraph commitGraph;
+
+	/**
+	 * Generation number below which {@link MergeBaseGenerator} need not walk;
+	 * {@code GENERATION_NUMBER_ZERO} disables pruning. Only set while
+	 * {@link #isMergedInto(RevCommit, RevCommit)} is running.
+	 */
+	int minMergeBaseGeneration = GENERATION_NUMBER_ZERO;
+
 	/**
 	 * Create a new revision walker for a given repository.
 	 *
@@ -435,6 +448,13 @@ public boolean isMergedInto(RevCommit base, RevCommit tip)
 			treeFilter = TreeFilter.ALL;
 			markStart(tip);
 			markStart(base);
+
+			// Commits with a lower generation than base cannot reach it,
+			// there is no need to look for the merge base beyond them.
+			int baseGeneration = generation(base);
+			if (baseGeneration != GENERATION_NUMBER_INFINITY) {
+				minMergeBaseGeneration = baseGeneration;
+			}
 			RevCommit mergeBase;
 			while ((mergeBase = next()) != null) {
 				if (References.isSameObject(mergeBase, base)) {
@@ -445,6 +465,7 @@ public boolean isMergedInto(RevCommit base, RevCommit tip)
 		} finally {
 			filter = oldRF;
 			treeFilter = oldTF;
+			minMergeBaseGeneration = GENERATION_NUMBER_ZERO;
 		}
 	}
 
@@ -995,6 +1016,58 @@ byte[] getCachedBytes(RevObject obj, ObjectLoader ldr)
 		}
 	}
 
+	/**
+	 * Get the commit-graph of the repository, loading it on first use.
+	 * <p>
+	 * Commits found in the commit-graph can be parsed without reading their
+	 * objects, see {@code RevCommit.parseInGraph}. A failure to load
+	 * the commit-graph is not fatal; commits are then parsed from the
+	 * repository as usual.
+	 *
+	 * @return the commit-graph; {@link CommitGraph#EMPTY} if the repository
+	 *         has no usable commit-graph.
+	 */
+	CommitGraph commitGraph() {
+		if (commitGraph == null) {
+			CommitGraph graph = null;
+			if (reader != null) {
+				try {
+					graph = reader.getCommitGraph().orElse(null);
+				} catch (IOException e) {
+					// Fall back to parsing commits from their objects.
+				}
+			}
+			commitGraph = graph != null ? graph : CommitGraph.EMPTY;
+		}
+		return commitGraph;
+	}
+
+	/**
+	 * Get the generation number of a commit from the commit-graph.
+	 * <p>
+	 * The generation number of a commit is strictly larger than the
+	 * generation numbers of all of its parents, so a commit can never reach
+	 * another commit with a larger or equal generation number.
+	 *
+	 * @param id
+	 *            the commit to look up.
+	 * @return the generation number; {@code GENERATION_NUMBER_INFINITY} if
+	 *         the commit is not in the commit-graph or the commit-graph does
+	 *         not record generation numbers.
+	 */
+	int generation(AnyObjectId id) {
+		CommitGraph graph = commitGraph();
+		int pos = graph.findGraphPosition(id);
+		if (pos < 0) {
+			return GENERATION_NUMBER_INFINITY;
+		}
+		int generation = graph.getCommitData(pos).getGeneration();
+		if (generation == GENERATION_NUMBER_ZERO) {
+			return GENERATION_NUMBER_INFINITY;
+		}
+		return generation;
+	}
+
 	/**
 	 * Asynchronous object parsing.
 	 *
@@ -1387,6 +1460,7 @@ public void dispose() {
 		queue = new DateRevQueue(firstParent);
 		pending = new StartGenerator(this);
 		shallowCommitsInitialized = false;
+		commitGraph = null;
 	}
 
 	/**
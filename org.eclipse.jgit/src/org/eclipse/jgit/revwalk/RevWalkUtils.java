@@ -43,6 +43,8 @@
 
 package org.eclipse.jgit.revwalk;
 
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GENERATION_NUMBER_INFINITY;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -196,6 +198,7 @@ public static List<Ref> findBranchesReachableFrom(RevCommit commit,
 		monitor.beginTask(JGitText.get().searchForReachableBranches,
 				refs.size());
 		final int SKEW = 24*3600; // one day clock skew
+		int generation = revWalk.generation(commit);
 
 		for (Ref ref : refs) {
 			if (monitor.isCancelled())
@@ -212,6 +215,15 @@ public static List<Ref> findBranchesReachableFrom(RevCommit commit,
 			if (headCommit.getCommitTime() + SKEW < commit.getCommitTime())
 				continue;
 
+			// A commit cannot be reachable from a commit with a lower
+			// generation number.
+			if (generation != GENERATION_NUMBER_INFINITY) {
+				int headGeneration = revWalk.generation(headCommit);
+				if (headGeneration != GENERATION_NUMBER_INFINITY
+						&& headGeneration < generation)
+					continue;
+			}
+
 			if (revWalk.isMergedInto(commit, headCommit))
 				result.add(ref);
 		}
@@ -45,6 +45,8 @@
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import org.eclipse.jgit.diff.DiffConfig;
 import org.eclipse.jgit.diff.DiffEntry;
@@ -54,9 +56,12 @@
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.internal.storage.commitgraph.ChangedPathFilter;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 /**
@@ -66,6 +71,10 @@
  * Each commit is differenced concurrently against all of its parents to look
  * for tree entries that are interesting to the
  * {@link org.eclipse.jgit.treewalk.filter.TreeFilter}.
+ * <p>
+ * If the repository's commit-graph has changed path Bloom filters, commits
+ * with a single parent which provably did not touch any of the filtered paths
+ * are skipped without differencing their trees.
  *
  * @since 3.5
  */
@@ -77,6 +86,12 @@ public class TreeRevFilter extends RevFilter {
 	private final int rewriteFlag;
 	private final TreeWalk pathFilter;
 
+	/** Filter {@link #changedPaths} was computed for. */
+	private TreeFilter changedPathsOf;
+
+	/** Paths to check in changed path filters; null if not applicable. */
+	private Set<byte[]> changedPaths;
+
 	/**
 	 * Create a {@link org.eclipse.jgit.revwalk.filter.RevFilter} from a
 	 * {@link org.eclipse.jgit.treewalk.filter.TreeFilter}.
@@ -148,6 +163,14 @@ public boolean include(RevWalk walker, RevCommit c)
 			trees[i] = p.getTree();
 		}
 		trees[nParents] = c.getTree();
+
+		if (nParents == 1 && !maybeChanged(walker, c)) {
+			// The changed path filter proves no interesting path differs
+			// from the parent. We pass the buck to our parent.
+			//
+			c.flags |= rewriteFlag;
+			return false;
+		}
 		tw.reset(trees);
 
 		if (nParents == 1) {
@@ -274,6 +297,45 @@ public boolean requiresCommitBody() {
 		return false;
 	}
 
+	private boolean maybeChanged(RevWalk walker, RevCommit c) {
+		Set<byte[]> paths = getChangedPaths();
+		if (paths == null) {
+			return true;
+		}
+		CommitGraph graph = walker.commitGraph();
+		int pos = graph.findGraphPosition(c);
+		if (pos < 0) {
+			return true;
+		}
+		ChangedPathFilter cpf = graph.getChangedPathFilter(pos);
+		if (cpf == null || cpf.maybeContainsAny(paths)) {
+			return true;
+		}
+		// The filter was computed against the first parent in the graph,
+		// only trust it if we compare against the same commit.
+		int[] parents = graph.getCommitData(pos).getParents();
+		return parents == null || parents.length != 1 || !c.parents[0]
+				.equals(graph.getObjectId(parents[0]));
+	}
+
+	private Set<byte[]> getChangedPaths() {
+		TreeFilter f = pathFilter.getFilter();
+		if (f != changedPathsOf) {
+			changedPathsOf = f;
+			changedPaths = null;
+			// Only filters matching differences exclusively can rely on
+			// changed path filters; AndTreeFilter reports its paths only
+			// if it includes ANY_DIFF.
+			if (f instanceof FollowFilter || f instanceof AndTreeFilter) {
+				Optional<Set<byte[]>> paths = f.getPathsBestEffort();
+				if (paths.isPresent()) {
+					changedPaths = paths.get();
+				}
+			}
+		}
+		return changedPaths;
+	}
+
 	private void updateFollowFilter(ObjectId[] trees, DiffConfig cfg)
 			throws MissingObjectException, IncorrectObjectTypeException,
 			CorruptObjectException, IOException {
@@ -65,6 +65,10 @@ public class WindowCacheConfig {
 
 	private boolean packedGitMMAP;
 
+	private boolean packedGitUseStrongRefs;
+
+	private boolean packedGitMMAPWholePack;
+
 	private int deltaBaseCacheLimit;
 
 	private int streamFileThreshold;
@@ -77,6 +81,8 @@ public WindowCacheConfig() {
 		packedGitLimit = 10 * MB;
 		packedGitWindowSize = 8 * KB;
 		packedGitMMAP = false;
+		packedGitUseStrongRefs = false;
+		packedGitMMAPWholePack = false;
 		deltaBaseCacheLimit = 10 * MB;
 		streamFileThreshold = PackConfig.DEFAULT_BIG_FILE_THRESHOLD;
 	}
@@ -169,6 +175,73 @@ public void setPackedGitMMAP(boolean usemmap) {
 		packedGitMMAP = usemmap;
 	}
 
+	/**
+	 * Whether whole pack files are memory mapped.
+	 *
+	 * @return {@code true} if each pack file is mapped into memory once and
+	 *         read directly from the mapping, bypassing the window cache.
+	 *         <b>Default false.</b>
+	 * @since 5.6
+	 */
+	public boolean isPackedGitMMAPWholePack() {
+		return packedGitMMAPWholePack;
+	}
+
+	/**
+	 * Set whether whole pack files are memory mapped.
+	 * <p>
+	 * In this mode each pack file is mapped once, in regions of up to 1 GiB,
+	 * and all readers share the mapping. Reads do not copy the data into the
+	 * Java heap and do not count against {@link #getPackedGitLimit()}, and no
+	 * file descriptor is kept open for the mapped pack. The mapping is
+	 * released as soon as the pack is closed and no reader uses it anymore,
+	 * instead of waiting for the garbage collector. Packs which cannot be
+	 * mapped are read through the window cache.
+	 * <p>
+	 * This mode requires a 64 bit JVM with enough virtual address space to
+	 * map all packs of the repositories being accessed.
+	 *
+	 * @param mapWholePack
+	 *            {@code true} to memory map whole pack files.
+	 * @since 5.6
+	 */
+	public void setPackedGitMMAPWholePack(boolean mapWholePack) {
+		packedGitMMAPWholePack = mapWholePack;
+	}
+
+	/**
+	 * Whether the window cache should use strong references or
+	 * SoftReferences.
+	 *
+	 * @return {@code true} if the window cache holds its windows under strong
+	 *         references and manages its size itself, instead of letting the
+	 *         Java garbage collector clear them. <b>Default false.</b>
+	 * @since 5.6
+	 */
+	public boolean isPackedGitUseStrongRefs() {
+		return packedGitUseStrongRefs;
+	}
+
+	/**
+	 * Set whether the window cache should use strong references or
+	 * SoftReferences.
+	 * <p>
+	 * With SoftReferences the Java garbage collector may clear the entire
+	 * cache when heap memory gets low. With strong references the cache keeps
+	 * its windows until it evicts them to stay within
+	 * {@link #getPackedGitLimit()}, and only admits a newly loaded window into
+	 * a full cache if that window is used more frequently than the window it
+	 * would replace. The limit must then leave enough room in the heap for
+	 * the application.
+	 *
+	 * @param useStrongRefs
+	 *            {@code true} to hold windows under strong references.
+	 * @since 5.6
+	 */
+	public void setPackedGitUseStrongRefs(boolean useStrongRefs) {
+		packedGitUseStrongRefs = useStrongRefs;
+	}
+
 	/**
 	 * Get maximum number of bytes to cache in delta base cache for inflated,
 	 * recently accessed objects, without delta chains.
@@ -235,6 +308,10 @@ public WindowCacheConfig fromConfig(Config rc) {
 				"core", null, "packedgitwindowsize", getPackedGitWindowSize())); //$NON-NLS-1$ //$NON-NLS-2$
 		setPackedGitMMAP(rc.getBoolean(
 				"core", null, "packedgitmmap", isPackedGitMMAP())); //$NON-NLS-1$ //$NON-NLS-2$
+		setPackedGitMMAPWholePack(rc.getBoolean(
+				"core", null, "packedgitmmapwholepack", isPackedGitMMAPWholePack())); //$NON-NLS-1$ //$NON-NLS-2$
+		setPackedGitUseStrongRefs(rc.getBoolean(
+				"core", null, "packedgitusestrongrefs", isPackedGitUseStrongRefs())); //$NON-NLS-1$ //$NON-NLS-2$
 		setDeltaBaseCacheLimit(rc.getInt(
 				"core", null, "deltabasecachelimit", getDeltaBaseCacheLimit())); //$NON-NLS-1$ //$NON-NLS-2$
 
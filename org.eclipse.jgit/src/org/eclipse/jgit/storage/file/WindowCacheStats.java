@@ -43,6 +43,8 @@
 
 package org.eclipse.jgit.storage.file;
 
+import java.util.Map;
+
 import org.eclipse.jgit.internal.storage.file.WindowCache;
 
 /**
@@ -65,4 +67,91 @@ public static int getOpenFiles() {
 	public static long getOpenBytes() {
 		return WindowCache.getInstance().getOpenBytes();
 	}
+
+	/**
+	 * @return the number of requests served by a window already in the cache.
+	 * @since 5.6
+	 */
+	public static long getHitCount() {
+		return WindowCache.getInstance().getHitCount();
+	}
+
+	/**
+	 * @return the number of requests which had to load a window.
+	 * @since 5.6
+	 */
+	public static long getMissCount() {
+		return WindowCache.getInstance().getMissCount();
+	}
+
+	/**
+	 * @return the ratio of requests served by a cached window, or 1.0 if no
+	 *         request was made.
+	 * @since 5.6
+	 */
+	public static double getHitRatio() {
+		WindowCache c = WindowCache.getInstance();
+		long hits = c.getHitCount();
+		long total = hits + c.getMissCount();
+		return total == 0 ? 1.0 : (double) hits / total;
+	}
+
+	/**
+	 * @return the number of windows loaded successfully.
+	 * @since 5.6
+	 */
+	public static long getLoadSuccessCount() {
+		return WindowCache.getInstance().getLoadSuccessCount();
+	}
+
+	/**
+	 * @return the number of window loads which failed with an exception.
+	 * @since 5.6
+	 */
+	public static long getLoadFailureCount() {
+		return WindowCache.getInstance().getLoadFailureCount();
+	}
+
+	/**
+	 * @return total time in nanoseconds spent loading windows.
+	 * @since 5.6
+	 */
+	public static long getTotalLoadTime() {
+		return WindowCache.getInstance().getTotalLoadTime();
+	}
+
+	/**
+	 * @return the number of windows evicted to keep the cache within its
+	 *         limits.
+	 * @since 5.6
+	 */
+	public static long getEvictionCount() {
+		return WindowCache.getInstance().getEvictionCount();
+	}
+
+	/**
+	 * @return the number of loaded windows not admitted into the cache. Only
+	 *         a cache using strong references rejects windows.
+	 * @since 5.6
+	 */
+	public static long getAdmissionRejectCount() {
+		return WindowCache.getInstance().getAdmissionRejectCount();
+	}
+
+	/**
+	 * @return the number of cached bytes keyed by the path of the pack file.
+	 * @since 5.6
+	 */
+	public static Map<String, Long> getOpenByteCountPerPack() {
+		return WindowCache.getInstance().getOpenByteCountPerPack();
+	}
+
+	/**
+	 * Reset the counters of the current window cache to zero.
+	 *
+	 * @since 5.6
+	 */
+	public static void resetCounters() {
+		WindowCache.getInstance().resetCounters();
+	}
 }
@@ -196,6 +196,44 @@ public static class Accumulator {
 		 */
 		public long timeNegotiating;
 
+		/**
+		 * The count of distinct client haves the server also had.
+		 *
+		 * @since 5.6
+		 */
+		public long commonHaves;
+
+		/**
+		 * Whether negotiation used bitmaps to decide if the common objects
+		 * cover the wants.
+		 *
+		 * @since 5.6
+		 */
+		public boolean bitmapNegotiation;
+
+		/**
+		 * Time in ms writing the response waited for the client to drain the
+		 * send buffer.
+		 *
+		 * @since 5.6
+		 */
+		public long timeSendStalled;
+
+		/**
+		 * The count of times writing the response waited for the client to
+		 * drain the send buffer.
+		 *
+		 * @since 5.6
+		 */
+		public long sendStalls;
+
+		/**
+		 * The most bytes held in the send buffer at once.
+		 *
+		 * @since 5.6
+		 */
+		public long maxSendBuffered;
+
 		/** The set of objects to be included in the pack. */
 		public Set<ObjectId> interestingObjects;
 
@@ -360,6 +398,61 @@ public long getTimeNegotiating() {
 		return statistics.timeNegotiating;
 	}
 
+	/**
+	 * Get the count of distinct client haves the server also had.
+	 *
+	 * @return count of distinct client haves the server also had.
+	 * @since 5.6
+	 */
+	public long getCommonHaves() {
+		return statistics.commonHaves;
+	}
+
+	/**
+	 * Whether negotiation used bitmaps to decide if the common objects cover
+	 * the wants.
+	 *
+	 * @return whether negotiation used bitmaps.
+	 * @since 5.6
+	 */
+	public boolean isBitmapNegotiation() {
+		return statistics.bitmapNegotiation;
+	}
+
+	/**
+	 * Get time in milliseconds writing the response waited for the client to
+	 * drain the send buffer.
+	 *
+	 * @return time in milliseconds writing the response was stalled by a slow
+	 *         client, 0 if the response was not sent through a send buffer.
+	 * @since 5.6
+	 */
+	public long getTimeSendStalled() {
+		return statistics.timeSendStalled;
+	}
+
+	/**
+	 * Get the count of times writing the response waited for the client to
+	 * drain the send buffer.
+	 *
+	 * @return count of times writing the response was stalled by a slow
+	 *         client.
+	 * @since 5.6
+	 */
+	public long getSendStalls() {
+		return statistics.sendStalls;
+	}
+
+	/**
+	 * Get the most bytes held in the send buffer at once.
+	 *
+	 * @return the most bytes held in the send buffer at once.
+	 * @since 5.6
+	 */
+	public long getMaxSendBuffered() {
+		return statistics.maxSendBuffered;
+	}
+
 	/**
 	 * Get unmodifiable collection of objects to be included in the pack.
 	 *
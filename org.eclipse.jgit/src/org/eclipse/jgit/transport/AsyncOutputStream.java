@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+import org.eclipse.jgit.storage.pack.PackStatistics;
+
+/**
+ * Decouples writing a response from sending it to a slow client.
+ * <p>
+ * Writes are copied into a bounded ring buffer and returned immediately; a
+ * task run on an {@link Executor} drains the buffer into the real stream.
+ * Writers only block when the buffer is full, and the time they spend doing
+ * so is recorded as a send stall in the {@link PackStatistics}.
+ * <p>
+ * {@link #flush()} does not wait, it asks the drain task to flush once it has
+ * sent everything buffered so far. {@link #close()} waits until all data has
+ * been sent but does not close the underlying stream. A failure of the
+ * underlying stream is rethrown to the writer by the next call.
+ */
+final class AsyncOutputStream extends OutputStream {
+	private static final int CHUNK = 64 * 1024;
+
+	private final OutputStream out;
+
+	private final PackStatistics.Accumulator stats;
+
+	private final byte[] ring;
+
+	// Position of the next byte to send, and count of buffered bytes.
+	private int head;
+
+	private int size;
+
+	private boolean flushRequested;
+
+	private boolean closed;
+
+	private boolean done;
+
+	private IOException failure;
+
+	/**
+	 * Start sending to a stream.
+	 *
+	 * @param out
+	 *            stream to send to.
+	 * @param bufferSize
+	 *            maximum bytes buffered before writers block.
+	 * @param executor
+	 *            executor to run the drain task on.
+	 * @param stats
+	 *            statistics to record send stalls in.
+	 * @throws java.util.concurrent.RejectedExecutionException
+	 *             the executor did not accept the drain task.
+	 */
+	AsyncOutputStream(OutputStream out, int bufferSize, Executor executor,
+			PackStatistics.Accumulator stats) {
+		this.out = out;
+		this.stats = stats;
+		this.ring = new byte[bufferSize];
+		executor.execute(this::drain);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len)
+			throws IOException {
+		while (len > 0) {
+			checkFailure();
+			if (size == ring.length) {
+				awaitSpace();
+				continue;
+			}
+			int tail = (head + size) % ring.length;
+			int n = Math.min(len,
+					Math.min(ring.length - size, ring.length - tail));
+			System.arraycopy(b, off, ring, tail, n);
+			size += n;
+			off += n;
+			len -= n;
+			if (size > stats.maxSendBuffered) {
+				stats.maxSendBuffered = size;
+			}
+			notifyAll();
+		}
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		checkFailure();
+		flushRequested = true;
+		notifyAll();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		notifyAll();
+		try {
+			while (!done) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		checkFailure();
+	}
+
+	private void awaitSpace() throws IOException {
+		long start = System.currentTimeMillis();
+		stats.sendStalls++;
+		try {
+			while (size == ring.length && failure == null) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} finally {
+			stats.timeSendStalled += System.currentTimeMillis() - start;
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void drain() {
+		byte[] chunk = new byte[Math.min(CHUNK, ring.length)];
+		try {
+			for (;;) {
+				int n;
+				boolean flush;
+				boolean finished;
+				synchronized (this) {
+					while (size == 0 && !flushRequested && !closed) {
+						wait();
+					}
+					n = Math.min(size,
+							Math.min(chunk.length, ring.length - head));
+					System.arraycopy(ring, head, chunk, 0, n);
+					head = (head + n) % ring.length;
+					size -= n;
+					flush = size == 0 && (flushRequested || closed);
+					if (flush) {
+						flushRequested = false;
+					}
+					finished = size == 0 && closed;
+					notifyAll();
+				}
+				if (n > 0) {
+					out.write(chunk, 0, n);
+				}
+				if (flush) {
+					out.flush();
+				}
+				if (finished) {
+					return;
+				}
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				failure = e;
+			}
+		} catch (InterruptedException e) {
+			synchronized (this) {
+				failure = new InterruptedIOException();
+			}
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				failure = new IOException(e);
+			}
+		} finally {
+			synchronized (this) {
+				done = true;
+				notifyAll();
+			}
+		}
+	}
+}
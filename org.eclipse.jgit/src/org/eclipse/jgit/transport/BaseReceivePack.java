@@ -872,6 +872,17 @@ public void setMaxPackSizeLimit(long limit) {
 		maxPackSizeLimit = limit;
 	}
 
+	/**
+	 * Get the maximum allowed pack size.
+	 *
+	 * @return the pack size limit, in bytes; -1 if packs of any size are
+	 *         accepted.
+	 * @since 5.6
+	 */
+	public long getMaxPackSizeLimit() {
+		return maxPackSizeLimit;
+	}
+
 	/**
 	 * Check whether the client expects a side-band stream.
 	 *
@@ -52,6 +52,10 @@
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.Collection;
 
@@ -60,6 +64,7 @@
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.internal.WorkQueue;
 import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
 import org.eclipse.jgit.transport.resolver.RepositoryResolver;
@@ -69,6 +74,12 @@
 
 /**
  * Basic daemon for the anonymous <code>git://</code> transport protocol.
+ * <p>
+ * By default every connection is served on a new thread. A daemon facing
+ * many concurrent clients should bound the number of connections served at
+ * once with {@link #setMaxConnections(int)}, and may serve them on a shared
+ * executor, for example one creating virtual threads, with
+ * {@link #setExecutor(Executor)}.
  */
 public class Daemon {
 	/** 9418: IANA assigned port number for Git. */
@@ -88,6 +99,18 @@ public class Daemon {
 
 	private PackConfig packConfig;
 
+	private volatile Executor executor;
+
+	private final ArrayDeque<Socket> queuedConnections = new ArrayDeque<>();
+
+	private int maxConnections;
+
+	private int maxQueuedConnections;
+
+	private int activeConnections;
+
+	private long rejectedConnections;
+
 	private volatile RepositoryResolver<DaemonClient> repositoryResolver;
 
 	volatile UploadPackFactory<DaemonClient> uploadPackFactory;
@@ -221,7 +244,9 @@ public int getTimeout() {
 	 * @param seconds
 	 *            number of seconds to wait (with no data transfer occurring)
 	 *            before aborting an IO read or write operation with the
-	 *            connected client.
+	 *            connected client. Connections waiting for a slot (see
+	 *            {@link #setMaxConnections(int)}) are closed if they were not
+	 *            served within this time.
 	 */
 	public void setTimeout(int seconds) {
 		timeout = seconds;
@@ -247,6 +272,132 @@ public void setPackConfig(PackConfig pc) {
 		this.packConfig = pc;
 	}
 
+	/**
+	 * Get the executor serving connections.
+	 *
+	 * @return the executor serving connections; null if every connection is
+	 *         served on a new thread.
+	 * @since 5.6
+	 */
+	@Nullable
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Set the executor serving connections.
+	 * <p>
+	 * Each connection is served by one task, which blocks on network I/O for
+	 * the duration of the connection. On Java 21 and later
+	 * {@code Executors.newVirtualThreadPerTaskExecutor()} serves large numbers
+	 * of connections without a platform thread each. Connections the executor
+	 * rejects are closed.
+	 *
+	 * @param executor
+	 *            the executor; null to serve every connection on a new thread.
+	 * @since 5.6
+	 */
+	public void setExecutor(@Nullable Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the maximum number of connections served at once.
+	 *
+	 * @return maximum number of connections served at once; 0 if unlimited.
+	 * @since 5.6
+	 */
+	public int getMaxConnections() {
+		synchronized (queuedConnections) {
+			return maxConnections;
+		}
+	}
+
+	/**
+	 * Set the maximum number of connections served at once.
+	 * <p>
+	 * Connections accepted while the limit is reached wait in a queue of up to
+	 * {@link #getMaxQueuedConnections()} connections, and are closed if the
+	 * queue is full. A queued connection is also closed if it waited longer
+	 * than {@link #getTimeout()}, or when the daemon stops.
+	 *
+	 * @param max
+	 *            maximum number of connections served at once; 0 for no
+	 *            limit.
+	 * @since 5.6
+	 */
+	public void setMaxConnections(int max) {
+		synchronized (queuedConnections) {
+			maxConnections = max;
+		}
+	}
+
+	/**
+	 * Get the maximum number of connections waiting to be served.
+	 *
+	 * @return maximum number of connections waiting to be served.
+	 * @since 5.6
+	 */
+	public int getMaxQueuedConnections() {
+		synchronized (queuedConnections) {
+			return maxQueuedConnections;
+		}
+	}
+
+	/**
+	 * Set the maximum number of connections waiting to be served.
+	 * <p>
+	 * Only used if {@link #setMaxConnections(int)} limits the number of
+	 * connections served at once.
+	 *
+	 * @param max
+	 *            maximum number of connections waiting to be served.
+	 * @since 5.6
+	 */
+	public void setMaxQueuedConnections(int max) {
+		synchronized (queuedConnections) {
+			maxQueuedConnections = max;
+		}
+	}
+
+	/**
+	 * Get the number of connections being served.
+	 *
+	 * @return number of connections being served.
+	 * @since 5.6
+	 */
+	public int getActiveConnections() {
+		synchronized (queuedConnections) {
+			return activeConnections;
+		}
+	}
+
+	/**
+	 * Get the number of connections waiting to be served.
+	 *
+	 * @return number of connections waiting to be served.
+	 * @since 5.6
+	 */
+	public int getQueuedConnections() {
+		synchronized (queuedConnections) {
+			return queuedConnections.size();
+		}
+	}
+
+	/**
+	 * Get the number of connections closed without being served.
+	 *
+	 * @return number of connections closed without being served because the
+	 *         queue was full, they waited too long, the daemon stopped or the
+	 *         executor rejected them.
+	 * @since 5.6
+	 */
+	public long getRejectedConnections() {
+		synchronized (queuedConnections) {
+			return rejectedConnections;
+		}
+	}
+
 	/**
 	 * Set the resolver used to locate a repository by name.
 	 *
@@ -327,6 +478,7 @@ private void terminate() {
 				shutDown();
 			} finally {
 				clearThread();
+				closeQueuedConnections();
 			}
 		}
 
@@ -390,6 +542,7 @@ public synchronized void stop() {
 		if (acceptThread != null) {
 			acceptThread.shutDown();
 		}
+		closeQueuedConnections();
 	}
 
 	/**
@@ -411,37 +564,134 @@ public void stopAndWait() throws InterruptedException {
 	}
 
 	void startClient(Socket s) {
+		synchronized (queuedConnections) {
+			if (0 < maxConnections && maxConnections <= activeConnections) {
+				if (queuedConnections.size() < maxQueuedConnections) {
+					queuedConnections.add(s);
+					if (0 < timeout) {
+						WorkQueue.getExecutor().schedule(() -> expire(s),
+								timeout, TimeUnit.SECONDS);
+					}
+				} else {
+					rejectedConnections++;
+					close(s);
+				}
+				return;
+			}
+			activeConnections++;
+		}
+		if (!dispatch(s)) {
+			finishClient();
+		}
+	}
+
+	// Hands a connection holding a slot to a new thread. Returns false if
+	// no thread could serve it; the connection is closed then, but the
+	// caller still holds its slot.
+	private boolean dispatch(Socket s) {
 		final DaemonClient dc = new DaemonClient(this);
 
 		final SocketAddress peer = s.getRemoteSocketAddress();
 		if (peer instanceof InetSocketAddress)
 			dc.setRemoteAddress(((InetSocketAddress) peer).getAddress());
 
-		new Thread(processors, "Git-Daemon-Client " + peer.toString()) { //$NON-NLS-1$
-			@Override
-			public void run() {
-				try {
-					dc.execute(s);
-				} catch (ServiceNotEnabledException e) {
-					// Ignored. Client cannot use this repository.
-				} catch (ServiceNotAuthorizedException e) {
-					// Ignored. Client cannot use this repository.
-				} catch (IOException e) {
-					// Ignore unexpected IO exceptions from clients
-				} finally {
-					try {
-						s.getInputStream().close();
-					} catch (IOException e) {
-						// Ignore close exceptions
-					}
-					try {
-						s.getOutputStream().close();
-					} catch (IOException e) {
-						// Ignore close exceptions
-					}
+		Runnable task = () -> {
+			try {
+				serve(dc, s);
+			} finally {
+				finishClient();
+			}
+		};
+		Executor e = executor;
+		try {
+			if (e != null) {
+				e.execute(task);
+			} else {
+				new Thread(processors, task,
+						"Git-Daemon-Client " + peer.toString()).start(); //$NON-NLS-1$
+			}
+			return true;
+		} catch (RejectedExecutionException | OutOfMemoryError err) {
+			// Thread.start fails with OutOfMemoryError when no more
+			// native threads can be created.
+			synchronized (queuedConnections) {
+				rejectedConnections++;
+			}
+			close(s);
+			return false;
+		}
+	}
+
+	private void finishClient() {
+		for (;;) {
+			Socket next;
+			synchronized (queuedConnections) {
+				next = queuedConnections.poll();
+				if (next == null) {
+					activeConnections--;
+					return;
 				}
 			}
-		}.start();
+			// The finished connection's slot passes to the next one.
+			if (dispatch(next)) {
+				return;
+			}
+		}
+	}
+
+	// Closes a connection which is still queued after waiting for the
+	// timeout.
+	private void expire(Socket s) {
+		synchronized (queuedConnections) {
+			if (!queuedConnections.remove(s)) {
+				return;
+			}
+			rejectedConnections++;
+		}
+		close(s);
+	}
+
+	private void closeQueuedConnections() {
+		Socket[] queued;
+		synchronized (queuedConnections) {
+			queued = queuedConnections.toArray(new Socket[0]);
+			queuedConnections.clear();
+			rejectedConnections += queued.length;
+		}
+		for (Socket s : queued) {
+			close(s);
+		}
+	}
+
+	private static void serve(DaemonClient dc, Socket s) {
+		try {
+			dc.execute(s);
+		} catch (ServiceNotEnabledException e) {
+			// Ignored. Client cannot use this repository.
+		} catch (ServiceNotAuthorizedException e) {
+			// Ignored. Client cannot use this repository.
+		} catch (IOException e) {
+			// Ignore unexpected IO exceptions from clients
+		} finally {
+			try {
+				s.getInputStream().close();
+			} catch (IOException e) {
+				// Ignore close exceptions
+			}
+			try {
+				s.getOutputStream().close();
+			} catch (IOException e) {
+				// Ignore close exceptions
+			}
+		}
+	}
+
+	private static void close(Socket s) {
+		try {
+			s.close();
+		} catch (IOException e) {
+			// Ignore close exceptions
+		}
 	}
 
 	synchronized DaemonService matchService(String cmd) {
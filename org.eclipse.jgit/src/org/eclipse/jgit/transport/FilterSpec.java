@@ -44,10 +44,13 @@
 package org.eclipse.jgit.transport;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.PackProtocolException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.ObjectId;
 
 /**
  * Represents either a filter specified in a protocol "filter" line, or a
@@ -61,9 +64,13 @@ public final class FilterSpec {
 
 	private final long treeDepthLimit;
 
-	private FilterSpec(long blobLimit, long treeDepthLimit) {
+	private final ObjectId sparseOid;
+
+	private FilterSpec(long blobLimit, long treeDepthLimit,
+			ObjectId sparseOid) {
 		this.blobLimit = blobLimit;
 		this.treeDepthLimit = treeDepthLimit;
+		this.sparseOid = sparseOid;
 	}
 
 	/**
@@ -74,6 +81,10 @@ private FilterSpec(long blobLimit, long treeDepthLimit) {
 	 *   <li>"blob:none"
 	 *   <li>"blob:limit=N", with N &gt;= 0
 	 *   <li>"tree:DEPTH", with DEPTH &gt;= 0
+	 *   <li>"sparse:oid=OID", with OID naming a blob holding sparse-checkout
+	 *   patterns
+	 *   <li>"combine:F1+F2+...", where each Fn is one of the above, with
+	 *   reserved characters percent-encoded
 	 * </ul>
 	 *
 	 * @param filterLine
@@ -85,6 +96,9 @@ private FilterSpec(long blobLimit, long treeDepthLimit) {
 	 */
 	public static FilterSpec fromFilterLine(String filterLine)
 			throws PackProtocolException {
+		if (filterLine.startsWith("combine:")) { //$NON-NLS-1$
+			return fromCombineLine(filterLine);
+		}
 		if (filterLine.equals("blob:none")) { //$NON-NLS-1$
 			return FilterSpec.withBlobLimit(0);
 		} else if (filterLine.startsWith("blob:limit=")) { //$NON-NLS-1$
@@ -111,6 +125,14 @@ public static FilterSpec fromFilterLine(String filterLine)
 			if (treeDepthLimit >= 0) {
 				return FilterSpec.withTreeDepthLimit(treeDepthLimit);
 			}
+		} else if (filterLine.startsWith("sparse:oid=")) { //$NON-NLS-1$
+			try {
+				return FilterSpec.withSparseOid(ObjectId.fromString(
+						filterLine.substring("sparse:oid=".length()))); //$NON-NLS-1$
+			} catch (IllegalArgumentException e) {
+				// Fall through so that we throw a PackProtocolException
+				// below.
+			}
 		}
 
 		// Did not match any known filter format.
@@ -118,6 +140,73 @@ public static FilterSpec fromFilterLine(String filterLine)
 				MessageFormat.format(JGitText.get().invalidFilter, filterLine));
 	}
 
+	private static FilterSpec fromCombineLine(String filterLine)
+			throws PackProtocolException {
+		String[] parts = filterLine.substring("combine:".length()) //$NON-NLS-1$
+				.split("\\+", -1); //$NON-NLS-1$
+		long blobLimit = -1;
+		long treeDepthLimit = -1;
+		ObjectId sparseOid = null;
+		for (String part : parts) {
+			String sub = decodeSubFilter(part);
+			if (sub == null || sub.isEmpty() || sub.startsWith("combine:")) { //$NON-NLS-1$
+				throw new PackProtocolException(MessageFormat
+						.format(JGitText.get().invalidFilter, filterLine));
+			}
+			FilterSpec spec = fromFilterLine(sub);
+			// Objects must pass every sub-filter, so keep the tightest
+			// limit of each kind.
+			blobLimit = min(blobLimit, spec.blobLimit);
+			treeDepthLimit = min(treeDepthLimit, spec.treeDepthLimit);
+			if (spec.sparseOid != null) {
+				if (sparseOid != null && !sparseOid.equals(spec.sparseOid)) {
+					throw new PackProtocolException(MessageFormat
+							.format(JGitText.get().invalidFilter, filterLine));
+				}
+				sparseOid = spec.sparseOid;
+			}
+		}
+		return new FilterSpec(blobLimit, treeDepthLimit, sparseOid);
+	}
+
+	// Decodes the %XX escapes of a sub-filter in a "combine:" filter line,
+	// returning null if an escape is malformed.
+	@Nullable
+	private static String decodeSubFilter(String part) {
+		if (part.indexOf('%') < 0) {
+			return part;
+		}
+		StringBuilder r = new StringBuilder(part.length());
+		for (int i = 0; i < part.length(); i++) {
+			char c = part.charAt(i);
+			if (c != '%') {
+				r.append(c);
+				continue;
+			}
+			if (i + 2 >= part.length()) {
+				return null;
+			}
+			int hi = Character.digit(part.charAt(i + 1), 16);
+			int lo = Character.digit(part.charAt(i + 2), 16);
+			if (hi < 0 || lo < 0) {
+				return null;
+			}
+			r.append((char) ((hi << 4) | lo));
+			i += 2;
+		}
+		return r.toString();
+	}
+
+	private static long min(long a, long b) {
+		if (a < 0) {
+			return b;
+		}
+		if (b < 0) {
+			return a;
+		}
+		return Math.min(a, b);
+	}
+
 	/**
 	 * @param blobLimit
 	 *            the blob limit in a "blob:[limit]" or "blob:none" filter line
@@ -128,7 +217,7 @@ static FilterSpec withBlobLimit(long blobLimit) {
 			throw new IllegalArgumentException(
 					"blobLimit cannot be negative: " + blobLimit); //$NON-NLS-1$
 		}
-		return new FilterSpec(blobLimit, -1);
+		return new FilterSpec(blobLimit, -1, null);
 	}
 
 	/**
@@ -142,13 +231,23 @@ static FilterSpec withTreeDepthLimit(long treeDepthLimit) {
 			throw new IllegalArgumentException(
 					"treeDepthLimit cannot be negative: " + treeDepthLimit); //$NON-NLS-1$
 		}
-		return new FilterSpec(-1, treeDepthLimit);
+		return new FilterSpec(-1, treeDepthLimit, null);
+	}
+
+	/**
+	 * @param sparseOid
+	 *            the blob named in a "sparse:oid=[oid]" filter line
+	 * @return a filter spec which filters blobs outside of the sparse-checkout
+	 *         patterns stored in the given blob
+	 */
+	static FilterSpec withSparseOid(ObjectId sparseOid) {
+		return new FilterSpec(-1, -1, sparseOid.copy());
 	}
 
 	/**
 	 * A placeholder that indicates no filtering.
 	 */
-	public static final FilterSpec NO_FILTER = new FilterSpec(-1, -1);
+	public static final FilterSpec NO_FILTER = new FilterSpec(-1, -1, null);
 
 	/**
 	 * @return -1 if this filter does not filter blobs based on size, or a
@@ -167,11 +266,22 @@ public long getTreeDepthLimit() {
 		return treeDepthLimit;
 	}
 
+	/**
+	 * @return null if this filter does not filter blobs based on their path,
+	 *         or the id of the blob holding the sparse-checkout patterns that
+	 *         paths of blobs to fetch must match
+	 * @since 5.6
+	 */
+	@Nullable
+	public ObjectId getSparseOid() {
+		return sparseOid;
+	}
+
 	/**
 	 * @return true if this filter doesn't filter out anything
 	 */
 	public boolean isNoOp() {
-		return blobLimit == -1 && treeDepthLimit == -1;
+		return blobLimit == -1 && treeDepthLimit == -1 && sparseOid == null;
 	}
 
 	/**
@@ -179,14 +289,26 @@ public boolean isNoOp() {
 	 */
 	@Nullable
 	public String filterLine() {
+		List<String> filters = new ArrayList<>(3);
 		if (blobLimit == 0) {
-			return GitProtocolConstants.OPTION_FILTER + " blob:none"; //$NON-NLS-1$
+			filters.add("blob:none"); //$NON-NLS-1$
+		} else if (blobLimit > 0) {
+			filters.add("blob:limit=" + blobLimit); //$NON-NLS-1$
 		}
-
-		if (blobLimit > 0) {
-			return GitProtocolConstants.OPTION_FILTER + " blob:limit=" + blobLimit; //$NON-NLS-1$
+		if (treeDepthLimit >= 0) {
+			filters.add("tree:" + treeDepthLimit); //$NON-NLS-1$
+		}
+		if (sparseOid != null) {
+			filters.add("sparse:oid=" + sparseOid.name()); //$NON-NLS-1$
 		}
 
-		return null;
+		if (filters.isEmpty()) {
+			return null;
+		}
+		if (filters.size() == 1) {
+			return GitProtocolConstants.OPTION_FILTER + ' ' + filters.get(0);
+		}
+		return GitProtocolConstants.OPTION_FILTER + " combine:" //$NON-NLS-1$
+				+ String.join("+", filters); //$NON-NLS-1$
 	}
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.pack.PackStatistics;
+
+/**
+ * {@link PackResponseCache} holding pack streams in memory.
+ * <p>
+ * The least recently used entries are evicted once the total size of the
+ * stored streams exceeds the configured limit.
+ *
+ * @since 5.6
+ */
+public class InMemoryPackResponseCache implements PackResponseCache {
+	private final long maxBytes;
+
+	private final long maxEntrySize;
+
+	private final LinkedHashMap<ObjectId, Response> entries = new LinkedHashMap<>(
+			16, 0.75f, true);
+
+	private long totalBytes;
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxBytes
+	 *            total size of the pack streams held by the cache, in bytes.
+	 * @param maxEntrySize
+	 *            size of the largest pack stream stored, in bytes.
+	 */
+	public InMemoryPackResponseCache(long maxBytes, long maxEntrySize) {
+		this.maxBytes = maxBytes;
+		this.maxEntrySize = Math.min(Math.min(maxBytes, maxEntrySize),
+				Integer.MAX_VALUE);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized Entry get(ObjectId key) {
+		return entries.get(key);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized void put(ObjectId key, byte[] pack,
+			PackStatistics statistics) {
+		if (pack.length > maxEntrySize) {
+			return;
+		}
+		Response old = entries.put(key.copy(), new Response(pack, statistics));
+		if (old != null) {
+			totalBytes -= old.pack.length;
+		}
+		totalBytes += pack.length;
+
+		Iterator<Map.Entry<ObjectId, Response>> i = entries.entrySet()
+				.iterator();
+		while (totalBytes > maxBytes && i.hasNext()) {
+			totalBytes -= i.next().getValue().pack.length;
+			i.remove();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	/**
+	 * @return total size of the stored pack streams, in bytes.
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	private static class Response implements Entry {
+		final byte[] pack;
+
+		private final PackStatistics statistics;
+
+		Response(byte[] pack, PackStatistics statistics) {
+			this.pack = pack;
+			this.statistics = statistics;
+		}
+
+		@Override
+		public PackStatistics getStatistics() {
+			return statistics;
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			out.write(pack);
+		}
+	}
+}
@@ -52,12 +52,23 @@
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.TooLargeObjectInPackException;
@@ -80,6 +91,7 @@
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ObjectStream;
 import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.ThreadSafeProgressMonitor;
 import org.eclipse.jgit.util.BlockList;
 import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.LongMap;
@@ -102,6 +114,9 @@ public abstract class PackParser {
 	/** Size of the internal stream buffer. */
 	private static final int BUFFER_SIZE = 8192;
 
+	/** Minimum number of deltas worth handing to each resolving thread. */
+	private static final int MIN_DELTAS_PER_THREAD = 32;
+
 	/** Location data is being obtained from. */
 	public static enum Source {
 		/** Data is read from the incoming stream. */
@@ -181,6 +196,9 @@ public static enum Source {
 
 	private MessageDigest packDigest;
 
+	/** Checksum read from the trailer of the pack. */
+	private ObjectId packChecksum;
+
 	private ObjectReader readCurs;
 
 	/** Message to protect the pack data from garbage collection. */
@@ -192,6 +210,15 @@ public static enum Source {
 	private final ReceivedPackStatistics.Builder stats =
 			new ReceivedPackStatistics.Builder();
 
+	/** Number of threads resolving deltas; 0 uses all processors. */
+	private int threads = 1;
+
+	/** Executor running delta resolving threads, if supplied. */
+	private Executor executor;
+
+	/** Guards object tracking state while deltas resolve in parallel. */
+	private final Object resolveLock = new Object();
+
 	/**
 	 * Initialize a pack parser.
 	 *
@@ -436,6 +463,55 @@ public void setMaxObjectSizeLimit(long limit) {
 		maxObjectSizeLimit = limit;
 	}
 
+	/**
+	 * Get the number of threads used to resolve deltas.
+	 *
+	 * @return number of threads used to resolve deltas. 0 means the number of
+	 *         available processors.
+	 * @since 5.6
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of threads used to resolve deltas.
+	 * <p>
+	 * Delta chains sharing a common base are resolved by a single thread, but
+	 * independent chains can be inflated, applied, hashed and CRC checked
+	 * concurrently. Parallel resolution is only used if the implementation
+	 * supports concurrent reads of the stored pack, see
+	 * {@link #isConcurrentReadSupported()}.
+	 *
+	 * The file and DFS parsers take this from an explicitly configured
+	 * {@code pack.threads}, and otherwise resolve deltas on the calling
+	 * thread.
+	 *
+	 * @param threads
+	 *            number of threads to use. 0 uses the number of available
+	 *            processors, 1 (the default) resolves deltas on the calling
+	 *            thread.
+	 * @since 5.6
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Set the executor used to resolve deltas in parallel.
+	 * <p>
+	 * If no executor is set a temporary thread pool is created for each pack
+	 * that needs more than one resolving thread.
+	 *
+	 * @param executor
+	 *            executor to run delta resolving tasks on; null to create a
+	 *            temporary pool when needed.
+	 * @since 5.6
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
 	/**
 	 * Get the number of objects in the stream.
 	 * <p>
@@ -501,6 +577,19 @@ public long getPackSize() {
 		return -1;
 	}
 
+	/**
+	 * Get the checksum stored in the trailer of the received pack.
+	 * <p>
+	 * This method should only be called after pack parsing is finished.
+	 *
+	 * @return the checksum of the pack, or null if the trailer was not read.
+	 * @since 5.6
+	 */
+	@Nullable
+	public ObjectId getPackChecksum() {
+		return packChecksum;
+	}
+
 	/**
 	 * Returns the statistics of the parsed pack.
 	 * <p>
@@ -631,6 +720,12 @@ private void processDeltas(ProgressMonitor resolving) throws IOException {
 
 	private void resolveDeltas(ProgressMonitor progress)
 			throws IOException {
+		int resolvers = resolvingThreads();
+		if (resolvers > 1) {
+			parallelResolveDeltas(progress, resolvers);
+			return;
+		}
+
 		final int last = entryCount;
 		for (int i = 0; i < last; i++) {
 			resolveDeltas(entries[i], progress);
@@ -640,6 +735,31 @@ private void resolveDeltas(ProgressMonitor progress)
 		}
 	}
 
+	private int resolvingThreads() {
+		if (!isConcurrentReadSupported() || !overridesConcurrentRead())
+			return 1;
+		int n = threads;
+		if (n <= 0)
+			n = Runtime.getRuntime().availableProcessors();
+		return Math.min(n, deltaCount / MIN_DELTAS_PER_THREAD);
+	}
+
+	// Whether readDatabase(long, byte[], int, int) is implemented; a parser
+	// claiming concurrent reads without it resolves deltas serially.
+	private boolean overridesConcurrentRead() {
+		for (Class<?> c = getClass(); c != PackParser.class; c = c
+				.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("readDatabase", long.class, //$NON-NLS-1$
+						byte[].class, int.class, int.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// Check the superclass.
+			}
+		}
+		return false;
+	}
+
 	private void resolveDeltas(final PackedObjectInfo oe,
 			ProgressMonitor progress) throws IOException {
 		UnresolvedDelta children = firstChildOf(oe);
@@ -702,30 +822,134 @@ private void resolveDeltas(DeltaVisit visit, final int type,
 						JGitText.get().corruptionDetectedReReadingAt,
 						Long.valueOf(visit.delta.position)));
 
-			SHA1 objectDigest = objectHasher.reset();
-			objectDigest.update(Constants.encodedTypeString(type));
-			objectDigest.update((byte) ' ');
-			objectDigest.update(Constants.encodeASCII(visit.data.length));
-			objectDigest.update((byte) 0);
-			objectDigest.update(visit.data);
-			objectDigest.digest(tempObjectId);
+			hashObject(objectHasher, type, visit.data, tempObjectId);
+			visit.id = addResolvedDelta(visit, type, tempObjectId, readCurs);
+			visit = visit.next();
+		} while (visit != null);
+	}
 
-			verifySafeObject(tempObjectId, type, visit.data);
-			if (isCheckObjectCollisions() && readCurs.has(tempObjectId)) {
-				checkObjectCollision(tempObjectId, type, visit.data);
-			}
+	private static void hashObject(SHA1 md, int type, byte[] data,
+			MutableObjectId result) {
+		md.reset();
+		md.update(Constants.encodedTypeString(type));
+		md.update((byte) ' ');
+		md.update(Constants.encodeASCII(data.length));
+		md.update((byte) 0);
+		md.update(data);
+		md.digest(result);
+	}
+
+	// Verify and record a resolved delta, and queue its own children in
+	// visit.nextChild. Safe to call from several resolving threads.
+	private PackedObjectInfo addResolvedDelta(DeltaVisit visit, int type,
+			AnyObjectId id, ObjectReader reader) throws IOException {
+		synchronized (resolveLock) {
+			verifySafeObject(id, type, visit.data);
+		}
+		if (isCheckObjectCollisions() && reader.has(id)) {
+			checkObjectCollision(reader, id, type, visit.data);
+		}
 
-			PackedObjectInfo oe;
-			oe = newInfo(tempObjectId, visit.delta, visit.parent.id);
+		synchronized (resolveLock) {
+			PackedObjectInfo oe = newInfo(id, visit.delta, visit.parent.id);
 			oe.setOffset(visit.delta.position);
 			oe.setType(type);
 			onInflatedObjectData(oe, type, visit.data);
 			addObjectAndTrack(oe);
-			visit.id = oe;
-
 			visit.nextChild = firstChildOf(oe);
-			visit = visit.next();
-		} while (visit != null);
+			return oe;
+		}
+	}
+
+	private void parallelResolveDeltas(ProgressMonitor progress,
+			int resolvers) throws IOException {
+		ThreadSafeProgressMonitor pm = new ThreadSafeProgressMonitor(progress);
+		AtomicInteger nextBase = new AtomicInteger();
+		List<Throwable> errors = Collections
+				.synchronizedList(new ArrayList<>(resolvers));
+		List<DeltaResolver> tasks = new ArrayList<>(resolvers);
+		for (int i = 0; i < resolvers; i++) {
+			tasks.add(new DeltaResolver(pm, nextBase, entryCount, errors));
+		}
+		pm.startWorkers(resolvers);
+
+		if (executor instanceof ExecutorService) {
+			runResolvers((ExecutorService) executor, pm, tasks, errors);
+		} else if (executor == null) {
+			ExecutorService pool = Executors.newFixedThreadPool(resolvers);
+			try {
+				runResolvers(pool, pm, tasks, errors);
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			// The caller gave us an executor, but it might not do
+			// asynchronous execution. The tasks report their own
+			// failures, as there is no Future to collect them from.
+			// A task run on the calling thread resolves every
+			// remaining delta, so no further task is handed over.
+			Thread caller = Thread.currentThread();
+			AtomicBoolean ranOnCaller = new AtomicBoolean();
+			for (DeltaResolver task : tasks) {
+				if (ranOnCaller.get()) {
+					pm.endWorker();
+					continue;
+				}
+				executor.execute(() -> {
+					if (Thread.currentThread() == caller)
+						ranOnCaller.set(true);
+					try {
+						task.call();
+					} catch (Throwable failure) {
+						errors.add(failure);
+					}
+				});
+			}
+			try {
+				pm.waitForCompletion();
+			} catch (InterruptedException ie) {
+				throw new IOException(
+						JGitText.get().downloadCancelledDuringIndexing);
+			}
+		}
+
+		if (!errors.isEmpty()) {
+			Throwable err = errors.get(0);
+			if (err instanceof Error)
+				throw (Error) err;
+			if (err instanceof RuntimeException)
+				throw (RuntimeException) err;
+			if (err instanceof IOException)
+				throw (IOException) err;
+			throw new IOException(err.getMessage(), err);
+		}
+		if (progress.isCancelled())
+			throw new IOException(
+					JGitText.get().downloadCancelledDuringIndexing);
+	}
+
+	private static void runResolvers(ExecutorService pool,
+			ThreadSafeProgressMonitor pm, List<DeltaResolver> tasks,
+			List<Throwable> errors) throws IOException {
+		List<Future<?>> futures = new ArrayList<>(tasks.size());
+		for (DeltaResolver task : tasks)
+			futures.add(pool.submit(task));
+
+		try {
+			pm.waitForCompletion();
+			for (Future<?> f : futures) {
+				try {
+					f.get();
+				} catch (ExecutionException failed) {
+					errors.add(failed.getCause());
+				}
+			}
+		} catch (InterruptedException ie) {
+			for (Future<?> f : futures)
+				f.cancel(true);
+			throw new IOException(
+					JGitText.get().downloadCancelledDuringIndexing);
+		}
 	}
 
 	private final void checkIfTooLarge(int typeCode, long size)
@@ -973,6 +1197,7 @@ private void readPackFooter() throws IOException {
 			throw new CorruptObjectException(
 					JGitText.get().corruptObjectPackfileChecksumIncorrect);
 
+		packChecksum = ObjectId.fromRaw(srcHash);
 		onPackFooter(srcHash);
 	}
 
@@ -1188,10 +1413,10 @@ private void checkObjectCollision(PackedObjectInfo obj)
 		}
 	}
 
-	private void checkObjectCollision(AnyObjectId obj, int type, byte[] data)
-			throws IOException {
+	private static void checkObjectCollision(ObjectReader reader,
+			AnyObjectId obj, int type, byte[] data) throws IOException {
 		try {
-			final ObjectLoader ldr = readCurs.open(obj, type);
+			final ObjectLoader ldr = reader.open(obj, type);
 			final byte[] existingData = ldr.getCachedBytes(data.length);
 			if (!Arrays.equals(data, existingData)) {
 				throw new IOException(MessageFormat.format(
@@ -1529,6 +1754,56 @@ protected abstract ObjectTypeAndSize seekDatabase(UnresolvedDelta delta,
 	protected abstract int readDatabase(byte[] dst, int pos, int cnt)
 			throws IOException;
 
+	/**
+	 * Whether {@link #readDatabase(long, byte[], int, int)} is supported.
+	 * <p>
+	 * Implementations returning true allow deltas to be resolved by several
+	 * threads at once, see {@link #setThreads(int)}, and must override
+	 * {@link #readDatabase(long, byte[], int, int)}. The default
+	 * implementation returns false.
+	 *
+	 * @return true if the stored pack data can be read concurrently by
+	 *         position.
+	 * @since 5.6
+	 */
+	protected boolean isConcurrentReadSupported() {
+		return false;
+	}
+
+	/**
+	 * Read stored pack data from an absolute position into the buffer.
+	 * <p>
+	 * Unlike {@link #readDatabase(byte[], int, int)} this method does not
+	 * depend on a prior {@code seekDatabase} call and must be safe to invoke
+	 * from several threads at once. The parser computes the CRC of data read
+	 * this way itself, so implementations should not update any checksums.
+	 * <p>
+	 * This method must be overridden by implementations for which
+	 * {@link #isConcurrentReadSupported()} returns true, and is only invoked
+	 * for those. No data is appended to the pack while it may be called. The
+	 * default implementation throws {@link IllegalStateException}.
+	 *
+	 * @param position
+	 *            offset within the pack to start reading from.
+	 * @param dst
+	 *            the buffer to copy read data into.
+	 * @param pos
+	 *            position within {@code dst} to start copying data into.
+	 * @param cnt
+	 *            ideal target number of bytes to read. Actual read length may
+	 *            be shorter.
+	 * @return number of bytes stored, or -1 at the end of the pack.
+	 * @throws java.io.IOException
+	 *             the database cannot be accessed.
+	 * @since 5.6
+	 */
+	protected int readDatabase(long position, byte[] dst, int pos, int cnt)
+			throws IOException {
+		throw new IllegalStateException(MessageFormat.format(
+				JGitText.get().concurrentReadNotImplemented,
+				getClass().getName()));
+	}
+
 	/**
 	 * Check the current CRC matches the expected value.
 	 * <p>
@@ -1744,6 +2019,256 @@ DeltaVisit next() {
 		}
 	}
 
+	/**
+	 * Resolves delta trees on a worker thread.
+	 * <p>
+	 * Resolvers claim bases from {@link #entries} one at a time and walk the
+	 * whole tree of deltas below each claimed base. Each resolver has its own
+	 * read buffer, inflater, CRC and hasher, and reads the stored pack through
+	 * {@link PackParser#readDatabase(long, byte[], int, int)}.
+	 */
+	private class DeltaResolver implements Callable<Object> {
+		private final ThreadSafeProgressMonitor pm;
+
+		private final AtomicInteger nextBase;
+
+		private final int last;
+
+		private final List<Throwable> errors;
+
+		private final byte[] rbuf = new byte[BUFFER_SIZE];
+
+		private final byte[] overflow = new byte[1];
+
+		private final CRC32 crc = new CRC32();
+
+		private final SHA1 hasher = SHA1.newInstance();
+
+		private final MutableObjectId id = new MutableObjectId();
+
+		private final ObjectTypeAndSize info = new ObjectTypeAndSize();
+
+		private Inflater inf;
+
+		/** Position in the pack of the byte after the end of rbuf data. */
+		private long rpos;
+
+		private int rOffset;
+
+		private int rAvail;
+
+		DeltaResolver(ThreadSafeProgressMonitor pm, AtomicInteger nextBase,
+				int last, List<Throwable> errors) {
+			this.pm = pm;
+			this.nextBase = nextBase;
+			this.last = last;
+			this.errors = errors;
+		}
+
+		@Override
+		public Object call() throws IOException {
+			inf = InflaterCache.get();
+			try (ObjectReader reader = objectDatabase.newReader()) {
+				int i;
+				while (errors.isEmpty()
+						&& (i = nextBase.getAndIncrement()) < last) {
+					if (pm.isCancelled())
+						throw new IOException(JGitText
+								.get().downloadCancelledDuringIndexing);
+					resolve(entries[i], reader);
+				}
+				return null;
+			} finally {
+				InflaterCache.release(inf);
+				inf = null;
+				pm.endWorker();
+			}
+		}
+
+		private void resolve(PackedObjectInfo oe, ObjectReader reader)
+				throws IOException {
+			UnresolvedDelta children;
+			synchronized (resolveLock) {
+				children = firstChildOf(oe);
+			}
+			if (children == null)
+				return;
+
+			DeltaVisit visit = new DeltaVisit();
+			visit.nextChild = children;
+
+			seek(oe.getOffset());
+			switch (readHeader()) {
+			case Constants.OBJ_COMMIT:
+			case Constants.OBJ_TREE:
+			case Constants.OBJ_BLOB:
+			case Constants.OBJ_TAG:
+				visit.data = inflate(info.size);
+				visit.id = oe;
+				break;
+			default:
+				throw new IOException(MessageFormat.format(
+						JGitText.get().unknownObjectType,
+						Integer.valueOf(info.type)));
+			}
+			if (oe.getCRC() != (int) crc.getValue()) {
+				throw new IOException(MessageFormat.format(
+						JGitText.get().corruptionDetectedReReadingAt,
+						Long.valueOf(oe.getOffset())));
+			}
+
+			final int type = info.type;
+			synchronized (resolveLock) {
+				stats.addDeltaObject(type);
+			}
+			visit = visit.next();
+			do {
+				pm.update(1);
+				seek(visit.delta.position);
+				switch (readHeader()) {
+				case Constants.OBJ_OFS_DELTA:
+				case Constants.OBJ_REF_DELTA:
+					break;
+				default:
+					throw new IOException(MessageFormat.format(
+							JGitText.get().unknownObjectType,
+							Integer.valueOf(info.type)));
+				}
+
+				byte[] delta = inflate(info.size);
+				checkIfTooLarge(type, BinaryDelta.getResultSize(delta));
+				visit.data = BinaryDelta.apply(visit.parent.data, delta);
+				delta = null;
+
+				if (visit.delta.crc != (int) crc.getValue())
+					throw new IOException(MessageFormat.format(
+							JGitText.get().corruptionDetectedReReadingAt,
+							Long.valueOf(visit.delta.position)));
+
+				hashObject(hasher, type, visit.data, id);
+				visit.id = addResolvedDelta(visit, type, id, reader);
+				visit = visit.next();
+			} while (visit != null);
+		}
+
+		private void seek(long position) {
+			rpos = position;
+			rOffset = 0;
+			rAvail = 0;
+			crc.reset();
+		}
+
+		// Parse the object header at the current position into info,
+		// leaving the position on the first byte of the deflated data.
+		private int readHeader() throws IOException {
+			int c = readByte();
+			info.type = (c >> 4) & 7;
+			long sz = c & 15;
+			int shift = 4;
+			while ((c & 0x80) != 0) {
+				c = readByte();
+				sz += ((long) (c & 0x7f)) << shift;
+				shift += 7;
+			}
+			info.size = sz;
+
+			switch (info.type) {
+			case Constants.OBJ_OFS_DELTA:
+				do {
+					c = readByte();
+				} while ((c & 128) != 0);
+				break;
+			case Constants.OBJ_REF_DELTA:
+				fill(20);
+				use(20);
+				break;
+			default:
+				break;
+			}
+			return info.type;
+		}
+
+		private byte[] inflate(long inflatedSize) throws IOException {
+			final byte[] dst = new byte[(int) inflatedSize];
+			int n = 0;
+			fill(1);
+			inf.setInput(rbuf, rOffset, rAvail);
+			try {
+				for (;;) {
+					int r;
+					if (n < dst.length) {
+						r = inf.inflate(dst, n, dst.length - n);
+						n += r;
+					} else {
+						// Pump the trailing checksum into the Inflater;
+						// the stream must not produce any more data.
+						r = inf.inflate(overflow);
+						if (r != 0)
+							throw new CorruptObjectException(
+									MessageFormat.format(
+											JGitText.get().packfileCorruptionDetected,
+											JGitText.get().wrongDecompressedLength));
+					}
+					if (inf.finished())
+						break;
+					if (inf.needsInput()) {
+						use(rAvail);
+						fill(1);
+						inf.setInput(rbuf, rOffset, rAvail);
+					} else if (r == 0) {
+						throw new CorruptObjectException(MessageFormat.format(
+								JGitText.get().packfileCorruptionDetected,
+								JGitText.get().unknownZlibError));
+					}
+				}
+			} catch (DataFormatException dfe) {
+				throw new CorruptObjectException(MessageFormat.format(JGitText
+						.get().packfileCorruptionDetected, dfe.getMessage()));
+			}
+			use(rAvail - inf.getRemaining());
+			inf.reset();
+			if (n != dst.length) {
+				throw new CorruptObjectException(MessageFormat.format(
+						JGitText.get().packfileCorruptionDetected,
+						JGitText.get().wrongDecompressedLength));
+			}
+			return dst;
+		}
+
+		private int readByte() throws IOException {
+			fill(1);
+			int c = rbuf[rOffset] & 0xff;
+			use(1);
+			return c;
+		}
+
+		// Consume cnt bytes, including them in the CRC.
+		private void use(int cnt) {
+			crc.update(rbuf, rOffset, cnt);
+			rOffset += cnt;
+			rAvail -= cnt;
+		}
+
+		// Ensure at least need bytes are available in rbuf.
+		private void fill(int need) throws IOException {
+			while (rAvail < need) {
+				if (rAvail == 0) {
+					rOffset = 0;
+				} else if (rOffset + need > rbuf.length) {
+					System.arraycopy(rbuf, rOffset, rbuf, 0, rAvail);
+					rOffset = 0;
+				}
+				int next = rOffset + rAvail;
+				int n = readDatabase(rpos, rbuf, next, rbuf.length - next);
+				if (n <= 0)
+					throw new EOFException(
+							JGitText.get().packfileIsTruncatedNoParam);
+				rpos += n;
+				rAvail += n;
+			}
+		}
+	}
+
 	private void addObjectAndTrack(PackedObjectInfo oe) {
 		entries[entryCount++] = oe;
 		if (needNewObjectIds())
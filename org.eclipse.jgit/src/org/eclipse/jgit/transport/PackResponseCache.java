@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.pack.PackStatistics;
+
+/**
+ * Cache of pack streams generated by {@link UploadPack}.
+ * <p>
+ * Identical fetches of the same tips, as issued by build farms, produce
+ * identical packs. When a cache is set with
+ * {@link UploadPack#setPackResponseCache(PackResponseCache)}, UploadPack
+ * replays a stored pack stream instead of generating the pack again.
+ * <p>
+ * Entries are keyed by a hash of everything the pack depends on: the wanted
+ * and common objects, the shallow and depth parameters, the filter, the
+ * client capabilities and the advertised references. A change of the
+ * advertised references yields new keys, so stale entries are never served
+ * and are left for the implementation to evict.
+ * <p>
+ * Implementations must be thread-safe, as one cache is usually shared by all
+ * UploadPack instances of a server.
+ *
+ * @since 5.6
+ */
+public interface PackResponseCache {
+	/**
+	 * Get a stored pack stream.
+	 *
+	 * @param key
+	 *            key of the response.
+	 * @return the stored response, or null if there is none.
+	 * @throws IOException
+	 *             the store could not be read.
+	 */
+	@Nullable
+	Entry get(ObjectId key) throws IOException;
+
+	/**
+	 * Store a pack stream.
+	 *
+	 * @param key
+	 *            key of the response.
+	 * @param pack
+	 *            the complete pack stream, including its trailer.
+	 * @param statistics
+	 *            statistics of the generation of the pack.
+	 * @throws IOException
+	 *             the store could not be written.
+	 */
+	void put(ObjectId key, byte[] pack, PackStatistics statistics)
+			throws IOException;
+
+	/**
+	 * Get the size of the largest pack stream worth storing.
+	 * <p>
+	 * UploadPack only buffers pack streams up to this size for
+	 * {@link #put(ObjectId, byte[], PackStatistics)}.
+	 *
+	 * @return maximum size of a stored pack stream, in bytes.
+	 */
+	long getMaxEntrySize();
+
+	/**
+	 * A pack stream stored in a {@link PackResponseCache}.
+	 */
+	interface Entry {
+		/**
+		 * @return statistics of the generation of the pack.
+		 */
+		PackStatistics getStatistics();
+
+		/**
+		 * Write the pack stream.
+		 *
+		 * @param out
+		 *            stream to write the pack to.
+		 * @throws IOException
+		 *             the pack could not be read or written.
+		 */
+		void writeTo(OutputStream out) throws IOException;
+	}
+}
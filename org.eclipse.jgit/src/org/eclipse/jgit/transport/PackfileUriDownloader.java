@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static java.net.HttpURLConnection.HTTP_OK;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProxySelector;
+import java.net.URL;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jgit.errors.PackProtocolException;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.PackLock;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.http.HttpConnection;
+import org.eclipse.jgit.util.HttpSupport;
+
+/**
+ * Downloads the packs a server offloaded to URIs in the {@code packfile-uris}
+ * section of a protocol v2 fetch response.
+ * <p>
+ * Each download starts as soon as its line is {@link #add(String) added}, so
+ * the offloaded packs are fetched in parallel with each other and with the
+ * inline pack that follows the {@code packfile-uris} section. Every pack is
+ * indexed into the repository as it arrives, and its checksum is compared to
+ * the one the server announced.
+ * <p>
+ * Packs are kept locked until the caller unlocks the locks returned by
+ * {@link #await()}, usually after the references were updated.
+ *
+ * @since 5.6
+ */
+public class PackfileUriDownloader implements AutoCloseable {
+	private final Repository db;
+
+	private final TransferConfig transferConfig;
+
+	private final List<Download> downloads = new ArrayList<>();
+
+	private ExecutorService executor;
+
+	/**
+	 * Create a downloader storing packs into a repository.
+	 *
+	 * @param db
+	 *            repository the packs are stored into.
+	 */
+	public PackfileUriDownloader(Repository db) {
+		this.db = db;
+		this.transferConfig = new TransferConfig(db);
+	}
+
+	/**
+	 * Start downloading the pack of a {@code packfile-uris} line.
+	 *
+	 * @param line
+	 *            line of the {@code packfile-uris} section, of the form
+	 *            {@code <hash> <uri>}.
+	 * @throws PackProtocolException
+	 *             the line is malformed.
+	 */
+	public void add(String line) throws PackProtocolException {
+		int sp = line.indexOf(' ');
+		if (sp != Constants.OBJECT_ID_STRING_LENGTH
+				|| !ObjectId.isId(line.substring(0, sp))) {
+			throw new PackProtocolException(MessageFormat
+					.format(JGitText.get().invalidPackfileUri, line));
+		}
+		Download d = new Download(line.substring(0, sp),
+				line.substring(sp + 1));
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool();
+		}
+		d.result = executor.submit(d::download);
+		downloads.add(d);
+	}
+
+	/**
+	 * Wait for all downloads to complete.
+	 *
+	 * @return locks on the downloaded packs, which the caller must unlock.
+	 * @throws IOException
+	 *             a pack could not be downloaded or stored. Packs that were
+	 *             stored are unlocked.
+	 */
+	public List<PackLock> await() throws IOException {
+		List<PackLock> locks = new ArrayList<>(downloads.size());
+		IOException err = null;
+		for (Download d : downloads) {
+			try {
+				PackLock lock = d.result.get();
+				if (lock != null) {
+					locks.add(lock);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (err == null) {
+					err = new TransportException(MessageFormat.format(
+							JGitText.get().packfileUriDownloadFailed, d.uri,
+							e.getMessage()), e);
+				}
+			} catch (ExecutionException e) {
+				if (err == null) {
+					Throwable c = e.getCause();
+					err = c instanceof IOException ? (IOException) c
+							: new TransportException(MessageFormat.format(
+									JGitText.get().packfileUriDownloadFailed,
+									d.uri, c.getMessage()), c);
+				}
+			}
+		}
+		downloads.clear();
+		if (err != null) {
+			for (PackLock lock : locks) {
+				lock.unlock();
+			}
+			throw err;
+		}
+		return locks;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private class Download {
+		final String hash;
+
+		final String uri;
+
+		Future<PackLock> result;
+
+		Download(String hash, String uri) {
+			this.hash = hash;
+			this.uri = uri;
+		}
+
+		PackLock download() throws IOException {
+			URL url = new URL(uri);
+			HttpConnection c = HttpTransport.getConnectionFactory().create(url,
+					HttpSupport.proxyFor(ProxySelector.getDefault(), url));
+			c.setRequestMethod(HttpSupport.METHOD_GET);
+			c.setUseCaches(false);
+			int status = HttpSupport.response(c);
+			if (status != HTTP_OK) {
+				throw new TransportException(MessageFormat.format(
+						JGitText.get().packfileUriDownloadFailed, uri,
+						status + " " + c.getResponseMessage())); //$NON-NLS-1$
+			}
+
+			try (InputStream in = c.getInputStream();
+					ObjectInserter ins = db.newObjectInserter()) {
+				PackParser parser = ins.newPackParser(in);
+				parser.setAllowThin(false);
+				parser.setObjectChecker(transferConfig.newObjectChecker());
+				parser.setCheckEofAfterPackFooter(true);
+				parser.setLockMessage("jgit fetch " + uri); //$NON-NLS-1$
+				PackLock lock = parser.parse(NullProgressMonitor.INSTANCE);
+				ins.flush();
+
+				ObjectId actual = parser.getPackChecksum();
+				if (actual == null || !hash.equals(actual.name())) {
+					if (lock != null) {
+						lock.unlock();
+					}
+					throw new TransportException(MessageFormat.format(
+							JGitText.get().packfileUriChecksumMismatch, uri,
+							actual != null ? actual.name() : null, hash));
+				}
+				return lock;
+			}
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl;
+import org.eclipse.jgit.internal.storage.file.PackBitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.BitmapWalker;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+
+/**
+ * Bitmaps of the objects reachable from the advertised references of a
+ * repository, shared by the {@link UploadPack} instances serving it.
+ * <p>
+ * Entries are keyed by the exact set of tips they were computed from, so an
+ * entry never vouches for objects reachable only from references a client
+ * was not shown. When the tips grow, for example because references were
+ * created, the bitmap of a subset is extended with the objects reachable
+ * from the new tips instead of being computed again. Entries are dropped
+ * when the references of the repository change, except the most recently
+ * used one, which remains available to be extended.
+ * <p>
+ * The bitmaps are built on an index owned by this cache, so the indexes of
+ * the readers passed in are not modified. Entries belong to the bitmap index
+ * of one pack and are dropped once another pack is bitmapped, or once too
+ * many objects outside of the pack were given positions in the index.
+ */
+final class ReachableBitmapCache {
+	private static final int MAX_ENTRIES = 4;
+
+	private static final int MAX_OBJECTS_OUTSIDE_PACK = 1 << 16;
+
+	private static final Map<Repository, ReachableBitmapCache> caches = new WeakHashMap<>();
+
+	/**
+	 * Get the cache of a repository.
+	 *
+	 * @param db
+	 *            the repository.
+	 * @return the cache of the repository.
+	 */
+	static ReachableBitmapCache get(Repository db) {
+		synchronized (caches) {
+			ReachableBitmapCache c = caches.get(db);
+			if (c == null) {
+				ReachableBitmapCache cache = new ReachableBitmapCache();
+				db.getListenerList()
+						.addRefsChangedListener(e -> cache.onRefsChanged());
+				caches.put(db, cache);
+				c = cache;
+			}
+			return c;
+		}
+	}
+
+	private PackBitmapIndex packIndex;
+
+	private BitmapIndex index;
+
+	private final LinkedHashMap<Set<ObjectId>, BitmapBuilder> entries = new LinkedHashMap<>(
+			16, 0.75f, true);
+
+	/**
+	 * Find an object that is not reachable from the tips.
+	 *
+	 * @param reader
+	 *            reader to walk objects not covered by bitmaps with.
+	 * @param bitmapIndex
+	 *            bitmap index of {@code reader}.
+	 * @param tips
+	 *            objects the reachable objects are reachable from.
+	 * @param objects
+	 *            objects to check.
+	 * @return the first of {@code objects} that is not reachable from
+	 *         {@code tips}, or null if all of them are.
+	 * @throws IOException
+	 *             a tip or an object reachable from a tip could not be read.
+	 */
+	@Nullable
+	synchronized ObjectId findUnreachable(ObjectReader reader,
+			BitmapIndex bitmapIndex, Set<ObjectId> tips,
+			Collection<ObjectId> objects) throws IOException {
+		BitmapBuilder reachable = reachable(reader, bitmapIndex, tips);
+		for (ObjectId id : objects) {
+			if (!reachable.contains(id)) {
+				return id;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return number of cached bitmaps.
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized void onRefsChanged() {
+		Iterator<Set<ObjectId>> i = entries.keySet().iterator();
+		for (int n = entries.size(); n > 1; n--) {
+			i.next();
+			i.remove();
+		}
+	}
+
+	private BitmapBuilder reachable(ObjectReader reader,
+			BitmapIndex bitmapIndex, Set<ObjectId> tips) throws IOException {
+		if (!(bitmapIndex instanceof BitmapIndexImpl)) {
+			// No pack to tie entries to; do not cache.
+			return findObjects(reader, bitmapIndex, tips, null);
+		}
+		PackBitmapIndex pack = ((BitmapIndexImpl) bitmapIndex)
+				.getPackBitmapIndex();
+		if (index == null || packIndex != pack) {
+			// The bitmaps of the cached entries belong to the old pack.
+			packIndex = pack;
+			index = new BitmapIndexImpl(pack);
+			entries.clear();
+		}
+
+		BitmapBuilder result = entries.get(tips);
+		if (result != null) {
+			return result;
+		}
+
+		Set<ObjectId> baseTips = null;
+		for (Set<ObjectId> t : entries.keySet()) {
+			if (tips.containsAll(t)
+					&& (baseTips == null || baseTips.size() < t.size())) {
+				baseTips = t;
+			}
+		}
+
+		if (baseTips != null) {
+			List<ObjectId> added = new ArrayList<>();
+			for (ObjectId id : tips) {
+				if (!baseTips.contains(id)) {
+					added.add(id);
+				}
+			}
+			result = index.newBitmapBuilder().or(entries.get(baseTips));
+			result.or(findObjects(reader, index, added, result));
+		} else {
+			result = findObjects(reader, index, tips, null);
+		}
+
+		if (((BitmapIndexImpl) index)
+				.getObjectCountOutsidePack() > MAX_OBJECTS_OUTSIDE_PACK) {
+			// Each such object is held by the index as long as it is
+			// used; start over with a new index instead.
+			packIndex = null;
+			index = null;
+			entries.clear();
+			return result;
+		}
+
+		entries.put(new HashSet<>(tips), result);
+		Iterator<Set<ObjectId>> i = entries.keySet().iterator();
+		while (entries.size() > MAX_ENTRIES) {
+			i.next();
+			i.remove();
+		}
+		return result;
+	}
+
+	private static BitmapBuilder findObjects(ObjectReader reader,
+			BitmapIndex bitmapIndex, Collection<ObjectId> tips,
+			@Nullable BitmapBuilder seen) throws IOException {
+		try (ObjectWalk walk = new ObjectWalk(reader)) {
+			return new BitmapWalker(walk, bitmapIndex, null)
+					.findObjects(tips, seen, false);
+		}
+	}
+}
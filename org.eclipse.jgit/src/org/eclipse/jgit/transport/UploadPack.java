@@ -74,10 +74,13 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.security.MessageDigest;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -85,6 +88,8 @@
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import org.eclipse.jgit.annotations.NonNull;
@@ -327,6 +332,12 @@ public Set<String> getOptions() {
 	/** null if {@link #commonBase} should be examined again. */
 	private Boolean okToGiveUp;
 
+	/** Walker computing reachability bitmaps during negotiation. */
+	private BitmapWalker negotiationWalker;
+
+	/** Objects reachable from each want, if bitmaps are used. */
+	private Map<RevObject, BitmapBuilder> wantBitmaps;
+
 	private boolean sentReady;
 
 	/** Objects we sent in our advertisement list, clients can ask for these. */
@@ -365,6 +376,14 @@ public Set<String> getOptions() {
 
 	private CachedPackUriProvider cachedPackUriProvider;
 
+	private PackResponseCache packResponseCache;
+
+	private static final int DEFAULT_PACK_SEND_BUFFER_SIZE = 1024 * 1024;
+
+	private Executor packSendExecutor;
+
+	private int packSendBufferSize = DEFAULT_PACK_SEND_BUFFER_SIZE;
+
 	/**
 	 * Create a new pack upload for an open repository.
 	 *
@@ -751,6 +770,53 @@ public void setCachedPackUriProvider(@Nullable CachedPackUriProvider p) {
 		cachedPackUriProvider = p;
 	}
 
+	/**
+	 * Set the cache of generated pack streams.
+	 *
+	 * @param cache
+	 *            cache to replay identical responses from, or null to
+	 *            generate every pack.
+	 * @since 5.6
+	 */
+	public void setPackResponseCache(@Nullable PackResponseCache cache) {
+		packResponseCache = cache;
+	}
+
+	/**
+	 * Set the executor used to send packs asynchronously.
+	 * <p>
+	 * When set, the pack and progress messages are written into a send
+	 * buffer that a task on this executor drains to the client, so pack
+	 * generation only waits for a slow client once the buffer is full. Time
+	 * spent waiting is reported by
+	 * {@link PackStatistics#getTimeSendStalled()}. If the executor rejects
+	 * the task the pack is sent synchronously.
+	 *
+	 * @param executor
+	 *            executor to run send tasks on, or null to write the pack
+	 *            directly to the client.
+	 * @since 5.6
+	 */
+	public void setPackSendExecutor(@Nullable Executor executor) {
+		packSendExecutor = executor;
+	}
+
+	/**
+	 * Set the size of the send buffer used with a pack send executor.
+	 *
+	 * @param size
+	 *            maximum bytes buffered for a client before pack generation
+	 *            waits; defaults to 1 MiB.
+	 * @since 5.6
+	 */
+	public void setPackSendBufferSize(int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException(
+					"size must be positive: " + size); //$NON-NLS-1$
+		}
+		packSendBufferSize = size;
+	}
+
 	private boolean useProtocolV2() {
 		return ProtocolVersion.V2.equals(transferConfig.protocolVersion)
 				&& clientRequestedV2;
@@ -1084,6 +1150,7 @@ else if (requestValidator instanceof AnyRequestValidator)
 			sendPack = negotiate(req, accumulator, pckOut);
 			accumulator.timeNegotiating += System.currentTimeMillis()
 					- negotiateStart;
+			accumulator.bitmapNegotiation = negotiationWalker != null;
 
 			if (sendPack && !biDirectionalPipe) {
 				// Ensure the request was fully consumed. Any remaining input must
@@ -1174,6 +1241,11 @@ private void fetchV2(PacketLineOut pckOut) throws IOException {
 		currentRequest = req;
 		rawOut.stopBuffering();
 
+		long negotiateStart = System.currentTimeMillis();
+		PackStatistics.Accumulator accumulator = new PackStatistics.Accumulator();
+		accumulator.advertised = advertised.size();
+		accumulator.haves = req.getPeerHas().size();
+
 		protocolV2Hook.onFetch(req);
 
 		if (req.getSidebandAll()) {
@@ -1196,6 +1268,7 @@ private void fetchV2(PacketLineOut pckOut) throws IOException {
 		// TODO(ifrade): Avoid mutating the parsed request.
 		req.getWantIds().addAll(wantedRefs.values());
 		wantIds = req.getWantIds();
+		accumulator.wants = wantIds.size();
 
 		boolean sectionSent = false;
 		boolean mayHaveShallow = req.getDepth() != 0
@@ -1218,7 +1291,7 @@ private void fetchV2(PacketLineOut pckOut) throws IOException {
 
 		if (req.wasDoneReceived()) {
 			processHaveLines(req.getPeerHas(), ObjectId.zeroId(),
-					new PacketLineOut(NullOutputStream.INSTANCE));
+					new PacketLineOut(NullOutputStream.INSTANCE), accumulator);
 		} else {
 			pckOut.writeString("acknowledgments\n"); //$NON-NLS-1$
 			for (ObjectId id : req.getPeerHas()) {
@@ -1227,7 +1300,7 @@ private void fetchV2(PacketLineOut pckOut) throws IOException {
 				}
 			}
 			processHaveLines(req.getPeerHas(), ObjectId.zeroId(),
-					new PacketLineOut(NullOutputStream.INSTANCE));
+					new PacketLineOut(NullOutputStream.INSTANCE), accumulator);
 			if (okToGiveUp()) {
 				pckOut.writeString("ready\n"); //$NON-NLS-1$
 			} else if (commonBase.isEmpty()) {
@@ -1270,7 +1343,10 @@ private void fetchV2(PacketLineOut pckOut) throws IOException {
 				// But sideband-all is not used, so we have to write it ourselves.
 				pckOut.writeString("packfile\n"); //$NON-NLS-1$
 			}
-			sendPack(new PackStatistics.Accumulator(),
+			accumulator.timeNegotiating = System.currentTimeMillis()
+					- negotiateStart;
+			accumulator.bitmapNegotiation = negotiationWalker != null;
+			sendPack(accumulator,
 					req,
 					req.getClientCapabilities().contains(OPTION_INCLUDE_TAG)
 						? db.getRefDatabase().getRefsByPrefix(R_TAGS)
@@ -1673,7 +1749,7 @@ private boolean negotiate(FetchRequest req,
 			}
 
 			if (PacketLineIn.isEnd(line)) {
-				last = processHaveLines(peerHas, last, pckOut);
+				last = processHaveLines(peerHas, last, pckOut, accumulator);
 				if (commonBase.isEmpty() || multiAck != MultiAck.OFF)
 					pckOut.writeString("NAK\n"); //$NON-NLS-1$
 				if (noDone && sentReady) {
@@ -1688,7 +1764,7 @@ private boolean negotiate(FetchRequest req,
 				peerHas.add(ObjectId.fromString(line.substring(5)));
 				accumulator.haves++;
 			} else if (line.equals("done")) { //$NON-NLS-1$
-				last = processHaveLines(peerHas, last, pckOut);
+				last = processHaveLines(peerHas, last, pckOut, accumulator);
 
 				if (commonBase.isEmpty())
 					pckOut.writeString("NAK\n"); //$NON-NLS-1$
@@ -1704,7 +1780,8 @@ else if (multiAck != MultiAck.OFF)
 		}
 	}
 
-	private ObjectId processHaveLines(List<ObjectId> peerHas, ObjectId last, PacketLineOut out)
+	private ObjectId processHaveLines(List<ObjectId> peerHas, ObjectId last,
+			PacketLineOut out, PackStatistics.Accumulator accumulator)
 			throws IOException {
 		preUploadHook.onBeginNegotiateRound(this, wantIds, peerHas.size());
 		if (wantAll.isEmpty() && !wantIds.isEmpty())
@@ -1743,6 +1820,7 @@ private ObjectId processHaveLines(List<ObjectId> peerHas, ObjectId last, PacketL
 				if (obj instanceof RevCommit)
 					((RevCommit) obj).carry(PEER_HAS);
 				addCommonBase(obj);
+				accumulator.commonHaves++;
 
 				// If both sides have the same object; let the client know.
 				//
@@ -1928,18 +2006,6 @@ public void checkWants(UploadPack up, List<ObjectId> wants)
 		}
 	}
 
-	private static void checkNotAdvertisedWantsUsingBitmap(ObjectReader reader,
-			BitmapIndex bitmapIndex, List<ObjectId> notAdvertisedWants,
-			Set<ObjectId> reachableFrom) throws IOException {
-		BitmapWalker bitmapWalker = new BitmapWalker(new ObjectWalk(reader), bitmapIndex, null);
-		BitmapBuilder reachables = bitmapWalker.findObjects(reachableFrom, null, false);
-		for (ObjectId oid : notAdvertisedWants) {
-			if (!reachables.contains(oid)) {
-				throw new WantNotValidException(oid);
-			}
-		}
-	}
-
 	private static void checkReachabilityByWalkingObjects(ObjectWalk walk,
 			List<RevObject> wants, Set<ObjectId> reachableFrom) throws IOException {
 
@@ -1986,37 +2052,42 @@ private static void checkNotAdvertisedWants(UploadPack up,
 					.collect(Collectors.toList());
 			boolean allWantsAreCommits = wantsAsObjs.size() == wantsAsCommits
 					.size();
-			boolean repoHasBitmaps = reader.getBitmapIndex() != null;
+			BitmapIndex bitmapIndex = reader.getBitmapIndex();
+
+			if (bitmapIndex != null) {
+				// Look the wants up in the objects reachable from the
+				// advertised refs, which is shared by all requests.
+				ObjectId unreachable = ReachableBitmapCache
+						.get(up.getRepository()).findUnreachable(reader,
+								bitmapIndex, reachableFrom, notAdvertisedWants);
+				if (unreachable != null) {
+					throw new WantNotValidException(unreachable);
+				}
+				return;
+			}
 
 			if (!allWantsAreCommits) {
-				if (!repoHasBitmaps) {
-					if (up.transferConfig.isAllowFilter()) {
-						// Use allowFilter as an indication that the server
-						// operator is willing to pay the cost of these
-						// reachability checks.
-						try (ObjectWalk objWalk = walk.toObjectWalkWithSameObjects()) {
-							checkReachabilityByWalkingObjects(objWalk,
-									wantsAsObjs, reachableFrom);
-						}
-						return;
+				if (up.transferConfig.isAllowFilter()) {
+					// Use allowFilter as an indication that the server
+					// operator is willing to pay the cost of these
+					// reachability checks.
+					try (ObjectWalk objWalk = walk.toObjectWalkWithSameObjects()) {
+						checkReachabilityByWalkingObjects(objWalk,
+								wantsAsObjs, reachableFrom);
 					}
-
-					// If unadvertized non-commits are requested, use
-					// bitmaps. If there are no bitmaps, instead of
-					// incurring the expense of a manual walk, reject
-					// the request.
-					RevObject nonCommit = wantsAsObjs
-							.stream()
-							.filter(obj -> !(obj instanceof RevCommit))
-							.limit(1)
-							.collect(Collectors.toList()).get(0);
-					throw new WantNotValidException(nonCommit);
-
+					return;
 				}
-				checkNotAdvertisedWantsUsingBitmap(reader,
-						reader.getBitmapIndex(), notAdvertisedWants,
-						reachableFrom);
-				return;
+
+				// If unadvertized non-commits are requested, use
+				// bitmaps. If there are no bitmaps, instead of
+				// incurring the expense of a manual walk, reject
+				// the request.
+				RevObject nonCommit = wantsAsObjs
+						.stream()
+						.filter(obj -> !(obj instanceof RevCommit))
+						.limit(1)
+						.collect(Collectors.toList()).get(0);
+				throw new WantNotValidException(nonCommit);
 			}
 
 			// All wants are commits, we can use ReachabilityChecker
@@ -2084,6 +2155,11 @@ private boolean okToGiveUpImp() throws PackProtocolException {
 			return false;
 
 		try {
+			BitmapIndex bitmapIndex = walk.getObjectReader().getBitmapIndex();
+			if (bitmapIndex != null && currentRequest.getDepth() == 0
+					&& currentRequest.getClientShallowCommits().isEmpty()) {
+				return wantsSatisfiedByBitmap(bitmapIndex);
+			}
 			for (RevObject obj : wantAll) {
 				if (!wantSatisfied(obj))
 					return false;
@@ -2094,6 +2170,50 @@ private boolean okToGiveUpImp() throws PackProtocolException {
 		}
 	}
 
+	private boolean wantsSatisfiedByBitmap(BitmapIndex bitmapIndex)
+			throws IOException {
+		// A want is satisfied if it reaches one of the common commits, like
+		// in wantSatisfied. The objects reachable from each want are
+		// computed once, so a round costs a few bitmap lookups instead of a
+		// commit walk per want.
+		if (negotiationWalker == null) {
+			negotiationWalker = new BitmapWalker(
+					new ObjectWalk(walk.getObjectReader()), bitmapIndex, null);
+			wantBitmaps = new HashMap<>();
+		}
+
+		for (RevObject want : wantAll) {
+			if (want.has(SATISFIED)) {
+				continue;
+			}
+			BitmapBuilder reachable = wantBitmaps.get(want);
+			if (reachable == null) {
+				reachable = negotiationWalker.findObjects(
+						Collections.singletonList(want), null, true);
+				wantBitmaps.put(want, reachable);
+			}
+			if (!reachesCommonBase(reachable)) {
+				return false;
+			}
+			want.add(SATISFIED);
+		}
+		return true;
+	}
+
+	private boolean reachesCommonBase(BitmapBuilder reachable) {
+		for (RevObject obj : commonBase) {
+			// The commit walk stops at commits older than the oldest have.
+			if (obj instanceof RevCommit && oldestTime != 0
+					&& ((RevCommit) obj).getCommitTime() < oldestTime) {
+				continue;
+			}
+			if (reachable.contains(obj)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private boolean wantSatisfied(RevObject want) throws IOException {
 		if (want.has(SATISFIED))
 			return true;
@@ -2140,6 +2260,46 @@ private void sendPack(PackStatistics.Accumulator accumulator,
 			List<ObjectId> unshallowCommits,
 			List<ObjectId> deepenNots,
 			PacketLineOut pckOut) throws IOException {
+		boolean async = startAsyncSend(accumulator);
+		try {
+			sendPackOnWire(accumulator, req, allTags, unshallowCommits,
+					deepenNots, pckOut);
+		} catch (IOException | RuntimeException | Error err) {
+			if (async) {
+				// Report why sending failed, not why the sender could
+				// not be stopped afterwards.
+				try {
+					rawOut.stopAsync();
+				} catch (IOException | RuntimeException stopErr) {
+					err.addSuppressed(stopErr);
+				}
+			}
+			throw err;
+		}
+		if (async) {
+			rawOut.stopAsync();
+		}
+	}
+
+	private boolean startAsyncSend(PackStatistics.Accumulator accumulator)
+			throws IOException {
+		if (packSendExecutor == null) {
+			return false;
+		}
+		rawOut.stopBuffering();
+		try {
+			rawOut.startAsync(new AsyncOutputStream(rawOut.rawOut,
+					packSendBufferSize, packSendExecutor, accumulator));
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	private void sendPackOnWire(PackStatistics.Accumulator accumulator,
+			FetchRequest req, @Nullable Collection<Ref> allTags,
+			List<ObjectId> unshallowCommits, List<ObjectId> deepenNots,
+			PacketLineOut pckOut) throws IOException {
 		Set<String> caps = req.getClientCapabilities();
 		boolean sideband = caps.contains(OPTION_SIDE_BAND)
 				|| caps.contains(OPTION_SIDE_BAND_64K);
@@ -2205,6 +2365,20 @@ private void sendPack(ProgressMonitor pm, PacketLineOut pckOut,
 		}
 		msgOut.flush();
 
+		boolean packfileUris = pckOut.isUsingSideband()
+				&& req instanceof FetchV2Request
+				&& cachedPackUriProvider != null
+				&& !((FetchV2Request) req).getPackfileUriProtocols().isEmpty();
+		ObjectId cacheKey = null;
+		if (packResponseCache != null && !packfileUris) {
+			cacheKey = packCacheKey(req, allTags, deepenNots);
+			PackResponseCache.Entry cached = packResponseCache.get(cacheKey);
+			if (cached != null) {
+				sendCachedPack(cached, pckOut, packOut);
+				return;
+			}
+		}
+
 		PackConfig cfg = packConfig;
 		if (cfg == null)
 			cfg = new PackConfig(db);
@@ -2223,7 +2397,8 @@ private void sendPack(ProgressMonitor pm, PacketLineOut pckOut,
 			pw.setUseBitmaps(
 					req.getDepth() == 0
 							&& req.getClientShallowCommits().isEmpty()
-							&& req.getFilterSpec().getTreeDepthLimit() == -1);
+							&& req.getFilterSpec().getTreeDepthLimit() == -1
+							&& req.getFilterSpec().getSparseOid() == null);
 			pw.setClientShallowCommits(req.getClientShallowCommits());
 			pw.setReuseDeltaCommits(true);
 			pw.setDeltaBaseAsOffset(
@@ -2309,9 +2484,7 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 			}
 
 			if (pckOut.isUsingSideband()) {
-				if (req instanceof FetchV2Request &&
-						cachedPackUriProvider != null &&
-						!((FetchV2Request) req).getPackfileUriProtocols().isEmpty()) {
+				if (packfileUris) {
 					FetchV2Request reqV2 = (FetchV2Request) req;
 					pw.setPackfileUriConfig(new PackWriter.PackfileUriConfig(
 							pckOut,
@@ -2325,7 +2498,17 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 					pckOut.writeString("packfile\n"); //$NON-NLS-1$
 				}
 			}
-			pw.writePack(pm, NullProgressMonitor.INSTANCE, packOut);
+			if (cacheKey != null) {
+				CachingOutputStream out = new CachingOutputStream(packOut,
+						packResponseCache.getMaxEntrySize());
+				pw.writePack(pm, NullProgressMonitor.INSTANCE, out);
+				byte[] pack = out.getCachedBytes();
+				if (pack != null) {
+					packResponseCache.put(cacheKey, pack, pw.getStatistics());
+				}
+			} else {
+				pw.writePack(pm, NullProgressMonitor.INSTANCE, packOut);
+			}
 
 			if (msgOut != NullOutputStream.INSTANCE) {
 				String msg = pw.getStatistics().getMessage() + '\n';
@@ -2342,6 +2525,80 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 		}
 	}
 
+	private void sendCachedPack(PackResponseCache.Entry cached,
+			PacketLineOut pckOut, OutputStream packOut) throws IOException {
+		if (pckOut.isUsingSideband()) {
+			pckOut.writeString("packfile\n"); //$NON-NLS-1$
+		}
+		cached.writeTo(packOut);
+		packOut.flush();
+
+		statistics = cached.getStatistics();
+		if (msgOut != NullOutputStream.INSTANCE) {
+			String msg = statistics.getMessage() + '\n';
+			msgOut.write(Constants.encode(msg));
+			msgOut.flush();
+		}
+		postUploadHook.onPostUpload(statistics);
+	}
+
+	private ObjectId packCacheKey(FetchRequest req,
+			@Nullable Collection<Ref> allTags, List<ObjectId> deepenNots) {
+		// The key covers every input of the pack generation, including the
+		// advertised references, so that it changes when they do.
+		MessageDigest md = Constants.newMessageDigest();
+		hashIds(md, "want", wantIds); //$NON-NLS-1$
+		hashIds(md, "want", wantAll); //$NON-NLS-1$
+		hashIds(md, "have", commonBase); //$NON-NLS-1$
+		hashIds(md, "shallow", req.getClientShallowCommits()); //$NON-NLS-1$
+		hashIds(md, "deepen-not", deepenNots); //$NON-NLS-1$
+		hashLine(md, "deepen " + req.getDepth()); //$NON-NLS-1$
+		hashLine(md, "deepen-since " + req.getDeepenSince()); //$NON-NLS-1$
+		FilterSpec filter = req.getFilterSpec();
+		hashLine(md, "filter " + filter.getBlobLimit() + ' ' //$NON-NLS-1$
+				+ filter.getTreeDepthLimit() + ' ' + filter.getSparseOid());
+
+		Set<String> caps = req.getClientCapabilities();
+		for (String cap : new String[] { OPTION_OFS_DELTA, OPTION_THIN_PACK,
+				OPTION_INCLUDE_TAG }) {
+			if (caps.contains(cap)) {
+				hashLine(md, cap);
+			}
+		}
+		if (refs != null) {
+			hashRefs(md, "ref", refs.values()); //$NON-NLS-1$
+		}
+		if (caps.contains(OPTION_INCLUDE_TAG) && allTags != null) {
+			hashRefs(md, "tag", allTags); //$NON-NLS-1$
+		}
+		return ObjectId.fromRaw(md.digest());
+	}
+
+	private static void hashIds(MessageDigest md, String name,
+			Collection<? extends ObjectId> ids) {
+		ObjectId[] sorted = ids.toArray(new ObjectId[0]);
+		Arrays.sort(sorted);
+		for (ObjectId id : sorted) {
+			hashLine(md, name + ' ' + id.name());
+		}
+	}
+
+	private static void hashRefs(MessageDigest md, String name,
+			Collection<Ref> refList) {
+		Ref[] sorted = refList.toArray(new Ref[0]);
+		Arrays.sort(sorted, (a, b) -> a.getName().compareTo(b.getName()));
+		for (Ref r : sorted) {
+			hashLine(md, name + ' ' + r.getName() + ' '
+					+ ObjectId.toString(r.getObjectId()) + ' '
+					+ ObjectId.toString(r.getPeeledObjectId()));
+		}
+	}
+
+	private static void hashLine(MessageDigest md, String line) {
+		md.update(Constants.encode(line));
+		md.update((byte) '\n');
+	}
+
 	private static void findSymrefs(
 			final RefAdvertiser adv, final Map<String, Ref> refs) {
 		Ref head = refs.get(Constants.HEAD);
@@ -2398,11 +2655,76 @@ public void close() throws IOException {
 		}
 
 		void stopBuffering() throws IOException {
-			if (out != rawOut) {
+			if (out != rawOut && !(out instanceof AsyncOutputStream)) {
 				((ByteArrayOutputStream) out).writeTo(rawOut);
 				out = rawOut;
 			}
 		}
+
+		void startAsync(AsyncOutputStream async) {
+			out = async;
+		}
+
+		void stopAsync() throws IOException {
+			if (out instanceof AsyncOutputStream) {
+				try {
+					out.close();
+				} finally {
+					out = rawOut;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the pack stream into a buffer while writing it, unless the
+	 * stream grows larger than the limit.
+	 */
+	private static class CachingOutputStream extends OutputStream {
+		private final OutputStream out;
+
+		private final long limit;
+
+		private ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+		CachingOutputStream(OutputStream out, long limit) {
+			this.out = out;
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			if (buf != null) {
+				if (buf.size() + 1 > limit) {
+					buf = null;
+				} else {
+					buf.write(b);
+				}
+			}
+		}
+
+		@Override
+		public void write(byte b[], int off, int len) throws IOException {
+			out.write(b, off, len);
+			if (buf != null) {
+				if (buf.size() + (long) len > limit) {
+					buf = null;
+				} else {
+					buf.write(b, off, len);
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Nullable
+		byte[] getCachedBytes() {
+			return buf != null ? buf.toByteArray() : null;
+		}
 	}
 
 	private interface ErrorWriter {
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.treewalk;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.eclipse.jgit.annotations.Nullable;
+
+/**
+ * Reports which paths of a working tree changed since an earlier point in
+ * time.
+ * <p>
+ * A monitor lets {@link org.eclipse.jgit.lib.IndexDiff} skip the directories
+ * of the working tree in which nothing changed since the last comparison,
+ * instead of reading every directory and checking every file. Points in time
+ * are identified by opaque tokens, which are stored in the index and may
+ * outlive the monitor that issued them; a monitor must not trust tokens it
+ * does not recognize.
+ *
+ * @since 5.6
+ */
+public interface FileChangeMonitor {
+	/**
+	 * Get a token for the current point in time.
+	 * <p>
+	 * Every change made to the working tree after this method returns must be
+	 * reported by {@link #getChangedPaths(String)} when passing the returned
+	 * token.
+	 *
+	 * @return the token.
+	 * @throws IOException
+	 *             the monitor failed.
+	 */
+	String getToken() throws IOException;
+
+	/**
+	 * Get the paths that changed since a token was issued.
+	 * <p>
+	 * Paths are relative to the working tree and use {@code '/'} as
+	 * separator. A directory is reported when it was created, deleted or
+	 * renamed, and may be reported for changes to its content. Reporting
+	 * paths that did not change is allowed; omitting changed paths is not.
+	 *
+	 * @param token
+	 *            a token returned by {@link #getToken()}, possibly by another
+	 *            monitor.
+	 * @return the changed paths, or {@code null} if the monitor cannot tell
+	 *         which paths changed since {@code token}, so that the whole
+	 *         working tree must be considered modified.
+	 * @throws IOException
+	 *             the monitor failed.
+	 */
+	@Nullable
+	Set<String> getChangedPaths(String token) throws IOException;
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2019, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.treewalk;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * A {@link FileChangeMonitor} watching the working tree with a
+ * {@link java.nio.file.WatchService}.
+ * <p>
+ * The monitor registers every directory of the working tree, except the
+ * repository's own directory and nested {@code .git} directories, and then
+ * keeps track of the paths reported changed. It only knows about changes
+ * made while it is open, so its tokens are not recognized by any other
+ * instance. Changes are seen as soon as the platform delivered them to the
+ * watch service; platforms without native support poll the file system and
+ * may report changes late.
+ * <p>
+ * Each registered directory uses resources of the operating system, for
+ * example an inotify watch on Linux, whose number may be limited.
+ *
+ * @since 5.6
+ */
+public class WatchServiceFileChangeMonitor
+		implements FileChangeMonitor, AutoCloseable {
+	/** Number of remembered changes above which older tokens are dropped. */
+	private static final int MAX_CHANGES = 100000;
+
+	private final Path workTree;
+
+	private final Path gitDir;
+
+	private final String id = UUID.randomUUID().toString();
+
+	private final WatchService watcher;
+
+	private final Map<WatchKey, Path> keys = new HashMap<>();
+
+	/** Sequence number at which each path was last reported changed. */
+	private final Map<String, Long> changes = new HashMap<>();
+
+	private long seq = 1;
+
+	/** Tokens up to this sequence number may have missed changes. */
+	private long lost;
+
+	/**
+	 * Start watching the working tree of a repository.
+	 *
+	 * @param repository
+	 *            the repository, which must have a working tree.
+	 * @throws IOException
+	 *             the working tree could not be registered.
+	 */
+	public WatchServiceFileChangeMonitor(Repository repository)
+			throws IOException {
+		workTree = repository.getWorkTree().toPath().toAbsolutePath();
+		gitDir = repository.getDirectory().toPath().toAbsolutePath();
+		watcher = workTree.getFileSystem().newWatchService();
+		try {
+			register(workTree, false);
+		} catch (IOException | RuntimeException e) {
+			watcher.close();
+			throw e;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized String getToken() throws IOException {
+		poll();
+		return id + ':' + (++seq);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	@Nullable
+	public synchronized Set<String> getChangedPaths(String token)
+			throws IOException {
+		if (!token.startsWith(id + ':'))
+			return null;
+		long since;
+		try {
+			since = Long.parseLong(token.substring(id.length() + 1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		poll();
+		if (since <= lost || since > seq)
+			return null;
+		Set<String> paths = new HashSet<>();
+		for (Map.Entry<String, Long> e : changes.entrySet()) {
+			if (e.getValue().longValue() >= since)
+				paths.add(e.getKey());
+		}
+		return paths;
+	}
+
+	/**
+	 * Stop watching the working tree.
+	 *
+	 * @throws IOException
+	 *             the watch service could not be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+	}
+
+	private void poll() {
+		WatchKey key;
+		while ((key = watcher.poll()) != null) {
+			Path dir = keys.get(key);
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == OVERFLOW || dir == null) {
+					lost = seq;
+					continue;
+				}
+				Path child = dir.resolve((Path) event.context());
+				record(child);
+				if (event.kind() == ENTRY_CREATE && Files.isDirectory(child,
+						LinkOption.NOFOLLOW_LINKS)) {
+					try {
+						register(child, true);
+					} catch (IOException e) {
+						lost = seq;
+					}
+				}
+			}
+			if (!key.reset())
+				keys.remove(key);
+		}
+		if (changes.size() > MAX_CHANGES) {
+			changes.clear();
+			lost = seq;
+		}
+	}
+
+	private void record(Path path) {
+		if (path.startsWith(gitDir))
+			return;
+		String p = workTree.relativize(path).toString();
+		if (File.separatorChar != '/')
+			p = p.replace(File.separatorChar, '/');
+		changes.put(p, Long.valueOf(seq));
+	}
+
+	private void register(Path start, boolean created) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir,
+					BasicFileAttributes attrs) throws IOException {
+				if (dir.equals(gitDir) || (!dir.equals(workTree)
+						&& Constants.DOT_GIT.equals(
+								dir.getFileName().toString())))
+					return FileVisitResult.SKIP_SUBTREE;
+				keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE,
+						ENTRY_MODIFY), dir);
+				if (created)
+					record(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attrs) {
+				// Files created along with a new directory may have been
+				// written before the directory was watched.
+				if (created)
+					record(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file,
+					IOException e) throws IOException {
+				// A directory which cannot be read is not watched, so no
+				// token can vouch for it. Fail if it would never be.
+				if (!created)
+					throw e;
+				lost = seq;
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
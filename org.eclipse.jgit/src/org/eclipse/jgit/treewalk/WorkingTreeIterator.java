@@ -1144,7 +1144,7 @@ private static long computeLength(InputStream in) throws IOException {
 	}
 
 	private byte[] computeHash(InputStream in, long length) throws IOException {
-		SHA1 contentDigest = SHA1.newInstance();
+		SHA1 contentDigest = state.contentDigest();
 		final byte[] contentReadBuffer = state.contentReadBuffer;
 
 		contentDigest.update(hblob);
@@ -1388,6 +1388,9 @@ private static final class IteratorState {
 		/** Buffer used to perform {@link #contentId} computations. */
 		byte[] contentReadBuffer;
 
+		/** Digest used to perform {@link #contentId} computations. */
+		private SHA1 contentDigest;
+
 		/** TreeWalk with a (supposedly) matching DirCacheIterator. */
 		TreeWalk walk;
 
@@ -1409,6 +1412,13 @@ void initializeReadBuffer() {
 				contentReadBuffer = new byte[BUFFER_SIZE];
 			}
 		}
+
+		SHA1 contentDigest() {
+			if (contentDigest == null) {
+				contentDigest = SHA1.newInstance();
+			}
+			return contentDigest.reset();
+		}
 	}
 
 	/**
@@ -46,6 +46,8 @@
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
 
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -115,6 +117,22 @@ public static TreeFilter create(Collection<TreeFilter> list) {
 		return new List(subfilters);
 	}
 
+	// Paths are only reported if ANY_DIFF is one of the filters, so that
+	// callers consulting changed path Bloom filters never skip a commit
+	// whose unchanged entries would have been matched.
+	private static Optional<Set<byte[]>> pathsOfDiff(TreeFilter... filters) {
+		boolean anyDiff = false;
+		Optional<Set<byte[]>> paths = Optional.empty();
+		for (TreeFilter f : filters) {
+			if (f == TreeFilter.ANY_DIFF) {
+				anyDiff = true;
+			} else if (!paths.isPresent()) {
+				paths = f.getPathsBestEffort();
+			}
+		}
+		return anyDiff ? paths : Optional.empty();
+	}
+
 	private static class Binary extends AndTreeFilter {
 		private final TreeFilter a;
 
@@ -155,6 +173,11 @@ public boolean shouldBeRecursive() {
 			return a.shouldBeRecursive() || b.shouldBeRecursive();
 		}
 
+		@Override
+		public Optional<Set<byte[]>> getPathsBestEffort() {
+			return pathsOfDiff(a, b);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return new Binary(a.clone(), b.clone());
@@ -206,6 +229,11 @@ public boolean shouldBeRecursive() {
 			return false;
 		}
 
+		@Override
+		public Optional<Set<byte[]>> getPathsBestEffort() {
+			return pathsOfDiff(subfilters);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			final TreeFilter[] s = new TreeFilter[subfilters.length];
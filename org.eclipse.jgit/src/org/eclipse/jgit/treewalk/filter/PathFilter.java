@@ -44,6 +44,10 @@
 
 package org.eclipse.jgit.treewalk.filter;
 
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -112,6 +116,12 @@ public int matchFilter(TreeWalk walker) {
 		return walker.isPathMatch(pathRaw, pathRaw.length);
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Optional<Set<byte[]>> getPathsBestEffort() {
+		return Optional.of(Collections.singleton(pathRaw));
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public boolean shouldBeRecursive() {
@@ -44,7 +44,11 @@
 
 package org.eclipse.jgit.treewalk.filter;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
 
 import org.eclipse.jgit.errors.StopWalkException;
 import org.eclipse.jgit.internal.JGitText;
@@ -169,6 +173,11 @@ public boolean shouldBeRecursive() {
 			return path.shouldBeRecursive();
 		}
 
+		@Override
+		public Optional<Set<byte[]>> getPathsBestEffort() {
+			return path.getPathsBestEffort();
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return this;
@@ -264,6 +273,12 @@ public boolean shouldBeRecursive() {
 			return !prefixes.isEmpty();
 		}
 
+		@Override
+		public Optional<Set<byte[]>> getPathsBestEffort() {
+			return Optional
+					.of(new HashSet<>(Arrays.asList(fullpaths.toArray())));
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return this;
@@ -44,6 +44,8 @@
 package org.eclipse.jgit.treewalk.filter;
 
 import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
 
 import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
@@ -242,6 +244,22 @@ public int matchFilter(TreeWalk walker)
 	 */
 	public abstract boolean shouldBeRecursive();
 
+	/**
+	 * Get the paths this filter restricts a walk to, if known.
+	 * <p>
+	 * If present, the filter does not match any entry which is neither one of
+	 * the returned paths, nor a parent directory of or below one of them. This
+	 * allows walkers to skip work for commits known not to touch any of the
+	 * paths, e.g. by consulting a changed path Bloom filter.
+	 *
+	 * @return the paths, without trailing '/', or empty if the filter cannot
+	 *         describe the paths it matches.
+	 * @since 5.6
+	 */
+	public Optional<Set<byte[]>> getPathsBestEffort() {
+		return Optional.empty();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *